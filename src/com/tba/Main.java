@@ -11,76 +11,291 @@
 
 package com.tba;
 
+import com.tba.archive.ReExtractor;
+import com.tba.batch.BatchRunner;
+import com.tba.batch.CrawlCoordinator;
+import com.tba.batch.CrawlWorker;
+import com.tba.batch.SearchTerm;
+import com.tba.batch.SweepRunner;
+import com.tba.batch.TrackingDaemon;
 import com.tba.database.DatabaseAdapter;
 import com.tba.database.Search;
+import com.tba.database.SearchStatistics;
+import com.tba.database.Trend;
 import com.tba.enums.Action;
 import com.tba.enums.ControlKey;
 import com.tba.enums.TargetURL;
+import com.tba.exports.SearchExporter;
+import com.tba.index.PropertyIndex;
 import com.tba.parsing.Property;
 import com.tba.runnables.PauseThread;
+import com.tba.runnables.SearchCheckpoint;
+import com.tba.runnables.SearchProgress;
 import com.tba.runnables.SearchRunnable;
+import com.tba.service.SearchService;
+import com.tba.simulation.LoadDriver;
+import com.tba.simulation.SiteSimulator;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.Writer;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
 import java.util.*;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
 
 public class Main {
 
     private static final Logger logger = Logger.getLogger(Main.class.getName());
-    private static final Scanner inputScanner = new Scanner(System.in); // System.in is used for interacting with the user.
-    private static final SimpleDateFormat simpleDateFormatter = new SimpleDateFormat("dd/MM/yyyy");
-    private static final SimpleDateFormat simpleDateFormatterWithTime = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-    private static final DatabaseAdapter databaseAdapter = new DatabaseAdapter(); // SQLite database is initialized.
+    private static Scanner inputScanner = null; // System.in is used for interacting with the user, created when first needed.
+    private static List<String> oneShotInputs = null; // Inputs of one-shot mode, used instead of System.in.
+    private static final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
+    private static final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("dd/MM/uuuu HH:mm:ss");
+    private static DatabaseAdapter databaseAdapter = null; // SQLite database is initialized when first needed.
+    private static final Integer TOP_PRICE_CHANGES = 10; // Destinations listed by trends action.
     private static String destinationSearchTerm = null;
     private static Date dateSearchTerm = null;
     private static Map<TargetURL, Map<String, Property>> propertiesPerTargetURL = new HashMap<>(); // Map of last search extracted properties of each target URL.
     private static Search lastSearch = null; // Last performed search results.
+    private static PropertyIndex lastPropertyIndex = null; // Index over last performed search properties.
 
     // This is the UI thread interacting with the user.
+    // When '--batch', '--sweep', '--track', '--serve', '--coordinate', '--work', '--once', '--simulate', '--load-test'
+    // or '--re-extract' arguments are provided, application runs in the corresponding headless mode instead.
     public static void main(String[] args) {
         logger.info("Tourism Booking Analysis application started.");
         try {
-            StringBuilder legend = new StringBuilder();
-            legend.append("Welcome to Tourism Booking Analysis application!\n Please select one of the following actions:\n");
-            appendAvailableActions(legend);
-            logger.info(legend.toString());
-            // Retrieving user input to define the action. Application terminates if user enters "6".
-            Action action = retrieveInputAction();
-            while (!action.equals(Action.QUIT)) {
-                if (!action.equals(Action.UNRECOGNISED)) {
-                    Main.class.getDeclaredMethod(action.getMethod()).invoke(null); // Reflection is used to call Action method.
-                }
-                action = retrieveInputAction();
+            if (args.length > 0 && args[0].equals("--batch")) {
+                runBatch(args);
+            } else if (args.length > 0 && args[0].equals("--sweep")) {
+                runSweep(args);
+            } else if (args.length > 0 && args[0].equals("--track")) {
+                runTracking(args);
+            } else if (args.length > 0 && args[0].equals("--serve")) {
+                runService(args);
+            } else if (args.length > 0 && args[0].equals("--coordinate")) {
+                runCoordinator(args);
+            } else if (args.length > 0 && args[0].equals("--work")) {
+                runWorker(args);
+            } else if (args.length > 0 && args[0].equals("--once")) {
+                runOneShot(args);
+            } else if (args.length > 0 && args[0].equals("--simulate")) {
+                runSimulator(args);
+            } else if (args.length > 0 && args[0].equals("--load-test")) {
+                runLoadTest(args);
+            } else if (args.length > 0 && args[0].equals("--re-extract")) {
+                runReExtraction(args);
+            } else {
+                runInteractive();
             }
         } catch (Exception e) {
             // When an exception occurs, its stacktrace is printed and the application terminates.
             e.printStackTrace();
             logger.info("There was an exception (" + e.getMessage() +"). Application terminating.");
         } finally {
-            // After application termination, database connection is closed.
-            databaseAdapter.closeDatabase();
+            // After application termination, database connection is closed, if it was initialized.
+            if (databaseAdapter != null) {
+                databaseAdapter.closeDatabase();
+            }
         }
         logger.info("Tourism Booking Analysis application terminated.");
     }
 
+    // Interactive mode.
+    // Retrieving user input to define the action. Application terminates if user enters "6".
+    private static void runInteractive() throws Exception {
+        StringBuilder legend = new StringBuilder();
+        legend.append("Welcome to Tourism Booking Analysis application!\n Please select one of the following actions:\n");
+        appendAvailableActions(legend);
+        logger.info(legend.toString());
+        Action action = retrieveInputAction();
+        while (!action.equals(Action.QUIT)) {
+            if (!action.equals(Action.UNRECOGNISED)) {
+                Main.class.getDeclaredMethod(action.getMethod()).invoke(null); // Reflection is used to call Action method.
+            }
+            action = retrieveInputAction();
+        }
+    }
+
+    // One-shot mode.
+    // Comma separated actions are executed once, in order, and application terminates, e.g. '--once 1,3 Athens 01/06/2027'.
+    // Remaining arguments answer the actions inputs in order, instead of System.in.
+    // Database is initialized only if an action needs it, so short scripted invocations start fast.
+    private static void runOneShot(String[] args) throws Exception {
+        if (args.length < 2) {
+            logger.info("Usage: --once <action number>[,<action number>...] [inputs...]");
+            return;
+        }
+        List<Action> actions = new ArrayList<>();
+        for (String actionNumber : args[1].split(",")) {
+            Action action = retrieveAction(actionNumber.trim());
+            if (action.getMethod() == null) {
+                StringBuilder legend = new StringBuilder();
+                legend.append("Action ").append(actionNumber.trim()).append(" can't be executed in one-shot mode. Accepted actions:\n");
+                appendAvailableActions(legend);
+                logger.info(legend.toString());
+                return;
+            }
+            actions.add(action);
+        }
+        oneShotInputs = Arrays.asList(Arrays.copyOfRange(args, 2, args.length));
+        for (Action action : actions) {
+            Main.class.getDeclaredMethod(action.getMethod()).invoke(null); // Reflection is used to call Action method.
+        }
+    }
+
+    // Headless batch mode.
+    // Search terms are read from the provided file and executed without user interaction.
+    private static void runBatch(String[] args) {
+        if (args.length < 2) {
+            logger.info("Usage: --batch <terms file> [--concurrency <n>]");
+            return;
+        }
+        new BatchRunner(getDatabaseAdapter(), retrieveConcurrencyArgument(args, 2)).run(args[1]);
+    }
+
+    // Headless sweep mode.
+    // Destination, checkin date range and lengths of stay are provided as arguments.
+    private static void runSweep(String[] args) {
+        if (args.length < 5) {
+            logger.info("Usage: --sweep <destination> <first checkin dd/MM/yyyy> <last checkin dd/MM/yyyy> <nights list, e.g. 1,2,7> [--concurrency <n>]");
+            return;
+        }
+        try {
+            LocalDate firstCheckinDate = LocalDate.parse(args[2], dateFormatter);
+            LocalDate lastCheckinDate = LocalDate.parse(args[3], dateFormatter);
+            if (firstCheckinDate.isBefore(LocalDate.now())) {
+                logger.info("You can't provide a past date.");
+                return;
+            }
+            new SweepRunner(getDatabaseAdapter(), retrieveConcurrencyArgument(args, 5)).run(args[1], firstCheckinDate, lastCheckinDate, SweepRunner.parseNightsList(args[4]));
+        } catch (DateTimeParseException e) {
+            logger.info("You must provide dates in 'dd/MM/yyyy' format.");
+        } catch (NumberFormatException e) {
+            logger.info("You must provide lengths of stay as comma separated positive Integers.");
+        }
+    }
+
+    // Long-running tracking mode.
+    // Watched terms are read from the provided file and re-searched periodically, until application is terminated.
+    private static void runTracking(String[] args) {
+        if (args.length < 2) {
+            logger.info("Usage: --track <watch file> [--concurrency <n>]");
+            return;
+        }
+        TrackingDaemon trackingDaemon = new TrackingDaemon(getDatabaseAdapter(), retrieveConcurrencyArgument(args, 2));
+        Runtime.getRuntime().addShutdownHook(new Thread(trackingDaemon::stop));
+        trackingDaemon.run(args[1]);
+    }
+
+    // HTTP service mode.
+    // Searches are submitted, polled and queried over HTTP, each one in its own session, until application is terminated.
+    private static void runService(String[] args) throws Exception {
+        SearchService searchService = new SearchService(getDatabaseAdapter(), retrievePortArgument(args, 1, 8080), retrieveConcurrencyArgument(args, 1));
+        Runtime.getRuntime().addShutdownHook(new Thread(searchService::stop));
+        searchService.run();
+    }
+
+    // Distributed crawl coordinator mode.
+    // Search terms of the provided file are queued as crawl jobs and finalized once worker processes finish them.
+    private static void runCoordinator(String[] args) {
+        if (args.length < 2) {
+            logger.info("Usage: --coordinate <terms file>");
+            return;
+        }
+        new CrawlCoordinator(getDatabaseAdapter()).run(args[1]);
+    }
+
+    // Distributed crawl worker mode.
+    // Crawl jobs are claimed from the queue and searched, until application is terminated.
+    private static void runWorker(String[] args) {
+        CrawlWorker crawlWorker = new CrawlWorker(getDatabaseAdapter(), retrieveConcurrencyArgument(args, 1));
+        Runtime.getRuntime().addShutdownHook(new Thread(crawlWorker::stop));
+        crawlWorker.run();
+    }
+
+    // Site simulator mode.
+    // Generated result pages of all targets are served, until application is terminated.
+    // Targets are pointed to the simulator by 'tba.<target>.baseUrl' system properties.
+    private static void runSimulator(String[] args) throws Exception {
+        SiteSimulator siteSimulator = new SiteSimulator(retrievePortArgument(args, 1, 8081));
+        Runtime.getRuntime().addShutdownHook(new Thread(siteSimulator::stop));
+        siteSimulator.run();
+    }
+
+    // Load test mode.
+    // Searches are executed against the site simulator at increasing concurrency levels and measured.
+    private static void runLoadTest(String[] args) {
+        List<Integer> levels = Arrays.asList(1, 2, 4, 8);
+        String simulatorURL = null;
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equals("--levels")) {
+                try {
+                    levels = LoadDriver.parseLevelsList(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    logger.info("Usage: --load-test [--levels <concurrency list, e.g. 1,2,4,8>] [--simulator <url>] [--unthrottled]");
+                    return;
+                }
+            } else if (args[i].equals("--simulator")) {
+                simulatorURL = args[i + 1];
+            }
+        }
+        new LoadDriver(levels, simulatorURL, Arrays.asList(args).contains("--unthrottled")).run();
+    }
+
+    // Re-extraction mode.
+    // Archived searches pages, of a destination if provided, are parsed again and their stored statistics regenerated.
+    private static void runReExtraction(String[] args) {
+        String destination = null;
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equals("--destination")) {
+                destination = args[i + 1];
+            }
+        }
+        new ReExtractor(getDatabaseAdapter(), retrieveConcurrencyArgument(args, 1)).run(destination);
+    }
+
+    // Retrieves '--port <n>' argument value, searching from provided index.
+    // If not provided, default port is used.
+    private static Integer retrievePortArgument(String[] args, Integer fromIndex, Integer defaultPort) {
+        Integer port = defaultPort;
+        for (int i = fromIndex; i < args.length - 1; i++) {
+            if (args[i].equals("--port")) {
+                try {
+                    port = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    logger.info("Port must be an Integer. Using default value " + port + ".");
+                }
+            }
+        }
+        return port;
+    }
+
+    // Retrieves '--concurrency <n>' argument value, searching from provided index.
+    // If not provided, available processors count is used.
+    private static Integer retrieveConcurrencyArgument(String[] args, Integer fromIndex) {
+        Integer concurrency = Runtime.getRuntime().availableProcessors();
+        for (int i = fromIndex; i < args.length - 1; i++) {
+            if (args[i].equals("--concurrency")) {
+                try {
+                    concurrency = Integer.parseInt(args[i + 1]);
+                } catch (NumberFormatException e) {
+                    logger.info("Concurrency must be an Integer. Using default value " + concurrency + ".");
+                }
+            }
+        }
+        return concurrency;
+    }
+
     // Retrieving users input in order to define the action.
     private static Action retrieveInputAction() {
         logger.info("Enter action number: ");
         Action enumAction = Action.UNRECOGNISED;
         try {
-            String input = inputScanner.nextLine();
+            String input = getInputScanner().nextLine();
             logger.info("User input: " + input);
-            Integer inputAction = Integer.parseInt(input);
-            enumAction = EnumSet.allOf(Action.class)
-                                       .stream()
-                                       .filter(e -> e.getValue().equals(inputAction))
-                                       .findAny()
-                                       .orElse(Action.UNRECOGNISED);
+            enumAction = retrieveAction(input);
         } catch (NumberFormatException e) {
             logger.info("Please enter an Integer.");
         }
@@ -94,46 +309,51 @@ public class Main {
         return enumAction;
     }
 
+    // Retrieves the Action of an action number, or UNRECOGNISED if no Action matches.
+    private static Action retrieveAction(String actionNumber) throws NumberFormatException {
+        Integer inputAction = Integer.parseInt(actionNumber);
+        return EnumSet.allOf(Action.class)
+                      .stream()
+                      .filter(e -> e.getValue().equals(inputAction))
+                      .findAny()
+                      .orElse(Action.UNRECOGNISED);
+    }
+
+    // Database is initialized on first use.
+    private static synchronized DatabaseAdapter getDatabaseAdapter() {
+        if (databaseAdapter == null) {
+            databaseAdapter = DatabaseAdapter.open();
+        }
+        return databaseAdapter;
+    }
+
+    // Input Scanner is created on first use. In one-shot mode, it reads the provided inputs, one per line.
+    private static Scanner getInputScanner() {
+        if (inputScanner == null) {
+            inputScanner = oneShotInputs != null ? new Scanner(String.join("\n", oneShotInputs)) : new Scanner(System.in);
+        }
+        return inputScanner;
+    }
+
     // Creating destinationSearchTerm and dateSearchTerm global variables, used by rest functionalities.
     private static void insertSearchTerm() {
         try {
             // Retrieve Destination search term from User.
             logger.info("Provide Destination: ");
-            destinationSearchTerm = inputScanner.nextLine();
+            destinationSearchTerm = getInputScanner().nextLine();
             while (destinationSearchTerm == null || destinationSearchTerm.isBlank()) {
                 logger.info("Input is empty. Please retry: ");
-                destinationSearchTerm = inputScanner.nextLine();
+                destinationSearchTerm = getInputScanner().nextLine();
             }
 
             // Retrieve Date search term from User.
             logger.info("Provide Date (dd/MM/yyyy): ");
-            simpleDateFormatter.setLenient(false);
-            dateSearchTerm = null;
-            Calendar calendar = Calendar.getInstance();
-            calendar.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DATE) - 1, 23, 59, 59);
-            Date yesterday = calendar.getTime();
-            while (dateSearchTerm == null) {
-                String dateSearchTermString = inputScanner.nextLine();
-                while (dateSearchTermString == null || dateSearchTermString.isBlank()) {
-                    logger.info("Input is empty. Please retry: ");
-                    dateSearchTermString = inputScanner.nextLine();
-                }
-                try {
-                    dateSearchTerm = simpleDateFormatter.parse(dateSearchTermString);
-                    if (dateSearchTerm.before(yesterday)) {
-                        logger.info("You can't provide a past date. Please retry: ");
-                        dateSearchTerm = null;
-                    }
-                } catch (ParseException e) {
-                    dateSearchTerm = null;
-                    logger.info("You must provide a date in 'dd/MM/yyyy' format. Please retry: ");
-                }
-            }
+            dateSearchTerm = retrieveInputDate();
 
             StringBuilder searchTermSB = new StringBuilder();
             searchTermSB.append("New search Term Created!\n")
                         .append("Destination -> ").append(destinationSearchTerm).append("\n")
-                        .append("Date -> ").append(simpleDateFormatter.format(dateSearchTerm)).append("\n");
+                        .append("Date -> ").append(formatDate(dateSearchTerm)).append("\n");
             logger.info(searchTermSB.toString());
         } catch (Exception e) {
             e.printStackTrace();
@@ -141,11 +361,36 @@ public class Main {
         }
     }
 
+    // Retrieving a non past date from user, in 'dd/MM/yyyy' format.
+    private static Date retrieveInputDate() {
+        LocalDate date = null;
+        while (date == null) {
+            String dateString = getInputScanner().nextLine();
+            while (dateString == null || dateString.isBlank()) {
+                logger.info("Input is empty. Please retry: ");
+                dateString = getInputScanner().nextLine();
+            }
+            try {
+                date = LocalDate.parse(dateString.trim(), dateFormatter);
+                if (date.isBefore(LocalDate.now())) {
+                    logger.info("You can't provide a past date. Please retry: ");
+                    date = null;
+                }
+            } catch (DateTimeParseException e) {
+                date = null;
+                logger.info("You must provide a date in 'dd/MM/yyyy' format. Please retry: ");
+            }
+        }
+        return SearchTerm.toDate(date);
+    }
+
     // Search on target URLs functionality.
     // User must have created destinationSearchTerm and dateSearchTerm first.
     // Each target URL is assigned to a different Thread.
     // Threads can be controlled (pause/resume/stop) by the user.
     // When user pauses the process, a PauseThread is activated, printing a message periodically.
+    // When user stops the process, in-flight page retrievals are aborted and crawl state is kept in a checkpoint,
+    // so a later search of the same terms resumes from it.
     // On process finish, found properties of each Thread are retrieved and search statistics are calculated.
     private static void startSearch() {
         try {
@@ -156,14 +401,18 @@ public class Main {
                 StringBuilder searchSB = new StringBuilder();
                 searchSB.append("New search is starting for terms:\n")
                         .append("Destination -> ").append(destinationSearchTerm).append("\n")
-                        .append("Date -> ").append(simpleDateFormatter.format(dateSearchTerm)).append("\n")
+                        .append("Date -> ").append(formatDate(dateSearchTerm)).append("\n")
                         .append("Search started...\n");
                 logger.info(searchSB.toString());
 
+                SearchCheckpoint checkpoint = SearchCheckpoint.open(destinationSearchTerm, dateSearchTerm, 1);
+                if (checkpoint.isResumed()) {
+                    logger.info("A previous search of these terms was stopped. Search resumes from its checkpoint.");
+                }
                 List<SearchRunnable> searchRunnableList = new ArrayList<>();
                 List<Thread> searchThreadList = new ArrayList<>();
                 EnumSet.allOf(TargetURL.class).forEach(targetURL -> {
-                    SearchRunnable searchRunnable = new SearchRunnable(targetURL, destinationSearchTerm, dateSearchTerm);
+                    SearchRunnable searchRunnable = new SearchRunnable(targetURL, destinationSearchTerm, dateSearchTerm, 1, checkpoint);
                     Thread searchThread = new Thread(searchRunnable);
                     searchRunnableList.add(searchRunnable);
                     searchThreadList.add(searchThread);
@@ -172,8 +421,8 @@ public class Main {
                 searchThreadList.forEach(Thread::start);
                 String endSignal;
                 while(checkSearchRunnableListStatus(searchRunnableList)) { // While Threads are not finished.
-                    if (System.in.available() > 0) { // Main Thread checks console for available input.
-                        endSignal = inputScanner.nextLine();
+                    if (oneShotInputs == null && System.in.available() > 0) { // Main Thread checks console for available input, unless in one-shot mode.
+                        endSignal = getInputScanner().nextLine();
                         if (endSignal.equalsIgnoreCase(ControlKey.PAUSE.toString())) {
                             pauseThread.start();
                             searchRunnableList.forEach(SearchRunnable::pause);
@@ -183,11 +432,11 @@ public class Main {
                         } else if (endSignal.equalsIgnoreCase(ControlKey.STOP.toString())) {
                             pauseThread.stop();
                             searchRunnableList.forEach(SearchRunnable::stop);
+                        } else if (endSignal.equalsIgnoreCase(ControlKey.STATUS.toString())) {
+                            logger.info(SearchProgress.describe(searchRunnableList.stream().map(SearchRunnable::getProgress).collect(Collectors.toList())));
                         }
                     }
                 }
-                propertiesPerTargetURL.clear();
-                searchRunnableList.forEach(searchRunnable -> propertiesPerTargetURL.put(searchRunnable.getTargetURL(), searchRunnable.getTotalProperties()));
                 searchThreadList.forEach(searchThread -> {
                     try {
                         searchThread.join();
@@ -195,8 +444,17 @@ public class Main {
                         e.printStackTrace();
                     }
                 });
+                propertiesPerTargetURL.clear();
+                searchRunnableList.forEach(searchRunnable -> propertiesPerTargetURL.put(searchRunnable.getTargetURL(), searchRunnable.getTotalProperties()));
                 pauseThread.stop();
-                finalizeSearch();
+                // Checkpoint is kept if search was stopped or could not be stored, so it can be resumed.
+                Boolean stored = finalizeSearch(checkpoint.getArchiveKey());
+                if (stored && searchRunnableList.stream().allMatch(SearchRunnable::getCompleted)) {
+                    checkpoint.delete();
+                } else {
+                    checkpoint.close();
+                    logger.info("Search was " + (stored ? "stopped" : "not stored") + ". Its progress has been saved and it will resume on next search of these terms.");
+                }
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -204,35 +462,57 @@ public class Main {
         }
     }
 
-    // Calculates and stores search statistics.
-    private static void finalizeSearch() {
-        List<Property> properties = new ArrayList<>();
-        propertiesPerTargetURL.values().forEach(element -> properties.addAll(element.values()));
-        Search.Builder searchBuilder = new Search.Builder();
-        searchBuilder.withDestination(destinationSearchTerm)
-                     .withDate(dateSearchTerm)
-                     .withPropertiesFound(properties.size())
-                     .withTimestamp(new Date());
-        StringBuilder statisticsSB = new StringBuilder();
-        statisticsSB.append("Search finished!\n")
-                    .append("Statistics:\n")
-                    .append("Properties found -> ").append(properties.size()).append("\n");
-        if (properties.size() > 0) {
-            Long unavailableProperties = properties.stream().filter(p -> p.getPrice() == null).count();
-            Double scoreSum = properties.stream().filter(p -> p.getScore() != null).mapToDouble(Property::getScore).sum();
-            Double priceSum = properties.stream().filter(p -> p.getPrice() != null).mapToDouble(Property::getPrice).sum();
-            Double scoreMedian = scoreSum / properties.size();
-            Double priceMedian = priceSum / properties.size();
-            searchBuilder.withUnavailableProperties(unavailableProperties.intValue())
-                         .withScoreMedian(scoreMedian)
-                         .withPriceMedian(priceMedian);
-            statisticsSB.append("Unavailable Properties -> ").append(unavailableProperties).append("\n")
-                        .append("Score Median -> ").append(String.format("%.2f", scoreMedian)).append("\n")
-                        .append("Price Median -> ").append(String.format("%.2f", priceMedian)).append("\n");
+    // Calculates and stores search statistics, referencing its archived pages, if any. Returns false if statistics were not stored.
+    private static Boolean finalizeSearch(Long archiveKey) {
+        lastSearch = SearchStatistics.calculate(destinationSearchTerm, dateSearchTerm, 1, archiveKey, propertiesPerTargetURL);
+        lastPropertyIndex = PropertyIndex.build(propertiesPerTargetURL);
+        logger.info("Search finished!\n" + SearchStatistics.describe(lastSearch));
+        return getDatabaseAdapter().insertSearch(lastSearch);
+    }
+
+    // Sweep search functionality.
+    // User provides a destination, a checkin date range and the lengths of stay to search.
+    // All combinations are searched in a single pass and a results matrix is printed.
+    private static void startSweepSearch() {
+        try {
+            logger.info("Provide Destination: ");
+            String destination = getInputScanner().nextLine();
+            while (destination == null || destination.isBlank()) {
+                logger.info("Input is empty. Please retry: ");
+                destination = getInputScanner().nextLine();
+            }
+            logger.info("Provide first checkin Date (dd/MM/yyyy): ");
+            Date firstCheckinDate = retrieveInputDate();
+            logger.info("Provide last checkin Date (dd/MM/yyyy): ");
+            Date lastCheckinDate = retrieveInputDate();
+            SortedSet<Integer> nightsSet = null;
+            logger.info("Provide lengths of stay in nights, comma separated (e.g. 1,2,7): ");
+            while (nightsSet == null || nightsSet.isEmpty()) {
+                try {
+                    nightsSet = SweepRunner.parseNightsList(getInputScanner().nextLine());
+                    if (nightsSet.isEmpty()) {
+                        logger.info("Input is empty. Please retry: ");
+                    }
+                } catch (NumberFormatException e) {
+                    logger.info("You must provide positive Integers. Please retry: ");
+                }
+            }
+            new SweepRunner(getDatabaseAdapter(), Runtime.getRuntime().availableProcessors())
+                    .run(destination, toLocalDate(firstCheckinDate), toLocalDate(lastCheckinDate), nightsSet);
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("There was an exception (" + e.getMessage() +") in startSweepSearch method.");
         }
-        logger.info(statisticsSB.toString());
-        lastSearch = searchBuilder.build();
-        databaseAdapter.insertSearch(lastSearch);
+    }
+
+    // Converts a Date to a LocalDate.
+    private static LocalDate toLocalDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    // Formats a Date in 'dd/MM/yyyy' format.
+    private static String formatDate(Date date) {
+        return toLocalDate(date).format(dateFormatter);
     }
 
     // Check if SearchRunnable Threads are active.
@@ -256,7 +536,7 @@ public class Main {
                 StringBuilder stringBuilder = new StringBuilder();
                 stringBuilder.append("Retrieving previous searches statistics for terms:\n")
                         .append("Destination -> ").append(destinationSearchTerm).append("\n")
-                        .append("Date -> ").append(simpleDateFormatter.format(dateSearchTerm));
+                        .append("Date -> ").append(formatDate(dateSearchTerm));
                 logger.info(stringBuilder.toString());
                 StringBuilder searchSB = retrieveSearchTermListStringBuilder();
                 logger.info(searchSB.toString());
@@ -267,40 +547,132 @@ public class Main {
         }
     }
 
+    // Retrieves historical trends of a destination from the rollup tables: average price and availability ratio
+    // per week and per day, followed by the destinations with the largest price change.
+    private static void retrieveDestinationTrends() {
+        try {
+            logger.info("Provide Destination: ");
+            String destination = getInputScanner().nextLine();
+            while (destination == null || destination.isBlank()) {
+                logger.info("Input is empty. Please retry: ");
+                destination = getInputScanner().nextLine();
+            }
+            long startNanos = System.nanoTime();
+            List<Trend> weeklyTrends = getDatabaseAdapter().retrieveWeeklyTrends(destination);
+            List<Trend> dailyTrends = getDatabaseAdapter().retrieveDailyTrends(destination);
+            List<Trend> topPriceChanges = getDatabaseAdapter().retrieveTopPriceChanges(TOP_PRICE_CHANGES);
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+
+            StringBuilder trendSB = new StringBuilder();
+            if (weeklyTrends.isEmpty()) {
+                trendSB.append("No previous searches found for destination ").append(destination).append("!\n");
+            } else {
+                trendSB.append("Weekly trend for destination ").append(destination).append(":\n");
+                weeklyTrends.forEach(trend -> appendTrend(trendSB.append("Week of "), trend));
+                trendSB.append("Daily trend for destination ").append(destination).append(":\n");
+                dailyTrends.forEach(trend -> appendTrend(trendSB, trend));
+            }
+            trendSB.append("Top destinations by price change:\n");
+            topPriceChanges.forEach(trend -> trendSB.append(trend.getDestination()).append(": ")
+                                                    .append(String.format("%.2f", trend.getFirstPrice())).append(" -> ")
+                                                    .append(String.format("%.2f", trend.getLastPrice())).append(" (")
+                                                    .append(String.format("%+.1f%%", trend.getPriceChange() * 100)).append(")\n"));
+            trendSB.append("Trends retrieved in ").append(elapsedMillis).append(" ms.");
+            logger.info(trendSB.toString());
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("There was an exception (" + e.getMessage() +") in retrieveDestinationTrends method.");
+        }
+    }
+
+    // Appends a day or week trend line to provided StringBuilder.
+    private static void appendTrend(StringBuilder trendSB, Trend trend) {
+        trendSB.append(trend.getPeriod().format(dateFormatter)).append(": ")
+               .append("Searches -> ").append(trend.getSearches()).append(", ")
+               .append("Price Average -> ").append(trend.getPriceAverage() != null ? String.format("%.2f", trend.getPriceAverage()) : "-").append(", ")
+               .append("Availability -> ").append(trend.getAvailabilityRatio() != null ? String.format("%.1f%%", trend.getAvailabilityRatio() * 100) : "-").append("\n");
+    }
+
+    // Queries last search results from its property index: cheapest or best rated properties,
+    // within optional minimum score and maximum price bounds. Results can be exported to a .txt file.
+    private static void queryLastSearchProperties() {
+        try {
+            if (lastPropertyIndex == null || lastSearch == null) {
+                logger.info("You must execute a search before proceeding!");
+                return;
+            }
+            logger.info("Order by (1 -> cheapest, 2 -> best rated): ");
+            String order = getInputScanner().nextLine().trim();
+            while (!order.equals("1") && !order.equals("2")) {
+                logger.info("Please enter 1 or 2: ");
+                order = getInputScanner().nextLine().trim();
+            }
+            Integer limit = null;
+            logger.info("Number of results: ");
+            while (limit == null) {
+                try {
+                    limit = Integer.parseInt(getInputScanner().nextLine().trim());
+                    if (limit < 1) {
+                        logger.info("Number of results must be positive. Please retry: ");
+                        limit = null;
+                    }
+                } catch (NumberFormatException e) {
+                    logger.info("Please enter an Integer: ");
+                }
+            }
+            Double minScore = order.equals("1") ? retrieveOptionalInputDouble("Minimum score (empty for any): ") : null;
+            Double maxPrice = retrieveOptionalInputDouble("Maximum price (empty for any): ");
+
+            List<PropertyIndex.Result> results = order.equals("1") ? lastPropertyIndex.cheapest(limit, minScore, maxPrice) : lastPropertyIndex.bestRated(limit, maxPrice);
+            StringBuilder queryDescriptionSB = new StringBuilder();
+            queryDescriptionSB.append(order.equals("1") ? "Cheapest " : "Best rated ").append(limit).append(" properties")
+                              .append(minScore != null ? ", score >= " + minScore : "")
+                              .append(maxPrice != null ? ", price <= " + maxPrice : "");
+            StringBuilder resultsSB = new StringBuilder();
+            resultsSB.append(queryDescriptionSB).append(" (").append(results.size()).append(" of ")
+                     .append(lastPropertyIndex.size()).append(" available properties):\n");
+            SearchExporter.appendPropertyQueryResults(resultsSB, results);
+            logger.info(resultsSB.toString());
+
+            logger.info("Export results? (y/n): ");
+            if (getInputScanner().nextLine().trim().equalsIgnoreCase("y")) {
+                String fileName = SearchExporter.exportPropertyQuery(lastSearch, queryDescriptionSB.toString(), results);
+                logger.info("File " + fileName +" has been successfully created in exports folder!");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("There was an exception (" + e.getMessage() +") in queryLastSearchProperties method.");
+        }
+    }
+
+    // Retrieves an optional Double from user. Empty input returns null.
+    private static Double retrieveOptionalInputDouble(String prompt) {
+        logger.info(prompt);
+        while (true) {
+            String input = getInputScanner().nextLine().trim();
+            if (input.isEmpty()) {
+                return null;
+            }
+            try {
+                return Double.parseDouble(input.replace(',', '.'));
+            } catch (NumberFormatException e) {
+                logger.info("Please enter a number, or leave empty: ");
+            }
+        }
+    }
+
     // Exports last search results to a .txt file.
     private static void exportLastSearchProperties() {
         try {
             if (propertiesPerTargetURL.isEmpty() || lastSearch == null) {
                 logger.info("You must execute a search before proceeding!");
             } else {
-                exportFolderInitialization();
                 StringBuilder stringBuilder = new StringBuilder();
                 stringBuilder.append("Exporting search results for terms:")
                         .append("Destination -> ").append(lastSearch.getDestination()).append(", ")
-                        .append("Date -> ").append(simpleDateFormatter.format(lastSearch.getDate()));
+                        .append("Date -> ").append(formatDate(lastSearch.getDate()));
                 logger.info(stringBuilder.toString());
-                StringBuilder exportSB = new StringBuilder();
-                exportSB.append("Search export for terms:\n")
-                        .append("Destination -> ").append(lastSearch.getDestination()).append(", ")
-                        .append("Date -> ").append(simpleDateFormatter.format(lastSearch.getDate())).append("\n")
-                        .append("Statistics:\n")
-                        .append("Properties found -> ").append(lastSearch.getPropertiesFound()).append(", ")
-                        .append("Unavailable Properties -> ").append(lastSearch.getUnavailableProperties()).append(", ")
-                        .append("Score Median -> ").append(String.format("%.2f", lastSearch.getScoreMedian())).append(", ")
-                        .append("Price Median -> ").append(String.format("%.2f", lastSearch.getPriceMedian())).append("\n");
-                propertiesPerTargetURL.keySet().forEach(key -> {
-                    exportSB.append("Properties found in ").append(key.getURL()).append(":\n");
-                    propertiesPerTargetURL.get(key).values().forEach(property -> {
-                        exportSB.append("Name -> ").append(property.getName()).append(", ")
-                                .append("Score -> ").append(property.getScore()).append(", ")
-                                .append("Price -> ").append(property.getPrice()).append("\n");
-                    });
-                });
-                String fileName = "search_"+ lastSearch.getTimestamp().getTime() + "_export.txt";
-                Writer writer = new FileWriter("exports/" + fileName);
-                writer.append(exportSB.toString());
-                writer.flush();
-                writer.close();
+                String fileName = SearchExporter.exportSearchProperties(lastSearch, propertiesPerTargetURL);
                 logger.info("File " + fileName +" has been successfully created in exports folder!");
             }
         } catch (Exception e) {
@@ -317,19 +689,15 @@ public class Main {
                 logger.info("You must provide search terms before proceeding!");
                 insertSearchTerm();
             } else {
-                exportFolderInitialization();
                 StringBuilder stringBuilder = new StringBuilder();
                 stringBuilder.append("Exporting previous searches statistics for terms: ")
                         .append("Destination -> ").append(destinationSearchTerm).append(", ")
-                        .append("Date -> ").append(simpleDateFormatter.format(dateSearchTerm));
+                        .append("Date -> ").append(formatDate(dateSearchTerm));
                 logger.info(stringBuilder.toString());
                 StringBuilder searchSB = retrieveSearchTermListStringBuilder();
                 stringBuilder.append(searchSB);
                 String fileName = "search_term_history_" + new Date().getTime() + "_export.txt";
-                Writer writer = new FileWriter("exports/" + fileName);
-                writer.append(searchSB.toString());
-                writer.flush();
-                writer.close();
+                SearchExporter.writeExportFile(fileName, searchSB);
                 logger.info("File " + fileName +" has been successfully created in exports folder!");
             }
         } catch (Exception e) {
@@ -338,26 +706,18 @@ public class Main {
         }
     }
 
-    // Initializes export folder.
-    private static void exportFolderInitialization() throws IOException {
-        File exportFolder = new File("exports");
-        if (!exportFolder.exists() && !exportFolder.mkdir()) {
-            throw new IOException("Export folder could not be accessed.");
-        }
-    }
-
     // Retrieves stored searches of a search term from database and returns them as a StringBuilder.
     private static StringBuilder retrieveSearchTermListStringBuilder() {
         StringBuilder searchSB = new StringBuilder();
-        List<Search> searchList = databaseAdapter.retrieveSearchTermList(destinationSearchTerm, dateSearchTerm);
+        List<Search> searchList = getDatabaseAdapter().retrieveSearchTermList(destinationSearchTerm, dateSearchTerm);
         if (searchList.size() <= 0) {
             searchSB.append("No previous search statistics records found!");
         } else {
             searchSB.append("Statistics history for search term: ")
                     .append("Destination -> ").append(destinationSearchTerm).append(", ")
-                    .append("Date -> ").append(simpleDateFormatter.format(dateSearchTerm)).append("\n");
+                    .append("Date -> ").append(formatDate(dateSearchTerm)).append("\n");
             searchList.forEach(search -> {
-                searchSB.append(simpleDateFormatterWithTime.format(search.getTimestamp())).append(": ")
+                searchSB.append(dateTimeFormatter.format(search.getTimestamp().toInstant().atZone(ZoneId.systemDefault()))).append(": ")
                         .append("Properties found -> ").append(search.getPropertiesFound()).append(", ")
                         .append("Unavailable Properties -> ").append(search.getUnavailableProperties()).append(", ")
                         .append("Score Median -> ").append(String.format("%.2f", search.getScoreMedian())).append(", ")
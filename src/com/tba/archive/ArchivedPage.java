@@ -0,0 +1,129 @@
+// -------------------------------------------------------------
+//
+// This is the Archived Page Structure, read from the PageArchive.
+// Archived Page data: Archive Key, TargetURL, Page Number,
+// Destination, Date, Nights, Timestamp and the retrieved Page,
+// whose body is decompressed.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.archive;
+
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Page;
+
+import java.util.Date;
+
+public class ArchivedPage {
+
+    private Long archiveKey;
+    private TargetURL targetURL;
+    private Integer pageNumber;
+    private String destination;
+    private Date date;
+    private Integer nights;
+    private Date timestamp;
+    private Page page;
+
+    public static class Builder {
+
+        private Long archiveKey;
+        private TargetURL targetURL;
+        private Integer pageNumber;
+        private String destination;
+        private Date date;
+        private Integer nights;
+        private Date timestamp;
+        private Page page;
+
+        public Builder() {}
+
+        public ArchivedPage.Builder withArchiveKey(Long archiveKey) {
+            this.archiveKey = archiveKey;
+            return this;
+        }
+
+        public ArchivedPage.Builder withTargetURL(TargetURL targetURL) {
+            this.targetURL = targetURL;
+            return this;
+        }
+
+        public ArchivedPage.Builder withPageNumber(Integer pageNumber) {
+            this.pageNumber = pageNumber;
+            return this;
+        }
+
+        public ArchivedPage.Builder withDestination(String destination) {
+            this.destination = destination;
+            return this;
+        }
+
+        public ArchivedPage.Builder withDate(Date date) {
+            this.date = date;
+            return this;
+        }
+
+        public ArchivedPage.Builder withNights(Integer nights) {
+            this.nights = nights;
+            return this;
+        }
+
+        public ArchivedPage.Builder withTimestamp(Date timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        public ArchivedPage.Builder withPage(Page page) {
+            this.page = page;
+            return this;
+        }
+
+        public ArchivedPage build() {
+            ArchivedPage archivedPage = new ArchivedPage();
+            archivedPage.archiveKey = this.archiveKey;
+            archivedPage.targetURL = this.targetURL;
+            archivedPage.pageNumber = this.pageNumber;
+            archivedPage.destination = this.destination;
+            archivedPage.date = this.date;
+            archivedPage.nights = this.nights;
+            archivedPage.timestamp = this.timestamp;
+            archivedPage.page = this.page;
+            return archivedPage;
+        }
+    }
+
+    public Long getArchiveKey() {
+        return archiveKey;
+    }
+
+    public TargetURL getTargetURL() {
+        return targetURL;
+    }
+
+    public Integer getPageNumber() {
+        return pageNumber;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public Integer getNights() {
+        return nights;
+    }
+
+    public Date getTimestamp() {
+        return timestamp;
+    }
+
+    public Page getPage() {
+        return page;
+    }
+
+}
@@ -0,0 +1,231 @@
+// -------------------------------------------------------------
+//
+// This class archives the raw pages retrieved by searches, so their
+// properties can be extracted again later without any request, e.g.
+// after a parser fix. Archiving is enabled by 'tba.archive' system
+// property and pages are stored in 'tba.archiveFolder' (default
+// archive).
+// Each page is compressed (deflate) and appended as a record to the
+// current segment file. Segments roll over once they reach
+// 'tba.archiveSegmentBytes' (default 256 MB). For each record a fixed
+// size entry is appended to the index file, keyed by the search
+// archive key, TargetURL and page number, so records are located
+// without scanning segments.
+// Index entry: Archive Key(8), TargetURL ordinal(4), Page Number(4),
+// Segment(4), Record Length(4), Record Offset(8).
+// Segment record: Magic, Archive Key, TargetURL, Page Number, Date
+// (epoch day), Nights, Timestamp, Destination, Url, Charset, Raw
+// Length, Compressed Length and compressed Body bytes.
+// Records are written before their index entries, so an interrupted
+// append never leaves an entry pointing to a partial record.
+// Archive folder is locked by a single process.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.archive;
+
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Page;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+
+public class PageArchive {
+
+    private static final Logger logger = Logger.getLogger(PageArchive.class.getName());
+    static final Integer RECORD_MAGIC = 0x54424150; // "TBAP"
+    static final Integer INDEX_ENTRY_BYTES = 32;
+    static final String INDEX_FILE = "pages.idx";
+    private static final String LOCK_FILE = "archive.lock";
+    private static final Boolean ENABLED = Boolean.getBoolean("tba.archive");
+    private static final Long SEGMENT_BYTES = Long.getLong("tba.archiveSegmentBytes", 256L * 1024 * 1024);
+    private static PageArchive instance = null;
+    private static Boolean initialized = false;
+    private final Path folder;
+    private final FileChannel lockChannel; // Kept open, as closing it releases the archive lock.
+    private final FileChannel indexChannel;
+    private FileChannel segmentChannel;
+    private Integer segment;
+    private final AtomicLong pagesArchived = new AtomicLong();
+    private final AtomicLong rawBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+
+    private PageArchive(Path folder, FileChannel lockChannel) throws IOException {
+        this.folder = folder;
+        this.lockChannel = lockChannel;
+        this.indexChannel = FileChannel.open(folder.resolve(INDEX_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // A partial entry, left by an interrupted append, is discarded.
+        indexChannel.truncate(indexChannel.size() - indexChannel.size() % INDEX_ENTRY_BYTES);
+        indexChannel.position(indexChannel.size());
+        this.segment = lastSegment(folder);
+        openSegment();
+    }
+
+    // Retrieves the archive of this process, or null if archiving is disabled,
+    // or the archive could not be opened, e.g. it is locked by another process.
+    public static synchronized PageArchive getInstance() {
+        if (initialized) {
+            return instance;
+        }
+        initialized = true;
+        if (!ENABLED) {
+            return null;
+        }
+        Path folder = getFolder();
+        FileChannel lockChannel = null;
+        try {
+            Files.createDirectories(folder);
+            lockChannel = FileChannel.open(folder.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = lockChannel.tryLock();
+            if (lock == null) {
+                lockChannel.close();
+                logger.info("Page archive " + folder + " is locked by another process. Pages will not be archived.");
+                return null;
+            }
+            instance = new PageArchive(folder, lockChannel);
+            logger.info("Page archive " + folder + " initialized successfully. Pages are appended to segment " + instance.segment + ".");
+        } catch (IOException e) {
+            logger.info("Page archive " + folder + " could not be initialized. Pages will not be archived. Exception thrown: " + e.getMessage());
+            try {
+                if (lockChannel != null) {
+                    lockChannel.close();
+                }
+            } catch (IOException ex) {
+                /* Lock is released anyway. */
+            }
+        }
+        return instance;
+    }
+
+    // Archive folder, defined by 'tba.archiveFolder' system property.
+    public static Path getFolder() {
+        return Paths.get(System.getProperty("tba.archiveFolder", "archive"));
+    }
+
+    // Generates the archive key of a new search, or returns null if pages are not archived.
+    public static Long newArchiveKey() {
+        return getInstance() != null ? ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE) : null;
+    }
+
+    // Path of a segment file.
+    static Path segmentPath(Path folder, Integer segment) {
+        return folder.resolve(String.format("segment-%06d.dat", segment));
+    }
+
+    // Appends a retrieved page of a search to the archive.
+    // Page is compressed by the calling Thread, so only the file writes are serialized.
+    public void append(Long archiveKey, TargetURL targetURL, Integer pageNumber, String destination, LocalDate date, Integer nights, Page page) {
+        byte[] record;
+        try {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            deflater.setInput(page.getBody(), 0, page.getLength());
+            deflater.finish();
+            ByteArrayOutputStream compressedStream = new ByteArrayOutputStream(Math.max(64, page.getLength() / 4));
+            byte[] buffer = new byte[16384];
+            while (!deflater.finished()) {
+                compressedStream.write(buffer, 0, deflater.deflate(buffer));
+            }
+            deflater.end();
+
+            ByteArrayOutputStream recordStream = new ByteArrayOutputStream(compressedStream.size() + 256);
+            DataOutputStream recordOutput = new DataOutputStream(recordStream);
+            recordOutput.writeInt(RECORD_MAGIC);
+            recordOutput.writeLong(archiveKey);
+            recordOutput.writeUTF(targetURL.name());
+            recordOutput.writeInt(pageNumber);
+            recordOutput.writeLong(date.toEpochDay());
+            recordOutput.writeInt(nights);
+            recordOutput.writeLong(System.currentTimeMillis());
+            recordOutput.writeUTF(destination);
+            recordOutput.writeUTF(page.getUrl());
+            recordOutput.writeUTF(page.getCharset().name());
+            recordOutput.writeInt(page.getLength());
+            recordOutput.writeInt(compressedStream.size());
+            compressedStream.writeTo(recordOutput);
+            recordOutput.flush();
+            record = recordStream.toByteArray();
+        } catch (IOException e) {
+            logger.info(targetURL.getURL() + " page " + pageNumber + " could not be archived. Exception thrown: " + e.getMessage());
+            return;
+        }
+        try {
+            write(archiveKey, targetURL, pageNumber, record);
+            pagesArchived.incrementAndGet();
+            rawBytes.addAndGet(page.getLength());
+            compressedBytes.addAndGet(record.length);
+        } catch (IOException e) {
+            logger.info(targetURL.getURL() + " page " + pageNumber + " could not be archived. Exception thrown: " + e.getMessage());
+        }
+    }
+
+    // Writes a record to the current segment, rolling over if it would exceed the segment size, and then its index entry.
+    private synchronized void write(Long archiveKey, TargetURL targetURL, Integer pageNumber, byte[] record) throws IOException {
+        if (segmentChannel.size() > 0 && segmentChannel.size() + record.length > SEGMENT_BYTES) {
+            segmentChannel.close();
+            segment++;
+            openSegment();
+        }
+        long offset = segmentChannel.size();
+        ByteBuffer recordBuffer = ByteBuffer.wrap(record);
+        while (recordBuffer.hasRemaining()) {
+            segmentChannel.write(recordBuffer, offset + recordBuffer.position());
+        }
+        ByteBuffer entryBuffer = ByteBuffer.allocate(INDEX_ENTRY_BYTES);
+        entryBuffer.putLong(archiveKey).putInt(targetURL.ordinal()).putInt(pageNumber)
+                   .putInt(segment).putInt(record.length).putLong(offset).flip();
+        while (entryBuffer.hasRemaining()) {
+            indexChannel.write(entryBuffer);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentChannel = FileChannel.open(segmentPath(folder, segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    // Finds the last segment number of an archive folder, or 0 if it contains no segments.
+    private static Integer lastSegment(Path folder) throws IOException {
+        Integer lastSegment = 0;
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(folder, "segment-*.dat")) {
+            for (Path path : segments) {
+                String fileName = path.getFileName().toString();
+                try {
+                    lastSegment = Math.max(lastSegment, Integer.parseInt(fileName.substring(8, fileName.length() - 4)));
+                } catch (NumberFormatException e) {
+                    /* File is ignored. */
+                }
+            }
+        }
+        return lastSegment;
+    }
+
+    // Describes pages archived by this process and their compression.
+    public String describe() {
+        StringBuilder archiveSB = new StringBuilder();
+        archiveSB.append(folder).append(" -> ")
+                 .append(pagesArchived.get()).append(" pages archived, ")
+                 .append(rawBytes.get()).append(" bytes raw, ")
+                 .append(compressedBytes.get()).append(" bytes stored");
+        if (rawBytes.get() > 0) {
+            archiveSB.append(" (").append(String.format("%.1f", 100.0 * compressedBytes.get() / rawBytes.get())).append("%)");
+        }
+        archiveSB.append(", current segment ").append(segment);
+        return archiveSB.toString();
+    }
+
+}
@@ -0,0 +1,264 @@
+// -------------------------------------------------------------
+//
+// This class reads pages from the PageArchive. The index file is
+// memory mapped and its entries are sorted by Archive Key, TargetURL,
+// Page Number and append order, so the pages of a search are looked
+// up by binary search, without reading the segments.
+// When a page was archived more than once, e.g. its retrieval was
+// hedged or retried, the last archived record is read.
+// Only entries appended before the reader was opened are visible.
+// Records are read with positional reads, so a reader can be shared
+// by many Threads.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.archive;
+
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Page;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public class PageArchiveReader implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(PageArchiveReader.class.getName());
+    private final Path folder;
+    private final MappedByteBuffer index;
+    private final Integer entriesCount;
+    private final int[] sortedEntries; // Entry numbers, sorted by key, target, page and append order.
+    private final List<Long> archiveKeys = new ArrayList<>(); // Distinct keys, in order of their first archived page.
+    private final Map<Integer, FileChannel> segmentChannels = new ConcurrentHashMap<>();
+
+    // Location of an archived page record.
+    public static class Entry {
+
+        private final Long archiveKey;
+        private final TargetURL targetURL;
+        private final Integer pageNumber;
+        private final Integer segment;
+        private final Integer recordLength;
+        private final long offset;
+
+        private Entry(Long archiveKey, TargetURL targetURL, Integer pageNumber, Integer segment, Integer recordLength, long offset) {
+            this.archiveKey = archiveKey;
+            this.targetURL = targetURL;
+            this.pageNumber = pageNumber;
+            this.segment = segment;
+            this.recordLength = recordLength;
+            this.offset = offset;
+        }
+
+        public Long getArchiveKey() {
+            return archiveKey;
+        }
+
+        public TargetURL getTargetURL() {
+            return targetURL;
+        }
+
+        public Integer getPageNumber() {
+            return pageNumber;
+        }
+    }
+
+    private PageArchiveReader(Path folder, MappedByteBuffer index, Integer entriesCount) {
+        this.folder = folder;
+        this.index = index;
+        this.entriesCount = entriesCount;
+        this.sortedEntries = IntStream.range(0, entriesCount).boxed()
+                                      .sorted(Comparator.<Integer>comparingLong(this::keyOf)
+                                                        .thenComparingInt(this::targetOf)
+                                                        .thenComparingInt(this::pageOf)
+                                                        .thenComparingInt(entry -> entry))
+                                      .mapToInt(Integer::intValue)
+                                      .toArray();
+        Set<Long> keys = new LinkedHashSet<>();
+        for (int entry = 0; entry < entriesCount; entry++) {
+            keys.add(keyOf(entry));
+        }
+        archiveKeys.addAll(keys);
+    }
+
+    // Opens the archive of a folder, mapping its index file.
+    public static PageArchiveReader open(Path folder) throws IOException {
+        Path indexPath = folder.resolve(PageArchive.INDEX_FILE);
+        if (!Files.exists(indexPath)) {
+            throw new IOException("Archive index " + indexPath + " does not exist.");
+        }
+        try (FileChannel indexChannel = FileChannel.open(indexPath, StandardOpenOption.READ)) {
+            long size = Math.min(indexChannel.size(), Integer.MAX_VALUE);
+            size -= size % PageArchive.INDEX_ENTRY_BYTES;
+            if (size < indexChannel.size()) {
+                logger.info("Archive index " + indexPath + " exceeds the mapped size, or ends with a partial entry. Only the first " + size + " bytes are read.");
+            }
+            MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new PageArchiveReader(folder, index, (int) (size / PageArchive.INDEX_ENTRY_BYTES));
+        }
+    }
+
+    public Integer getEntriesCount() {
+        return entriesCount;
+    }
+
+    // Archive keys of all archived searches, in order of their first archived page.
+    public List<Long> getArchiveKeys() {
+        return Collections.unmodifiableList(archiveKeys);
+    }
+
+    // Retrieves the entries of a search, the last archived one of each page, ordered by TargetURL and page number.
+    // Entries of TargetURLs unknown to this version are skipped.
+    public List<Entry> getEntries(Long archiveKey) {
+        List<Entry> entries = new ArrayList<>();
+        for (int i = lowerBound(archiveKey, 0, 0); i < entriesCount && keyOf(sortedEntries[i]) == archiveKey; i++) {
+            int entry = sortedEntries[i];
+            boolean lastOfPage = i + 1 == entriesCount || keyOf(sortedEntries[i + 1]) != archiveKey
+                                 || targetOf(sortedEntries[i + 1]) != targetOf(entry) || pageOf(sortedEntries[i + 1]) != pageOf(entry);
+            if (lastOfPage && targetOf(entry) >= 0 && targetOf(entry) < TargetURL.values().length) {
+                entries.add(createEntry(entry));
+            }
+        }
+        return entries;
+    }
+
+    // Looks up the last archived record of a search page and reads it, or returns null if page was not archived.
+    public ArchivedPage lookup(Long archiveKey, TargetURL targetURL, Integer pageNumber) throws IOException {
+        int i = lowerBound(archiveKey, targetURL.ordinal(), pageNumber + 1) - 1;
+        if (i < 0 || keyOf(sortedEntries[i]) != archiveKey || targetOf(sortedEntries[i]) != targetURL.ordinal() || pageOf(sortedEntries[i]) != pageNumber) {
+            return null;
+        }
+        return read(createEntry(sortedEntries[i]));
+    }
+
+    // Reads and decompresses an archived page record.
+    public ArchivedPage read(Entry entry) throws IOException {
+        ByteBuffer recordBuffer = ByteBuffer.allocate(entry.recordLength);
+        FileChannel segmentChannel = openSegment(entry.segment);
+        while (recordBuffer.hasRemaining()) {
+            if (segmentChannel.read(recordBuffer, entry.offset + recordBuffer.position()) < 0) {
+                throw new IOException("Archive record of segment " + entry.segment + " at offset " + entry.offset + " is truncated.");
+            }
+        }
+        DataInputStream recordInput = new DataInputStream(new ByteArrayInputStream(recordBuffer.array()));
+        if (recordInput.readInt() != PageArchive.RECORD_MAGIC || recordInput.readLong() != entry.archiveKey
+            || !recordInput.readUTF().equals(entry.targetURL.name()) || recordInput.readInt() != entry.pageNumber) {
+            throw new IOException("Archive record of segment " + entry.segment + " at offset " + entry.offset + " does not match its index entry.");
+        }
+        ArchivedPage.Builder archivedPageBuilder = new ArchivedPage.Builder()
+                                                       .withArchiveKey(entry.archiveKey)
+                                                       .withTargetURL(entry.targetURL)
+                                                       .withPageNumber(entry.pageNumber)
+                                                       .withDate(Date.from(LocalDate.ofEpochDay(recordInput.readLong()).atStartOfDay(ZoneId.systemDefault()).toInstant()))
+                                                       .withNights(recordInput.readInt())
+                                                       .withTimestamp(new Date(recordInput.readLong()))
+                                                       .withDestination(recordInput.readUTF());
+        String url = recordInput.readUTF();
+        Charset charset = Charset.forName(recordInput.readUTF());
+        int rawLength = recordInput.readInt();
+        byte[] compressedBody = new byte[recordInput.readInt()];
+        recordInput.readFully(compressedBody);
+        byte[] body = new byte[rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressedBody);
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(body, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw new IOException("Archive record of segment " + entry.segment + " at offset " + entry.offset + " has a truncated body.");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Archive record of segment " + entry.segment + " at offset " + entry.offset + " has a corrupted body.", e);
+        } finally {
+            inflater.end();
+        }
+        return archivedPageBuilder.withPage(new Page(url, body, rawLength, charset, Collections.emptyMap(), "deflate", compressedBody.length)).build();
+    }
+
+    // Closes all opened segment files. Index mapping is released once the reader is garbage collected.
+    @Override
+    public void close() {
+        segmentChannels.values().forEach(segmentChannel -> {
+            try {
+                segmentChannel.close();
+            } catch (IOException e) {
+                logger.info("Archive segment could not be closed. Exception thrown: " + e.getMessage());
+            }
+        });
+        segmentChannels.clear();
+    }
+
+    private synchronized FileChannel openSegment(Integer segment) throws IOException {
+        FileChannel segmentChannel = segmentChannels.get(segment);
+        if (segmentChannel == null) {
+            segmentChannel = FileChannel.open(PageArchive.segmentPath(folder, segment), StandardOpenOption.READ);
+            segmentChannels.put(segment, segmentChannel);
+        }
+        return segmentChannel;
+    }
+
+    // Finds the first sorted position whose entry is not before the provided key, target and page.
+    private int lowerBound(long archiveKey, int target, int page) {
+        int low = 0;
+        int high = entriesCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int entry = sortedEntries[middle];
+            int comparison = Long.compare(keyOf(entry), archiveKey);
+            if (comparison == 0) {
+                comparison = Integer.compare(targetOf(entry), target);
+            }
+            if (comparison == 0) {
+                comparison = Integer.compare(pageOf(entry), page);
+            }
+            if (comparison < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private Entry createEntry(int entry) {
+        int position = entry * PageArchive.INDEX_ENTRY_BYTES;
+        return new Entry(keyOf(entry), TargetURL.values()[targetOf(entry)], pageOf(entry),
+                         index.getInt(position + 16), index.getInt(position + 20), index.getLong(position + 24));
+    }
+
+    private long keyOf(int entry) {
+        return index.getLong(entry * PageArchive.INDEX_ENTRY_BYTES);
+    }
+
+    private int targetOf(int entry) {
+        return index.getInt(entry * PageArchive.INDEX_ENTRY_BYTES + 8);
+    }
+
+    private int pageOf(int entry) {
+        return index.getInt(entry * PageArchive.INDEX_ENTRY_BYTES + 12);
+    }
+
+}
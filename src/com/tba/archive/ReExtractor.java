@@ -0,0 +1,186 @@
+// -------------------------------------------------------------
+//
+// This class extracts the properties of archived searches again,
+// from their PageArchive pages, without any request, and regenerates
+// their Search statistics, e.g. after a parser fix.
+// Archived pages are read, decompressed and parsed in parallel by a
+// pool of 'concurrency' Threads. Each search pages are then merged in
+// TargetURL and page order, as SearchRunnables merge them.
+// Stored Search records referencing the archive key are updated in
+// place, keeping their id and timestamp, and rollup tables are rebuilt.
+// Searches whose record was not stored, e.g. the process crashed
+// before finishing, are inserted.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.archive;
+
+import com.tba.database.DatabaseAdapter;
+import com.tba.database.Search;
+import com.tba.database.SearchStatistics;
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Page;
+import com.tba.parsing.Property;
+import com.tba.parsing.SiteParser;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+public class ReExtractor {
+
+    private static final Logger logger = Logger.getLogger(ReExtractor.class.getName());
+    private final DatabaseAdapter databaseAdapter;
+    private final Integer concurrency;
+
+    public ReExtractor(DatabaseAdapter databaseAdapter, Integer concurrency) {
+        this.databaseAdapter = databaseAdapter;
+        this.concurrency = concurrency;
+    }
+
+    // Re-extracts all archived searches of a destination, or of all destinations if filter is null, and returns the summary.
+    public String run(String destinationFilter) {
+        long startTime = System.nanoTime();
+        Integer searchesCount = 0;
+        Integer pagesParsed = 0;
+        Integer pageFailures = 0;
+        Integer changedSearches = 0;
+        Integer insertedSearches = 0;
+        List<Search> updatedSearches = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        try (PageArchiveReader reader = PageArchiveReader.open(PageArchive.getFolder())) {
+            // All pages are submitted first, so the pool parses the pages of later searches while earlier ones are merged.
+            Map<Long, ArchivedPage> firstPagePerKey = new LinkedHashMap<>();
+            Map<Long, List<Future<List<Property>>>> pageFuturesPerKey = new HashMap<>();
+            Map<Long, List<PageArchiveReader.Entry>> entriesPerKey = new HashMap<>();
+            for (Long archiveKey : reader.getArchiveKeys()) {
+                List<PageArchiveReader.Entry> entries = reader.getEntries(archiveKey);
+                if (entries.isEmpty()) {
+                    continue;
+                }
+                ArchivedPage firstPage;
+                try {
+                    firstPage = reader.read(entries.get(0));
+                } catch (IOException e) {
+                    logger.info("Archived search " + archiveKey + " could not be read. Exception thrown: " + e.getMessage());
+                    continue;
+                }
+                if (destinationFilter != null && !firstPage.getDestination().equalsIgnoreCase(destinationFilter)) {
+                    continue;
+                }
+                Map<TargetURL, SiteParser> siteParsers = new EnumMap<>(TargetURL.class);
+                List<Future<List<Property>>> pageFutures = new ArrayList<>();
+                for (PageArchiveReader.Entry entry : entries) {
+                    SiteParser siteParser = siteParsers.computeIfAbsent(entry.getTargetURL(), k -> new SiteParser(firstPage.getDestination(), firstPage.getDate(), firstPage.getNights()));
+                    pageFutures.add(executor.submit(() -> invokeSiteParser(siteParser, entry.getTargetURL(), reader.read(entry).getPage(), entry.getPageNumber())));
+                }
+                firstPagePerKey.put(archiveKey, firstPage);
+                pageFuturesPerKey.put(archiveKey, pageFutures);
+                entriesPerKey.put(archiveKey, entries);
+            }
+
+            for (Map.Entry<Long, ArchivedPage> keyEntry : firstPagePerKey.entrySet()) {
+                Long archiveKey = keyEntry.getKey();
+                ArchivedPage firstPage = keyEntry.getValue();
+                List<PageArchiveReader.Entry> entries = entriesPerKey.get(archiveKey);
+                List<Future<List<Property>>> pageFutures = pageFuturesPerKey.get(archiveKey);
+                Map<TargetURL, Map<String, Property>> propertiesPerTargetURL = new EnumMap<>(TargetURL.class);
+                for (int i = 0; i < entries.size(); i++) {
+                    Map<String, Property> targetProperties = propertiesPerTargetURL.computeIfAbsent(entries.get(i).getTargetURL(), k -> new HashMap<>());
+                    try {
+                        pageFutures.get(i).get().forEach(property -> targetProperties.put(property.getName(), property));
+                        pagesParsed++;
+                    } catch (ExecutionException e) {
+                        pageFailures++;
+                        logger.info(entries.get(i).getTargetURL().getURL() + " archived page " + entries.get(i).getPageNumber() + " of " + firstPage.getDestination()
+                                    + " could not be parsed. Exception thrown: " + e.getCause().getMessage());
+                    }
+                }
+                pageFuturesPerKey.remove(archiveKey);
+                searchesCount++;
+
+                Search extracted = SearchStatistics.calculate(firstPage.getDestination(), firstPage.getDate(), firstPage.getNights(), archiveKey, propertiesPerTargetURL);
+                Search stored = databaseAdapter.retrieveArchivedSearch(archiveKey);
+                if (stored == null) {
+                    databaseAdapter.insertSearch(withRecord(extracted, null, firstPage.getTimestamp()));
+                    insertedSearches++;
+                    continue;
+                }
+                if (!sameStatistics(stored, extracted)) {
+                    changedSearches++;
+                }
+                updatedSearches.add(withRecord(extracted, stored.getId(), stored.getTimestamp()));
+            }
+        } catch (IOException e) {
+            logger.info("Archived pages could not be read. Exception thrown: " + e.getMessage());
+            return null;
+        } catch (InterruptedException e) {
+            logger.info("Re-extraction was interrupted.");
+            return null;
+        } finally {
+            executor.shutdownNow();
+        }
+        if (!updatedSearches.isEmpty()) {
+            databaseAdapter.updateSearchStatistics(updatedSearches);
+        }
+
+        Double elapsedSeconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        StringBuilder summarySB = new StringBuilder();
+        summarySB.append("Re-extraction finished!\n")
+                 .append("Summary:\n")
+                 .append("Archived searches -> ").append(searchesCount).append("\n")
+                 .append("Searches updated -> ").append(updatedSearches.size()).append(" (").append(changedSearches).append(" changed)\n")
+                 .append("Searches inserted -> ").append(insertedSearches).append("\n")
+                 .append("Pages parsed -> ").append(pagesParsed).append("\n")
+                 .append("Page failures -> ").append(pageFailures).append("\n")
+                 .append("Total runtime -> ").append(String.format("%.2f", elapsedSeconds)).append(" sec\n")
+                 .append("Pages/sec -> ").append(String.format("%.2f", elapsedSeconds > 0 ? pagesParsed / elapsedSeconds : 0.0)).append("\n");
+        logger.info(summarySB.toString());
+        return summarySB.toString();
+    }
+
+    // Reflection is used to call SiteParser parse method of the TargetURL, as SearchRunnables do.
+    @SuppressWarnings("unchecked")
+    private static List<Property> invokeSiteParser(SiteParser siteParser, TargetURL targetURL, Page page, Integer pageNumber) throws Exception {
+        try {
+            return (List<Property>) SiteParser.class.getDeclaredMethod(targetURL.getSiteParserMethod(), Page.class, Integer.class).invoke(siteParser, page, pageNumber);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    // Checks if two Search records have the same statistics. Stored searches without properties have no medians.
+    private static Boolean sameStatistics(Search stored, Search extracted) {
+        if (!Objects.equals(stored.getPropertiesFound(), extracted.getPropertiesFound())) {
+            return false;
+        }
+        return extracted.getPropertiesFound() == 0
+               || (Objects.equals(stored.getUnavailableProperties(), extracted.getUnavailableProperties())
+                   && Objects.equals(stored.getScoreMedian(), extracted.getScoreMedian())
+                   && Objects.equals(stored.getPriceMedian(), extracted.getPriceMedian()));
+    }
+
+    // Copies the statistics of an extracted Search to a record with provided id and timestamp.
+    private static Search withRecord(Search search, Integer id, Date timestamp) {
+        return new Search.Builder()
+                   .withId(id)
+                   .withDestination(search.getDestination())
+                   .withDate(search.getDate())
+                   .withNights(search.getNights())
+                   .withPropertiesFound(search.getPropertiesFound())
+                   .withUnavailableProperties(search.getUnavailableProperties())
+                   .withScoreMedian(search.getScoreMedian())
+                   .withPriceMedian(search.getPriceMedian())
+                   .withTimestamp(timestamp)
+                   .withArchiveKey(search.getArchiveKey())
+                   .build();
+    }
+
+}
@@ -0,0 +1,205 @@
+// -------------------------------------------------------------
+//
+// This class executes the headless batch mode of the application.
+// Search terms are read from a terms file and each (term, TargetURL)
+// search is executed by a SearchRunnable, on a pool limited by a
+// global concurrency limit. Once all TargetURLs of a term finish,
+// its statistics are stored and its results are exported.
+// Each term crawl state is recorded in a checkpoint, so a crashed
+// batch resumes its unfinished terms instead of re-fetching them.
+// Requests of all searches on the same target share the target's budget.
+// On finish, a summary of the batch execution is printed, including
+// each target's latency percentiles, hedged requests and circuit state.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.batch;
+
+import com.tba.archive.PageArchive;
+import com.tba.database.DatabaseAdapter;
+import com.tba.database.Search;
+import com.tba.database.SearchStatistics;
+import com.tba.enums.TargetURL;
+import com.tba.exports.SearchExporter;
+import com.tba.parsing.PageCoalescer;
+import com.tba.parsing.Property;
+import com.tba.runnables.SearchCheckpoint;
+import com.tba.runnables.SearchPipeline;
+import com.tba.runnables.SearchRunnable;
+import com.tba.runnables.TargetHealth;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+public class BatchRunner {
+
+    private static final Logger logger = Logger.getLogger(BatchRunner.class.getName());
+    private final DatabaseAdapter databaseAdapter;
+    private final Integer concurrency;
+    private final Boolean exportResults;
+    private BiConsumer<SearchTerm, Map<TargetURL, Map<String, Property>>> propertiesListener = null; // Receives each finished term extracted properties.
+    private final AtomicInteger storedSearches = new AtomicInteger();
+    private final AtomicInteger failedTerms = new AtomicInteger();
+
+    public BatchRunner(DatabaseAdapter databaseAdapter, Integer concurrency) {
+        this(databaseAdapter, concurrency, true);
+    }
+
+    public BatchRunner(DatabaseAdapter databaseAdapter, Integer concurrency, Boolean exportResults) {
+        this.databaseAdapter = databaseAdapter;
+        this.concurrency = Math.max(1, concurrency);
+        this.exportResults = exportResults;
+    }
+
+    public void setPropertiesListener(BiConsumer<SearchTerm, Map<TargetURL, Map<String, Property>>> propertiesListener) {
+        this.propertiesListener = propertiesListener;
+    }
+
+    // Executes all search terms of the provided terms file.
+    public void run(String termsFile) {
+        List<SearchTerm> searchTerms;
+        try {
+            searchTerms = SearchTerm.readTermsFile(termsFile);
+        } catch (IOException e) {
+            logger.info("Terms file " + termsFile + " could not be read. Exception thrown: " + e.getMessage());
+            return;
+        }
+        if (searchTerms.isEmpty()) {
+            logger.info("Terms file " + termsFile + " doesn't contain any valid search term.");
+            return;
+        }
+        run(searchTerms);
+    }
+
+    // Executes all provided search terms and returns the stored Search record of each finished term.
+    public Map<SearchTerm, Search> run(List<SearchTerm> searchTerms) {
+        Map<SearchTerm, Search> searchPerTerm = new ConcurrentHashMap<>();
+        logger.info("Batch search is starting for " + searchTerms.size() + " terms, with concurrency " + concurrency + "...");
+
+        long startTime = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        List<SearchRunnable> searchRunnableList = new ArrayList<>();
+        List<CompletableFuture<Void>> termFutureList = new ArrayList<>();
+        try {
+            searchTerms.forEach(searchTerm -> {
+                SearchCheckpoint checkpoint;
+                try {
+                    checkpoint = SearchCheckpoint.open(searchTerm.getDestination(), searchTerm.getDate(), searchTerm.getNights());
+                } catch (IllegalStateException e) {
+                    failedTerms.incrementAndGet();
+                    logger.info("Search term " + searchTerm + " is skipped, as it is already searched. Exception thrown: " + e.getMessage());
+                    return;
+                }
+                if (checkpoint.isResumed()) {
+                    logger.info("Search term " + searchTerm + " resumes from its checkpoint.");
+                }
+                List<SearchRunnable> termSearchRunnableList = new ArrayList<>();
+                EnumSet.allOf(TargetURL.class).forEach(targetURL -> termSearchRunnableList.add(new SearchRunnable(targetURL, searchTerm.getDestination(), searchTerm.getDate(), searchTerm.getNights(), checkpoint)));
+                searchRunnableList.addAll(termSearchRunnableList);
+                CompletableFuture<?>[] searchFutures = termSearchRunnableList.stream()
+                                                                             .map(searchRunnable -> CompletableFuture.runAsync(searchRunnable, executor))
+                                                                             .toArray(CompletableFuture[]::new);
+                termFutureList.add(CompletableFuture.allOf(searchFutures)
+                                                    .thenRun(() -> searchPerTerm.put(searchTerm, finalizeSearchTerm(searchTerm, termSearchRunnableList, checkpoint)))
+                                                    .exceptionally(e -> {
+                                                        failedTerms.incrementAndGet();
+                                                        logger.info("There was an exception (" + e.getMessage() + ") while searching term " + searchTerm + ".");
+                                                        return null;
+                                                    }));
+            });
+            CompletableFuture<?>[] termFutures = termFutureList.toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(termFutures).join();
+        } finally {
+            executor.shutdown();
+        }
+        printSummary(searchTerms.size(), searchRunnableList, System.nanoTime() - startTime);
+        return searchPerTerm;
+    }
+
+    // Calculates, stores and exports a finished search term statistics, referencing its archived pages, if any.
+    private Search finalizeSearchTerm(SearchTerm searchTerm, List<SearchRunnable> termSearchRunnableList, SearchCheckpoint checkpoint) {
+        Map<TargetURL, Map<String, Property>> propertiesPerTargetURL = new EnumMap<>(TargetURL.class);
+        termSearchRunnableList.forEach(searchRunnable -> propertiesPerTargetURL.put(searchRunnable.getTargetURL(), searchRunnable.getTotalProperties()));
+        return finalizeSearchTerm(searchTerm, propertiesPerTargetURL, checkpoint);
+    }
+
+    // Calculates, stores and exports a finished search term statistics, from its extracted properties per TargetURL.
+    // Also used by the distributed crawl coordinator, once all crawl jobs of a term finish.
+    Search finalizeSearchTerm(SearchTerm searchTerm, Map<TargetURL, Map<String, Property>> propertiesPerTargetURL) {
+        return finalizeSearchTerm(searchTerm, propertiesPerTargetURL, null);
+    }
+
+    // Checkpoint of the term, if any, is deleted only once its Search is stored, otherwise it is kept, so the term is resumed and stored by a later run.
+    private Search finalizeSearchTerm(SearchTerm searchTerm, Map<TargetURL, Map<String, Property>> propertiesPerTargetURL, SearchCheckpoint checkpoint) {
+        Search search = SearchStatistics.calculate(searchTerm.getDestination(), searchTerm.getDate(), searchTerm.getNights(),
+                                                   checkpoint == null ? null : checkpoint.getArchiveKey(), propertiesPerTargetURL);
+        if (!databaseAdapter.insertSearch(search)) {
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+            throw new IllegalStateException("Search of term " + searchTerm + " could not be stored");
+        }
+        if (checkpoint != null) {
+            checkpoint.delete();
+        }
+        storedSearches.incrementAndGet();
+        if (propertiesListener != null) {
+            propertiesListener.accept(searchTerm, propertiesPerTargetURL);
+        }
+        if (!exportResults) {
+            logger.info("Search term " + searchTerm + " finished!\n" + SearchStatistics.describe(search));
+            return search;
+        }
+        try {
+            String fileName = SearchExporter.exportSearchProperties(search, propertiesPerTargetURL);
+            logger.info("Search term " + searchTerm + " finished! File " + fileName + " has been successfully created in exports folder!\n" + SearchStatistics.describe(search));
+        } catch (IOException e) {
+            logger.info("Search term " + searchTerm + " finished, but its results could not be exported. Exception thrown: " + e.getMessage());
+        }
+        return search;
+    }
+
+    // Prints batch execution summary: total runtime, pages/sec, bytes transferred/decoded and failures per target.
+    private void printSummary(Integer termsCount, List<SearchRunnable> searchRunnableList, long elapsedNanos) {
+        Double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+        Integer totalPages = searchRunnableList.stream().mapToInt(SearchRunnable::getPagesParsed).sum();
+        long bytesTransferred = searchRunnableList.stream().mapToLong(SearchRunnable::getBytesTransferred).sum();
+        long bytesDecoded = searchRunnableList.stream().mapToLong(SearchRunnable::getBytesDecoded).sum();
+        Map<TargetURL, Integer> failuresPerTargetURL = new EnumMap<>(TargetURL.class);
+        EnumSet.allOf(TargetURL.class).forEach(targetURL -> failuresPerTargetURL.put(targetURL, 0));
+        searchRunnableList.forEach(searchRunnable -> failuresPerTargetURL.merge(searchRunnable.getTargetURL(), searchRunnable.getFailures(), Integer::sum));
+
+        StringBuilder summarySB = new StringBuilder();
+        summarySB.append("Batch search finished!\n")
+                 .append("Summary:\n")
+                 .append("Search terms -> ").append(termsCount).append("\n")
+                 .append("Searches stored -> ").append(storedSearches.get()).append("\n")
+                 .append("Failed search terms -> ").append(failedTerms.get()).append("\n")
+                 .append("Total runtime -> ").append(String.format("%.2f", elapsedSeconds)).append(" sec\n")
+                 .append("Pages parsed -> ").append(totalPages).append("\n")
+                 .append("Pages/sec -> ").append(String.format("%.2f", elapsedSeconds > 0 ? totalPages / elapsedSeconds : 0.0)).append("\n")
+                 .append("Bytes transferred -> ").append(bytesTransferred).append("\n")
+                 .append("Bytes decoded -> ").append(bytesDecoded).append("\n")
+                 .append("Failures per target:\n");
+        failuresPerTargetURL.forEach((targetURL, failures) -> summarySB.append(targetURL.getURL()).append(" -> ").append(failures).append("\n"));
+        summarySB.append("Latency per target:\n");
+        EnumSet.allOf(TargetURL.class).forEach(targetURL -> summarySB.append(TargetHealth.of(targetURL).describe()).append("\n"));
+        summarySB.append("Page coalescing per target:\n");
+        EnumSet.allOf(TargetURL.class).forEach(targetURL -> summarySB.append(PageCoalescer.describe(targetURL)).append("\n"));
+        summarySB.append("Pipeline stages:\n").append(SearchPipeline.describe());
+        if (PageArchive.getInstance() != null) {
+            summarySB.append("Page archive:\n").append(PageArchive.getInstance().describe()).append("\n");
+        }
+        logger.info(summarySB.toString());
+    }
+
+}
@@ -0,0 +1,179 @@
+// -------------------------------------------------------------
+//
+// This class coordinates the distributed crawl mode. Search terms
+// are split into one crawl job per (term, TargetURL), queued in the
+// shared Database under a new batch. Worker processes claim the jobs
+// with a lease, search them and store their extracted properties.
+// Coordinator polls the batch jobs, fails jobs whose lease expired
+// after their last attempt, and once all jobs of a term are done or
+// failed, its statistics are stored and its results are exported.
+// Expired leases with remaining attempts are reclaimed by workers.
+// Lease duration, maximum attempts and poll interval can be defined
+// by 'tba.jobs.leaseSeconds', 'tba.jobs.maxAttempts' and
+// 'tba.jobs.pollMillis' system properties.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.batch;
+
+import com.tba.database.CrawlJob;
+import com.tba.database.DatabaseAdapter;
+import com.tba.database.Search;
+import com.tba.enums.JobStatus;
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Property;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.logging.Logger;
+
+public class CrawlCoordinator {
+
+    private static final Logger logger = Logger.getLogger(CrawlCoordinator.class.getName());
+    static final Integer MAX_ATTEMPTS = Integer.getInteger("tba.jobs.maxAttempts", 3);
+    static final long LEASE_MILLIS = Long.getLong("tba.jobs.leaseSeconds", 60L) * 1000;
+    static final long POLL_MILLIS = Long.getLong("tba.jobs.pollMillis", 2000L);
+    private final DatabaseAdapter databaseAdapter;
+    private final BatchRunner batchRunner; // Finalizes finished terms, as in batch mode.
+
+    public CrawlCoordinator(DatabaseAdapter databaseAdapter) {
+        this.databaseAdapter = databaseAdapter;
+        this.batchRunner = new BatchRunner(databaseAdapter, 1);
+    }
+
+    // Queues and coordinates all search terms of the provided terms file.
+    public void run(String termsFile) {
+        List<SearchTerm> searchTerms;
+        try {
+            searchTerms = SearchTerm.readTermsFile(termsFile);
+        } catch (IOException e) {
+            logger.info("Terms file " + termsFile + " could not be read. Exception thrown: " + e.getMessage());
+            return;
+        }
+        if (searchTerms.isEmpty()) {
+            logger.info("Terms file " + termsFile + " doesn't contain any valid search term.");
+            return;
+        }
+        run(searchTerms);
+    }
+
+    // Queues the crawl jobs of all provided search terms and blocks until all of them finish,
+    // returning the stored Search record of each finished term.
+    public Map<SearchTerm, Search> run(List<SearchTerm> searchTerms) {
+        String batch = UUID.randomUUID().toString();
+        Map<String, SearchTerm> searchTermPerKey = new LinkedHashMap<>(); // Duplicate terms are queued once.
+        for (SearchTerm searchTerm : searchTerms) {
+            if (searchTermPerKey.containsKey(searchTerm.toString())) {
+                continue;
+            }
+            if (databaseAdapter.insertCrawlJobs(batch, searchTerm.getDestination(), searchTerm.getDate(), searchTerm.getNights())) {
+                searchTermPerKey.put(searchTerm.toString(), searchTerm);
+            } else {
+                logger.info("Crawl jobs of search term " + searchTerm + " could not be queued. Skipping.");
+            }
+        }
+        logger.info("Distributed crawl batch " + batch + " queued " + searchTermPerKey.size() * TargetURL.values().length
+                    + " jobs for " + searchTermPerKey.size() + " terms. Waiting for workers...");
+
+        long startTime = System.nanoTime();
+        Map<SearchTerm, Search> searchPerTerm = new LinkedHashMap<>();
+        Set<String> finishedTerms = new HashSet<>();
+        List<CrawlJob> crawlJobList = new ArrayList<>();
+        String lastProgress = null;
+        while (finishedTerms.size() < searchTermPerKey.size()) {
+            Integer expiredJobs = databaseAdapter.failExpiredCrawlJobs(MAX_ATTEMPTS);
+            if (expiredJobs > 0) {
+                logger.info(expiredJobs + " crawl jobs failed, as their lease expired after " + MAX_ATTEMPTS + " attempts.");
+            }
+            crawlJobList = databaseAdapter.retrieveBatchCrawlJobs(batch);
+            Map<String, List<CrawlJob>> crawlJobsPerKey = new LinkedHashMap<>();
+            crawlJobList.forEach(crawlJob -> crawlJobsPerKey.computeIfAbsent(keyOf(crawlJob), k -> new ArrayList<>()).add(crawlJob));
+            for (Map.Entry<String, List<CrawlJob>> entry : crawlJobsPerKey.entrySet()) {
+                if (finishedTerms.contains(entry.getKey()) || !entry.getValue().stream().allMatch(crawlJob -> crawlJob.getStatus().isTerminal())) {
+                    continue;
+                }
+                SearchTerm searchTerm = searchTermPerKey.get(entry.getKey());
+                finishedTerms.add(entry.getKey());
+                try {
+                    searchPerTerm.put(searchTerm, finalizeSearchTerm(searchTerm, entry.getValue()));
+                } catch (IllegalStateException e) {
+                    logger.info("There was an exception (" + e.getMessage() + ") while finalizing term " + searchTerm + ".");
+                }
+            }
+            String progress = describeProgress(crawlJobList, finishedTerms.size(), searchTermPerKey.size());
+            if (!progress.equals(lastProgress)) {
+                logger.info(progress);
+                lastProgress = progress;
+            }
+            if (finishedTerms.size() < searchTermPerKey.size()) {
+                try {
+                    Thread.sleep(POLL_MILLIS);
+                } catch (InterruptedException e) {
+                    logger.info("Distributed crawl coordination was interrupted. Batch " + batch + " jobs remain queued.");
+                    return searchPerTerm;
+                }
+            }
+        }
+        printSummary(batch, crawlJobList, System.nanoTime() - startTime);
+        return searchPerTerm;
+    }
+
+    // Collects the stored properties of a finished term done jobs and finalizes the term.
+    // Failed jobs contribute no properties.
+    private Search finalizeSearchTerm(SearchTerm searchTerm, List<CrawlJob> termCrawlJobList) {
+        Map<TargetURL, Map<String, Property>> propertiesPerTargetURL = new EnumMap<>(TargetURL.class);
+        for (CrawlJob crawlJob : termCrawlJobList) {
+            propertiesPerTargetURL.put(crawlJob.getTargetURL(), crawlJob.getStatus() == JobStatus.DONE
+                                                                ? databaseAdapter.retrieveCrawlJobProperties(crawlJob.getId())
+                                                                : new HashMap<>());
+            if (crawlJob.getStatus() == JobStatus.FAILED) {
+                logger.info("Search term " + searchTerm + " is finalized without " + crawlJob.getTargetURL().getURL() + " properties, as its job failed.");
+            }
+        }
+        return batchRunner.finalizeSearchTerm(searchTerm, propertiesPerTargetURL);
+    }
+
+    // Describes batch jobs count per status and finished terms.
+    private static String describeProgress(List<CrawlJob> crawlJobList, Integer finishedTerms, Integer totalTerms) {
+        Map<JobStatus, Integer> countPerStatus = new EnumMap<>(JobStatus.class);
+        EnumSet.allOf(JobStatus.class).forEach(status -> countPerStatus.put(status, 0));
+        crawlJobList.forEach(crawlJob -> countPerStatus.merge(crawlJob.getStatus(), 1, Integer::sum));
+        StringBuilder progressSB = new StringBuilder();
+        progressSB.append("Crawl jobs:");
+        countPerStatus.forEach((status, count) -> progressSB.append(" ").append(count).append(" ").append(status.name().toLowerCase()).append(","));
+        progressSB.append(" ").append(finishedTerms).append(" of ").append(totalTerms).append(" terms finished.");
+        return progressSB.toString();
+    }
+
+    // Prints distributed crawl summary: total runtime, pages, failures per target and failed jobs.
+    private static void printSummary(String batch, List<CrawlJob> crawlJobList, long elapsedNanos) {
+        Double elapsedSeconds = elapsedNanos / 1_000_000_000.0;
+        Integer totalPages = crawlJobList.stream().mapToInt(CrawlJob::getPagesParsed).sum();
+        Map<TargetURL, Integer> failuresPerTargetURL = new EnumMap<>(TargetURL.class);
+        EnumSet.allOf(TargetURL.class).forEach(targetURL -> failuresPerTargetURL.put(targetURL, 0));
+        crawlJobList.forEach(crawlJob -> failuresPerTargetURL.merge(crawlJob.getTargetURL(), crawlJob.getFailures(), Integer::sum));
+        long failedJobs = crawlJobList.stream().filter(crawlJob -> crawlJob.getStatus() == JobStatus.FAILED).count();
+        long workerAttempts = crawlJobList.stream().mapToInt(CrawlJob::getAttempts).sum();
+
+        StringBuilder summarySB = new StringBuilder();
+        summarySB.append("Distributed crawl batch ").append(batch).append(" finished!\n")
+                 .append("Summary:\n")
+                 .append("Crawl jobs -> ").append(crawlJobList.size()).append("\n")
+                 .append("Failed crawl jobs -> ").append(failedJobs).append("\n")
+                 .append("Worker attempts -> ").append(workerAttempts).append("\n")
+                 .append("Total runtime -> ").append(String.format("%.2f", elapsedSeconds)).append(" sec\n")
+                 .append("Pages parsed -> ").append(totalPages).append("\n")
+                 .append("Pages/sec -> ").append(String.format("%.2f", elapsedSeconds > 0 ? totalPages / elapsedSeconds : 0.0)).append("\n")
+                 .append("Failures per target:\n");
+        failuresPerTargetURL.forEach((targetURL, failures) -> summarySB.append(targetURL.getURL()).append(" -> ").append(failures).append("\n"));
+        logger.info(summarySB.toString());
+    }
+
+    // Search term key of a crawl job.
+    private static String keyOf(CrawlJob crawlJob) {
+        return new SearchTerm(crawlJob.getDestination(), crawlJob.getDate(), crawlJob.getNights()).toString();
+    }
+
+}
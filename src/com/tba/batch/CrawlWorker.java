@@ -0,0 +1,155 @@
+// -------------------------------------------------------------
+//
+// This class executes a worker process of the distributed crawl
+// mode. Worker claims crawl jobs from the shared Database queue,
+// up to its concurrency, and searches each one with a SearchRunnable.
+// Leases of running jobs are renewed by a heartbeat. If a lease is
+// lost, e.g. worker stalled and the job was reclaimed by another
+// worker, its search is stopped and its results are discarded.
+// Done jobs store their extracted properties, while failed attempts
+// release their job, so it can be claimed again.
+// When 'tba.jobs.workerIdleSeconds' system property is provided,
+// worker terminates once the queue has no unfinished jobs for that
+// long, otherwise it runs until application is terminated.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.batch;
+
+import com.tba.database.CrawlJob;
+import com.tba.database.DatabaseAdapter;
+import com.tba.runnables.SearchRunnable;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+public class CrawlWorker {
+
+    private static final Logger logger = Logger.getLogger(CrawlWorker.class.getName());
+    private static final long IDLE_EXIT_MILLIS = Long.getLong("tba.jobs.workerIdleSeconds", 0L) * 1000;
+    private final DatabaseAdapter databaseAdapter;
+    private final Integer concurrency;
+    private final String worker = retrieveHostName() + ":" + ProcessHandle.current().pid(); // Worker identity recorded on claimed jobs.
+    private final Map<CrawlJob, SearchRunnable> runningJobs = new ConcurrentHashMap<>();
+    private final Set<Long> lostJobs = ConcurrentHashMap.newKeySet(); // Jobs whose lease was lost.
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+    private volatile boolean running = true;
+
+    // Concurrency defines how many crawl jobs can be searched at the same time.
+    public CrawlWorker(DatabaseAdapter databaseAdapter, Integer concurrency) {
+        this.databaseAdapter = databaseAdapter;
+        this.concurrency = Math.max(1, concurrency);
+    }
+
+    // Claims and executes crawl jobs, until worker is stopped or stays idle.
+    public void run() {
+        logger.info("Crawl worker " + worker + " started, with concurrency " + concurrency + ".");
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+        long heartbeatMillis = Math.max(1, CrawlCoordinator.LEASE_MILLIS / 3);
+        heartbeat.scheduleAtFixedRate(this::renewLeases, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+        long idleSince = System.currentTimeMillis();
+        try {
+            while (running) {
+                if (runningJobs.size() < concurrency) {
+                    CrawlJob crawlJob = databaseAdapter.claimCrawlJob(worker, CrawlCoordinator.LEASE_MILLIS, CrawlCoordinator.MAX_ATTEMPTS);
+                    if (crawlJob != null) {
+                        SearchRunnable searchRunnable = new SearchRunnable(crawlJob.getTargetURL(), crawlJob.getDestination(), crawlJob.getDate(), crawlJob.getNights());
+                        runningJobs.put(crawlJob, searchRunnable);
+                        logger.info("Crawl worker " + worker + " claimed " + crawlJob + ", attempt " + crawlJob.getAttempts() + ".");
+                        executor.execute(() -> execute(crawlJob, searchRunnable));
+                        idleSince = System.currentTimeMillis();
+                        continue;
+                    }
+                }
+                if (!runningJobs.isEmpty()) {
+                    idleSince = System.currentTimeMillis();
+                } else if (IDLE_EXIT_MILLIS > 0 && System.currentTimeMillis() - idleSince >= IDLE_EXIT_MILLIS
+                           && databaseAdapter.countUnfinishedCrawlJobs() == 0) {
+                    logger.info("Crawl worker " + worker + " is idle, as no unfinished jobs remain.");
+                    break;
+                }
+                if (stopLatch.await(CrawlCoordinator.POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.info("Crawl worker " + worker + " was interrupted.");
+        } finally {
+            running = false;
+            runningJobs.values().forEach(SearchRunnable::stop);
+            executor.shutdown();
+            try {
+                executor.awaitTermination(CrawlCoordinator.LEASE_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                /* Unreleased jobs are reclaimed once their lease expires. */
+            }
+            heartbeat.shutdownNow();
+        }
+        logger.info("Crawl worker " + worker + " terminated.");
+    }
+
+    // Worker is terminated. Running jobs are stopped and released.
+    public void stop() {
+        running = false;
+        stopLatch.countDown();
+    }
+
+    // Searches a claimed crawl job and completes or releases it.
+    private void execute(CrawlJob crawlJob, SearchRunnable searchRunnable) {
+        try {
+            searchRunnable.run();
+            if (lostJobs.remove(crawlJob.getId())) {
+                logger.info("Crawl worker " + worker + " lost the lease of " + crawlJob + ". Its results are discarded.");
+            } else if (!running) {
+                databaseAdapter.releaseCrawlJob(crawlJob, CrawlCoordinator.MAX_ATTEMPTS);
+                logger.info("Crawl worker " + worker + " released " + crawlJob + ", as worker is terminating.");
+            } else {
+                Boolean completed = databaseAdapter.completeCrawlJob(crawlJob, searchRunnable.getTotalProperties().values(), searchRunnable.getPagesParsed(), searchRunnable.getFailures());
+                if (completed == null) {
+                    databaseAdapter.releaseCrawlJob(crawlJob, CrawlCoordinator.MAX_ATTEMPTS);
+                    logger.info("Crawl worker " + worker + " could not store the results of " + crawlJob + ". Job is released.");
+                } else if (completed) {
+                    logger.info("Crawl worker " + worker + " completed " + crawlJob + ". Properties found: " + searchRunnable.getTotalProperties().size() + ".");
+                } else {
+                    logger.info("Crawl worker " + worker + " lost the lease of " + crawlJob + " before completing it. Its results are discarded.");
+                }
+            }
+        } catch (Exception e) {
+            logger.info("There was an exception (" + e.getMessage() + ") while executing " + crawlJob + ". Job is released.");
+            databaseAdapter.releaseCrawlJob(crawlJob, CrawlCoordinator.MAX_ATTEMPTS);
+        } finally {
+            runningJobs.remove(crawlJob);
+            lostJobs.remove(crawlJob.getId());
+        }
+    }
+
+    // Heartbeat renewing the leases of running jobs. Jobs whose lease was lost are stopped.
+    // A renewal that could not be executed, e.g. while another process writes, is retried by the next heartbeat.
+    private void renewLeases() {
+        runningJobs.forEach((crawlJob, searchRunnable) -> {
+            Boolean renewed = databaseAdapter.renewCrawlJobLease(crawlJob, CrawlCoordinator.LEASE_MILLIS);
+            if (renewed == null) {
+                logger.info("Crawl worker " + worker + " could not renew the lease of " + crawlJob + ". It is renewed again by the next heartbeat.");
+            } else if (!renewed) {
+                lostJobs.add(crawlJob.getId());
+                searchRunnable.stop();
+            }
+        });
+    }
+
+    private static String retrieveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "unknown";
+        }
+    }
+
+}
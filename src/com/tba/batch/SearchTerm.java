@@ -0,0 +1,115 @@
+// -------------------------------------------------------------
+//
+// This is the Search Term Structure used by the batch mode.
+// Search Term data: Destination, Date and Nights(length of stay).
+// Terms files contain one 'destination;dd/MM/yyyy[;nights]' term per line.
+// Empty lines and lines starting with '#' are ignored.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class SearchTerm {
+
+    private static final Logger logger = Logger.getLogger(SearchTerm.class.getName());
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
+    private final String destination;
+    private final Date date;
+    private final Integer nights;
+
+    public SearchTerm(String destination, Date date) {
+        this(destination, date, 1);
+    }
+
+    public SearchTerm(String destination, Date date, Integer nights) {
+        this.destination = destination;
+        this.date = date;
+        this.nights = nights;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public Integer getNights() {
+        return nights;
+    }
+
+    // Returns date in 'dd/MM/yyyy' format.
+    public String getFormattedDate() {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().format(formatter);
+    }
+
+    @Override
+    public String toString() {
+        return destination + ";" + getFormattedDate() + ";" + nights;
+    }
+
+    // Reads all valid search terms of a terms file.
+    // Invalid lines or past dates are logged and skipped.
+    public static List<SearchTerm> readTermsFile(String termsFile) throws IOException {
+        List<SearchTerm> searchTerms = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Paths.get(termsFile), StandardCharsets.UTF_8);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(";");
+            if (fields.length < 2 || fields[0].isBlank()) {
+                logger.info("Line " + (i + 1) + " of terms file is not in 'destination;dd/MM/yyyy[;nights]' format. Skipping.");
+                continue;
+            }
+            try {
+                LocalDate date = parseDate(fields[1]);
+                if (date.isBefore(today)) {
+                    logger.info("Line " + (i + 1) + " of terms file contains a past date. Skipping.");
+                    continue;
+                }
+                Integer nights = fields.length > 2 ? Integer.parseInt(fields[2].trim()) : 1;
+                if (nights < 1) {
+                    logger.info("Line " + (i + 1) + " of terms file contains a non positive nights value. Skipping.");
+                    continue;
+                }
+                searchTerms.add(new SearchTerm(fields[0].trim(), toDate(date), nights));
+            } catch (NumberFormatException e) {
+                logger.info("Line " + (i + 1) + " of terms file doesn't contain an Integer nights value. Skipping.");
+            } catch (DateTimeParseException e) {
+                logger.info("Line " + (i + 1) + " of terms file doesn't contain a date in 'dd/MM/yyyy' format. Skipping.");
+            }
+        }
+        return searchTerms;
+    }
+
+    // Parses a date in 'dd/MM/yyyy' format.
+    public static LocalDate parseDate(String date) throws DateTimeParseException {
+        return LocalDate.parse(date.trim(), formatter);
+    }
+
+    // Converts a LocalDate to a Date, at the start of the day.
+    public static Date toDate(LocalDate localDate) {
+        return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+}
@@ -0,0 +1,123 @@
+// -------------------------------------------------------------
+//
+// This class executes a sweep search for a destination, over a
+// checkin date range and a set of lengths of stay(nights).
+// All (checkin date, nights) combinations are executed in a single
+// pass by the BatchRunner, sharing each target's budget, and a
+// Search record is stored for each combination.
+// On finish, a results matrix is printed and exported.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.batch;
+
+import com.tba.database.DatabaseAdapter;
+import com.tba.database.Search;
+import com.tba.exports.SearchExporter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.logging.Logger;
+
+public class SweepRunner {
+
+    private static final Logger logger = Logger.getLogger(SweepRunner.class.getName());
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+    private static final Integer MAX_SWEEP_DAYS = 366;
+    private final DatabaseAdapter databaseAdapter;
+    private final Integer concurrency;
+
+    public SweepRunner(DatabaseAdapter databaseAdapter, Integer concurrency) {
+        this.databaseAdapter = databaseAdapter;
+        this.concurrency = concurrency;
+    }
+
+    // Executes the sweep search and returns the results matrix.
+    public String run(String destination, LocalDate firstCheckinDate, LocalDate lastCheckinDate, SortedSet<Integer> nightsSet) {
+        if (lastCheckinDate.isBefore(firstCheckinDate)) {
+            logger.info("Last checkin date can't be before first checkin date.");
+            return null;
+        }
+        if (ChronoUnit.DAYS.between(firstCheckinDate, lastCheckinDate) >= MAX_SWEEP_DAYS) {
+            logger.info("Checkin date range can't exceed " + MAX_SWEEP_DAYS + " days.");
+            return null;
+        }
+        if (nightsSet.isEmpty()) {
+            logger.info("At least one length of stay must be provided.");
+            return null;
+        }
+
+        // Search terms are generated for all combinations, grouped by checkin date.
+        Map<LocalDate, Map<Integer, SearchTerm>> searchTermMatrix = new TreeMap<>();
+        List<SearchTerm> searchTerms = new ArrayList<>();
+        for (LocalDate checkinDate = firstCheckinDate; !checkinDate.isAfter(lastCheckinDate); checkinDate = checkinDate.plusDays(1)) {
+            Map<Integer, SearchTerm> searchTermRow = new TreeMap<>();
+            for (Integer nights : nightsSet) {
+                SearchTerm searchTerm = new SearchTerm(destination, SearchTerm.toDate(checkinDate), nights);
+                searchTermRow.put(nights, searchTerm);
+                searchTerms.add(searchTerm);
+            }
+            searchTermMatrix.put(checkinDate, searchTermRow);
+        }
+        logger.info("Sweep search is starting for destination " + destination + ", " + searchTermMatrix.size() + " checkin dates and " + nightsSet.size() + " lengths of stay...");
+        Map<SearchTerm, Search> searchPerTerm = new BatchRunner(databaseAdapter, concurrency, false).run(searchTerms);
+
+        String matrix = createResultsMatrix(destination, searchTermMatrix, nightsSet, searchPerTerm);
+        logger.info(matrix);
+        try {
+            String fileName = "sweep_" + new Date().getTime() + "_export.txt";
+            SearchExporter.writeExportFile(fileName, matrix);
+            logger.info("File " + fileName + " has been successfully created in exports folder!");
+        } catch (IOException e) {
+            logger.info("Sweep results matrix could not be exported. Exception thrown: " + e.getMessage());
+        }
+        return matrix;
+    }
+
+    // Creates the results matrix: checkin dates as rows, lengths of stay as columns.
+    // Each cell contains the price median and the properties found of the combination.
+    private String createResultsMatrix(String destination, Map<LocalDate, Map<Integer, SearchTerm>> searchTermMatrix, SortedSet<Integer> nightsSet, Map<SearchTerm, Search> searchPerTerm) {
+        StringBuilder matrixSB = new StringBuilder();
+        matrixSB.append("Sweep results for destination ").append(destination).append(" (Price Median / Properties found):\n")
+                .append(String.format("%-12s", "Checkin"));
+        nightsSet.forEach(nights -> matrixSB.append(String.format(" | %-18s", nights + (nights == 1 ? " night" : " nights"))));
+        matrixSB.append("\n");
+        searchTermMatrix.forEach((checkinDate, searchTermRow) -> {
+            matrixSB.append(String.format("%-12s", checkinDate.format(formatter)));
+            searchTermRow.values().forEach(searchTerm -> {
+                Search search = searchPerTerm.get(searchTerm);
+                String cell = "-";
+                if (search != null && search.getPropertiesFound() > 0) {
+                    cell = String.format("%.2f / %d", search.getPriceMedian(), search.getPropertiesFound());
+                } else if (search != null) {
+                    cell = "0";
+                }
+                matrixSB.append(String.format(" | %-18s", cell));
+            });
+            matrixSB.append("\n");
+        });
+        return matrixSB.toString();
+    }
+
+    // Parses a comma separated lengths of stay list, e.g. '1,2,7'.
+    public static SortedSet<Integer> parseNightsList(String nightsList) throws NumberFormatException {
+        SortedSet<Integer> nightsSet = new TreeSet<>();
+        for (String nights : nightsList.split(",")) {
+            if (nights.isBlank()) {
+                continue;
+            }
+            Integer value = Integer.parseInt(nights.trim());
+            if (value < 1) {
+                throw new NumberFormatException("Length of stay must be a positive Integer.");
+            }
+            nightsSet.add(value);
+        }
+        return nightsSet;
+    }
+
+}
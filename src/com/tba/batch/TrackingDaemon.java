@@ -0,0 +1,142 @@
+// -------------------------------------------------------------
+//
+// This class executes the long-running tracking mode of the
+// application. Watched terms are periodically re-searched on their
+// interval. Initial executions are staggered across the interval
+// and each following execution is jittered, so targets are not hit
+// in bursts. Only properties whose price or availability changed
+// since the last known snapshot are stored. Watched terms stop being
+// tracked once their check-in date has passed.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.batch;
+
+import com.tba.database.DatabaseAdapter;
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Property;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+public class TrackingDaemon {
+
+    private static final Logger logger = Logger.getLogger(TrackingDaemon.class.getName());
+    private static final Double JITTER_RATIO = 0.1; // Each execution is delayed by interval +/- 10%.
+    private final DatabaseAdapter databaseAdapter;
+    private final ScheduledExecutorService scheduler;
+    private final Map<SearchTerm, Map<TargetURL, Map<String, Property>>> lastKnownProperties = new ConcurrentHashMap<>(); // Last known snapshot of each watched term properties.
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+    private volatile boolean running = true;
+
+    // Concurrency defines how many watched terms can be searched at the same time.
+    public TrackingDaemon(DatabaseAdapter databaseAdapter, Integer concurrency) {
+        this.databaseAdapter = databaseAdapter;
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, concurrency));
+    }
+
+    // Schedules all watched terms of the provided watch file and blocks until daemon is stopped.
+    public void run(String watchFile) {
+        List<WatchedTerm> watchedTerms;
+        try {
+            watchedTerms = WatchedTerm.readWatchFile(watchFile);
+        } catch (IOException e) {
+            logger.info("Watch file " + watchFile + " could not be read. Exception thrown: " + e.getMessage());
+            return;
+        }
+        if (watchedTerms.isEmpty()) {
+            logger.info("Watch file " + watchFile + " doesn't contain any valid watched term.");
+            return;
+        }
+        // Initial executions are spread evenly across each term interval.
+        for (int i = 0; i < watchedTerms.size(); i++) {
+            WatchedTerm watchedTerm = watchedTerms.get(i);
+            long offset = watchedTerm.getInterval().toMillis() * i / watchedTerms.size();
+            schedule(watchedTerm, offset + jitter(watchedTerm.getInterval().toMillis() / watchedTerms.size()));
+        }
+        logger.info("Tracking started for " + watchedTerms.size() + " watched terms.");
+        try {
+            stopLatch.await();
+        } catch (InterruptedException e) {
+            logger.info("Tracking was interrupted.");
+        }
+        stop();
+        logger.info("Tracking terminated.");
+    }
+
+    // Daemon is terminated. Running searches are interrupted.
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+        stopLatch.countDown();
+    }
+
+    // Schedules next execution of a watched term.
+    private void schedule(WatchedTerm watchedTerm, long delayMillis) {
+        if (!running) {
+            return;
+        }
+        try {
+            scheduler.schedule(() -> track(watchedTerm), Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            /* Daemon has been stopped. */
+        }
+    }
+
+    // Searches a watched term, stores its changed properties and schedules its next execution.
+    // An expired watched term is neither searched nor scheduled again.
+    private void track(WatchedTerm watchedTerm) {
+        if (watchedTerm.isExpired()) {
+            logger.info("Watched term " + watchedTerm + " expired, as its check-in date has passed. It is no longer tracked.");
+            return;
+        }
+        try {
+            logger.info("Tracking search is starting for watched term " + watchedTerm + "...");
+            BatchRunner batchRunner = new BatchRunner(databaseAdapter, TargetURL.values().length, false);
+            batchRunner.setPropertiesListener(this::storePropertyChanges);
+            batchRunner.run(Collections.singletonList(watchedTerm.getSearchTerm()));
+        } catch (Exception e) {
+            e.printStackTrace();
+            logger.info("There was an exception (" + e.getMessage() + ") while tracking watched term " + watchedTerm + ".");
+        } finally {
+            long interval = watchedTerm.getInterval().toMillis();
+            schedule(watchedTerm, interval + jitter((long) (interval * JITTER_RATIO)));
+        }
+    }
+
+    // Compares extracted properties with the last known snapshot of the term and stores only
+    // new properties and properties whose price or availability changed.
+    private void storePropertyChanges(SearchTerm searchTerm, Map<TargetURL, Map<String, Property>> propertiesPerTargetURL) {
+        Map<TargetURL, Map<String, Property>> knownPropertiesPerTargetURL = lastKnownProperties.computeIfAbsent(searchTerm,
+                term -> databaseAdapter.retrieveLatestPropertySnapshots(term.getDestination(), term.getDate(), term.getNights()));
+        Map<TargetURL, List<Property>> changedPropertiesPerTargetURL = new EnumMap<>(TargetURL.class);
+        Integer propertiesCount = 0;
+        Integer changedCount = 0;
+        for (Map.Entry<TargetURL, Map<String, Property>> entry : propertiesPerTargetURL.entrySet()) {
+            Map<String, Property> knownProperties = knownPropertiesPerTargetURL.computeIfAbsent(entry.getKey(), k -> new HashMap<>());
+            for (Property property : entry.getValue().values()) {
+                propertiesCount++;
+                Property knownProperty = knownProperties.get(property.getName());
+                if (knownProperty == null || !Objects.equals(knownProperty.getPrice(), property.getPrice())) {
+                    changedPropertiesPerTargetURL.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(property);
+                    knownProperties.put(property.getName(), property);
+                    changedCount++;
+                }
+            }
+        }
+        if (changedCount > 0) {
+            databaseAdapter.insertPropertySnapshots(searchTerm.getDestination(), searchTerm.getDate(), searchTerm.getNights(), changedPropertiesPerTargetURL, new Date());
+        }
+        logger.info("Watched term " + searchTerm + ": " + changedCount + " of " + propertiesCount + " properties changed since last run.");
+    }
+
+    // Random delay in [-bound, bound] milliseconds.
+    private static long jitter(long bound) {
+        return bound > 0 ? ThreadLocalRandom.current().nextLong(-bound, bound + 1) : 0;
+    }
+
+}
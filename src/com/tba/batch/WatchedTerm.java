@@ -0,0 +1,116 @@
+// -------------------------------------------------------------
+//
+// This is the Watched Term Structure used by the tracking mode.
+// Watched Term data: Search Term and tracking Interval.
+// Watch files contain one 'destination;dd/MM/yyyy;nights;interval'
+// term per line, where interval is expressed in minutes, hours or
+// days, e.g. '90m', '6h' or '1d'.
+// Empty lines and lines starting with '#' are ignored.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.batch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+public class WatchedTerm {
+
+    private static final Logger logger = Logger.getLogger(WatchedTerm.class.getName());
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/uuuu").withResolverStyle(ResolverStyle.STRICT);
+    private final SearchTerm searchTerm;
+    private final Duration interval;
+
+    public WatchedTerm(SearchTerm searchTerm, Duration interval) {
+        this.searchTerm = searchTerm;
+        this.interval = interval;
+    }
+
+    public SearchTerm getSearchTerm() {
+        return searchTerm;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    // Returns true if term's check-in date has passed, as the past dates skipped when a watch file is read.
+    public Boolean isExpired() {
+        return searchTerm.getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate().isBefore(LocalDate.now());
+    }
+
+    @Override
+    public String toString() {
+        return searchTerm + ";" + interval.toMinutes() + "m";
+    }
+
+    // Reads all valid watched terms of a watch file.
+    // Invalid lines or past dates are logged and skipped.
+    public static List<WatchedTerm> readWatchFile(String watchFile) throws IOException {
+        List<WatchedTerm> watchedTerms = new ArrayList<>();
+        List<String> lines = Files.readAllLines(Paths.get(watchFile), StandardCharsets.UTF_8);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(";");
+            if (fields.length < 4 || fields[0].isBlank()) {
+                logger.info("Line " + (i + 1) + " of watch file is not in 'destination;dd/MM/yyyy;nights;interval' format. Skipping.");
+                continue;
+            }
+            try {
+                LocalDate date = LocalDate.parse(fields[1].trim(), formatter);
+                if (date.isBefore(today)) {
+                    logger.info("Line " + (i + 1) + " of watch file contains a past date. Skipping.");
+                    continue;
+                }
+                Integer nights = Integer.parseInt(fields[2].trim());
+                Duration interval = parseInterval(fields[3].trim());
+                if (nights < 1 || interval.isZero() || interval.isNegative()) {
+                    logger.info("Line " + (i + 1) + " of watch file contains non positive nights or interval values. Skipping.");
+                    continue;
+                }
+                watchedTerms.add(new WatchedTerm(new SearchTerm(fields[0].trim(), SearchTerm.toDate(date), nights), interval));
+            } catch (NumberFormatException e) {
+                logger.info("Line " + (i + 1) + " of watch file doesn't contain valid nights or interval values. Skipping.");
+            } catch (DateTimeParseException e) {
+                logger.info("Line " + (i + 1) + " of watch file doesn't contain a date in 'dd/MM/yyyy' format. Skipping.");
+            }
+        }
+        return watchedTerms;
+    }
+
+    // Parses an interval expressed in minutes('m'), hours('h') or days('d').
+    public static Duration parseInterval(String interval) throws NumberFormatException {
+        if (interval.length() < 2) {
+            throw new NumberFormatException("Interval " + interval + " is not valid.");
+        }
+        long value = Long.parseLong(interval.substring(0, interval.length() - 1));
+        switch (Character.toLowerCase(interval.charAt(interval.length() - 1))) {
+            case 'm':
+                return Duration.ofMinutes(value);
+            case 'h':
+                return Duration.ofHours(value);
+            case 'd':
+                return Duration.ofDays(value);
+            default:
+                throw new NumberFormatException("Interval " + interval + " is not valid.");
+        }
+    }
+
+}
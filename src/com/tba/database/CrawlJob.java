@@ -0,0 +1,174 @@
+// -------------------------------------------------------------
+//
+// This is the Crawl Job Structure used by the distributed crawl
+// mode. A crawl job is the search of a search term on a single
+// TargetURL, queued in 'CRAWL_JOBS' table.
+// Crawl Job data: Id, Batch, Destination, Date, Nights, TargetURL,
+// Status, Attempts, Lease, Pages Parsed, Failures.
+// Lease is the token of the worker claim holding the job, so a worker
+// whose lease expired and was reclaimed can't complete the job.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.database;
+
+import com.tba.enums.JobStatus;
+import com.tba.enums.TargetURL;
+
+import java.util.Date;
+
+public class CrawlJob {
+
+    private Long id;
+    private String batch;
+    private String destination;
+    private Date date;
+    private Integer nights;
+    private TargetURL targetURL;
+    private JobStatus status;
+    private Integer attempts;
+    private String lease;
+    private Integer pagesParsed;
+    private Integer failures;
+
+    public static class Builder {
+
+        private Long id;
+        private String batch;
+        private String destination;
+        private Date date;
+        private Integer nights;
+        private TargetURL targetURL;
+        private JobStatus status;
+        private Integer attempts;
+        private String lease;
+        private Integer pagesParsed;
+        private Integer failures;
+
+        public Builder() {}
+
+        public CrawlJob.Builder withId(Long id) {
+            this.id = id;
+            return this;
+        }
+
+        public CrawlJob.Builder withBatch(String batch) {
+            this.batch = batch;
+            return this;
+        }
+
+        public CrawlJob.Builder withDestination(String destination) {
+            this.destination = destination;
+            return this;
+        }
+
+        public CrawlJob.Builder withDate(Date date) {
+            this.date = date;
+            return this;
+        }
+
+        public CrawlJob.Builder withNights(Integer nights) {
+            this.nights = nights;
+            return this;
+        }
+
+        public CrawlJob.Builder withTargetURL(TargetURL targetURL) {
+            this.targetURL = targetURL;
+            return this;
+        }
+
+        public CrawlJob.Builder withStatus(JobStatus status) {
+            this.status = status;
+            return this;
+        }
+
+        public CrawlJob.Builder withAttempts(Integer attempts) {
+            this.attempts = attempts;
+            return this;
+        }
+
+        public CrawlJob.Builder withLease(String lease) {
+            this.lease = lease;
+            return this;
+        }
+
+        public CrawlJob.Builder withPagesParsed(Integer pagesParsed) {
+            this.pagesParsed = pagesParsed;
+            return this;
+        }
+
+        public CrawlJob.Builder withFailures(Integer failures) {
+            this.failures = failures;
+            return this;
+        }
+
+        public CrawlJob build() {
+            CrawlJob crawlJob = new CrawlJob();
+            crawlJob.id = this.id;
+            crawlJob.batch = this.batch;
+            crawlJob.destination = this.destination;
+            crawlJob.date = this.date;
+            crawlJob.nights = this.nights;
+            crawlJob.targetURL = this.targetURL;
+            crawlJob.status = this.status;
+            crawlJob.attempts = this.attempts;
+            crawlJob.lease = this.lease;
+            crawlJob.pagesParsed = this.pagesParsed;
+            crawlJob.failures = this.failures;
+            return crawlJob;
+        }
+    }
+
+    public CrawlJob() {}
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getBatch() {
+        return batch;
+    }
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public Integer getNights() {
+        return nights;
+    }
+
+    public TargetURL getTargetURL() {
+        return targetURL;
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public String getLease() {
+        return lease;
+    }
+
+    public Integer getPagesParsed() {
+        return pagesParsed;
+    }
+
+    public Integer getFailures() {
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return "job " + id + " (" + destination + ", " + targetURL.getURL() + ")";
+    }
+}
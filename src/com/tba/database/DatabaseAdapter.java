@@ -2,6 +2,15 @@
 //
 // This is the Database Adapter used by the application, to
 // communicate with the SQLite Database.
+// Dates are stored as epoch days and timestamps as epoch
+// milliseconds, so term lookups and date ranges are index scans.
+// Crawl jobs of the distributed crawl mode are queued in the same
+// Database, which is shared by the coordinator and worker processes.
+// Searches whose pages were archived reference their PageArchive key,
+// so their statistics can be regenerated from the archived pages.
+// When 'tba.dbShards' is more than 1, search records are partitioned
+// by destination across shard Databases, handled by the
+// ShardedDatabaseAdapter, and tba.db keeps the crawl jobs queue.
 //
 // Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
 //
@@ -9,39 +18,60 @@
 
 package com.tba.database;
 
+import com.tba.enums.JobStatus;
+import com.tba.enums.Migration;
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Property;
+
+import java.lang.reflect.InvocationTargetException;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.sql.Statement;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 public class DatabaseAdapter {
 
     private static final Logger logger = Logger.getLogger(DatabaseAdapter.class.getName());
-    private final SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-    private final String url = "jdbc:sqlite:tba.db";
+    private static final DateTimeFormatter legacyFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS"); // Text format of schema versions before epoch columns.
+    private static final ZoneId zone = ZoneId.systemDefault();
+    private static final Integer BUSY_TIMEOUT_MILLIS = 30000; // Wait time for locks held by other processes, e.g. distributed crawl workers.
+    static final String PRIMARY_FILE = "tba.db";
+    private static final Integer SHARDS = Integer.getInteger("tba.dbShards", 1);
+    private final String url;
+    private final SearchHistoryCache searchHistoryCache; // Search records history of recently retrieved search terms.
     private Connection connection;
 
-    // Database initialization method.
-    // 'SEARCHES' table is created, if it doesn't exist.
     public DatabaseAdapter() {
+        this(PRIMARY_FILE);
+    }
+
+    DatabaseAdapter(String fileName) {
+        this(fileName, new SearchHistoryCache());
+    }
+
+    // Database initialization method.
+    // Database schema is migrated to the latest version, applying each pending Migration in order.
+    // Search history is cached in the provided cache, e.g. shared by all shards of sharded storage.
+    DatabaseAdapter(String fileName, SearchHistoryCache searchHistoryCache) {
+        url = "jdbc:sqlite:" + fileName;
+        this.searchHistoryCache = searchHistoryCache;
         try {
             connection = DriverManager.getConnection(url);
             if (connection != null) {
-                StringBuilder queryBuilder = new StringBuilder().append("CREATE TABLE IF NOT EXISTS 'SEARCHES'(")
-                                                                .append("'SEARCH_ID' INTEGER PRIMARY KEY AUTOINCREMENT,")
-                                                                .append("'SEARCH_DESTINATION' TEXT,")
-                                                                .append("'SEARCH_DATE' TEXT,")
-                                                                .append("'SEARCH_PROPERTIES_FOUND' INTEGER,")
-                                                                .append("'SEARCH_UNAVAILABLE_PROPERTIES' INTEGER,")
-                                                                .append("'SEARCH_SCORE_MEDIAN' REAL,")
-                                                                .append("'SEARCH_PRICE_MEDIAN' REAL,")
-                                                                .append("'SEARCH_TIMESTAMP' TEXT)");
-                connection.createStatement().execute(queryBuilder.toString());
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MILLIS);
+                }
+                migrate();
                 logger.info("Database connection initialized successfully.");
             } else {
                 logger.info("Database connection could not be initialized.");
@@ -52,8 +82,67 @@ public class DatabaseAdapter {
         }
     }
 
+    // Adapter sharing the connection of an initialized adapter, e.g. the tba.db connection of sharded storage.
+    DatabaseAdapter(DatabaseAdapter databaseAdapter) {
+        url = databaseAdapter.url;
+        connection = databaseAdapter.connection;
+        searchHistoryCache = databaseAdapter.searchHistoryCache;
+    }
+
+    // Opens the Database of the application, tba.db, or the destination shards its search records are partitioned to.
+    // Storage is sharded when 'tba.dbShards' is more than 1, moving existing records of tba.db to their shards the first time.
+    // Once sharded, tba.db records its shard count, which is used afterwards, whatever 'tba.dbShards' is.
+    public static DatabaseAdapter open() {
+        DatabaseAdapter primary = new DatabaseAdapter(PRIMARY_FILE);
+        if (primary.connection == null) {
+            return primary;
+        }
+        Integer shardCount;
+        try {
+            shardCount = primary.retrieveShardCount();
+        } catch (SQLException e) {
+            logger.info("Shard layout could not be retrieved. Database is used unsharded. Exception thrown: " + e.getMessage());
+            return primary;
+        }
+        if (shardCount == null) {
+            if (SHARDS <= 1) {
+                return primary;
+            }
+            // Shards are created only once tba.db layout is locked and still unsharded, so no shard files of another count are created.
+            AtomicReference<ShardedDatabaseAdapter> shardedAdapter = new AtomicReference<>();
+            shardCount = primary.shardRecords(SHARDS, destinations -> {
+                shardedAdapter.set(new ShardedDatabaseAdapter(primary, SHARDS));
+                return shardedAdapter.get().importShards(destinations);
+            });
+            if (shardedAdapter.get() != null && (shardCount == null || !shardCount.equals(SHARDS))) {
+                shardedAdapter.get().closeShards();
+                shardedAdapter.set(null);
+            }
+            if (shardCount == null) {
+                logger.info("Database could not be sharded. Database is used unsharded.");
+                return primary;
+            }
+            if (shardedAdapter.get() != null) {
+                return shardedAdapter.get();
+            }
+        }
+        if (!shardCount.equals(SHARDS) && System.getProperty("tba.dbShards") != null) {
+            logger.info("Database is sharded in " + shardCount + " shards. Configured shard count " + SHARDS + " is ignored.");
+        }
+        return new ShardedDatabaseAdapter(primary, shardCount);
+    }
+
+    public SearchHistoryCache getSearchHistoryCache() {
+        return searchHistoryCache;
+    }
+
     // Database connection termination method.
     public void closeDatabase() {
+        logger.info(searchHistoryCache.describe());
+        closeConnection();
+    }
+
+    void closeConnection() {
         try {
             if (connection != null) {
                 connection.close();
@@ -66,50 +155,968 @@ public class DatabaseAdapter {
         }
     }
 
-    // Inserts a Search record to the Database.
-    public void insertSearch(Search search) {
-        try {
-            StringBuilder queryBuilder = new StringBuilder().append("INSERT OR IGNORE INTO 'SEARCHES' ('SEARCH_DESTINATION', 'SEARCH_DATE', 'SEARCH_PROPERTIES_FOUND', 'SEARCH_UNAVAILABLE_PROPERTIES', 'SEARCH_SCORE_MEDIAN', 'SEARCH_PRICE_MEDIAN', 'SEARCH_TIMESTAMP') VALUES ('")
-                                                            .append(search.getDestination()).append("', '")
-                                                            .append(formatter.format(search.getDate())).append("', '")
-                                                            .append(search.getPropertiesFound()).append("', '")
-                                                            .append(search.getUnavailableProperties()).append("', '")
-                                                            .append(search.getScoreMedian()).append("', '")
-                                                            .append(search.getPriceMedian()).append("', '")
-                                                            .append(formatter.format(search.getTimestamp())) .append("')");
-            connection.createStatement().execute(queryBuilder.toString());
+    // Inserts a Search record to the Database and updates the rollup tables, in a single transaction.
+    // Method is synchronized, as batch searches finish concurrently and share the same connection.
+    // Returns false if Search was not stored.
+    public synchronized Boolean insertSearch(Search search) {
+        String query = "INSERT INTO 'SEARCHES' ('SEARCH_DESTINATION', 'SEARCH_DATE', 'SEARCH_NIGHTS', 'SEARCH_PROPERTIES_FOUND', 'SEARCH_UNAVAILABLE_PROPERTIES', 'SEARCH_SCORE_MEDIAN', 'SEARCH_PRICE_MEDIAN', 'SEARCH_TIMESTAMP', 'SEARCH_ARCHIVE_KEY') VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            connection.setAutoCommit(false);
+            statement.setString(1, search.getDestination());
+            statement.setLong(2, toEpochDay(search.getDate()));
+            statement.setInt(3, search.getNights());
+            statement.setObject(4, search.getPropertiesFound());
+            statement.setObject(5, search.getUnavailableProperties());
+            statement.setObject(6, search.getScoreMedian());
+            statement.setObject(7, search.getPriceMedian());
+            statement.setLong(8, search.getTimestamp().getTime());
+            statement.setObject(9, search.getArchiveKey());
+            statement.executeUpdate();
+            updateRollups(search);
+            connection.commit();
+            searchHistoryCache.invalidate(search.getDestination(), toEpochDay(search.getDate()), search.getNights());
             logger.info("Insert statement successfully executed!");
+            return true;
+        } catch (SQLException e) {
+            logger.info("Insert statement could not be executed. Exception thrown: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                logger.info("Insert statement could not be rolled back. Exception thrown: " + ex.getMessage());
+            }
+            return false;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.info("Database auto commit could not be restored. Exception thrown: " + e.getMessage());
+            }
+        }
+    }
+
+    // Updates the statistics of existing Search records, e.g. regenerated from archived pages, and rebuilds
+    // the rollup tables, in a single transaction. Returns false if nothing was updated.
+    public synchronized Boolean updateSearchStatistics(Collection<Search> searches) {
+        String query = "UPDATE 'SEARCHES' SET 'SEARCH_PROPERTIES_FOUND' = ?, 'SEARCH_UNAVAILABLE_PROPERTIES' = ?, 'SEARCH_SCORE_MEDIAN' = ?, 'SEARCH_PRICE_MEDIAN' = ? WHERE SEARCH_ID = ?";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            connection.setAutoCommit(false);
+            for (Search search : searches) {
+                statement.setObject(1, search.getPropertiesFound());
+                statement.setObject(2, search.getUnavailableProperties());
+                statement.setObject(3, search.getScoreMedian());
+                statement.setObject(4, search.getPriceMedian());
+                statement.setInt(5, search.getId());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            rebuildRollups();
+            connection.commit();
+            searches.forEach(search -> searchHistoryCache.invalidate(search.getDestination(), toEpochDay(search.getDate()), search.getNights()));
+            logger.info("Update statements successfully executed!");
+            return true;
+        } catch (SQLException e) {
+            logger.info("Update statements could not be executed. Exception thrown: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                logger.info("Update statements could not be rolled back. Exception thrown: " + ex.getMessage());
+            }
+            return false;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.info("Database auto commit could not be restored. Exception thrown: " + e.getMessage());
+            }
+        }
+    }
+
+    // Retrieves the latest Search record referencing a PageArchive key, or null if none exists.
+    public synchronized Search retrieveArchivedSearch(Long archiveKey) {
+        String query = "SELECT * FROM SEARCHES WHERE SEARCH_ARCHIVE_KEY = ? ORDER BY SEARCH_ID DESC LIMIT 1";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, archiveKey);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? createSearch(resultSet) : null;
+            }
         } catch (SQLException e) {
-            logger.info("Insert statement could be executed. Exception thrown: " + e.getMessage());
+            logger.info("Select statement could not be executed. Exception thrown: " + e.getMessage());
+            return null;
         }
     }
 
-    // Retrieves all Search records from Database matching the criteria.
+    // Retrieves all single night Search records from Database matching the criteria.
     public List<Search> retrieveSearchTermList(String destination, Date date) {
-        List<Search> searchList = new ArrayList<>();
-        try {
-            StringBuilder queryBuilder = new StringBuilder().append("SELECT * FROM SEARCHES WHERE ")
-                                                            .append("SEARCH_DESTINATION").append(" = '").append(destination).append("' AND ")
-                                                            .append("SEARCH_DATE").append(" = '").append(formatter.format(date)).append("'");
-            ResultSet resultSet = connection.createStatement().executeQuery(queryBuilder.toString());
+        return retrieveSearchTermList(destination, date, 1);
+    }
+
+    // Retrieves all Search records from Database matching the criteria.
+    // Records are served from the search history cache, when the search term is cached. Returned list is unmodifiable.
+    public synchronized List<Search> retrieveSearchTermList(String destination, Date date, Integer nights) {
+        long epochDay = toEpochDay(date);
+        List<Search> searchList = searchHistoryCache.get(destination, epochDay, nights);
+        if (searchList != null) {
+            return searchList;
+        }
+        searchList = new ArrayList<>();
+        String query = "SELECT * FROM SEARCHES WHERE SEARCH_DESTINATION = ? AND SEARCH_DATE = ? AND SEARCH_NIGHTS = ? ORDER BY SEARCH_TIMESTAMP";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, destination);
+            statement.setLong(2, epochDay);
+            statement.setInt(3, nights);
+            ResultSet resultSet = statement.executeQuery();
             // Generates a Search records list from Database records.
             while (resultSet.next()) {
-                Search search = new Search.Builder()
-                                    .withId(resultSet.getInt("SEARCH_ID"))
-                                    .withDestination(resultSet.getString("SEARCH_DESTINATION"))
-                                    .withDate(resultSet.getDate("SEARCH_DATE"))
-                                    .withPropertiesFound(resultSet.getInt("SEARCH_PROPERTIES_FOUND"))
-                                    .withUnavailableProperties(resultSet.getInt("SEARCH_UNAVAILABLE_PROPERTIES"))
-                                    .withScoreMedian(resultSet.getDouble("SEARCH_SCORE_MEDIAN"))
-                                    .withPriceMedian(resultSet.getDouble("SEARCH_PRICE_MEDIAN"))
-                                    .withTimestamp(resultSet.getDate("SEARCH_TIMESTAMP"))
-                                    .build();
-                searchList.add(search);
+                searchList.add(createSearch(resultSet));
+            }
+            searchHistoryCache.put(destination, epochDay, nights, searchList);
+        } catch (SQLException e) {
+            logger.info("Select statement could not be executed. Exception thrown: " + e.getMessage());
+        }
+        return Collections.unmodifiableList(searchList);
+    }
+
+    // Retrieves all Search records of a destination with a date within the provided range (inclusive),
+    // ordered by date and timestamp. Range is scanned on the search term index.
+    public synchronized List<Search> retrieveSearchRangeList(String destination, LocalDate firstDate, LocalDate lastDate) {
+        List<Search> searchList = new ArrayList<>();
+        String query = "SELECT * FROM SEARCHES WHERE SEARCH_DESTINATION = ? AND SEARCH_DATE BETWEEN ? AND ? ORDER BY SEARCH_DATE, SEARCH_TIMESTAMP";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, destination);
+            statement.setLong(2, firstDate.toEpochDay());
+            statement.setLong(3, lastDate.toEpochDay());
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                searchList.add(createSearch(resultSet));
             }
         } catch (SQLException e) {
-            logger.info("Select statement could be executed. Exception thrown: " + e.getMessage());
+            logger.info("Select statement could not be executed. Exception thrown: " + e.getMessage());
         }
         return searchList;
     }
 
+    // Generates a Search record from a 'SEARCHES' Database record.
+    // Archive key column is read only if present, as rollups are built by migrations before it was added.
+    private Search createSearch(ResultSet resultSet) throws SQLException {
+        Long archiveKey = null;
+        for (int column = 1; column <= resultSet.getMetaData().getColumnCount(); column++) {
+            if (resultSet.getMetaData().getColumnName(column).equalsIgnoreCase("SEARCH_ARCHIVE_KEY")) {
+                archiveKey = toNullableLong(resultSet.getObject(column));
+            }
+        }
+        return new Search.Builder()
+                   .withId(resultSet.getInt("SEARCH_ID"))
+                   .withDestination(resultSet.getString("SEARCH_DESTINATION"))
+                   .withDate(fromEpochDay(resultSet.getLong("SEARCH_DATE")))
+                   .withNights(resultSet.getInt("SEARCH_NIGHTS"))
+                   .withPropertiesFound(resultSet.getInt("SEARCH_PROPERTIES_FOUND"))
+                   .withUnavailableProperties(resultSet.getInt("SEARCH_UNAVAILABLE_PROPERTIES"))
+                   .withScoreMedian(resultSet.getDouble("SEARCH_SCORE_MEDIAN"))
+                   .withPriceMedian(resultSet.getDouble("SEARCH_PRICE_MEDIAN"))
+                   .withTimestamp(new Date(resultSet.getLong("SEARCH_TIMESTAMP")))
+                   .withArchiveKey(archiveKey)
+                   .build();
+    }
+
+    // Inserts the provided property snapshots of a search term to the Database, in a single transaction.
+    // A null price snapshot represents a property that became unavailable.
+    public synchronized void insertPropertySnapshots(String destination, Date date, Integer nights, Map<TargetURL, List<Property>> propertiesPerTargetURL, Date timestamp) {
+        String query = "INSERT INTO 'PROPERTY_SNAPSHOTS' ('SNAPSHOT_DESTINATION', 'SNAPSHOT_DATE', 'SNAPSHOT_NIGHTS', 'SNAPSHOT_TARGET', 'SNAPSHOT_PROPERTY', 'SNAPSHOT_SCORE', 'SNAPSHOT_PRICE', 'SNAPSHOT_TIMESTAMP') VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            connection.setAutoCommit(false);
+            for (Map.Entry<TargetURL, List<Property>> entry : propertiesPerTargetURL.entrySet()) {
+                for (Property property : entry.getValue()) {
+                    statement.setString(1, destination);
+                    statement.setLong(2, toEpochDay(date));
+                    statement.setInt(3, nights);
+                    statement.setString(4, entry.getKey().name());
+                    statement.setString(5, property.getName());
+                    statement.setObject(6, property.getScore());
+                    statement.setObject(7, property.getPrice());
+                    statement.setLong(8, timestamp.getTime());
+                    statement.addBatch();
+                }
+            }
+            statement.executeBatch();
+            connection.commit();
+            logger.info("Insert statements successfully executed!");
+        } catch (SQLException e) {
+            logger.info("Insert statements could not be executed. Exception thrown: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                logger.info("Insert statements could not be rolled back. Exception thrown: " + ex.getMessage());
+            }
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.info("Database auto commit could not be restored. Exception thrown: " + e.getMessage());
+            }
+        }
+    }
+
+    // Retrieves the latest stored snapshot of each property of a search term.
+    public synchronized Map<TargetURL, Map<String, Property>> retrieveLatestPropertySnapshots(String destination, Date date, Integer nights) {
+        Map<TargetURL, Map<String, Property>> propertiesPerTargetURL = new EnumMap<>(TargetURL.class);
+        String query = "SELECT * FROM PROPERTY_SNAPSHOTS WHERE SNAPSHOT_DESTINATION = ? AND SNAPSHOT_DATE = ? AND SNAPSHOT_NIGHTS = ? ORDER BY SNAPSHOT_ID";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, destination);
+            statement.setLong(2, toEpochDay(date));
+            statement.setInt(3, nights);
+            ResultSet resultSet = statement.executeQuery();
+            // Records are ordered by insertion, so later snapshots replace earlier ones.
+            while (resultSet.next()) {
+                Property property = new Property.Builder()
+                                        .withName(resultSet.getString("SNAPSHOT_PROPERTY"))
+                                        .withScore((Double) resultSet.getObject("SNAPSHOT_SCORE"))
+                                        .withPrice((Double) resultSet.getObject("SNAPSHOT_PRICE"))
+                                        .build();
+                propertiesPerTargetURL.computeIfAbsent(TargetURL.valueOf(resultSet.getString("SNAPSHOT_TARGET")), k -> new HashMap<>())
+                                      .put(property.getName(), property);
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.info("Select statement could not be executed. Exception thrown: " + e.getMessage());
+        }
+        return propertiesPerTargetURL;
+    }
+
+    // Queues a crawl job for each TargetURL of a search term, under the provided batch, in a single transaction.
+    public synchronized Boolean insertCrawlJobs(String batch, String destination, Date date, Integer nights) {
+        String query = "INSERT INTO 'CRAWL_JOBS' ('JOB_BATCH', 'JOB_DESTINATION', 'JOB_DATE', 'JOB_NIGHTS', 'JOB_TARGET', 'JOB_STATUS', 'JOB_UPDATED') VALUES (?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            connection.setAutoCommit(false);
+            for (TargetURL targetURL : TargetURL.values()) {
+                statement.setString(1, batch);
+                statement.setString(2, destination);
+                statement.setLong(3, toEpochDay(date));
+                statement.setInt(4, nights);
+                statement.setString(5, targetURL.name());
+                statement.setString(6, JobStatus.PENDING.name());
+                statement.setLong(7, System.currentTimeMillis());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            connection.commit();
+            return true;
+        } catch (SQLException e) {
+            logger.info("Insert statements could not be executed. Exception thrown: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                logger.info("Insert statements could not be rolled back. Exception thrown: " + ex.getMessage());
+            }
+            return false;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.info("Database auto commit could not be restored. Exception thrown: " + e.getMessage());
+            }
+        }
+    }
+
+    // Claims the oldest claimable crawl job for a worker: a pending job, or a leased job whose lease expired,
+    // with less than maximum attempts. Claim is a single update statement, executed under the Database write lock,
+    // so workers of different processes never claim the same job. Returns null if no job is claimable.
+    public synchronized CrawlJob claimCrawlJob(String worker, long leaseMillis, Integer maxAttempts) {
+        String lease = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        String query = "UPDATE 'CRAWL_JOBS' SET 'JOB_STATUS' = ?, 'JOB_ATTEMPTS' = JOB_ATTEMPTS + 1, 'JOB_WORKER' = ?, 'JOB_LEASE' = ?, 'JOB_LEASE_EXPIRES' = ?, 'JOB_UPDATED' = ? "
+                       + "WHERE JOB_ID = (SELECT JOB_ID FROM CRAWL_JOBS WHERE (JOB_STATUS = ? OR (JOB_STATUS = ? AND JOB_LEASE_EXPIRES < ?)) AND JOB_ATTEMPTS < ? ORDER BY JOB_ID LIMIT 1)";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, JobStatus.LEASED.name());
+            statement.setString(2, worker);
+            statement.setString(3, lease);
+            statement.setLong(4, now + leaseMillis);
+            statement.setLong(5, now);
+            statement.setString(6, JobStatus.PENDING.name());
+            statement.setString(7, JobStatus.LEASED.name());
+            statement.setLong(8, now);
+            statement.setInt(9, maxAttempts);
+            if (statement.executeUpdate() == 0) {
+                return null;
+            }
+        } catch (SQLException e) {
+            logger.info("Update statement could not be executed. Exception thrown: " + e.getMessage());
+            return null;
+        }
+        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM CRAWL_JOBS WHERE JOB_LEASE = ?")) {
+            statement.setString(1, lease);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? createCrawlJob(resultSet) : null;
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.info("Select statement could not be executed. Exception thrown: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Extends the lease of a claimed crawl job.
+    // Returns false if the lease was lost, e.g. it expired and the job was claimed by another worker,
+    // or null if the statement could not be executed, e.g. Database was busy, so the lease is unknown.
+    public synchronized Boolean renewCrawlJobLease(CrawlJob crawlJob, long leaseMillis) {
+        long now = System.currentTimeMillis();
+        String query = "UPDATE 'CRAWL_JOBS' SET 'JOB_LEASE_EXPIRES' = ?, 'JOB_UPDATED' = ? WHERE JOB_ID = ? AND JOB_LEASE = ? AND JOB_STATUS = ?";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setLong(1, now + leaseMillis);
+            statement.setLong(2, now);
+            statement.setLong(3, crawlJob.getId());
+            statement.setString(4, crawlJob.getLease());
+            statement.setString(5, JobStatus.LEASED.name());
+            return statement.executeUpdate() > 0;
+        } catch (SQLException e) {
+            logger.info("Update statement could not be executed. Exception thrown: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Completes a claimed crawl job and stores its extracted properties, in a single transaction.
+    // Returns false if the lease was lost, or null if the statements could not be executed, in which case nothing is stored.
+    public synchronized Boolean completeCrawlJob(CrawlJob crawlJob, Collection<Property> properties, Integer pagesParsed, Integer failures) {
+        String query = "UPDATE 'CRAWL_JOBS' SET 'JOB_STATUS' = ?, 'JOB_PAGES' = ?, 'JOB_FAILURES' = ?, 'JOB_UPDATED' = ? WHERE JOB_ID = ? AND JOB_LEASE = ? AND JOB_STATUS = ?";
+        String insertQuery = "INSERT INTO 'CRAWL_JOB_PROPERTIES' ('JOB_ID', 'PROPERTY_NAME', 'PROPERTY_SCORE', 'PROPERTY_PRICE') VALUES (?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(query);
+             PreparedStatement insertStatement = connection.prepareStatement(insertQuery)) {
+            connection.setAutoCommit(false);
+            statement.setString(1, JobStatus.DONE.name());
+            statement.setInt(2, pagesParsed);
+            statement.setInt(3, failures);
+            statement.setLong(4, System.currentTimeMillis());
+            statement.setLong(5, crawlJob.getId());
+            statement.setString(6, crawlJob.getLease());
+            statement.setString(7, JobStatus.LEASED.name());
+            if (statement.executeUpdate() == 0) {
+                connection.rollback();
+                return false;
+            }
+            for (Property property : properties) {
+                insertStatement.setLong(1, crawlJob.getId());
+                insertStatement.setString(2, property.getName());
+                insertStatement.setObject(3, property.getScore());
+                insertStatement.setObject(4, property.getPrice());
+                insertStatement.addBatch();
+            }
+            insertStatement.executeBatch();
+            connection.commit();
+            return true;
+        } catch (SQLException e) {
+            logger.info("Update statements could not be executed. Exception thrown: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                logger.info("Update statements could not be rolled back. Exception thrown: " + ex.getMessage());
+            }
+            return null;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.info("Database auto commit could not be restored. Exception thrown: " + e.getMessage());
+            }
+        }
+    }
+
+    // Releases a claimed crawl job after a failed attempt.
+    // Job is queued again, or failed if it reached maximum attempts.
+    public synchronized void releaseCrawlJob(CrawlJob crawlJob, Integer maxAttempts) {
+        String query = "UPDATE 'CRAWL_JOBS' SET 'JOB_STATUS' = ?, 'JOB_LEASE' = NULL, 'JOB_UPDATED' = ? WHERE JOB_ID = ? AND JOB_LEASE = ? AND JOB_STATUS = ?";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, (crawlJob.getAttempts() >= maxAttempts ? JobStatus.FAILED : JobStatus.PENDING).name());
+            statement.setLong(2, System.currentTimeMillis());
+            statement.setLong(3, crawlJob.getId());
+            statement.setString(4, crawlJob.getLease());
+            statement.setString(5, JobStatus.LEASED.name());
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            logger.info("Update statement could not be executed. Exception thrown: " + e.getMessage());
+        }
+    }
+
+    // Fails leased crawl jobs whose lease expired after their last allowed attempt, e.g. their worker crashed,
+    // so they can't block their batch. Returns the number of failed jobs.
+    public synchronized Integer failExpiredCrawlJobs(Integer maxAttempts) {
+        long now = System.currentTimeMillis();
+        String query = "UPDATE 'CRAWL_JOBS' SET 'JOB_STATUS' = ?, 'JOB_UPDATED' = ? WHERE JOB_STATUS = ? AND JOB_LEASE_EXPIRES < ? AND JOB_ATTEMPTS >= ?";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, JobStatus.FAILED.name());
+            statement.setLong(2, now);
+            statement.setString(3, JobStatus.LEASED.name());
+            statement.setLong(4, now);
+            statement.setInt(5, maxAttempts);
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            logger.info("Update statement could not be executed. Exception thrown: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    // Retrieves all crawl jobs of a batch, in queue order.
+    public synchronized List<CrawlJob> retrieveBatchCrawlJobs(String batch) {
+        List<CrawlJob> crawlJobList = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM CRAWL_JOBS WHERE JOB_BATCH = ? ORDER BY JOB_ID")) {
+            statement.setString(1, batch);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    crawlJobList.add(createCrawlJob(resultSet));
+                }
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            logger.info("Select statement could not be executed. Exception thrown: " + e.getMessage());
+        }
+        return crawlJobList;
+    }
+
+    // Retrieves the stored properties of a done crawl job.
+    public synchronized Map<String, Property> retrieveCrawlJobProperties(Long jobId) {
+        Map<String, Property> properties = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM CRAWL_JOB_PROPERTIES WHERE JOB_ID = ?")) {
+            statement.setLong(1, jobId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Property property = new Property.Builder()
+                                            .withName(resultSet.getString("PROPERTY_NAME"))
+                                            .withScore((Double) resultSet.getObject("PROPERTY_SCORE"))
+                                            .withPrice((Double) resultSet.getObject("PROPERTY_PRICE"))
+                                            .build();
+                    properties.put(property.getName(), property);
+                }
+            }
+        } catch (SQLException e) {
+            logger.info("Select statement could not be executed. Exception thrown: " + e.getMessage());
+        }
+        return properties;
+    }
+
+    // Counts crawl jobs of all batches that are not done or failed yet.
+    public synchronized Integer countUnfinishedCrawlJobs() {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM CRAWL_JOBS WHERE JOB_STATUS IN (?, ?)")) {
+            statement.setString(1, JobStatus.PENDING.name());
+            statement.setString(2, JobStatus.LEASED.name());
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            logger.info("Select statement could not be executed. Exception thrown: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    private CrawlJob createCrawlJob(ResultSet resultSet) throws SQLException {
+        return new CrawlJob.Builder()
+                   .withId(resultSet.getLong("JOB_ID"))
+                   .withBatch(resultSet.getString("JOB_BATCH"))
+                   .withDestination(resultSet.getString("JOB_DESTINATION"))
+                   .withDate(fromEpochDay(resultSet.getLong("JOB_DATE")))
+                   .withNights(resultSet.getInt("JOB_NIGHTS"))
+                   .withTargetURL(TargetURL.valueOf(resultSet.getString("JOB_TARGET")))
+                   .withStatus(JobStatus.valueOf(resultSet.getString("JOB_STATUS")))
+                   .withAttempts(resultSet.getInt("JOB_ATTEMPTS"))
+                   .withLease(resultSet.getString("JOB_LEASE"))
+                   .withPagesParsed(resultSet.getInt("JOB_PAGES"))
+                   .withFailures(resultSet.getInt("JOB_FAILURES"))
+                   .build();
+    }
+
+    // Retrieves the weekly price and availability trend of a destination, from the week rollup table.
+    public synchronized List<Trend> retrieveWeeklyTrends(String destination) {
+        return retrievePeriodTrends("SEARCH_ROLLUPS_WEEK", "ROLLUP_WEEK", destination);
+    }
+
+    // Retrieves the daily price and availability trend of a destination, from the day rollup table.
+    public synchronized List<Trend> retrieveDailyTrends(String destination) {
+        return retrievePeriodTrends("SEARCH_ROLLUPS_DAY", "ROLLUP_DAY", destination);
+    }
+
+    // Retrieves the destinations with the largest relative change between their first and last price median,
+    // from the destination rollup table.
+    public synchronized List<Trend> retrieveTopPriceChanges(Integer limit) {
+        List<Trend> trendList = new ArrayList<>();
+        String query = "SELECT * FROM SEARCH_ROLLUPS_DESTINATION WHERE ROLLUP_FIRST_PRICE > 0 AND ROLLUP_LAST_PRICE IS NOT NULL "
+                       + "ORDER BY ABS(ROLLUP_LAST_PRICE - ROLLUP_FIRST_PRICE) / ROLLUP_FIRST_PRICE DESC LIMIT ?";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setInt(1, limit);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                trendList.add(createTrendBuilder(resultSet)
+                                  .withFirstPrice(resultSet.getDouble("ROLLUP_FIRST_PRICE"))
+                                  .withLastPrice(resultSet.getDouble("ROLLUP_LAST_PRICE"))
+                                  .build());
+            }
+        } catch (SQLException e) {
+            logger.info("Select statement could not be executed. Exception thrown: " + e.getMessage());
+        }
+        return trendList;
+    }
+
+    // Retrieves all rows of a day or week rollup table for a destination, ordered by period.
+    private List<Trend> retrievePeriodTrends(String table, String periodColumn, String destination) {
+        List<Trend> trendList = new ArrayList<>();
+        String query = "SELECT * FROM " + table + " WHERE ROLLUP_DESTINATION = ? ORDER BY " + periodColumn;
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, destination);
+            ResultSet resultSet = statement.executeQuery();
+            while (resultSet.next()) {
+                trendList.add(createTrendBuilder(resultSet)
+                                  .withPeriod(LocalDate.ofEpochDay(resultSet.getLong(periodColumn)))
+                                  .build());
+            }
+        } catch (SQLException e) {
+            logger.info("Select statement could not be executed. Exception thrown: " + e.getMessage());
+        }
+        return trendList;
+    }
+
+    // Creates a Trend builder from the aggregate columns shared by all rollup tables.
+    private Trend.Builder createTrendBuilder(ResultSet resultSet) throws SQLException {
+        Integer pricedSearches = resultSet.getInt("ROLLUP_PRICED_SEARCHES");
+        Integer propertiesFound = resultSet.getInt("ROLLUP_PROPERTIES_FOUND");
+        Integer unavailableProperties = resultSet.getInt("ROLLUP_UNAVAILABLE_PROPERTIES");
+        return new Trend.Builder()
+                   .withDestination(resultSet.getString("ROLLUP_DESTINATION"))
+                   .withSearches(resultSet.getInt("ROLLUP_SEARCHES"))
+                   .withPriceAverage(pricedSearches > 0 ? resultSet.getDouble("ROLLUP_PRICE_SUM") / pricedSearches : null)
+                   .withAvailabilityRatio(propertiesFound > 0 ? (propertiesFound - unavailableProperties) / (double) propertiesFound : null);
+    }
+
+    // Adds a Search record to its day, week and destination rollup rows.
+    // A search without available properties counts in availability, but not in price aggregates.
+    private void updateRollups(Search search) throws SQLException {
+        LocalDate day = search.getTimestamp().toInstant().atZone(zone).toLocalDate();
+        LocalDate week = day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        Double price = search.getPriceMedian() != null && search.getPriceMedian() > 0 ? search.getPriceMedian() : null;
+        Long timestamp = price != null ? search.getTimestamp().getTime() : null;
+        String aggregateUpdate = "ROLLUP_SEARCHES = ROLLUP_SEARCHES + 1, "
+                                 + "ROLLUP_PRICE_SUM = ROLLUP_PRICE_SUM + excluded.ROLLUP_PRICE_SUM, "
+                                 + "ROLLUP_PRICED_SEARCHES = ROLLUP_PRICED_SEARCHES + excluded.ROLLUP_PRICED_SEARCHES, "
+                                 + "ROLLUP_PROPERTIES_FOUND = ROLLUP_PROPERTIES_FOUND + excluded.ROLLUP_PROPERTIES_FOUND, "
+                                 + "ROLLUP_UNAVAILABLE_PROPERTIES = ROLLUP_UNAVAILABLE_PROPERTIES + excluded.ROLLUP_UNAVAILABLE_PROPERTIES";
+        for (String[] periodRollup : new String[][] {{"SEARCH_ROLLUPS_DAY", "ROLLUP_DAY", String.valueOf(day.toEpochDay())}, {"SEARCH_ROLLUPS_WEEK", "ROLLUP_WEEK", String.valueOf(week.toEpochDay())}}) {
+            String query = "INSERT INTO " + periodRollup[0] + " (ROLLUP_DESTINATION, " + periodRollup[1] + ", ROLLUP_SEARCHES, ROLLUP_PRICE_SUM, "
+                           + "ROLLUP_PRICED_SEARCHES, ROLLUP_PROPERTIES_FOUND, ROLLUP_UNAVAILABLE_PROPERTIES) VALUES (?, ?, 1, ?, ?, ?, ?) "
+                           + "ON CONFLICT (ROLLUP_DESTINATION, " + periodRollup[1] + ") DO UPDATE SET " + aggregateUpdate;
+            try (PreparedStatement statement = connection.prepareStatement(query)) {
+                statement.setString(1, search.getDestination());
+                statement.setLong(2, Long.parseLong(periodRollup[2]));
+                setAggregateParameters(statement, 3, search, price);
+                statement.executeUpdate();
+            }
+        }
+        String query = "INSERT INTO SEARCH_ROLLUPS_DESTINATION (ROLLUP_DESTINATION, ROLLUP_SEARCHES, ROLLUP_PRICE_SUM, ROLLUP_PRICED_SEARCHES, "
+                       + "ROLLUP_PROPERTIES_FOUND, ROLLUP_UNAVAILABLE_PROPERTIES, ROLLUP_FIRST_PRICE, ROLLUP_FIRST_TIMESTAMP, ROLLUP_LAST_PRICE, "
+                       + "ROLLUP_LAST_TIMESTAMP) VALUES (?, 1, ?, ?, ?, ?, ?, ?, ?, ?) "
+                       + "ON CONFLICT (ROLLUP_DESTINATION) DO UPDATE SET " + aggregateUpdate + ", "
+                       + "ROLLUP_FIRST_PRICE = COALESCE(ROLLUP_FIRST_PRICE, excluded.ROLLUP_FIRST_PRICE), "
+                       + "ROLLUP_FIRST_TIMESTAMP = COALESCE(ROLLUP_FIRST_TIMESTAMP, excluded.ROLLUP_FIRST_TIMESTAMP), "
+                       + "ROLLUP_LAST_PRICE = COALESCE(excluded.ROLLUP_LAST_PRICE, ROLLUP_LAST_PRICE), "
+                       + "ROLLUP_LAST_TIMESTAMP = COALESCE(excluded.ROLLUP_LAST_TIMESTAMP, ROLLUP_LAST_TIMESTAMP)";
+        try (PreparedStatement statement = connection.prepareStatement(query)) {
+            statement.setString(1, search.getDestination());
+            setAggregateParameters(statement, 2, search, price);
+            statement.setObject(6, price);
+            statement.setObject(7, timestamp);
+            statement.setObject(8, price);
+            statement.setObject(9, timestamp);
+            statement.executeUpdate();
+        }
+    }
+
+    // Empties the rollup tables and rebuilds them from all Search records, in insertion order.
+    private void rebuildRollups() throws SQLException {
+        for (String table : new String[] {"SEARCH_ROLLUPS_DAY", "SEARCH_ROLLUPS_WEEK", "SEARCH_ROLLUPS_DESTINATION"}) {
+            connection.createStatement().execute("DELETE FROM '" + table + "'");
+        }
+        Integer searchesCount = 0;
+        try (Statement select = connection.createStatement();
+             ResultSet resultSet = select.executeQuery("SELECT * FROM SEARCHES ORDER BY SEARCH_ID")) {
+            while (resultSet.next()) {
+                updateRollups(createSearch(resultSet));
+                searchesCount++;
+            }
+        }
+        logger.info("Rollup tables built from " + searchesCount + " existing searches.");
+    }
+
+    // Sets price sum, priced searches, properties found and unavailable properties parameters, starting from provided index.
+    private static void setAggregateParameters(PreparedStatement statement, Integer index, Search search, Double price) throws SQLException {
+        statement.setDouble(index, price != null ? price : 0);
+        statement.setInt(index + 1, price != null ? 1 : 0);
+        statement.setInt(index + 2, search.getPropertiesFound() != null ? search.getPropertiesFound() : 0);
+        statement.setInt(index + 3, search.getUnavailableProperties() != null ? search.getUnavailableProperties() : 0);
+    }
+
+    // Retrieves the recorded shard count of this Database, or null if it was never sharded.
+    Integer retrieveShardCount() throws SQLException {
+        try (Statement select = connection.createStatement();
+             ResultSet resultSet = select.executeQuery("SELECT SHARD_COUNT FROM SHARD_LAYOUT ORDER BY SHARDED_AT DESC LIMIT 1")) {
+            return resultSet.next() ? resultSet.getInt(1) : null;
+        }
+    }
+
+    // Moves the search and property snapshot records of this Database to destination shards and records the shard layout.
+    // The importer copies the records of the provided destinations to their shards and returns false if any shard failed.
+    // Write lock of this Database is held for the whole move, so processes opening it concurrently wait, and records are
+    // removed in the transaction recording the layout, so an interrupted move leaves this Database unchanged.
+    // Returns the recorded shard count, which is another process shard count if it moved records first, or null if move failed.
+    synchronized Integer shardRecords(Integer shardCount, Predicate<List<String>> importer) {
+        try {
+            connection.setAutoCommit(false);
+            connection.createStatement().execute("DELETE FROM 'SHARD_LAYOUT' WHERE 0"); // Acquires the write lock.
+            Integer recordedShardCount = retrieveShardCount();
+            if (recordedShardCount != null) {
+                connection.rollback();
+                return recordedShardCount;
+            }
+            List<String> destinations = new ArrayList<>();
+            try (Statement select = connection.createStatement();
+                 ResultSet resultSet = select.executeQuery("SELECT SEARCH_DESTINATION FROM SEARCHES WHERE SEARCH_DESTINATION IS NOT NULL "
+                                                           + "UNION SELECT SNAPSHOT_DESTINATION FROM PROPERTY_SNAPSHOTS WHERE SNAPSHOT_DESTINATION IS NOT NULL")) {
+                while (resultSet.next()) {
+                    destinations.add(resultSet.getString(1));
+                }
+            }
+            if (!importer.test(destinations)) {
+                connection.rollback();
+                return null;
+            }
+            for (String table : new String[] {"SEARCHES", "PROPERTY_SNAPSHOTS", "SEARCH_ROLLUPS_DAY", "SEARCH_ROLLUPS_WEEK", "SEARCH_ROLLUPS_DESTINATION"}) {
+                connection.createStatement().execute("DELETE FROM '" + table + "'");
+            }
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO 'SHARD_LAYOUT' ('SHARD_COUNT', 'SHARDED_AT') VALUES (?, ?)")) {
+                statement.setInt(1, shardCount);
+                statement.setLong(2, System.currentTimeMillis());
+                statement.executeUpdate();
+            }
+            connection.commit();
+            return shardCount;
+        } catch (SQLException e) {
+            logger.info("Database records could not be sharded. Exception thrown: " + e.getMessage());
+            try {
+                connection.rollback();
+                // Another process may have moved the records meanwhile.
+                return retrieveShardCount();
+            } catch (SQLException ex) {
+                logger.info("Database sharding could not be rolled back. Exception thrown: " + ex.getMessage());
+            }
+            return null;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                logger.info("Database auto commit could not be restored. Exception thrown: " + e.getMessage());
+            }
+        }
+    }
+
+    // Copies the search and property snapshot records of the provided destinations from another Database file, keeping their
+    // ids, and rebuilds the rollup tables, in a single transaction. Records already stored are replaced, so an interrupted copy
+    // is repeated from scratch. Returns the number of copied Search records, or null if copy failed.
+    synchronized Integer importRecords(String sourceFile, Collection<String> destinations) {
+        try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS 'SOURCE'")) {
+            attach.setString(1, sourceFile);
+            attach.execute();
+            connection.createStatement().execute("CREATE TEMP TABLE IF NOT EXISTS 'IMPORT_DESTINATIONS'('DESTINATION' TEXT PRIMARY KEY)");
+        } catch (SQLException e) {
+            logger.info("Database " + sourceFile + " could not be attached. Exception thrown: " + e.getMessage());
+            return null;
+        }
+        String searchColumns = "SEARCH_ID, SEARCH_DESTINATION, SEARCH_DATE, SEARCH_NIGHTS, SEARCH_PROPERTIES_FOUND, SEARCH_UNAVAILABLE_PROPERTIES, "
+                               + "SEARCH_SCORE_MEDIAN, SEARCH_PRICE_MEDIAN, SEARCH_TIMESTAMP, SEARCH_ARCHIVE_KEY";
+        String snapshotColumns = "SNAPSHOT_ID, SNAPSHOT_DESTINATION, SNAPSHOT_DATE, SNAPSHOT_NIGHTS, SNAPSHOT_TARGET, SNAPSHOT_PROPERTY, "
+                                 + "SNAPSHOT_SCORE, SNAPSHOT_PRICE, SNAPSHOT_TIMESTAMP";
+        try (PreparedStatement statement = connection.prepareStatement("INSERT INTO temp.IMPORT_DESTINATIONS ('DESTINATION') VALUES (?)")) {
+            connection.setAutoCommit(false);
+            for (String table : new String[] {"SEARCHES", "PROPERTY_SNAPSHOTS"}) {
+                connection.createStatement().execute("DELETE FROM main." + table);
+            }
+            for (String destination : destinations) {
+                statement.setString(1, destination);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            Integer searchesCount = connection.createStatement().executeUpdate("INSERT INTO main.SEARCHES (" + searchColumns + ") SELECT " + searchColumns
+                                                                               + " FROM SOURCE.SEARCHES WHERE SEARCH_DESTINATION IN (SELECT DESTINATION FROM temp.IMPORT_DESTINATIONS)");
+            connection.createStatement().executeUpdate("INSERT INTO main.PROPERTY_SNAPSHOTS (" + snapshotColumns + ") SELECT " + snapshotColumns
+                                                       + " FROM SOURCE.PROPERTY_SNAPSHOTS WHERE SNAPSHOT_DESTINATION IN (SELECT DESTINATION FROM temp.IMPORT_DESTINATIONS)");
+            connection.createStatement().execute("DELETE FROM temp.IMPORT_DESTINATIONS");
+            rebuildRollups();
+            connection.commit();
+            return searchesCount;
+        } catch (SQLException e) {
+            logger.info("Database records could not be imported from " + sourceFile + ". Exception thrown: " + e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException ex) {
+                logger.info("Database records import could not be rolled back. Exception thrown: " + ex.getMessage());
+            }
+            return null;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+                connection.createStatement().execute("DETACH DATABASE 'SOURCE'");
+            } catch (SQLException e) {
+                logger.info("Database " + sourceFile + " could not be detached. Exception thrown: " + e.getMessage());
+            }
+        }
+    }
+
+    // Migrates Database schema to the latest version.
+    // Each pending Migration method is invoked using reflection and recorded in 'SCHEMA_VERSION' table,
+    // in a single transaction, so a failed migration leaves the Database in its previous version.
+    // Schema version is checked again once the write lock is held, so processes migrating the same Database concurrently,
+    // e.g. new shards, apply each Migration once.
+    private void migrate() throws SQLException {
+        connection.createStatement().execute("CREATE TABLE IF NOT EXISTS 'SCHEMA_VERSION'('VERSION' INTEGER PRIMARY KEY, 'DESCRIPTION' TEXT, 'APPLIED_AT' INTEGER)");
+        Integer schemaVersion = retrieveSchemaVersion();
+        for (Migration migration : Migration.values()) {
+            if (migration.getVersion() <= schemaVersion) {
+                continue;
+            }
+            connection.setAutoCommit(false);
+            try {
+                connection.createStatement().execute("DELETE FROM 'SCHEMA_VERSION' WHERE 0"); // Acquires the write lock.
+                if (retrieveSchemaVersion() >= migration.getVersion()) {
+                    connection.commit();
+                    continue;
+                }
+                DatabaseAdapter.class.getDeclaredMethod(migration.getMethod()).invoke(this);
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO 'SCHEMA_VERSION' ('VERSION', 'DESCRIPTION', 'APPLIED_AT') VALUES (?, ?, ?)")) {
+                    statement.setInt(1, migration.getVersion());
+                    statement.setString(2, migration.getDescription());
+                    statement.setLong(3, System.currentTimeMillis());
+                    statement.executeUpdate();
+                }
+                connection.commit();
+                logger.info("Database schema migrated to version " + migration.getVersion() + ": " + migration.getDescription());
+            } catch (ReflectiveOperationException | SQLException e) {
+                connection.rollback();
+                Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+                throw new SQLException("Database schema could not be migrated to version " + migration.getVersion() + ". " + cause.getMessage(), cause);
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        if (schemaVersion > Migration.values()[Migration.values().length - 1].getVersion()) {
+            logger.info("Database schema version " + schemaVersion + " is newer than the application supports.");
+        }
+    }
+
+    // Retrieves the applied schema version, or 0 if no Migration was applied.
+    private Integer retrieveSchemaVersion() throws SQLException {
+        try (Statement select = connection.createStatement();
+             ResultSet resultSet = select.executeQuery("SELECT MAX(VERSION) FROM SCHEMA_VERSION")) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    // Migration 1: 'SEARCHES' and 'PROPERTY_SNAPSHOTS' tables are created, if they don't exist.
+    // Databases created before length of stay support are extended with 'SEARCH_NIGHTS' column.
+    private void migrateBaseline() throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder().append("CREATE TABLE IF NOT EXISTS 'SEARCHES'(")
+                                                        .append("'SEARCH_ID' INTEGER PRIMARY KEY AUTOINCREMENT,")
+                                                        .append("'SEARCH_DESTINATION' TEXT,")
+                                                        .append("'SEARCH_DATE' TEXT,")
+                                                        .append("'SEARCH_NIGHTS' INTEGER DEFAULT 1,")
+                                                        .append("'SEARCH_PROPERTIES_FOUND' INTEGER,")
+                                                        .append("'SEARCH_UNAVAILABLE_PROPERTIES' INTEGER,")
+                                                        .append("'SEARCH_SCORE_MEDIAN' REAL,")
+                                                        .append("'SEARCH_PRICE_MEDIAN' REAL,")
+                                                        .append("'SEARCH_TIMESTAMP' TEXT)");
+        connection.createStatement().execute(queryBuilder.toString());
+        if (!tableColumnExists("SEARCHES", "SEARCH_NIGHTS")) {
+            connection.createStatement().execute("ALTER TABLE 'SEARCHES' ADD COLUMN 'SEARCH_NIGHTS' INTEGER DEFAULT 1");
+        }
+        queryBuilder = new StringBuilder().append("CREATE TABLE IF NOT EXISTS 'PROPERTY_SNAPSHOTS'(")
+                                          .append("'SNAPSHOT_ID' INTEGER PRIMARY KEY AUTOINCREMENT,")
+                                          .append("'SNAPSHOT_DESTINATION' TEXT,")
+                                          .append("'SNAPSHOT_DATE' TEXT,")
+                                          .append("'SNAPSHOT_NIGHTS' INTEGER,")
+                                          .append("'SNAPSHOT_TARGET' TEXT,")
+                                          .append("'SNAPSHOT_PROPERTY' TEXT,")
+                                          .append("'SNAPSHOT_SCORE' REAL,")
+                                          .append("'SNAPSHOT_PRICE' REAL,")
+                                          .append("'SNAPSHOT_TIMESTAMP' TEXT)");
+        connection.createStatement().execute(queryBuilder.toString());
+    }
+
+    // Migration 2: 'SEARCHES' and 'PROPERTY_SNAPSHOTS' tables are rebuilt with INTEGER date(epoch day) and
+    // timestamp(epoch milliseconds) columns, converting existing text records in place.
+    // Text 'null' values, stored by earlier versions, are converted to NULL. Records with invalid dates are dropped.
+    private void migrateEpochColumns() throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder().append("CREATE TABLE 'SEARCHES_MIGRATION'(")
+                                                        .append("'SEARCH_ID' INTEGER PRIMARY KEY AUTOINCREMENT,")
+                                                        .append("'SEARCH_DESTINATION' TEXT,")
+                                                        .append("'SEARCH_DATE' INTEGER,")
+                                                        .append("'SEARCH_NIGHTS' INTEGER DEFAULT 1,")
+                                                        .append("'SEARCH_PROPERTIES_FOUND' INTEGER,")
+                                                        .append("'SEARCH_UNAVAILABLE_PROPERTIES' INTEGER,")
+                                                        .append("'SEARCH_SCORE_MEDIAN' REAL,")
+                                                        .append("'SEARCH_PRICE_MEDIAN' REAL,")
+                                                        .append("'SEARCH_TIMESTAMP' INTEGER)");
+        connection.createStatement().execute(queryBuilder.toString());
+        Integer droppedRecords = 0;
+        String query = "INSERT INTO 'SEARCHES_MIGRATION' VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(query);
+             Statement select = connection.createStatement();
+             ResultSet resultSet = select.executeQuery("SELECT * FROM SEARCHES ORDER BY SEARCH_ID")) {
+            while (resultSet.next()) {
+                LocalDateTime date = parseLegacyDateTime(resultSet.getString("SEARCH_DATE"));
+                LocalDateTime timestamp = parseLegacyDateTime(resultSet.getString("SEARCH_TIMESTAMP"));
+                if (date == null || timestamp == null) {
+                    droppedRecords++;
+                    continue;
+                }
+                statement.setInt(1, resultSet.getInt("SEARCH_ID"));
+                statement.setString(2, resultSet.getString("SEARCH_DESTINATION"));
+                statement.setLong(3, date.toLocalDate().toEpochDay());
+                statement.setInt(4, resultSet.getInt("SEARCH_NIGHTS"));
+                statement.setObject(5, toNullableNumber(resultSet.getObject("SEARCH_PROPERTIES_FOUND")));
+                statement.setObject(6, toNullableNumber(resultSet.getObject("SEARCH_UNAVAILABLE_PROPERTIES")));
+                statement.setObject(7, toNullableNumber(resultSet.getObject("SEARCH_SCORE_MEDIAN")));
+                statement.setObject(8, toNullableNumber(resultSet.getObject("SEARCH_PRICE_MEDIAN")));
+                statement.setLong(9, timestamp.atZone(zone).toInstant().toEpochMilli());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        connection.createStatement().execute("DROP TABLE 'SEARCHES'");
+        connection.createStatement().execute("ALTER TABLE 'SEARCHES_MIGRATION' RENAME TO 'SEARCHES'");
+        connection.createStatement().execute("CREATE INDEX 'SEARCHES_TERM_INDEX' ON 'SEARCHES' ('SEARCH_DESTINATION', 'SEARCH_DATE', 'SEARCH_NIGHTS')");
+        connection.createStatement().execute("CREATE INDEX 'SEARCHES_TIMESTAMP_INDEX' ON 'SEARCHES' ('SEARCH_TIMESTAMP')");
+
+        queryBuilder = new StringBuilder().append("CREATE TABLE 'PROPERTY_SNAPSHOTS_MIGRATION'(")
+                                          .append("'SNAPSHOT_ID' INTEGER PRIMARY KEY AUTOINCREMENT,")
+                                          .append("'SNAPSHOT_DESTINATION' TEXT,")
+                                          .append("'SNAPSHOT_DATE' INTEGER,")
+                                          .append("'SNAPSHOT_NIGHTS' INTEGER,")
+                                          .append("'SNAPSHOT_TARGET' TEXT,")
+                                          .append("'SNAPSHOT_PROPERTY' TEXT,")
+                                          .append("'SNAPSHOT_SCORE' REAL,")
+                                          .append("'SNAPSHOT_PRICE' REAL,")
+                                          .append("'SNAPSHOT_TIMESTAMP' INTEGER)");
+        connection.createStatement().execute(queryBuilder.toString());
+        query = "INSERT INTO 'PROPERTY_SNAPSHOTS_MIGRATION' VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(query);
+             Statement select = connection.createStatement();
+             ResultSet resultSet = select.executeQuery("SELECT * FROM PROPERTY_SNAPSHOTS ORDER BY SNAPSHOT_ID")) {
+            while (resultSet.next()) {
+                LocalDateTime date = parseLegacyDateTime(resultSet.getString("SNAPSHOT_DATE"));
+                LocalDateTime timestamp = parseLegacyDateTime(resultSet.getString("SNAPSHOT_TIMESTAMP"));
+                if (date == null || timestamp == null) {
+                    droppedRecords++;
+                    continue;
+                }
+                statement.setInt(1, resultSet.getInt("SNAPSHOT_ID"));
+                statement.setString(2, resultSet.getString("SNAPSHOT_DESTINATION"));
+                statement.setLong(3, date.toLocalDate().toEpochDay());
+                statement.setInt(4, resultSet.getInt("SNAPSHOT_NIGHTS"));
+                statement.setString(5, resultSet.getString("SNAPSHOT_TARGET"));
+                statement.setString(6, resultSet.getString("SNAPSHOT_PROPERTY"));
+                statement.setObject(7, toNullableNumber(resultSet.getObject("SNAPSHOT_SCORE")));
+                statement.setObject(8, toNullableNumber(resultSet.getObject("SNAPSHOT_PRICE")));
+                statement.setLong(9, timestamp.atZone(zone).toInstant().toEpochMilli());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        connection.createStatement().execute("DROP TABLE 'PROPERTY_SNAPSHOTS'");
+        connection.createStatement().execute("ALTER TABLE 'PROPERTY_SNAPSHOTS_MIGRATION' RENAME TO 'PROPERTY_SNAPSHOTS'");
+        connection.createStatement().execute("CREATE INDEX 'PROPERTY_SNAPSHOTS_TERM_INDEX' ON 'PROPERTY_SNAPSHOTS' ('SNAPSHOT_DESTINATION', 'SNAPSHOT_DATE', 'SNAPSHOT_NIGHTS')");
+        if (droppedRecords > 0) {
+            logger.info(droppedRecords + " records with invalid dates were dropped during migration.");
+        }
+    }
+
+    // Migration 3: day, week and destination rollup tables are created and built from existing Search records,
+    // in insertion order. Each row aggregates the searches of a destination executed on a day(epoch day),
+    // a week(epoch day of its Monday) or ever, so trend queries never scan 'SEARCHES' table.
+    // Text rollup tables, created before schema versioning, are replaced.
+    private void migrateRollups() throws SQLException {
+        for (String table : new String[] {"SEARCH_ROLLUPS_DAY", "SEARCH_ROLLUPS_WEEK", "SEARCH_ROLLUPS_DESTINATION"}) {
+            connection.createStatement().execute("DROP TABLE IF EXISTS '" + table + "'");
+        }
+        String aggregateColumns = "'ROLLUP_SEARCHES' INTEGER DEFAULT 0,"
+                                  + "'ROLLUP_PRICE_SUM' REAL DEFAULT 0,"
+                                  + "'ROLLUP_PRICED_SEARCHES' INTEGER DEFAULT 0,"
+                                  + "'ROLLUP_PROPERTIES_FOUND' INTEGER DEFAULT 0,"
+                                  + "'ROLLUP_UNAVAILABLE_PROPERTIES' INTEGER DEFAULT 0,";
+        connection.createStatement().execute("CREATE TABLE 'SEARCH_ROLLUPS_DAY'('ROLLUP_DESTINATION' TEXT, 'ROLLUP_DAY' INTEGER,"
+                                             + aggregateColumns + "PRIMARY KEY ('ROLLUP_DESTINATION', 'ROLLUP_DAY'))");
+        connection.createStatement().execute("CREATE TABLE 'SEARCH_ROLLUPS_WEEK'('ROLLUP_DESTINATION' TEXT, 'ROLLUP_WEEK' INTEGER,"
+                                             + aggregateColumns + "PRIMARY KEY ('ROLLUP_DESTINATION', 'ROLLUP_WEEK'))");
+        connection.createStatement().execute("CREATE TABLE 'SEARCH_ROLLUPS_DESTINATION'('ROLLUP_DESTINATION' TEXT PRIMARY KEY,"
+                                             + aggregateColumns
+                                             + "'ROLLUP_FIRST_PRICE' REAL, 'ROLLUP_FIRST_TIMESTAMP' INTEGER,"
+                                             + "'ROLLUP_LAST_PRICE' REAL, 'ROLLUP_LAST_TIMESTAMP' INTEGER)");
+        rebuildRollups();
+    }
+
+    // Migration 4: crawl jobs queue of the distributed crawl mode and the properties of done jobs are created.
+    // Claimable jobs are looked up by status in queue order and batch jobs by batch.
+    private void migrateCrawlJobs() throws SQLException {
+        connection.createStatement().execute("CREATE TABLE 'CRAWL_JOBS'('JOB_ID' INTEGER PRIMARY KEY AUTOINCREMENT, 'JOB_BATCH' TEXT, 'JOB_DESTINATION' TEXT,"
+                                             + "'JOB_DATE' INTEGER, 'JOB_NIGHTS' INTEGER, 'JOB_TARGET' TEXT, 'JOB_STATUS' TEXT, 'JOB_ATTEMPTS' INTEGER DEFAULT 0,"
+                                             + "'JOB_WORKER' TEXT, 'JOB_LEASE' TEXT, 'JOB_LEASE_EXPIRES' INTEGER, 'JOB_PAGES' INTEGER DEFAULT 0,"
+                                             + "'JOB_FAILURES' INTEGER DEFAULT 0, 'JOB_UPDATED' INTEGER)");
+        connection.createStatement().execute("CREATE INDEX 'CRAWL_JOBS_STATUS_INDEX' ON 'CRAWL_JOBS' ('JOB_STATUS', 'JOB_ID')");
+        connection.createStatement().execute("CREATE INDEX 'CRAWL_JOBS_BATCH_INDEX' ON 'CRAWL_JOBS' ('JOB_BATCH')");
+        connection.createStatement().execute("CREATE INDEX 'CRAWL_JOBS_LEASE_INDEX' ON 'CRAWL_JOBS' ('JOB_LEASE')");
+        connection.createStatement().execute("CREATE TABLE 'CRAWL_JOB_PROPERTIES'('JOB_ID' INTEGER, 'PROPERTY_NAME' TEXT, 'PROPERTY_SCORE' REAL, 'PROPERTY_PRICE' REAL)");
+        connection.createStatement().execute("CREATE INDEX 'CRAWL_JOB_PROPERTIES_JOB_INDEX' ON 'CRAWL_JOB_PROPERTIES' ('JOB_ID')");
+    }
+
+    // Migration 5: searches reference the PageArchive key of their pages, if they were archived.
+    // Archived searches are looked up by key when their statistics are regenerated.
+    private void migrateArchiveKeys() throws SQLException {
+        connection.createStatement().execute("ALTER TABLE 'SEARCHES' ADD COLUMN 'SEARCH_ARCHIVE_KEY' INTEGER");
+        connection.createStatement().execute("CREATE INDEX 'SEARCHES_ARCHIVE_KEY_INDEX' ON 'SEARCHES' ('SEARCH_ARCHIVE_KEY')");
+    }
+
+    // Migration 6: 'SHARD_LAYOUT' table is created, recording the shard count once search records are sharded.
+    private void migrateShardLayout() throws SQLException {
+        connection.createStatement().execute("CREATE TABLE 'SHARD_LAYOUT'('SHARD_COUNT' INTEGER, 'SHARDED_AT' INTEGER)");
+    }
+
+    // Parses a text date or timestamp of schema versions before epoch columns, or returns null if it's invalid.
+    private static LocalDateTime parseLegacyDateTime(String value) {
+        try {
+            return value == null ? null : LocalDateTime.parse(value, legacyFormatter);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    // Returns a numeric column value, or null if value is NULL or text.
+    private static Object toNullableNumber(Object value) {
+        return value instanceof Number ? value : null;
+    }
+
+    // Returns an integer column value as a Long, or null if value is NULL or not an integer.
+    private static Long toNullableLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+
+    // Converts a Date to its epoch day, in system time zone.
+    private static long toEpochDay(Date date) {
+        return date.toInstant().atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    // Converts an epoch day to a Date at the start of the day, in system time zone.
+    private static Date fromEpochDay(long epochDay) {
+        return Date.from(LocalDate.ofEpochDay(epochDay).atStartOfDay(zone).toInstant());
+    }
+
+    // Checks if a table contains a column.
+    private Boolean tableColumnExists(String table, String column) throws SQLException {
+        try (Statement select = connection.createStatement();
+             ResultSet resultSet = select.executeQuery("PRAGMA table_info('" + table + "')")) {
+            while (resultSet.next()) {
+                if (resultSet.getString("name").equalsIgnoreCase(column)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
 }
@@ -1,7 +1,8 @@
 // -------------------------------------------------------------
 //
 // This is the Search Structure used by the application.
-// Search data: Id, Destination, Date, Properties found, Unavailable properties, Score Median, Price Median and Timestamp.
+// Search data: Id, Destination, Date, Nights, Properties found, Unavailable properties, Score Median, Price Median, Timestamp
+// and Archive Key, identifying the search pages in the PageArchive, if they were archived.
 //
 // Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
 //
@@ -16,22 +17,26 @@ public class Search {
     private Integer id;
     private String destination;
     private Date date;
+    private Integer nights;
     private Integer propertiesFound;
     private Integer unavailableProperties;
     private Double scoreMedian;
     private Double priceMedian;
     private Date timestamp;
+    private Long archiveKey;
 
     public static class Builder {
 
         private Integer id;
         private String destination;
         private Date date;
+        private Integer nights = 1;
         private Integer propertiesFound;
         private Integer unavailableProperties;
         private Double scoreMedian;
         private Double priceMedian;
         private Date timestamp;
+        private Long archiveKey;
 
         public Builder() {}
 
@@ -50,6 +55,11 @@ public class Search {
             return this;
         }
 
+        public Search.Builder withNights(Integer nights) {
+            this.nights = nights;
+            return this;
+        }
+
         public Search.Builder withPropertiesFound(Integer propertiesFound) {
             this.propertiesFound = propertiesFound;
             return this;
@@ -75,16 +85,23 @@ public class Search {
             return this;
         }
 
+        public Search.Builder withArchiveKey(Long archiveKey) {
+            this.archiveKey = archiveKey;
+            return this;
+        }
+
         public Search build() {
             Search search = new Search();
             search.id = this.id;
             search.destination = this.destination;
             search.date = this.date;
+            search.nights = this.nights;
             search.propertiesFound = this.propertiesFound;
             search.unavailableProperties = this.unavailableProperties;
             search.scoreMedian = this.scoreMedian;
             search.priceMedian = this.priceMedian;
             search.timestamp = this.timestamp;
+            search.archiveKey = this.archiveKey;
             return search;
         }
     }
@@ -103,6 +120,10 @@ public class Search {
         return date;
     }
 
+    public Integer getNights() {
+        return nights;
+    }
+
     public Integer getPropertiesFound() {
         return propertiesFound;
     }
@@ -123,4 +144,8 @@ public class Search {
         return timestamp;
     }
 
+    public Long getArchiveKey() {
+        return archiveKey;
+    }
+
 }
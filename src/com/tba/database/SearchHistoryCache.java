@@ -0,0 +1,141 @@
+// -------------------------------------------------------------
+//
+// This class caches the Search records history of search terms,
+// keyed by Destination, Date(epoch day) and Nights, in front of
+// the Database.
+// Cache is bounded by the total weight of its entries, where each
+// entry weighs the number of Search records it holds (plus one for
+// the entry itself), and evicts least recently used entries first.
+// Maximum weight can be defined by 'tba.historyCacheMaxRecords'
+// system property (default 10000).
+// Hits, misses and evictions are counted.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.database;
+
+import java.util.*;
+
+public class SearchHistoryCache {
+
+    private final Integer maxWeight;
+    private final LinkedHashMap<Key, List<Search>> entries = new LinkedHashMap<>(16, 0.75f, true); // Access ordered, least recently used first.
+    private Integer weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    // Search term key. Date is kept as epoch day, as it is stored.
+    private static class Key {
+
+        private final String destination;
+        private final long date;
+        private final Integer nights;
+
+        private Key(String destination, long date, Integer nights) {
+            this.destination = destination;
+            this.date = date;
+            this.nights = nights;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return destination.equals(key.destination) && date == key.date && nights.equals(key.nights);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(destination, date, nights);
+        }
+    }
+
+    public SearchHistoryCache() {
+        this(Integer.getInteger("tba.historyCacheMaxRecords", 10000));
+    }
+
+    public SearchHistoryCache(Integer maxWeight) {
+        this.maxWeight = maxWeight;
+    }
+
+    // Retrieves the cached history of a search term, or null if it isn't cached.
+    public synchronized List<Search> get(String destination, long date, Integer nights) {
+        List<Search> searchList = entries.get(new Key(destination, date, nights));
+        if (searchList == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return searchList;
+    }
+
+    // Caches the history of a search term, evicting least recently used entries if maximum weight is exceeded.
+    // Histories heavier than maximum weight are not cached.
+    public synchronized void put(String destination, long date, Integer nights, List<Search> searchList) {
+        Integer entryWeight = searchList.size() + 1;
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        List<Search> previous = entries.put(new Key(destination, date, nights), Collections.unmodifiableList(new ArrayList<>(searchList)));
+        if (previous != null) {
+            weight -= previous.size() + 1;
+        }
+        weight += entryWeight;
+        Iterator<List<Search>> iterator = entries.values().iterator();
+        while (weight > maxWeight && iterator.hasNext()) {
+            weight -= iterator.next().size() + 1;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    // Removes the cached history of a search term, as a Search record of it was stored.
+    public synchronized void invalidate(String destination, long date, Integer nights) {
+        List<Search> previous = entries.remove(new Key(destination, date, nights));
+        if (previous != null) {
+            weight -= previous.size() + 1;
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized Double getHitRatio() {
+        return hits + misses > 0 ? hits / (double) (hits + misses) : 0.0;
+    }
+
+    public synchronized Integer getWeight() {
+        return weight;
+    }
+
+    // Returns a printable description of cache statistics.
+    public synchronized String describe() {
+        StringBuilder statisticsSB = new StringBuilder();
+        statisticsSB.append("Search history cache statistics:\n")
+                    .append("Entries -> ").append(entries.size()).append("\n")
+                    .append("Cached records -> ").append(weight - entries.size()).append(" (max ").append(maxWeight).append(")\n")
+                    .append("Hits -> ").append(hits).append("\n")
+                    .append("Misses -> ").append(misses).append("\n")
+                    .append("Hit ratio -> ").append(String.format("%.2f", getHitRatio())).append("\n")
+                    .append("Evictions -> ").append(evictions).append("\n");
+        return statisticsSB.toString();
+    }
+
+}
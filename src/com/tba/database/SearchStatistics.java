@@ -0,0 +1,72 @@
+// -------------------------------------------------------------
+//
+// This auxiliary class calculates the statistics of a finished
+// search, from the properties extracted from each TargetURL,
+// and generates the corresponding Search record.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.database;
+
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Property;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public class SearchStatistics {
+
+    private SearchStatistics() {}
+
+    // Calculates search statistics and generates a Search record.
+    public static Search calculate(String destination, Date date, Map<TargetURL, Map<String, Property>> propertiesPerTargetURL) {
+        return calculate(destination, date, 1, propertiesPerTargetURL);
+    }
+
+    // Calculates search statistics of a search with specific length of stay(nights) and generates a Search record.
+    public static Search calculate(String destination, Date date, Integer nights, Map<TargetURL, Map<String, Property>> propertiesPerTargetURL) {
+        return calculate(destination, date, nights, null, propertiesPerTargetURL);
+    }
+
+    // Calculates search statistics and generates a Search record, referencing the search pages archive key, if archived.
+    public static Search calculate(String destination, Date date, Integer nights, Long archiveKey, Map<TargetURL, Map<String, Property>> propertiesPerTargetURL) {
+        List<Property> properties = new ArrayList<>();
+        propertiesPerTargetURL.values().forEach(element -> properties.addAll(element.values()));
+        Search.Builder searchBuilder = new Search.Builder();
+        searchBuilder.withDestination(destination)
+                     .withDate(date)
+                     .withNights(nights)
+                     .withPropertiesFound(properties.size())
+                     .withTimestamp(new Date())
+                     .withArchiveKey(archiveKey);
+        if (properties.size() > 0) {
+            Long unavailableProperties = properties.stream().filter(p -> p.getPrice() == null).count();
+            Double scoreSum = properties.stream().filter(p -> p.getScore() != null).mapToDouble(Property::getScore).sum();
+            Double priceSum = properties.stream().filter(p -> p.getPrice() != null).mapToDouble(Property::getPrice).sum();
+            Double scoreMedian = scoreSum / properties.size();
+            Double priceMedian = priceSum / properties.size();
+            searchBuilder.withUnavailableProperties(unavailableProperties.intValue())
+                         .withScoreMedian(scoreMedian)
+                         .withPriceMedian(priceMedian);
+        }
+        return searchBuilder.build();
+    }
+
+    // Returns a printable description of a Search record statistics.
+    public static String describe(Search search) {
+        StringBuilder statisticsSB = new StringBuilder();
+        statisticsSB.append("Statistics:\n")
+                    .append("Properties found -> ").append(search.getPropertiesFound()).append("\n");
+        if (search.getPropertiesFound() > 0) {
+            statisticsSB.append("Unavailable Properties -> ").append(search.getUnavailableProperties()).append("\n")
+                        .append("Score Median -> ").append(String.format("%.2f", search.getScoreMedian())).append("\n")
+                        .append("Price Median -> ").append(String.format("%.2f", search.getPriceMedian())).append("\n");
+        }
+        return statisticsSB.toString();
+    }
+
+}
@@ -0,0 +1,174 @@
+// -------------------------------------------------------------
+//
+// This is the Database Adapter of sharded storage. Search, property
+// snapshot and rollup records are partitioned by destination across
+// 'tba-shard-<n>.db' shard Databases, so searches of different
+// destinations are stored concurrently, each shard with its own
+// connection and writer lock.
+// A destination shard is the String hash of the destination modulo
+// the shard count, so all records of a destination are in one shard
+// and destination queries are answered by that shard alone.
+// Queries across destinations are sent to all shards in parallel and
+// their results merged. Crawl jobs are queued in tba.db, shared by
+// the distributed crawl processes.
+// Shards are created with the same schema migrations as tba.db and
+// share one search history cache, as each destination is in one shard.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.database;
+
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Property;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+public class ShardedDatabaseAdapter extends DatabaseAdapter {
+
+    private static final Logger logger = Logger.getLogger(ShardedDatabaseAdapter.class.getName());
+    private final List<DatabaseAdapter> shards = new ArrayList<>();
+    private final ExecutorService fanOutExecutor; // Executes the queries sent to all shards.
+
+    // Sharded storage initialization method, sharing the tba.db connection of the provided adapter.
+    ShardedDatabaseAdapter(DatabaseAdapter primary, Integer shardCount) {
+        super(primary);
+        for (int shard = 0; shard < shardCount; shard++) {
+            shards.add(new DatabaseAdapter("tba-shard-" + shard + ".db", getSearchHistoryCache()));
+        }
+        fanOutExecutor = Executors.newFixedThreadPool(shardCount, runnable -> {
+            Thread thread = new Thread(runnable, "database-shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logger.info("Database is sharded in " + shardCount + " shards.");
+    }
+
+    // Database connections termination method. Shards are closed before tba.db, which describes their shared cache.
+    @Override
+    public void closeDatabase() {
+        closeShards();
+        super.closeDatabase();
+    }
+
+    void closeShards() {
+        fanOutExecutor.shutdownNow();
+        shards.forEach(DatabaseAdapter::closeConnection);
+    }
+
+    @Override
+    public Boolean insertSearch(Search search) {
+        return shardOf(search.getDestination()).insertSearch(search);
+    }
+
+    // Updates Search records in their shards in parallel. Each shard updates its records and rebuilds its rollups in its own transaction.
+    @Override
+    public Boolean updateSearchStatistics(Collection<Search> searches) {
+        Map<DatabaseAdapter, List<Search>> searchesPerShard = searches.stream().collect(Collectors.groupingBy(search -> shardOf(search.getDestination())));
+        return fanOut(searchesPerShard.keySet(), shard -> shard.updateSearchStatistics(searchesPerShard.get(shard)))
+                   .stream()
+                   .allMatch(Boolean.TRUE::equals);
+    }
+
+    // Archive keys are unique, so the record of the first shard storing one is returned.
+    @Override
+    public Search retrieveArchivedSearch(Long archiveKey) {
+        return fanOut(shards, shard -> shard.retrieveArchivedSearch(archiveKey))
+                   .stream()
+                   .filter(Objects::nonNull)
+                   .findFirst()
+                   .orElse(null);
+    }
+
+    @Override
+    public List<Search> retrieveSearchTermList(String destination, Date date, Integer nights) {
+        return shardOf(destination).retrieveSearchTermList(destination, date, nights);
+    }
+
+    @Override
+    public List<Search> retrieveSearchRangeList(String destination, LocalDate firstDate, LocalDate lastDate) {
+        return shardOf(destination).retrieveSearchRangeList(destination, firstDate, lastDate);
+    }
+
+    @Override
+    public void insertPropertySnapshots(String destination, Date date, Integer nights, Map<TargetURL, List<Property>> propertiesPerTargetURL, Date timestamp) {
+        shardOf(destination).insertPropertySnapshots(destination, date, nights, propertiesPerTargetURL, timestamp);
+    }
+
+    @Override
+    public Map<TargetURL, Map<String, Property>> retrieveLatestPropertySnapshots(String destination, Date date, Integer nights) {
+        return shardOf(destination).retrieveLatestPropertySnapshots(destination, date, nights);
+    }
+
+    @Override
+    public List<Trend> retrieveWeeklyTrends(String destination) {
+        return shardOf(destination).retrieveWeeklyTrends(destination);
+    }
+
+    @Override
+    public List<Trend> retrieveDailyTrends(String destination) {
+        return shardOf(destination).retrieveDailyTrends(destination);
+    }
+
+    // Each shard returns its top price changes and the largest ones of all shards are kept.
+    @Override
+    public List<Trend> retrieveTopPriceChanges(Integer limit) {
+        return fanOut(shards, shard -> shard.retrieveTopPriceChanges(limit))
+                   .stream()
+                   .filter(Objects::nonNull)
+                   .flatMap(List::stream)
+                   .sorted(Comparator.comparingDouble((Trend trend) -> Math.abs(trend.getPriceChange())).reversed())
+                   .limit(limit)
+                   .collect(Collectors.toList());
+    }
+
+    // Copies the tba.db records of the provided destinations to their shards, each shard in parallel.
+    // Returns false if any shard failed.
+    Boolean importShards(List<String> destinations) {
+        long startTime = System.nanoTime();
+        Map<DatabaseAdapter, List<String>> destinationsPerShard = destinations.stream().collect(Collectors.groupingBy(this::shardOf));
+        List<Integer> searchesPerShard = fanOut(shards, shard -> shard.importRecords(PRIMARY_FILE, destinationsPerShard.getOrDefault(shard, Collections.emptyList())));
+        if (searchesPerShard.contains(null)) {
+            return false;
+        }
+        logger.info(searchesPerShard.stream().mapToInt(Integer::intValue).sum() + " searches of " + destinations.size() + " destinations moved from "
+                    + PRIMARY_FILE + " to " + shards.size() + " shards in " + (System.nanoTime() - startTime) / 1_000_000 + " ms.");
+        return true;
+    }
+
+    // Retrieves the shard of a destination.
+    private DatabaseAdapter shardOf(String destination) {
+        return shards.get(Math.floorMod(Objects.hashCode(destination), shards.size()));
+    }
+
+    // Executes a query on each provided shard in parallel and returns their results, in shard order.
+    // Result of a shard whose query failed is null.
+    private <T> List<T> fanOut(Collection<DatabaseAdapter> queriedShards, Function<DatabaseAdapter, T> query) {
+        List<Future<T>> futures = queriedShards.stream()
+                                               .map(shard -> fanOutExecutor.submit(() -> query.apply(shard)))
+                                               .collect(Collectors.toList());
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                logger.info("Shard query could not be executed. Exception thrown: " + e.getCause().getMessage());
+                results.add(null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+}
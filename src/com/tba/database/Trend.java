@@ -0,0 +1,128 @@
+// -------------------------------------------------------------
+//
+// This is the Trend Structure used by the application, answering
+// historical trend queries from the rollup tables.
+// Trend data: Destination, Period, Searches, Price Average,
+// Availability Ratio, First Price, Last Price.
+// Period is the day or the first day(Monday) of the week the
+// searches were executed, or null for destination trends.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.database;
+
+import java.time.LocalDate;
+
+public class Trend {
+
+    private String destination;
+    private LocalDate period;
+    private Integer searches;
+    private Double priceAverage;
+    private Double availabilityRatio;
+    private Double firstPrice;
+    private Double lastPrice;
+
+    public static class Builder {
+
+        private String destination;
+        private LocalDate period;
+        private Integer searches;
+        private Double priceAverage;
+        private Double availabilityRatio;
+        private Double firstPrice;
+        private Double lastPrice;
+
+        public Builder() {}
+
+        public Trend.Builder withDestination(String destination) {
+            this.destination = destination;
+            return this;
+        }
+
+        public Trend.Builder withPeriod(LocalDate period) {
+            this.period = period;
+            return this;
+        }
+
+        public Trend.Builder withSearches(Integer searches) {
+            this.searches = searches;
+            return this;
+        }
+
+        public Trend.Builder withPriceAverage(Double priceAverage) {
+            this.priceAverage = priceAverage;
+            return this;
+        }
+
+        public Trend.Builder withAvailabilityRatio(Double availabilityRatio) {
+            this.availabilityRatio = availabilityRatio;
+            return this;
+        }
+
+        public Trend.Builder withFirstPrice(Double firstPrice) {
+            this.firstPrice = firstPrice;
+            return this;
+        }
+
+        public Trend.Builder withLastPrice(Double lastPrice) {
+            this.lastPrice = lastPrice;
+            return this;
+        }
+
+        public Trend build() {
+            Trend trend = new Trend();
+            trend.destination = this.destination;
+            trend.period = this.period;
+            trend.searches = this.searches;
+            trend.priceAverage = this.priceAverage;
+            trend.availabilityRatio = this.availabilityRatio;
+            trend.firstPrice = this.firstPrice;
+            trend.lastPrice = this.lastPrice;
+            return trend;
+        }
+    }
+
+    public Trend() {}
+
+    public String getDestination() {
+        return destination;
+    }
+
+    public LocalDate getPeriod() {
+        return period;
+    }
+
+    public Integer getSearches() {
+        return searches;
+    }
+
+    // Average of searches price medians, or null if no search found available properties.
+    public Double getPriceAverage() {
+        return priceAverage;
+    }
+
+    // Available properties share of all found properties, or null if no properties were found.
+    public Double getAvailabilityRatio() {
+        return availabilityRatio;
+    }
+
+    public Double getFirstPrice() {
+        return firstPrice;
+    }
+
+    public Double getLastPrice() {
+        return lastPrice;
+    }
+
+    // Relative change between first and last price median, or null if unknown.
+    public Double getPriceChange() {
+        if (firstPrice == null || lastPrice == null || firstPrice <= 0) {
+            return null;
+        }
+        return (lastPrice - firstPrice) / firstPrice;
+    }
+
+}
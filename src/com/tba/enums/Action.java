@@ -18,7 +18,10 @@ public enum Action {
     STATISTICS(3, "3 -> Show statistics of a Search Term.\n", "retrieveSearchTermStatistics"),
     EXPORT_LAST_SEARCH(4, "4 -> Export last search results.\n", "exportLastSearchProperties"),
     EXPORT_SEARCH_TERM_STATISTICS(5, "5 -> Export statistics of a Search Term.\n", "exportSearchTermStatistics"),
-    QUIT(6, "6 -> Terminates the application.\n", null);
+    QUIT(6, "6 -> Terminates the application.\n", null),
+    SWEEP_SEARCH(7, "7 -> Start sweep search over a Date range and lengths of stay.\n", "startSweepSearch"),
+    TRENDS(8, "8 -> Show price and availability trends of a Destination.\n", "retrieveDestinationTrends"),
+    QUERY_LAST_SEARCH(9, "9 -> Query last search results by price and score.\n", "queryLastSearchProperties");
 
     private final Integer value;
     private final String description;
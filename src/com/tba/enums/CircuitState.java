@@ -0,0 +1,27 @@
+// -------------------------------------------------------------
+//
+// Each CircuitState enum represents a state of a TargetURL circuit
+// breaker.
+// CircuitState data: Description.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.enums;
+
+public enum CircuitState {
+    CLOSED("Page requests are executed."),
+    OPEN("Target failed consecutively. Page requests are rejected until a probe is allowed."),
+    HALF_OPEN("A single probe request is executed, to check if target recovered.");
+
+    private final String description;
+
+    CircuitState(final String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
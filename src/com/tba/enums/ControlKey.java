@@ -1,7 +1,8 @@
 // -------------------------------------------------------------
 //
 // Each ControlKey enum represents a keyboard key the user can
-// submit during search, to pause, resume or stop the execution.
+// submit during search, to pause, resume or stop the execution,
+// or to print its progress status.
 // ControlKey data: Key.
 //
 // Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
@@ -13,7 +14,8 @@ package com.tba.enums;
 public enum ControlKey {
     PAUSE("p"),
     RESUME("r"),
-    STOP("s");
+    STOP("s"),
+    STATUS("i");
 
     private final String key;
 
@@ -0,0 +1,28 @@
+// -------------------------------------------------------------
+//
+// Each EndOfResults enum represents how the site simulator
+// answers a page requested beyond the last generated property,
+// as real targets differ in how they signal the end of results.
+// EndOfResults data: Description.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.enums;
+
+public enum EndOfResults {
+    EMPTY("A results page without properties is returned."),
+    REPEAT("The last results page is returned again."),
+    NOT_FOUND("HttpStatus 404 is returned.");
+
+    private final String description;
+
+    EndOfResults(final String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
@@ -0,0 +1,34 @@
+// -------------------------------------------------------------
+//
+// Each JobStatus enum represents a state of a crawl job of the
+// distributed crawl mode. A crawl job is the search of a search
+// term on a single TargetURL.
+// JobStatus data: Description.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.enums;
+
+public enum JobStatus {
+    PENDING("Job is waiting to be claimed by a worker."),
+    LEASED("Job is claimed by a worker, until its lease expires."),
+    DONE("Job finished and its properties have been stored."),
+    FAILED("Job exceeded its maximum attempts.");
+
+    private final String description;
+
+    JobStatus(final String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    // Checks if job reached a final state.
+    public Boolean isTerminal() {
+        return this == DONE || this == FAILED;
+    }
+}
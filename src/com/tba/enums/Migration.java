@@ -0,0 +1,46 @@
+// -------------------------------------------------------------
+//
+// Each Migration enum represents a Database schema version.
+// Method attribute refers to DatabaseAdapter.class methods (code)
+// that each Migration triggers, using reflection, to migrate the
+// schema from the previous version.
+// Migrations are applied in order and recorded in 'SCHEMA_VERSION'
+// table, so each one is applied once per Database.
+// Migration data: Version, Description and Method.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.enums;
+
+public enum Migration {
+    BASELINE(1, "Create searches and property snapshots tables.", "migrateBaseline"),
+    EPOCH_COLUMNS(2, "Store dates as epoch days and timestamps as epoch milliseconds, with indexes.", "migrateEpochColumns"),
+    ROLLUPS(3, "Create day, week and destination rollup tables.", "migrateRollups"),
+    CRAWL_JOBS(4, "Create crawl jobs queue and job properties tables.", "migrateCrawlJobs"),
+    ARCHIVE_KEYS(5, "Add page archive key to searches.", "migrateArchiveKeys"),
+    SHARD_LAYOUT(6, "Create shard layout table.", "migrateShardLayout");
+
+    private final Integer version;
+    private final String description;
+    private final String method;
+
+    Migration(Integer version, String description, String method) {
+        this.version = version;
+        this.description = description;
+        this.method = method;
+    }
+
+    public Integer getVersion() {
+        return this.version;
+    }
+
+    public String getDescription() {
+        return this.description;
+    }
+
+    public String getMethod() {
+        return this.method;
+    }
+}
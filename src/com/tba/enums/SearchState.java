@@ -0,0 +1,28 @@
+// -------------------------------------------------------------
+//
+// Each SearchState enum represents a state of a SearchRunnable,
+// as published in its progress snapshots.
+// SearchState data: Description.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.enums;
+
+public enum SearchState {
+    RUNNING("Search is retrieving pages."),
+    PAUSED("Search is paused."),
+    COMPLETED("Search reached target's last page."),
+    STOPPED("Search was stopped before target's last page.");
+
+    private final String description;
+
+    SearchState(final String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
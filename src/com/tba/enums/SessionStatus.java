@@ -0,0 +1,33 @@
+// -------------------------------------------------------------
+//
+// Each SessionStatus enum represents a state of a search session
+// of the service mode.
+// SessionStatus data: Description.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.enums;
+
+public enum SessionStatus {
+    RUNNING("Search is running."),
+    STOPPED("Search was stopped. Its progress has been saved and it will resume on next search of these terms."),
+    FINISHED("Search finished and its statistics have been stored."),
+    FAILED("Search failed.");
+
+    private final String description;
+
+    SessionStatus(final String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    // Checks if session reached a final state.
+    public Boolean isTerminal() {
+        return this != RUNNING;
+    }
+}
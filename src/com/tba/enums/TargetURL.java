@@ -2,9 +2,19 @@
 //
 // Each TargetURL enum represents a web site, the application
 // communicates with, to extract properties data for each search.
-// Method attribute refers to SiteParser.class methods (code) that
-// each TargetURL triggers, using reflection.
-// Action data: Url,  SiteParser Method.
+// Method attributes refer to SiteParser.class methods (code) that
+// each TargetURL triggers, using reflection: the fetch method retrieves
+// a page and the parser method extracts its properties, so they are
+// executed by different SearchPipeline stages.
+// Connections and Request Interval attributes define the budget
+// shared by all concurrent searches on the same target.
+// Page Size attribute defines the fixed results offset between pages,
+// or 0 if target pages are not offset based.
+// Max Page Bytes attribute defines the decoded body size after which a
+// page retrieval is aborted.
+// Base Url attribute defines the scheme and host search urls are
+// created with, so searches can target a local site simulator.
+// Action data: Url,  SiteParser Fetch Method, SiteParser Method, Connections, Request Interval(ms), Page Size, Max Page Bytes, Base Url.
 //
 // Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
 //
@@ -13,24 +23,65 @@
 package com.tba.enums;
 
 public enum TargetURL {
-    AIRBNB("airbnb.gr", "parseAirbnbPage"),
-    BOOKING("booking.com", "parseBookingPage"),
-    HOTELS("hotels.com", "parseHotelsPage"),
-    HOTELS_SCANNER("hotels-scanner.com", "parseHotelsScannerPage");
+    AIRBNB("airbnb.gr", "fetchAirbnbPage", "parseAirbnbPage", 4, 250, 20, 5_000_000, "https://www.airbnb.gr"),
+    BOOKING("booking.com", "fetchBookingPage", "parseBookingPage", 4, 250, 25, 5_000_000, "https://www.booking.com"),
+    HOTELS("hotels.com", "fetchHotelsPage", "parseHotelsPage", 4, 250, 0, 5_000_000, "https://el.hotels.com"),
+    HOTELS_SCANNER("hotels-scanner.com", "fetchHotelsScannerPage", "parseHotelsScannerPage", 2, 1000, 0, 2_000_000, "https://www.hotels-scanner.com");
 
     private final String url;
+    private final String siteFetchMethod;
     private final String siteParserMethod;
+    private final Integer connections;
+    private final Integer requestInterval;
+    private final Integer pageSize;
+    private final Integer maxPageBytes;
+    private final String baseURL;
 
-    TargetURL(final String url, final String siteParserMethod) {
+    TargetURL(final String url, final String siteFetchMethod, final String siteParserMethod, final Integer connections, final Integer requestInterval, final Integer pageSize, final Integer maxPageBytes, final String baseURL) {
         this.url = url;
+        this.siteFetchMethod = siteFetchMethod;
         this.siteParserMethod = siteParserMethod;
+        this.connections = connections;
+        this.requestInterval = requestInterval;
+        this.pageSize = pageSize;
+        this.maxPageBytes = maxPageBytes;
+        this.baseURL = baseURL;
     }
 
     public String getURL() {
         return url;
     }
 
+    public String getSiteFetchMethod() {
+        return siteFetchMethod;
+    }
+
     public String getSiteParserMethod() {
         return siteParserMethod;
     }
+
+    // Results offset between pages, overridable by 'tba.<target>.pageSize' system property.
+    public Integer getPageSize() {
+        return Integer.getInteger("tba." + name().toLowerCase() + ".pageSize", pageSize);
+    }
+
+    // Maximum concurrent connections, overridable by 'tba.<target>.connections' system property.
+    public Integer getConnections() {
+        return Integer.getInteger("tba." + name().toLowerCase() + ".connections", connections);
+    }
+
+    // Minimum interval between requests, overridable by 'tba.<target>.requestInterval' system property.
+    public Integer getRequestInterval() {
+        return Integer.getInteger("tba." + name().toLowerCase() + ".requestInterval", requestInterval);
+    }
+
+    // Maximum decoded bytes of a page body, overridable by 'tba.<target>.maxPageBytes' system property.
+    public Integer getMaxPageBytes() {
+        return Integer.getInteger("tba." + name().toLowerCase() + ".maxPageBytes", maxPageBytes);
+    }
+
+    // Scheme and host of search urls, overridable by 'tba.<target>.baseUrl' system property, e.g. a local site simulator.
+    public String getBaseURL() {
+        return System.getProperty("tba." + name().toLowerCase() + ".baseUrl", baseURL);
+    }
 }
@@ -0,0 +1,102 @@
+// -------------------------------------------------------------
+//
+// This auxiliary class is used by the application to export
+// search results to .txt files in the exports folder.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.exports;
+
+import com.tba.database.Search;
+import com.tba.enums.TargetURL;
+import com.tba.index.PropertyIndex;
+import com.tba.parsing.Property;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public class SearchExporter {
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private SearchExporter() {}
+
+    // Exports a search results to a .txt file and returns the created file name.
+    public static String exportSearchProperties(Search search, Map<TargetURL, Map<String, Property>> propertiesPerTargetURL) throws IOException {
+        initializeExportFolder();
+        StringBuilder exportSB = new StringBuilder();
+        exportSB.append("Search export for terms:\n")
+                .append("Destination -> ").append(search.getDestination()).append(", ")
+                .append("Date -> ").append(formatDate(search.getDate())).append("\n")
+                .append("Statistics:\n")
+                .append("Properties found -> ").append(search.getPropertiesFound()).append(", ")
+                .append("Unavailable Properties -> ").append(search.getUnavailableProperties()).append(", ")
+                .append("Score Median -> ").append(String.format("%.2f", search.getScoreMedian())).append(", ")
+                .append("Price Median -> ").append(String.format("%.2f", search.getPriceMedian())).append("\n");
+        propertiesPerTargetURL.keySet().forEach(key -> {
+            exportSB.append("Properties found in ").append(key.getURL()).append(":\n");
+            propertiesPerTargetURL.get(key).values().forEach(property -> {
+                exportSB.append("Name -> ").append(property.getName()).append(", ")
+                        .append("Score -> ").append(property.getScore()).append(", ")
+                        .append("Price -> ").append(property.getPrice()).append("\n");
+            });
+        });
+        String fileName = "search_"+ search.getTimestamp().getTime() + "_export.txt";
+        writeExportFile(fileName, exportSB);
+        return fileName;
+    }
+
+    // Exports the results of a query over a search property index to a .txt file and returns the created file name.
+    public static String exportPropertyQuery(Search search, String queryDescription, List<PropertyIndex.Result> results) throws IOException {
+        StringBuilder exportSB = new StringBuilder();
+        exportSB.append("Search query export for terms:\n")
+                .append("Destination -> ").append(search.getDestination()).append(", ")
+                .append("Date -> ").append(formatDate(search.getDate())).append("\n")
+                .append("Query -> ").append(queryDescription).append("\n")
+                .append("Results -> ").append(results.size()).append("\n");
+        appendPropertyQueryResults(exportSB, results);
+        String fileName = "search_" + search.getTimestamp().getTime() + "_query_" + new Date().getTime() + "_export.txt";
+        writeExportFile(fileName, exportSB);
+        return fileName;
+    }
+
+    // Appends query results to provided StringBuilder, one property per line.
+    public static void appendPropertyQueryResults(StringBuilder resultsSB, List<PropertyIndex.Result> results) {
+        results.forEach(result -> resultsSB.append(result.getTargetURL().getURL()).append(": ")
+                                           .append("Name -> ").append(result.getProperty().getName()).append(", ")
+                                           .append("Score -> ").append(result.getProperty().getScore()).append(", ")
+                                           .append("Price -> ").append(result.getProperty().getPrice()).append("\n"));
+    }
+
+    // Writes provided content to a file in exports folder.
+    public static void writeExportFile(String fileName, CharSequence content) throws IOException {
+        initializeExportFolder();
+        try (Writer writer = new FileWriter("exports/" + fileName)) {
+            writer.append(content);
+            writer.flush();
+        }
+    }
+
+    // Initializes export folder.
+    public static synchronized void initializeExportFolder() throws IOException {
+        File exportFolder = new File("exports");
+        if (!exportFolder.exists() && !exportFolder.mkdir()) {
+            throw new IOException("Export folder could not be accessed.");
+        }
+    }
+
+    // Formats a date in 'dd/MM/yyyy' format.
+    public static String formatDate(Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().format(formatter);
+    }
+
+}
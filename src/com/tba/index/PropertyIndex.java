@@ -0,0 +1,261 @@
+// -------------------------------------------------------------
+//
+// This class indexes the available properties of a completed
+// search, so top-K and range queries don't scan all properties.
+// Properties are held in price order, with their prices and scores
+// in primitive arrays. A secondary index buckets property positions
+// by integer score (0-10), each bucket in price order, so price
+// ranges within a score range are found by binary search in each
+// bucket and merged in price order. A score ordered array answers
+// best rated queries without a price bound. With a price bound, the
+// cheaper prefix of each score bucket is found by binary search and
+// buckets are visited from the highest score, keeping the best
+// properties in a bounded heap, until a bucket fills it.
+// Index is immutable, built once per completed search.
+// Unavailable properties(without price) are counted but not indexed.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.index;
+
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Property;
+
+import java.util.*;
+
+public class PropertyIndex {
+
+    private static final Integer MAX_SCORE_BUCKET = 10; // Scores are bucketed by integer part, scores above 10 in the last bucket.
+    private final Property[] properties; // Available properties, in price order.
+    private final TargetURL[] targetURLs; // TargetURL of each property.
+    private final double[] prices; // Ascending.
+    private final double[] scores; // NaN if property has no score.
+    private final int[][] scoreBuckets; // Positions of properties of each score bucket, ascending(price order).
+    private final int[] scoreOrder; // Positions of scored properties, by score descending and price ascending.
+    private final Integer unavailableProperties;
+
+    // Query result: an indexed property and its TargetURL.
+    public static class Result {
+
+        private final TargetURL targetURL;
+        private final Property property;
+
+        private Result(TargetURL targetURL, Property property) {
+            this.targetURL = targetURL;
+            this.property = property;
+        }
+
+        public TargetURL getTargetURL() {
+            return targetURL;
+        }
+
+        public Property getProperty() {
+            return property;
+        }
+    }
+
+    private PropertyIndex(Property[] properties, TargetURL[] targetURLs, Integer unavailableProperties) {
+        this.properties = properties;
+        this.targetURLs = targetURLs;
+        this.unavailableProperties = unavailableProperties;
+        this.prices = new double[properties.length];
+        this.scores = new double[properties.length];
+        int[] bucketSizes = new int[MAX_SCORE_BUCKET + 1];
+        int scoredCount = 0;
+        for (int i = 0; i < properties.length; i++) {
+            prices[i] = properties[i].getPrice();
+            scores[i] = properties[i].getScore() != null ? properties[i].getScore() : Double.NaN;
+            if (!Double.isNaN(scores[i])) {
+                bucketSizes[bucketOf(scores[i])]++;
+                scoredCount++;
+            }
+        }
+        this.scoreBuckets = new int[MAX_SCORE_BUCKET + 1][];
+        for (int bucket = 0; bucket <= MAX_SCORE_BUCKET; bucket++) {
+            scoreBuckets[bucket] = new int[bucketSizes[bucket]];
+            bucketSizes[bucket] = 0;
+        }
+        Integer[] scorePositions = new Integer[scoredCount];
+        for (int i = 0, j = 0; i < properties.length; i++) {
+            if (!Double.isNaN(scores[i])) {
+                int bucket = bucketOf(scores[i]);
+                scoreBuckets[bucket][bucketSizes[bucket]++] = i;
+                scorePositions[j++] = i;
+            }
+        }
+        // Positions are in price order, so a stable sort keeps cheaper properties first on equal scores.
+        Arrays.sort(scorePositions, (a, b) -> Double.compare(scores[b], scores[a]));
+        this.scoreOrder = Arrays.stream(scorePositions).mapToInt(Integer::intValue).toArray();
+    }
+
+    // Builds the index of a completed search extracted properties.
+    public static PropertyIndex build(Map<TargetURL, Map<String, Property>> propertiesPerTargetURL) {
+        List<Result> available = new ArrayList<>();
+        Integer unavailableProperties = 0;
+        for (Map.Entry<TargetURL, Map<String, Property>> entry : propertiesPerTargetURL.entrySet()) {
+            for (Property property : entry.getValue().values()) {
+                if (property.getPrice() == null) {
+                    unavailableProperties++;
+                } else {
+                    available.add(new Result(entry.getKey(), property));
+                }
+            }
+        }
+        available.sort(Comparator.comparingDouble(result -> result.getProperty().getPrice()));
+        Property[] properties = new Property[available.size()];
+        TargetURL[] targetURLs = new TargetURL[available.size()];
+        for (int i = 0; i < available.size(); i++) {
+            properties[i] = available.get(i).getProperty();
+            targetURLs[i] = available.get(i).getTargetURL();
+        }
+        return new PropertyIndex(properties, targetURLs, unavailableProperties);
+    }
+
+    // Number of indexed(available) properties.
+    public Integer size() {
+        return properties.length;
+    }
+
+    public Integer getUnavailableProperties() {
+        return unavailableProperties;
+    }
+
+    // Returns up to limit cheapest properties with score at least minScore and price up to maxPrice.
+    // Null bounds are not applied.
+    public List<Result> cheapest(Integer limit, Double minScore, Double maxPrice) {
+        return range(null, maxPrice, minScore, null, limit);
+    }
+
+    // Returns up to limit best rated properties with price up to maxPrice, cheaper first on equal scores.
+    // Properties without score are not returned. Null bound is not applied.
+    public List<Result> bestRated(Integer limit, Double maxPrice) {
+        List<Result> results = new ArrayList<>();
+        if (limit <= 0) {
+            return results;
+        }
+        if (maxPrice == null) {
+            for (int i = 0; i < scoreOrder.length && results.size() < limit; i++) {
+                results.add(result(scoreOrder[i]));
+            }
+            return results;
+        }
+        int to = upperBound(prices, maxPrice);
+        // Worst kept property first: lower score, or higher price(position) on equal scores.
+        Comparator<Integer> bestFirst = (a, b) -> scores[a] != scores[b] ? Double.compare(scores[b], scores[a]) : Integer.compare(a, b);
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit, bestFirst.reversed());
+        for (int bucket = MAX_SCORE_BUCKET; bucket >= 0; bucket--) {
+            // Scores of lower buckets are lower than the scores of this bucket, so a full heap is final.
+            if (best.size() == limit) {
+                break;
+            }
+            int end = lowerBound(scoreBuckets[bucket], to);
+            for (int i = 0; i < end; i++) {
+                best.add(scoreBuckets[bucket][i]);
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        best.stream().sorted(bestFirst).forEach(position -> results.add(result(position)));
+        return results;
+    }
+
+    // Returns up to limit properties within the price and score ranges (inclusive), in price order.
+    // Null bounds are not applied. When a score bound is applied, properties without score are not returned.
+    public List<Result> range(Double minPrice, Double maxPrice, Double minScore, Double maxScore, Integer limit) {
+        List<Result> results = new ArrayList<>();
+        int from = minPrice == null ? 0 : lowerBound(prices, minPrice);
+        int to = maxPrice == null ? prices.length : upperBound(prices, maxPrice);
+        if (minScore == null && maxScore == null) {
+            for (int i = from; i < to && results.size() < limit; i++) {
+                results.add(result(i));
+            }
+            return results;
+        }
+        double minScoreBound = minScore != null ? minScore : Double.NEGATIVE_INFINITY;
+        double maxScoreBound = maxScore != null ? maxScore : Double.POSITIVE_INFINITY;
+        if (minScoreBound > maxScoreBound) {
+            return results;
+        }
+        // Price range of each overlapping score bucket is found by binary search.
+        // Bucket cursors are merged by position, which is price order.
+        PriorityQueue<int[]> cursors = new PriorityQueue<>(Comparator.comparingInt(cursor -> scoreBuckets[cursor[0]][cursor[1]])); // {bucket, index, end}
+        int firstBucket = minScore != null ? bucketOf(Math.max(0, minScoreBound)) : 0;
+        int lastBucket = maxScore != null ? bucketOf(Math.max(0, maxScoreBound)) : MAX_SCORE_BUCKET;
+        for (int bucket = firstBucket; bucket <= lastBucket; bucket++) {
+            int start = lowerBound(scoreBuckets[bucket], from);
+            int end = lowerBound(scoreBuckets[bucket], to);
+            if (start < end) {
+                cursors.add(new int[] {bucket, start, end});
+            }
+        }
+        while (!cursors.isEmpty() && results.size() < limit) {
+            int[] cursor = cursors.poll();
+            int position = scoreBuckets[cursor[0]][cursor[1]];
+            // Only boundary buckets may contain scores outside the range.
+            if (scores[position] >= minScoreBound && scores[position] <= maxScoreBound) {
+                results.add(result(position));
+            }
+            if (++cursor[1] < cursor[2]) {
+                cursors.add(cursor);
+            }
+        }
+        return results;
+    }
+
+    private Result result(int position) {
+        return new Result(targetURLs[position], properties[position]);
+    }
+
+    private static int bucketOf(double score) {
+        return (int) Math.min(MAX_SCORE_BUCKET, Math.max(0, Math.floor(score)));
+    }
+
+    // First index with value >= key.
+    private static int lowerBound(double[] values, double key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // First index with value > key.
+    private static int upperBound(double[] values, double key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // First index with value >= key.
+    private static int lowerBound(int[] values, int key) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,141 @@
+// -------------------------------------------------------------
+//
+// This auxiliary class extracts prices and scores from element
+// texts, e.g. "€ 1,234.50", "1.234 €", "Price:€45" or "8,6/10".
+// Text is scanned once for number tokens (digits and separators),
+// skipping currency symbols and other text, without creating
+// intermediate Strings or throwing exceptions. Missing numbers are
+// returned as NaN.
+// Decimal separator is defined by the site locale, '.' or ','.
+// When both separators appear in a number, the last one is the
+// decimal separator. A single separator different from the locale
+// one, followed by exactly 3 digits, is a thousands separator.
+// Non-breaking spaces and apostrophes, e.g. Swiss "1’234.50", are
+// thousands separators.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.parsing;
+
+public class NumberExtractor {
+
+    public static final NumberExtractor POINT_DECIMAL = new NumberExtractor('.'); // e.g. English sites: 1,234.50
+    public static final NumberExtractor COMMA_DECIMAL = new NumberExtractor(','); // e.g. Greek sites: 1.234,50
+    private static final int MAX_DIGITS = 18; // Digits fitting in a long mantissa.
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+    private final char decimalSeparator;
+
+    public NumberExtractor(char decimalSeparator) {
+        this.decimalSeparator = decimalSeparator;
+    }
+
+    // Returns the first number of the text, or NaN if text contains no valid number.
+    public double first(CharSequence text) {
+        return extract(text, false);
+    }
+
+    // Returns the last number of the text, e.g. the discounted price after the original one, or NaN.
+    public double last(CharSequence text) {
+        return extract(text, true);
+    }
+
+    // Returns the first number of the text as a score out of 10, given the site score scale(e.g. 5 or 10).
+    // NaN is returned if text contains no number or it exceeds the scale.
+    public double score(CharSequence text, double scale) {
+        double value = first(text);
+        return value >= 0 && value <= scale ? value * 10 / scale : Double.NaN;
+    }
+
+    // Scans number tokens of the text and returns the first or the last valid one.
+    private double extract(CharSequence text, boolean last) {
+        if (text == null) {
+            return Double.NaN;
+        }
+        double result = Double.NaN;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            if (!isDigit(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            // Token spans digits and separators followed by a digit.
+            int start = i;
+            int end = i + 1;
+            while (end < length && (isDigit(text.charAt(end)) || (isSeparator(text.charAt(end)) && end + 1 < length && isDigit(text.charAt(end + 1))))) {
+                end++;
+            }
+            double value = parseToken(text, start, end);
+            if (!Double.isNaN(value)) {
+                if (!last) {
+                    return value;
+                }
+                result = value;
+            }
+            i = end;
+        }
+        return result;
+    }
+
+    // Parses a token starting and ending with a digit. NaN is returned if it's not a valid number.
+    private double parseToken(CharSequence text, int start, int end) {
+        int lastPoint = -1;
+        int lastComma = -1;
+        int points = 0;
+        int commas = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                lastPoint = i;
+                points++;
+            } else if (c == ',') {
+                lastComma = i;
+                commas++;
+            }
+        }
+        int decimalPosition = -1;
+        if (points > 0 && commas > 0) {
+            // Last separator is the decimal one, if it appears once.
+            decimalPosition = Math.max(lastPoint, lastComma);
+            if ((decimalPosition == lastPoint ? points : commas) > 1) {
+                return Double.NaN;
+            }
+        } else if (points + commas == 1) {
+            int position = Math.max(lastPoint, lastComma);
+            boolean groupingLike = end - position - 1 == 3;
+            if (text.charAt(position) == decimalSeparator || !groupingLike) {
+                decimalPosition = position;
+            }
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (isDigit(c)) {
+                if (digits == 0 && c == '0' && (decimalPosition < 0 || i < decimalPosition)) {
+                    continue; // Leading zeros don't count as digits.
+                }
+                if (++digits > MAX_DIGITS) {
+                    return Double.NaN;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (decimalPosition >= 0 && i > decimalPosition) {
+                    fractionDigits++;
+                }
+            }
+        }
+        return mantissa / POWERS_OF_TEN[fractionDigits];
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == '.' || c == ',' || c == '\u00A0' || c == '\u202F' || c == '\'' || c == '\u2019';
+    }
+
+}
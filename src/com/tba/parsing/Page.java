@@ -0,0 +1,106 @@
+// -------------------------------------------------------------
+//
+// This is the Page Structure used by the application.
+// Page data: Url, decoded Body bytes, Charset, Cookies, Content
+// Encoding, Bytes transferred and Bytes decoded.
+// Body is kept as decoded bytes and parsed directly from them,
+// without an intermediate String copy.
+// A Page shared by coalesced retrievals keeps the properties of its
+// first parse, so the other searches sharing it reuse them.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.parsing;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+
+public class Page {
+
+    private final String url;
+    private final byte[] body;
+    private final Integer length;
+    private final Charset charset;
+    private final Map<String, String> cookies;
+    private final String contentEncoding;
+    private final long bytesTransferred;
+    private List<Property> properties = null; // Properties of the first parse, or null if page was not parsed.
+    private Integer totalResults = null; // Total results count extracted by the first parse of a first page.
+
+    public Page(String url, byte[] body, Integer length, Charset charset, Map<String, String> cookies, String contentEncoding, long bytesTransferred) {
+        this.url = url;
+        this.body = body;
+        this.length = length;
+        this.charset = charset;
+        this.cookies = cookies;
+        this.contentEncoding = contentEncoding;
+        this.bytesTransferred = bytesTransferred;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    // Body bytes buffer. Only the first getLength() bytes are valid.
+    public byte[] getBody() {
+        return body;
+    }
+
+    public Integer getLength() {
+        return length;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public Map<String, String> getCookies() {
+        return cookies;
+    }
+
+    public String getContentEncoding() {
+        return contentEncoding;
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    public long getBytesDecoded() {
+        return length;
+    }
+
+    // Page monitor must be held by the caller, as by SiteParser.parseOnce.
+    List<Property> getProperties() {
+        return properties;
+    }
+
+    Integer getTotalResults() {
+        return totalResults;
+    }
+
+    void setParsed(List<Property> properties, Integer totalResults) {
+        this.properties = properties;
+        this.totalResults = totalResults;
+    }
+
+    // Opens a stream over body bytes.
+    public InputStream openStream() {
+        return new ByteArrayInputStream(body, 0, length);
+    }
+
+    // Parses body bytes with page charset.
+    public Document parse() throws IOException {
+        return Jsoup.parse(openStream(), charset.name(), url);
+    }
+
+}
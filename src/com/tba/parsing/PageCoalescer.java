@@ -0,0 +1,180 @@
+// -------------------------------------------------------------
+//
+// This class coalesces identical page retrievals of concurrent
+// searches, e.g. batch or service searches of the same search term.
+// Retrievals are keyed by their TargetURL and normalized url: the
+// first one is executed, while identical retrievals started before it
+// finishes wait for it and share its Page, or its failure.
+// A retrieval aborted by its own search, e.g. it was stopped, is not
+// shared, so waiting retrievals are executed again.
+// Shared Pages are parsed once, by the first search parsing them, and
+// the other searches reuse its properties.
+// Coalescing is enabled by default and disabled by 'tba.coalescePages'
+// system property. Executed, shared retrievals and shared parses are
+// counted per TargetURL.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.parsing;
+
+import com.tba.enums.TargetURL;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+public class PageCoalescer {
+
+    private static final Logger logger = Logger.getLogger(PageCoalescer.class.getName());
+    private static final Boolean ENABLED = Boolean.parseBoolean(System.getProperty("tba.coalescePages", "true"));
+    private static final Map<String, CompletableFuture<Page>> inFlightRetrievals = new ConcurrentHashMap<>(); // Executed retrievals, by key.
+    private static final ThreadLocal<Boolean> uncoalesced = ThreadLocal.withInitial(() -> false); // Current Thread retrievals are not coalesced.
+    private static final ThreadLocal<Boolean> lastShared = ThreadLocal.withInitial(() -> false); // Last retrieval of current Thread was shared.
+    private static final Map<TargetURL, AtomicLong> executedRetrievals = new EnumMap<>(TargetURL.class);
+    private static final Map<TargetURL, AtomicLong> sharedRetrievals = new EnumMap<>(TargetURL.class);
+    private static final Map<TargetURL, AtomicLong> sharedParses = new EnumMap<>(TargetURL.class);
+
+    static {
+        for (TargetURL targetURL : TargetURL.values()) {
+            executedRetrievals.put(targetURL, new AtomicLong());
+            sharedRetrievals.put(targetURL, new AtomicLong());
+            sharedParses.put(targetURL, new AtomicLong());
+        }
+    }
+
+    // Page retrieval, e.g. a PageFetcher request.
+    public interface Retrieval {
+        Page execute() throws IOException;
+    }
+
+    private PageCoalescer() {}
+
+    // Retrieves a page, sharing the in-flight retrieval of an identical url, if one exists.
+    // Provided retrieval is executed only if page is not shared, so its side effects, e.g. bytes accounting, apply to executed retrievals.
+    public static Page retrieve(TargetURL targetURL, String url, Retrieval retrieval) throws IOException {
+        lastShared.set(false);
+        if (!ENABLED || uncoalesced.get()) {
+            executedRetrievals.get(targetURL).incrementAndGet();
+            return retrieval.execute();
+        }
+        String key = targetURL.name() + " " + normalize(url);
+        while (true) {
+            CompletableFuture<Page> flight = new CompletableFuture<>();
+            CompletableFuture<Page> inFlight = inFlightRetrievals.putIfAbsent(key, flight);
+            if (inFlight == null) {
+                executedRetrievals.get(targetURL).incrementAndGet();
+                try {
+                    Page page = retrieval.execute();
+                    flight.complete(page);
+                    return page;
+                } catch (Throwable e) {
+                    flight.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlightRetrievals.remove(key, flight);
+                }
+            }
+            try {
+                Page page = inFlight.get();
+                sharedRetrievals.get(targetURL).incrementAndGet();
+                lastShared.set(true);
+                logger.info(targetURL.getURL() + " page shared with an in-flight identical request.");
+                return page;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Retrieval of " + url + " was interrupted.");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof InterruptedIOException && !(cause instanceof SocketTimeoutException)) {
+                    continue; // Retrieval was aborted by its own search, so it is executed again.
+                }
+                sharedRetrievals.get(targetURL).incrementAndGet();
+                lastShared.set(true);
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException(cause);
+            }
+        }
+    }
+
+    // Executes a task whose page retrievals are not coalesced, e.g. a hedged request, which must not wait for the request it hedges.
+    public static <T> T uncoalesced(Callable<T> task) throws Exception {
+        uncoalesced.set(true);
+        try {
+            return task.call();
+        } finally {
+            uncoalesced.set(false);
+        }
+    }
+
+    // Checks if the last page retrieval of the current Thread was shared, so its outcome is not the outcome of a request to the target.
+    public static Boolean wasShared() {
+        return lastShared.get();
+    }
+
+    static void recordSharedParse(TargetURL targetURL) {
+        sharedParses.get(targetURL).incrementAndGet();
+    }
+
+    // Normalizes a url, so identical requests are keyed the same: scheme and host are lowercased, default port,
+    // fragment and empty query parameters are removed and query parameters are sorted. Invalid urls are kept as is.
+    static String normalize(String url) {
+        try {
+            URI uri = new URI(url);
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return url;
+            }
+            String scheme = uri.getScheme().toLowerCase();
+            Boolean defaultPort = uri.getPort() == -1 || (scheme.equals("http") && uri.getPort() == 80) || (scheme.equals("https") && uri.getPort() == 443);
+            String query = uri.getRawQuery() == null ? "" : Arrays.stream(uri.getRawQuery().split("&"))
+                                                                  .filter(parameter -> !parameter.isEmpty())
+                                                                  .sorted()
+                                                                  .collect(Collectors.joining("&"));
+            StringBuilder normalizedSB = new StringBuilder();
+            normalizedSB.append(scheme).append("://").append(uri.getHost().toLowerCase());
+            if (!defaultPort) {
+                normalizedSB.append(":").append(uri.getPort());
+            }
+            normalizedSB.append(uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath());
+            if (!query.isEmpty()) {
+                normalizedSB.append("?").append(query);
+            }
+            return normalizedSB.toString();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    // Describes executed and shared retrievals and shared parses of a TargetURL,
+    // e.g. "booking.com -> 120 requests, 40 shared (25.0%), 38 parses shared".
+    public static String describe(TargetURL targetURL) {
+        long executed = executedRetrievals.get(targetURL).get();
+        long shared = sharedRetrievals.get(targetURL).get();
+        StringBuilder coalescingSB = new StringBuilder();
+        coalescingSB.append(targetURL.getURL()).append(" -> ")
+                    .append(executed).append(" requests, ")
+                    .append(shared).append(" shared (")
+                    .append(String.format("%.1f", executed + shared > 0 ? 100.0 * shared / (executed + shared) : 0.0)).append("%), ")
+                    .append(sharedParses.get(targetURL).get()).append(" parses shared");
+        return coalescingSB.toString();
+    }
+
+}
@@ -0,0 +1,167 @@
+// -------------------------------------------------------------
+//
+// This auxiliary class retrieves page bodies over HTTP.
+// gzip and deflate transfer encodings are negotiated and the
+// response stream is decompressed while it is read, up to the
+// provided byte budget. Body is collected as decoded bytes with
+// the charset declared by the response, so it can be parsed
+// directly, without an intermediate String copy.
+// Reading is aborted when the retrieving Thread is interrupted.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.parsing;
+
+import org.jsoup.HttpStatusException;
+
+import java.io.*;
+import java.net.HttpCookie;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+public class PageFetcher {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/53.0.2785.143 Safari/537.36";
+    private static final Integer TIMEOUT = 30000;
+    private static final Integer BUFFER_SIZE = 16384;
+
+    private PageFetcher() {}
+
+    // Retrieves a page body. Decoded body exceeding maxBytes aborts the retrieval.
+    public static Page fetch(String url, Map<String, String> cookies, long maxBytes) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setRequestProperty("User-Agent", USER_AGENT);
+            connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+            if (!cookies.isEmpty()) {
+                StringBuilder cookieSB = new StringBuilder();
+                cookies.forEach((name, value) -> cookieSB.append(cookieSB.length() > 0 ? "; " : "").append(name).append("=").append(value));
+                connection.setRequestProperty("Cookie", cookieSB.toString());
+            }
+            Integer status = connection.getResponseCode();
+            if (status < 200 || status >= 400) {
+                throw new HttpStatusException("HTTP error fetching URL", status, url);
+            }
+
+            String contentEncoding = connection.getContentEncoding() == null ? "identity" : connection.getContentEncoding().toLowerCase();
+            CountingInputStream transferred = new CountingInputStream(connection.getInputStream());
+            InputStream decoded = transferred;
+            if (contentEncoding.equals("gzip")) {
+                decoded = new GZIPInputStream(transferred, BUFFER_SIZE);
+            } else if (contentEncoding.equals("deflate")) {
+                decoded = new InflaterInputStream(transferred);
+            }
+            try (InputStream in = decoded) {
+                BodyBuffer body = new BodyBuffer();
+                byte[] chunk = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    if (Thread.interrupted()) {
+                        throw new InterruptedIOException("Retrieval of " + url + " was interrupted.");
+                    }
+                    if (body.size() + read > maxBytes) {
+                        throw new IOException("Page " + url + " exceeds byte budget of " + maxBytes + " bytes.");
+                    }
+                    body.write(chunk, 0, read);
+                }
+                return new Page(url, body.buffer(), body.size(), retrieveCharset(connection.getContentType()),
+                                retrieveCookies(connection), contentEncoding, transferred.getCount());
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    // Retrieves charset declared by Content-Type header. UTF-8 is used if none is declared.
+    private static Charset retrieveCharset(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                parameter = parameter.trim();
+                if (parameter.toLowerCase().startsWith("charset=")) {
+                    try {
+                        return Charset.forName(parameter.substring(8).replace("\"", "").trim());
+                    } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                        /* Default charset is used. */
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    // Retrieves cookies set by the response. Header names are matched case insensitively.
+    private static Map<String, String> retrieveCookies(HttpURLConnection connection) {
+        Map<String, String> cookies = new HashMap<>();
+        for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if (header.getKey() == null || !header.getKey().equalsIgnoreCase("Set-Cookie")) {
+                continue;
+            }
+            for (String setCookieHeader : header.getValue()) {
+                try {
+                    HttpCookie.parse(setCookieHeader).forEach(cookie -> cookies.put(cookie.getName(), cookie.getValue()));
+                } catch (IllegalArgumentException e) {
+                    /* Invalid cookie is ignored. */
+                }
+            }
+        }
+        return cookies;
+    }
+
+    // Counts bytes read from the underlying stream.
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count = 0;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        private long getCount() {
+            return count;
+        }
+    }
+
+    // Byte buffer exposing its internal array, so body is not copied once more.
+    private static class BodyBuffer extends ByteArrayOutputStream {
+
+        private BodyBuffer() {
+            super(BUFFER_SIZE * 4);
+        }
+
+        private byte[] buffer() {
+            return buf;
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+// -------------------------------------------------------------
+//
+// This auxiliary class fingerprints the results region of a page
+// body, without parsing it. Results region starts at the first
+// occurrence of the target's results marker and ends a fixed
+// window after its last occurrence, so the last result is covered.
+// A 64-bit FNV-1a hash is calculated over the region bytes.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.parsing;
+
+import java.nio.charset.StandardCharsets;
+
+public class PageFingerprint {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int LAST_RESULT_WINDOW = 4096; // Bytes covered after the last marker occurrence.
+
+    private PageFingerprint() {}
+
+    // Returns the fingerprint of the page results region, or 0 if page contains no results marker.
+    // Results marker must be ASCII, so it matches the body bytes of any ASCII compatible charset.
+    public static long of(Page page, String resultsMarker) {
+        byte[] body = page.getBody();
+        int length = page.getLength();
+        byte[] marker = resultsMarker.getBytes(StandardCharsets.US_ASCII);
+        int start = indexOf(body, length, marker, 0);
+        if (start < 0) {
+            return 0;
+        }
+        int last = start;
+        for (int next = start; next >= 0; next = indexOf(body, length, marker, next + 1)) {
+            last = next;
+        }
+        int end = Math.min(length, last + marker.length + LAST_RESULT_WINDOW);
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++) {
+            hash ^= body[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    // Index of marker bytes within the first length body bytes, starting from fromIndex, or -1.
+    private static int indexOf(byte[] body, int length, byte[] marker, int fromIndex) {
+        outer:
+        for (int i = fromIndex; i <= length - marker.length; i++) {
+            for (int j = 0; j < marker.length; j++) {
+                if (body[i + j] != marker[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+}
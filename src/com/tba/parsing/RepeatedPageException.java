@@ -0,0 +1,23 @@
+// -------------------------------------------------------------
+//
+// This exception is thrown by SiteParser when a retrieved page
+// results region is identical to an already retrieved page, so
+// the page is not parsed again.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.parsing;
+
+import java.io.IOException;
+
+public class RepeatedPageException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RepeatedPageException(String url) {
+        super("Page " + url + " is identical to an already retrieved page.");
+    }
+
+}
@@ -2,7 +2,7 @@
 //
 // This auxiliary class is used by the application to extract
 // each TargetURL page properties.
-// JSoup is used for communicating and HTML parsing.
+// PageFetcher is used for communicating and JSoup for HTML parsing.
 //
 // Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
 //
@@ -10,9 +10,9 @@
 
 package com.tba.parsing;
 
-import org.jsoup.Connection;
+import com.tba.archive.PageArchive;
+import com.tba.enums.TargetURL;
 import org.jsoup.HttpStatusException;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 
@@ -20,9 +20,10 @@ import java.io.IOException;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 public class SiteParser {
@@ -31,55 +32,84 @@ public class SiteParser {
     private final String destination;
     private final LocalDate checkinDate;
     private final LocalDate checkoutDate;
+    private final Integer nights;
+    private final Long archiveKey; // Key of the search pages in the PageArchive, or null if they are not archived.
     private static final DateTimeFormatter  formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private final Set<Long> pageFingerprints = ConcurrentHashMap.newKeySet(); // Fingerprints of already parsed pages with properties.
+    private final Map<Integer, Long> retrievedFingerprints = new ConcurrentHashMap<>(); // Fingerprints of retrieved pages awaiting their parse, by page number.
+    private volatile Integer totalResults = null; // Total results count reported by target first page.
+    private volatile boolean totalResultsMissingLogged = false;
+    private final AtomicLong bytesTransferred = new AtomicLong(); // Compressed bytes received for all pages.
+    private final AtomicLong bytesDecoded = new AtomicLong(); // Decompressed bytes of all pages.
 
     public SiteParser(String destination, Date date) {
+        this(destination, date, 1);
+    }
+
+    // Checkout date is defined by the length of stay(nights) after checkin date.
+    public SiteParser(String destination, Date date, Integer nights) {
+        this(destination, date, nights, null);
+    }
+
+    // Retrieved pages are archived under the provided archive key, unless it is null.
+    public SiteParser(String destination, Date date, Integer nights, Long archiveKey) {
         this.destination = destination;
         this.checkinDate = date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
-        this.checkoutDate = this.checkinDate.plusDays(1);
+        this.checkoutDate = this.checkinDate.plusDays(nights);
+        this.nights = nights;
+        this.archiveKey = archiveKey;
+    }
+
+    public Integer getTotalResults() {
+        return totalResults;
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred.get();
     }
 
-    // airbnb.gr page retrieval and parsing.
-    public List<Property> parseAirbnbPage(Integer pageNumber) throws IOException {
+    public long getBytesDecoded() {
+        return bytesDecoded.get();
+    }
+
+    // airbnb.gr page retrieval.
+    public Page fetchAirbnbPage(Integer pageNumber) throws IOException {
         // Search url is created and executed.
         StringBuilder searchSB = new StringBuilder();
-        searchSB.append("https://www.airbnb.gr/s/")
+        searchSB.append(TargetURL.AIRBNB.getBaseURL()).append("/s/")
                 .append(destination).append("/homes?")
                 .append("checkin=").append(checkinDate.format(formatter))
                 .append("&checkout=").append(checkoutDate.format(formatter))
-                .append("&items_offset=").append(pageNumber * 20);
-        Document doc = Jsoup.connect(searchSB.toString()).get();
+                .append("&items_offset=").append(pageNumber * TargetURL.AIRBNB.getPageSize());
+        return retrievePage(TargetURL.AIRBNB, pageNumber, searchSB.toString(), "_8ssblpx", Collections.emptyMap());
+    }
+
+    // airbnb.gr page parsing.
+    public List<Property> parseAirbnbPage(Page page, Integer pageNumber) throws IOException {
+        Document doc = page.parse();
+        if (pageNumber == 0) {
+            extractTotalResults(TargetURL.AIRBNB, doc, "._1snxcqc", NumberExtractor.COMMA_DECIMAL);
+        }
 
         // Properties extraction.
         List<Property> pageProperties = new ArrayList<>();
         for (Element div : doc.select("._8ssblpx")) {
-            Double score = null;
-            try {
-                score = Double.parseDouble(div.selectFirst("._10fy1f8").text()) * 2;
-            } catch (NullPointerException | NumberFormatException e) {
-                /* Score value remains null. */
-            }
-            Double price = null;
-            try {
-                price = Double.parseDouble(div.selectFirst("._1p7iugi").text().replaceAll(".*:€", ""));
-            } catch (NullPointerException | NumberFormatException e) {
-                /* Price value remains null. Property is considered as unavailable. */
-            }
+            // Discounted prices follow the original ones, so the last price is used.
             Property property = new Property.Builder()
                     .withName(div.selectFirst("._bzh5lkq").text())
-                    .withScore(score)
-                    .withPrice(price)
+                    .withScore(extractScore(div.selectFirst("._10fy1f8"), null, NumberExtractor.COMMA_DECIMAL, 5))
+                    .withPrice(extractPrice(div.selectFirst("._1p7iugi"), NumberExtractor.COMMA_DECIMAL, true))
                     .build();
             pageProperties.add(property);
         }
         return pageProperties;
     }
 
-    // booking.com page retrieval and parsing.
-    public List<Property> parseBookingPage(Integer pageNumber) throws IOException {
+    // booking.com page retrieval.
+    public Page fetchBookingPage(Integer pageNumber) throws IOException {
         // Search url is created and executed.
         StringBuilder searchSB = new StringBuilder();
-        searchSB.append("https://www.booking.com/searchresults.en.html?")
+        searchSB.append(TargetURL.BOOKING.getBaseURL()).append("/searchresults.en.html?")
                 .append("ss=").append(destination)
                 .append("&checkin_year=").append(checkinDate.getYear())
                 .append("&checkin_month=").append(checkinDate.getMonthValue())
@@ -87,123 +117,212 @@ public class SiteParser {
                 .append("&checkout_year=").append(checkoutDate.getYear())
                 .append("&checkout_month=").append(checkoutDate.getMonthValue())
                 .append("&checkout_monthday=").append(checkoutDate.getDayOfMonth())
-                .append("&offset=").append(pageNumber * 25);
-        Document doc = Jsoup.connect(searchSB.toString()).get();
+                .append("&offset=").append(pageNumber * TargetURL.BOOKING.getPageSize());
+        return retrievePage(TargetURL.BOOKING, pageNumber, searchSB.toString(), "sr_property_block", Collections.emptyMap());
+    }
+
+    // booking.com page parsing.
+    public List<Property> parseBookingPage(Page page, Integer pageNumber) throws IOException {
+        Document doc = page.parse();
+        if (pageNumber == 0) {
+            extractTotalResults(TargetURL.BOOKING, doc, ".sorth1", NumberExtractor.POINT_DECIMAL);
+        }
 
         // Properties extraction.
         List<Property> pageProperties = new ArrayList<>();
         for (Element div : doc.select(".sr_property_block")) {
-            Double score = null;
-            try {
-                score = Double.parseDouble(div.selectFirst(".bui-review-score__badge").text());
-            } catch (NullPointerException | NumberFormatException e) {
-                /* Score value remains null. */
-            }
-            Double price = null;
-            try {
-                price = Double.parseDouble(div.selectFirst(".bui-price-display__value").text().replace("€ ", ""));
-            } catch (NullPointerException | NumberFormatException e) {
-                /* Price value remains null. Property is considered as unavailable. */
-            }
             Property property = new Property.Builder()
                     .withName(div.selectFirst(".sr-hotel__name").text())
-                    .withScore(score)
-                    .withPrice(price)
+                    .withScore(extractScore(div.selectFirst(".bui-review-score__badge"), null, NumberExtractor.POINT_DECIMAL, 10))
+                    .withPrice(extractPrice(div.selectFirst(".bui-price-display__value"), NumberExtractor.POINT_DECIMAL, false))
                     .build();
             pageProperties.add(property);
         }
         return pageProperties;
     }
 
-    // hotels.com page retrieval and parsing.
-    public List<Property> parseHotelsPage(Integer pageNumber) throws IOException {
+    // hotels.com page retrieval.
+    public Page fetchHotelsPage(Integer pageNumber) throws IOException {
         // Search url is created and executed.
         StringBuilder searchSB = new StringBuilder();
-        searchSB.append("https://el.hotels.com/search.do?")
+        searchSB.append(TargetURL.HOTELS.getBaseURL()).append("/search.do?")
                 .append("q-destination=").append(destination)
                 .append("&q-check-in=").append(checkinDate.format(formatter))
                 .append("&q-check-out=").append(checkoutDate.format(formatter))
                 .append("&pn=").append(pageNumber + 1);
-        Document doc = Jsoup.connect(searchSB.toString()).get();
+        return retrievePage(TargetURL.HOTELS, pageNumber, searchSB.toString(), "hotel-wrap", Collections.emptyMap());
+    }
+
+    // hotels.com page parsing.
+    public List<Property> parseHotelsPage(Page page, Integer pageNumber) throws IOException {
+        Document doc = page.parse();
 
         // Properties extraction.
         List<Property> pageProperties = new ArrayList<>();
         for (Element div : doc.select(".hotel-wrap")) {
-            Double score = null;
-            try {
-                score = Double.parseDouble(div.selectFirst(".guest-reviews-badge").text().replaceAll("\\D+","")) / 10;
-            } catch (NullPointerException | NumberFormatException e) {
-                /* Score value remains null. */
-            }
-            Double price = null;
-            try {
-                price = Double.parseDouble(div.selectFirst(".price").text().replace("€", ""));
-            } catch (NullPointerException | NumberFormatException e) {
-                /* Price value remains null. Property is considered as unavailable. */
-            }
             Property property = new Property.Builder()
                     .withName(div.selectFirst(".p-name").text())
-                    .withScore(score)
-                    .withPrice(price)
+                    .withScore(extractScore(div.selectFirst(".guest-reviews-badge"), null, NumberExtractor.COMMA_DECIMAL, 10))
+                    .withPrice(extractPrice(div.selectFirst(".price"), NumberExtractor.COMMA_DECIMAL, false))
                     .build();
             pageProperties.add(property);
         }
         return pageProperties;
     }
 
-    // hotels-scanner.com page retrieval and parsing.
+    // hotels-scanner.com page retrieval.
     // This target retrieves properties using JavaScript, therefore two requests are executed.
     // First requests obtains target's cookies, so the second one can be successful.
     // If a lot of requests are executed in a small period of time, target will not accept
-    // applications requests, due to security concerns.
-    public List<Property> parseHotelsScannerPage(Integer pageNumber) throws IOException {
+    // applications requests, due to security concerns. In that case null is returned.
+    public Page fetchHotelsScannerPage(Integer pageNumber) throws IOException {
         // Search url is created and executed to obtain target's cookies.
         StringBuilder searchSB = new StringBuilder();
-        searchSB.append("https://www.hotels-scanner.com/Hotels/Search?")
+        searchSB.append(TargetURL.HOTELS_SCANNER.getBaseURL()).append("/Hotels/Search?")
                 .append("destination=place:").append(destination)
                 .append("&checkin=").append(checkinDate.format(formatter))
                 .append("&checkout=").append(checkoutDate.format(formatter))
                 .append("&pageIndex=").append(pageNumber)
                 .append("&radius=0km&Rooms=1&adults_1=2&showSoldOut=true");
-        Connection.Response res = Jsoup.connect(searchSB.toString()).method(Connection.Method.GET).execute();
+        // Cookies request is not coalesced, so each search obtains its own session.
+        Map<String, String> cookies = fetchPage(TargetURL.HOTELS_SCANNER, searchSB.toString(), Collections.emptyMap()).getCookies();
         // Second (actual) url is created and executed.
         searchSB = new StringBuilder();
-        searchSB.append("https://www.hotels-scanner.com/Hotels/SearchResults?")
+        searchSB.append(TargetURL.HOTELS_SCANNER.getBaseURL()).append("/Hotels/SearchResults?")
                 .append("destination=place:").append(destination)
                 .append("&checkin=").append(checkinDate.format(formatter))
                 .append("&checkout=").append(checkoutDate.format(formatter))
                 .append("&pageIndex=").append(pageNumber)
                 .append("&radius=0km&Rooms=1&adults_1=2&showSoldOut=true");
 
-        List<Property> pageProperties = new ArrayList<>();
         try {
-            Document doc = Jsoup.connect(searchSB.toString()).cookies(res.cookies()).get();
-
-            // Properties extraction.
-            for (Element div : doc.select(".hc-searchresultitem")) {
-                Double score = null;
-                try {
-                    score = Double.parseDouble(div.selectFirst(".hc-guestratingsummary").attr("content"));
-                } catch (NullPointerException | NumberFormatException e) {
-                    /* Score value remains null. */
-                }
-                Double price = null;
-                try {
-                    price = Double.parseDouble(div.selectFirst(".hc-searchresultitemdeal__currentrate").text().replace("€", ""));
-                } catch (NullPointerException | NumberFormatException e) {
-                    /* Price value remains null. Property is considered as unavailable. */
-                }
-                Property property = new Property.Builder()
-                        .withName(div.selectFirst(".hc-searchresultitem__hotelname").text())
-                        .withScore(score)
-                        .withPrice(price)
-                        .build();
-                pageProperties.add(property);
-            }
+            return retrievePage(TargetURL.HOTELS_SCANNER, pageNumber, searchSB.toString(), "hc-searchresultitem", cookies);
         } catch (HttpStatusException e) {
             logger.info("hotels-scanner.com thinks we attack them......again. HttpStatus " + e.getStatusCode() + " was returned.");
+            return null;
+        }
+    }
+
+    // hotels-scanner.com page parsing. A page that was not accepted contains no properties.
+    public List<Property> parseHotelsScannerPage(Page page, Integer pageNumber) throws IOException {
+        List<Property> pageProperties = new ArrayList<>();
+        if (page == null) {
+            return pageProperties;
+        }
+        Document doc = page.parse();
+
+        // Properties extraction.
+        for (Element div : doc.select(".hc-searchresultitem")) {
+            Property property = new Property.Builder()
+                    .withName(div.selectFirst(".hc-searchresultitem__hotelname").text())
+                    .withScore(extractScore(div.selectFirst(".hc-guestratingsummary"), "content", NumberExtractor.POINT_DECIMAL, 10))
+                    .withPrice(extractPrice(div.selectFirst(".hc-searchresultitemdeal__currentrate"), NumberExtractor.POINT_DECIMAL, false))
+                    .build();
+            pageProperties.add(property);
+        }
+        return pageProperties;
+    }
+
+    // Parses a page with the provided target parse method, once per Page. Target fetch methods retrieve pages (I/O bound)
+    // and parse methods extract their properties (CPU bound), so they are executed by different Threads. Searches sharing a coalesced Page reuse the
+    // properties of the first search that parsed it, and its first page total results count.
+    // Page is locked while parsed, so only searches parsing the same Page wait for each other.
+    // A missing Page, e.g. a hotels-scanner.com page that was not accepted, is not shared, so it is parsed by each search.
+    // Page fingerprint is recorded once page is parsed with properties, so a page whose parse failed or was empty is retried
+    // instead of being considered repeated.
+    public List<Property> parseOnce(TargetURL targetURL, Page page, Integer pageNumber, Callable<List<Property>> parser) throws Exception {
+        Long fingerprint = retrievedFingerprints.remove(pageNumber);
+        List<Property> pageProperties = parseSharedPage(targetURL, page, pageNumber, parser);
+        if (fingerprint != null && !pageProperties.isEmpty()) {
+            pageFingerprints.add(fingerprint);
         }
         return pageProperties;
     }
 
+    private List<Property> parseSharedPage(TargetURL targetURL, Page page, Integer pageNumber, Callable<List<Property>> parser) throws Exception {
+        if (page == null) {
+            return parser.call();
+        }
+        synchronized (page) {
+            if (page.getProperties() == null) {
+                List<Property> pageProperties = Collections.unmodifiableList(parser.call());
+                page.setParsed(pageProperties, pageNumber == 0 ? totalResults : null);
+                return pageProperties;
+            }
+            if (pageNumber == 0 && page.getTotalResults() != null) {
+                totalResults = page.getTotalResults();
+            }
+            PageCoalescer.recordSharedParse(targetURL);
+            return page.getProperties();
+        }
+    }
+
+    // Extracts total results count from the element matching provided selector, e.g. "Athens: 1,234 properties found".
+    // If element doesn't exist or contains no number, total results count remains unknown and remaining pages are
+    // retrieved sequentially, which is logged once per search.
+    // Total results selectors of airbnb.gr and booking.com are unverified against the live sites' markup, they are only
+    // matched by the SiteSimulator pages.
+    private void extractTotalResults(TargetURL targetURL, Document doc, String selector, NumberExtractor numberExtractor) {
+        Element element = doc.selectFirst(selector);
+        double count = element == null ? Double.NaN : numberExtractor.first(element.text());
+        if (count >= 0 && count <= Integer.MAX_VALUE && count == Math.rint(count)) {
+            totalResults = (int) count;
+        } else if (!totalResultsMissingLogged) {
+            totalResultsMissingLogged = true;
+            logger.info(targetURL.getURL() + " first page reports no total results count (selector " + selector + "). Pages are retrieved sequentially.");
+        }
+    }
+
+    // Extracts the first or last price of an element text, e.g. "€ 1,234.50" or "1.234 €", by the NumberExtractor of the site locale.
+    // If element doesn't exist or contains no number, price is null and property is considered as unavailable.
+    private static Double extractPrice(Element element, NumberExtractor numberExtractor, boolean last) {
+        if (element == null) {
+            return null;
+        }
+        double price = last ? numberExtractor.last(element.text()) : numberExtractor.first(element.text());
+        return Double.isNaN(price) ? null : price;
+    }
+
+    // Extracts the score of an element text, or attribute if provided, normalized from the site scale to 0-10.
+    // If element doesn't exist or contains no valid score, score is null.
+    private static Double extractScore(Element element, String attribute, NumberExtractor numberExtractor, double scale) {
+        if (element == null) {
+            return null;
+        }
+        double score = numberExtractor.score(attribute == null ? element.text() : element.attr(attribute), scale);
+        return Double.isNaN(score) ? null : score;
+    }
+
+    // Retrieves a page and fingerprints its results region, identified by provided marker.
+    // If an identical page was already parsed with properties, a RepeatedPageException is thrown, so page is not parsed.
+    // Fingerprint is recorded by parseOnce, once page is parsed.
+    // Page body exceeding the target's byte budget is not retrieved. Retrieved pages are archived, if search is archived.
+    // Identical in-flight retrievals of concurrent searches are shared, so their bytes are accounted once.
+    private Page retrievePage(TargetURL targetURL, Integer pageNumber, String url, String resultsMarker, Map<String, String> cookies) throws IOException {
+        Page page = PageCoalescer.retrieve(targetURL, url, () -> fetchPage(targetURL, url, cookies));
+        long fingerprint = PageFingerprint.of(page, resultsMarker);
+        if (fingerprint != 0) {
+            if (pageFingerprints.contains(fingerprint)) {
+                throw new RepeatedPageException(url);
+            }
+            retrievedFingerprints.put(pageNumber, fingerprint);
+        }
+        PageArchive pageArchive = archiveKey != null ? PageArchive.getInstance() : null;
+        if (pageArchive != null) {
+            pageArchive.append(archiveKey, targetURL, pageNumber, destination, checkinDate, nights, page);
+        }
+        return page;
+    }
+
+    // Fetches a page, accounting its bytes transferred and decoded.
+    // Page bodies are transferred compressed and parsed directly from their decoded bytes.
+    private Page fetchPage(TargetURL targetURL, String url, Map<String, String> cookies) throws IOException {
+        Page page = PageFetcher.fetch(url, cookies, targetURL.getMaxPageBytes());
+        bytesTransferred.addAndGet(page.getBytesTransferred());
+        bytesDecoded.addAndGet(page.getBytesDecoded());
+        logger.info(targetURL.getURL() + " page retrieved: " + page.getBytesTransferred() + " bytes transferred ("
+                    + page.getContentEncoding() + "), " + page.getBytesDecoded() + " bytes decoded.");
+        return page;
+    }
+
 }
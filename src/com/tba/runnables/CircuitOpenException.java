@@ -0,0 +1,24 @@
+// -------------------------------------------------------------
+//
+// This exception is thrown when a page request is rejected,
+// because its TargetURL circuit breaker is open.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+import com.tba.enums.TargetURL;
+
+import java.io.IOException;
+
+public class CircuitOpenException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(TargetURL targetURL) {
+        super("Circuit breaker of " + targetURL.getURL() + " is open. Page request was rejected.");
+    }
+
+}
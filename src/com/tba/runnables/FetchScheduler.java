@@ -0,0 +1,222 @@
+// -------------------------------------------------------------
+//
+// This class is the central scheduler owning all page retrieval
+// tasks of all active searches. A shared pool of workers executes
+// the tasks, taking them from any TargetURL queue with an available
+// connection permit and request slot, so idle workers are never
+// bound to a single target. Each target queue is ordered by search
+// priority and submission order, while targets with the lowest share
+// of their permits in use are served first, so a slow target can't
+// stall the completion of the others.
+// Number of workers can be defined by 'tba.fetchWorkers' system
+// property, defaulting to the sum of all targets connections.
+// It is the fetch stage of the SearchPipeline: workers block while the
+// parse stage queue is full, so fetching follows parsing throughput.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+import com.tba.enums.TargetURL;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+public class FetchScheduler {
+
+    private static final Logger logger = Logger.getLogger(FetchScheduler.class.getName());
+    private static final FetchScheduler instance = new FetchScheduler(Integer.getInteger("tba.fetchWorkers", EnumSet.allOf(TargetURL.class).stream().mapToInt(TargetURL::getConnections).sum()));
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition taskAvailable = lock.newCondition();
+    private final Map<TargetURL, TargetQueue> targetQueues = new EnumMap<>(TargetURL.class);
+    private final AtomicLong sequence = new AtomicLong(); // Submission order of tasks.
+    private final Integer workers;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong busyNanos = new AtomicLong(); // Time workers spent executing tasks.
+    private final AtomicLong completedTasks = new AtomicLong();
+    private Integer busyWorkers = 0;
+
+    private FetchScheduler(Integer workers) {
+        this.workers = Math.max(1, workers);
+        EnumSet.allOf(TargetURL.class).forEach(targetURL -> targetQueues.put(targetURL, new TargetQueue(targetURL)));
+        for (int i = 0; i < this.workers; i++) {
+            Thread worker = new Thread(this::work, "fetch-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    public static FetchScheduler getInstance() {
+        return instance;
+    }
+
+    // Submits a page retrieval task of a TargetURL.
+    // Lower priority values are executed first, tasks with the same priority in submission order.
+    // Returned Future can be cancelled, interrupting the worker executing it.
+    public <T> Future<T> submit(TargetURL targetURL, long priority, Callable<T> callable) {
+        FetchTask<T> task = new FetchTask<>(callable, priority, sequence.getAndIncrement());
+        lock.lock();
+        try {
+            targetQueues.get(targetURL).tasks.add(task);
+            taskAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        return task;
+    }
+
+    // Code worker Threads execute.
+    // Each worker takes the next eligible task of any target and executes it.
+    private void work() {
+        while (true) {
+            TargetQueue targetQueue;
+            FetchTask<?> task;
+            lock.lock();
+            try {
+                targetQueue = awaitEligibleTargetQueue();
+                task = targetQueue.tasks.poll();
+                targetQueue.inFlight++;
+                targetQueue.nextRequestNanos = System.nanoTime() + targetQueue.requestIntervalNanos;
+                busyWorkers++;
+            } catch (InterruptedException e) {
+                logger.info("Fetch worker was interrupted.");
+                return;
+            } finally {
+                lock.unlock();
+            }
+            long taskStart = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                Thread.interrupted(); // Cancellation interrupt must not leak to the next task.
+                busyNanos.addAndGet(System.nanoTime() - taskStart);
+                completedTasks.incrementAndGet();
+                lock.lock();
+                try {
+                    targetQueue.inFlight--;
+                    busyWorkers--;
+                    taskAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    // Describes queued tasks, busy workers and utilization since the scheduler was created.
+    public String describe() {
+        Integer queued = 0;
+        Integer busy;
+        lock.lock();
+        try {
+            for (TargetQueue targetQueue : targetQueues.values()) {
+                queued += targetQueue.tasks.size();
+            }
+            busy = busyWorkers;
+        } finally {
+            lock.unlock();
+        }
+        long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        StringBuilder schedulerSB = new StringBuilder();
+        schedulerSB.append("fetch -> ")
+                   .append(queued).append(" queued, ")
+                   .append(busy).append("/").append(workers).append(" busy, ")
+                   .append(String.format("%.1f", 100.0 * busyNanos.get() / ((double) elapsedNanos * workers))).append("% utilization, ")
+                   .append(completedTasks.get()).append(" tasks");
+        return schedulerSB.toString();
+    }
+
+    // Waits until a target has queued tasks, a free connection permit and an available request slot.
+    // Among eligible targets, the one with the lowest share of its permits in use is selected.
+    // Lock must be held by the caller.
+    private TargetQueue awaitEligibleTargetQueue() throws InterruptedException {
+        while (true) {
+            long now = System.nanoTime();
+            long waitNanos = Long.MAX_VALUE;
+            TargetQueue selected = null;
+            for (TargetQueue targetQueue : targetQueues.values()) {
+                targetQueue.discardCancelledTasks();
+                if (targetQueue.tasks.isEmpty() || targetQueue.inFlight >= targetQueue.permits) {
+                    continue;
+                }
+                if (targetQueue.nextRequestNanos > now) {
+                    waitNanos = Math.min(waitNanos, targetQueue.nextRequestNanos - now);
+                    continue;
+                }
+                if (selected == null || targetQueue.isPreferredOver(selected)) {
+                    selected = targetQueue;
+                }
+            }
+            if (selected != null) {
+                return selected;
+            }
+            if (waitNanos == Long.MAX_VALUE) {
+                taskAvailable.await();
+            } else {
+                taskAvailable.awaitNanos(waitNanos);
+            }
+        }
+    }
+
+    // Queued tasks and budget state of a TargetURL.
+    private static class TargetQueue {
+
+        private final PriorityQueue<FetchTask<?>> tasks = new PriorityQueue<>();
+        private final Integer permits;
+        private final long requestIntervalNanos;
+        private Integer inFlight = 0;
+        private long nextRequestNanos = System.nanoTime();
+
+        private TargetQueue(TargetURL targetURL) {
+            this.permits = Math.max(1, targetURL.getConnections());
+            this.requestIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, targetURL.getRequestInterval()));
+        }
+
+        private void discardCancelledTasks() {
+            while (!tasks.isEmpty() && tasks.peek().isCancelled()) {
+                tasks.poll();
+            }
+        }
+
+        // Target with lower share of permits in use is preferred. On ties, the one with the earliest head task.
+        private Boolean isPreferredOver(TargetQueue other) {
+            long load = (long) inFlight * other.permits;
+            long otherLoad = (long) other.inFlight * permits;
+            if (load != otherLoad) {
+                return load < otherLoad;
+            }
+            return tasks.peek().compareTo(other.tasks.peek()) < 0;
+        }
+    }
+
+    // Page retrieval task, ordered by priority and submission order.
+    private static class FetchTask<T> extends FutureTask<T> implements Comparable<FetchTask<?>> {
+
+        private final long priority;
+        private final long sequence;
+
+        private FetchTask(Callable<T> callable, long priority, long sequence) {
+            super(callable);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(FetchTask<?> other) {
+            if (priority != other.priority) {
+                return Long.compare(priority, other.priority);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+}
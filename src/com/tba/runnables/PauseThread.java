@@ -15,20 +15,23 @@ public class PauseThread implements Runnable {
 
     private static final Logger logger = Logger.getLogger(PauseThread.class.getName());
     private Thread worker;
-    private Boolean running = false;
+    private volatile Boolean running = false;
 
     public PauseThread() {}
 
     // A new Thread starts executing the Runnable code.
     public void start() {
+        running = true;
         worker = new Thread(this);
         worker.start();
     }
 
     // Thread is terminated.
+    // Worker is interrupted, so it doesn't finish its current wait period.
     public void stop() {
         running = false;
         if (worker != null) {
+            worker.interrupt();
             try {
                 worker.join();
             } catch (InterruptedException e) {
@@ -40,13 +43,12 @@ public class PauseThread implements Runnable {
     // Code Thread executes.
     @Override
     public void run() {
-        running = true;
         while (running) {
             try {
                 logger.info("Operation has been paused...");
                 Thread.sleep(5000);
             } catch (InterruptedException e){
-                logger.info("Pause Thread was interrupted.");
+                /* Thread was stopped. */
             }
         }
     }
@@ -0,0 +1,102 @@
+// -------------------------------------------------------------
+//
+// This class is a stage of the search pipeline: a fixed pool of
+// workers executing tasks from a bounded queue. When the queue is
+// full, submitting Threads are blocked until a worker takes a task,
+// so a stage falling behind throttles the stage feeding it.
+// Queue depth, busy workers, utilization and the time submitters
+// were blocked are tracked, so each stage can be sized independently.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+public class PipelineStage {
+
+    private static final Logger logger = Logger.getLogger(PipelineStage.class.getName());
+    private final String name;
+    private final Integer workers;
+    private final BlockingQueue<FutureTask<?>> queue;
+    private final long startNanos = System.nanoTime();
+    private final AtomicInteger busyWorkers = new AtomicInteger();
+    private final AtomicLong busyNanos = new AtomicLong(); // Time workers spent executing tasks.
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong(); // Submits blocked by a full queue.
+    private final AtomicLong stalledNanos = new AtomicLong();
+
+    public PipelineStage(String name, Integer workers, Integer capacity) {
+        this.name = name;
+        this.workers = Math.max(1, workers);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        for (int i = 0; i < this.workers; i++) {
+            Thread worker = new Thread(this::work, name + "-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    // Submits a task, blocking while the stage queue is full.
+    // Blocked Thread can be interrupted, in which case the task is not submitted.
+    public <T> Future<T> submit(Callable<T> callable) throws InterruptedException {
+        FutureTask<T> task = new FutureTask<>(callable);
+        if (!queue.offer(task)) {
+            long stallStart = System.nanoTime();
+            try {
+                queue.put(task);
+            } finally {
+                stalls.incrementAndGet();
+                stalledNanos.addAndGet(System.nanoTime() - stallStart);
+            }
+        }
+        return task;
+    }
+
+    // Code worker Threads execute.
+    private void work() {
+        while (true) {
+            FutureTask<?> task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                logger.info(name + " worker was interrupted.");
+                return;
+            }
+            busyWorkers.incrementAndGet();
+            long taskStart = System.nanoTime();
+            try {
+                task.run();
+            } finally {
+                Thread.interrupted(); // Cancellation interrupt must not leak to the next task.
+                busyNanos.addAndGet(System.nanoTime() - taskStart);
+                completedTasks.incrementAndGet();
+                busyWorkers.decrementAndGet();
+            }
+        }
+    }
+
+    // Describes stage queue depth, busy workers and utilization since the stage was created.
+    public String describe() {
+        long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        StringBuilder stageSB = new StringBuilder();
+        stageSB.append(name).append(" -> ")
+               .append(queue.size()).append("/").append(queue.size() + queue.remainingCapacity()).append(" queued, ")
+               .append(busyWorkers.get()).append("/").append(workers).append(" busy, ")
+               .append(String.format("%.1f", 100.0 * busyNanos.get() / ((double) elapsedNanos * workers))).append("% utilization, ")
+               .append(completedTasks.get()).append(" tasks, ")
+               .append(stalls.get()).append(" backpressure stalls (").append(TimeUnit.NANOSECONDS.toMillis(stalledNanos.get())).append(" ms)");
+        return stageSB.toString();
+    }
+
+}
@@ -0,0 +1,245 @@
+// -------------------------------------------------------------
+//
+// This class records the crawl state of a search term per
+// TargetURL in a checkpoint file: next page number, retry and
+// repeat counters, completion and extracted properties.
+// Checkpoint file is append only: each parsed page appends its
+// properties and the new target state, so a crashed search loses
+// at most the page in progress. When loaded, records are replayed
+// and later target states replace earlier ones.
+// A stopped or crashed search is resumed from its checkpoint,
+// which is deleted once all targets complete.
+// When pages are archived, the search archive key is recorded first,
+// so a resumed search appends its pages under the same key.
+// A checkpoint is open by one search at a time in a process, so
+// concurrent searches of the same terms don't share its records.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+import com.tba.archive.PageArchive;
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Property;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+public class SearchCheckpoint {
+
+    private static final Logger logger = Logger.getLogger(SearchCheckpoint.class.getName());
+    private static final String CHECKPOINT_FOLDER = System.getProperty("tba.checkpointFolder", "checkpoints");
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final Set<Path> openPaths = ConcurrentHashMap.newKeySet(); // Checkpoints open by running searches.
+    private final Path path;
+    private final Map<TargetURL, TargetState> targetStates = new EnumMap<>(TargetURL.class);
+    private Writer writer = null;
+    private Long archiveKey = null; // Key of the search pages in the PageArchive, or null if they are not archived.
+
+    // Crawl state of a TargetURL.
+    public static class TargetState {
+
+        private Integer nextPageNumber = 0;
+        private Integer pageRetries = 0;
+        private Integer pageRepeats = 0;
+        private Boolean completed = false;
+        private final Map<String, Property> properties = new HashMap<>();
+
+        public Integer getNextPageNumber() {
+            return nextPageNumber;
+        }
+
+        public Integer getPageRetries() {
+            return pageRetries;
+        }
+
+        public Integer getPageRepeats() {
+            return pageRepeats;
+        }
+
+        public Boolean getCompleted() {
+            return completed;
+        }
+
+        public Map<String, Property> getProperties() {
+            return properties;
+        }
+    }
+
+    private SearchCheckpoint(Path path) {
+        this.path = path;
+    }
+
+    // Opens the checkpoint of a search term, loading its records if it already exists.
+    // Throws IllegalStateException if the checkpoint is already open by a running search of the same terms.
+    public static SearchCheckpoint open(String destination, Date date, Integer nights) {
+        Path path = pathOf(destination, date, nights);
+        if (!openPaths.add(path)) {
+            throw new IllegalStateException("Checkpoint " + path + " is already open by a running search of the same terms");
+        }
+        SearchCheckpoint checkpoint = new SearchCheckpoint(path);
+        checkpoint.load();
+        if (checkpoint.archiveKey == null) {
+            checkpoint.archiveKey = PageArchive.newArchiveKey();
+            if (checkpoint.archiveKey != null) {
+                checkpoint.append("ARCHIVE\t" + checkpoint.archiveKey + "\n");
+            }
+        }
+        return checkpoint;
+    }
+
+    // Checks if the checkpoint of a search term is open by a running search.
+    static Boolean isOpen(String destination, Date date, Integer nights) {
+        return openPaths.contains(pathOf(destination, date, nights));
+    }
+
+    private static Path pathOf(String destination, Date date, Integer nights) {
+        String fileName = destination.replaceAll("[^\\p{L}\\p{N}]+", "_") + "_"
+                          + date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate().format(formatter) + "_"
+                          + nights + ".chk";
+        return Paths.get(CHECKPOINT_FOLDER, fileName);
+    }
+
+    // Checks if checkpoint contains a previous crawl state.
+    public synchronized Boolean isResumed() {
+        return !targetStates.isEmpty();
+    }
+
+    public synchronized Long getArchiveKey() {
+        return archiveKey;
+    }
+
+    // Retrieves the recorded crawl state of a TargetURL, or null if none was recorded.
+    public synchronized TargetState getTargetState(TargetURL targetURL) {
+        return targetStates.get(targetURL);
+    }
+
+    // Records a parsed page properties and the new crawl state of a TargetURL.
+    public synchronized void recordPage(TargetURL targetURL, Integer nextPageNumber, Integer pageRetries, Integer pageRepeats, List<Property> pageProperties) {
+        StringBuilder recordSB = new StringBuilder();
+        pageProperties.forEach(property -> recordSB.append("PROPERTY\t").append(targetURL.name()).append("\t")
+                                                   .append(escape(property.getName())).append("\t")
+                                                   .append(property.getScore()).append("\t")
+                                                   .append(property.getPrice()).append("\n"));
+        recordSB.append("STATE\t").append(targetURL.name()).append("\t")
+                .append(nextPageNumber).append("\t")
+                .append(pageRetries).append("\t")
+                .append(pageRepeats).append("\t")
+                .append(false).append("\n");
+        append(recordSB);
+    }
+
+    // Records a TargetURL search completion.
+    public synchronized void recordCompleted(TargetURL targetURL) {
+        append("STATE\t" + targetURL.name() + "\t0\t0\t0\t" + true + "\n");
+    }
+
+    // Closes checkpoint file, keeping it for a later resume.
+    public synchronized void close() {
+        closeWriter();
+        openPaths.remove(path);
+    }
+
+    // Deletes checkpoint file, as search was completed.
+    public synchronized void delete() {
+        closeWriter();
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.info("Checkpoint " + path + " could not be deleted. Exception thrown: " + e.getMessage());
+        }
+        openPaths.remove(path);
+    }
+
+    private void closeWriter() {
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } catch (IOException e) {
+            logger.info("Checkpoint " + path + " could not be closed. Exception thrown: " + e.getMessage());
+        }
+    }
+
+    // Appends a record to the checkpoint file and flushes it.
+    private void append(CharSequence record) {
+        try {
+            if (writer == null) {
+                Files.createDirectories(path.getParent());
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.append(record);
+            writer.flush();
+        } catch (IOException e) {
+            logger.info("Checkpoint " + path + " could not be written. Exception thrown: " + e.getMessage());
+        }
+    }
+
+    // Replays checkpoint file records. Incomplete or invalid records are ignored.
+    private void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t", -1);
+                try {
+                    if (fields[0].equals("PROPERTY") && fields.length == 5) {
+                        Property property = new Property.Builder()
+                                                .withName(unescape(fields[2]))
+                                                .withScore(parseNullableDouble(fields[3]))
+                                                .withPrice(parseNullableDouble(fields[4]))
+                                                .build();
+                        targetStates.computeIfAbsent(TargetURL.valueOf(fields[1]), k -> new TargetState()).properties.put(property.getName(), property);
+                    } else if (fields[0].equals("STATE") && fields.length == 6) {
+                        TargetState targetState = targetStates.computeIfAbsent(TargetURL.valueOf(fields[1]), k -> new TargetState());
+                        targetState.nextPageNumber = Integer.parseInt(fields[2]);
+                        targetState.pageRetries = Integer.parseInt(fields[3]);
+                        targetState.pageRepeats = Integer.parseInt(fields[4]);
+                        targetState.completed = Boolean.parseBoolean(fields[5]);
+                    } else if (fields[0].equals("ARCHIVE") && fields.length == 2) {
+                        archiveKey = Long.parseLong(fields[1]);
+                    }
+                } catch (IllegalArgumentException e) {
+                    /* Record is ignored. */
+                }
+            }
+        } catch (IOException e) {
+            logger.info("Checkpoint " + path + " could not be read. Exception thrown: " + e.getMessage());
+        }
+    }
+
+    private static Double parseNullableDouble(String value) {
+        return value.equals("null") ? null : Double.parseDouble(value);
+    }
+
+    // Escapes characters used as record separators.
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String value) {
+        StringBuilder valueSB = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                valueSB.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                valueSB.append(c);
+            }
+        }
+        return valueSB.toString();
+    }
+
+}
@@ -0,0 +1,51 @@
+// -------------------------------------------------------------
+//
+// This class holds the stages of the page pipeline, shared by all
+// active searches:
+// fetch     - FetchScheduler workers retrieve pages within each
+//             target's budget (I/O bound).
+// parse     - pages are parsed and properties extracted by a pool
+//             sized by 'tba.parseWorkers' (default available
+//             processors), queueing up to 'tba.parseQueueCapacity'
+//             pages (default twice the parse workers). When full,
+//             fetch workers are blocked, so no more pages are fetched
+//             until parsing catches up.
+// aggregate - extracted properties are printed and checkpoints
+//             recorded by a single worker, in submission order,
+//             queueing up to 'tba.aggregateQueueCapacity' tasks
+//             (default 1024).
+// Each SearchRunnable merges its parsed pages and decides which pages
+// to retrieve next.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+public class SearchPipeline {
+
+    private static final Integer PARSE_WORKERS = Integer.getInteger("tba.parseWorkers", Runtime.getRuntime().availableProcessors());
+    private static final PipelineStage parseStage = new PipelineStage("parse", PARSE_WORKERS, Integer.getInteger("tba.parseQueueCapacity", 2 * PARSE_WORKERS));
+    private static final PipelineStage aggregateStage = new PipelineStage("aggregate", 1, Integer.getInteger("tba.aggregateQueueCapacity", 1024));
+
+    private SearchPipeline() {}
+
+    public static PipelineStage getParseStage() {
+        return parseStage;
+    }
+
+    public static PipelineStage getAggregateStage() {
+        return aggregateStage;
+    }
+
+    // Describes queue depths and utilization of all stages.
+    public static String describe() {
+        StringBuilder pipelineSB = new StringBuilder();
+        pipelineSB.append(FetchScheduler.getInstance().describe()).append("\n")
+                  .append(parseStage.describe()).append("\n")
+                  .append(aggregateStage.describe()).append("\n");
+        return pipelineSB.toString();
+    }
+
+}
@@ -0,0 +1,228 @@
+// -------------------------------------------------------------
+//
+// This is the Search Progress Structure, an immutable snapshot of a
+// SearchRunnable progress. Each SearchRunnable publishes a new
+// snapshot whenever its progress changes, so status and metrics
+// readers never lock or copy the search state.
+// Search Progress data: TargetURL, State, Pages Parsed, Properties,
+// Page Retries, Failures, Last Page Latency, Remaining Pages (null if
+// unknown), Pages per second and Timestamp.
+// Estimated time of arrival is derived from remaining pages and the
+// pages per second of the current run, minus the time elapsed since
+// the snapshot was published.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+import com.tba.enums.SearchState;
+import com.tba.enums.TargetURL;
+
+import java.util.List;
+
+public class SearchProgress {
+
+    private TargetURL targetURL;
+    private SearchState state;
+    private Integer pagesParsed;
+    private Integer properties;
+    private Integer pageRetries;
+    private Integer failures;
+    private Long lastPageLatencyMillis;
+    private Integer remainingPages;
+    private Double pagesPerSecond;
+    private long timestamp;
+
+    public static class Builder {
+
+        private TargetURL targetURL;
+        private SearchState state;
+        private Integer pagesParsed = 0;
+        private Integer properties = 0;
+        private Integer pageRetries = 0;
+        private Integer failures = 0;
+        private Long lastPageLatencyMillis;
+        private Integer remainingPages;
+        private Double pagesPerSecond = 0.0;
+        private long timestamp = System.currentTimeMillis();
+
+        public Builder() {}
+
+        // Builder initialized with the values of an existing snapshot.
+        public Builder(SearchProgress progress) {
+            this.targetURL = progress.targetURL;
+            this.state = progress.state;
+            this.pagesParsed = progress.pagesParsed;
+            this.properties = progress.properties;
+            this.pageRetries = progress.pageRetries;
+            this.failures = progress.failures;
+            this.lastPageLatencyMillis = progress.lastPageLatencyMillis;
+            this.remainingPages = progress.remainingPages;
+            this.pagesPerSecond = progress.pagesPerSecond;
+            this.timestamp = progress.timestamp;
+        }
+
+        public SearchProgress.Builder withTargetURL(TargetURL targetURL) {
+            this.targetURL = targetURL;
+            return this;
+        }
+
+        public SearchProgress.Builder withState(SearchState state) {
+            this.state = state;
+            return this;
+        }
+
+        public SearchProgress.Builder withPagesParsed(Integer pagesParsed) {
+            this.pagesParsed = pagesParsed;
+            return this;
+        }
+
+        public SearchProgress.Builder withProperties(Integer properties) {
+            this.properties = properties;
+            return this;
+        }
+
+        public SearchProgress.Builder withPageRetries(Integer pageRetries) {
+            this.pageRetries = pageRetries;
+            return this;
+        }
+
+        public SearchProgress.Builder withFailures(Integer failures) {
+            this.failures = failures;
+            return this;
+        }
+
+        public SearchProgress.Builder withLastPageLatencyMillis(Long lastPageLatencyMillis) {
+            this.lastPageLatencyMillis = lastPageLatencyMillis;
+            return this;
+        }
+
+        public SearchProgress.Builder withRemainingPages(Integer remainingPages) {
+            this.remainingPages = remainingPages;
+            return this;
+        }
+
+        public SearchProgress.Builder withPagesPerSecond(Double pagesPerSecond) {
+            this.pagesPerSecond = pagesPerSecond;
+            return this;
+        }
+
+        public SearchProgress.Builder withTimestamp(long timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        public SearchProgress build() {
+            SearchProgress progress = new SearchProgress();
+            progress.targetURL = this.targetURL;
+            progress.state = this.state;
+            progress.pagesParsed = this.pagesParsed;
+            progress.properties = this.properties;
+            progress.pageRetries = this.pageRetries;
+            progress.failures = this.failures;
+            progress.lastPageLatencyMillis = this.lastPageLatencyMillis;
+            progress.remainingPages = this.remainingPages;
+            progress.pagesPerSecond = this.pagesPerSecond;
+            progress.timestamp = this.timestamp;
+            return progress;
+        }
+    }
+
+    public TargetURL getTargetURL() {
+        return targetURL;
+    }
+
+    public SearchState getState() {
+        return state;
+    }
+
+    public Integer getPagesParsed() {
+        return pagesParsed;
+    }
+
+    public Integer getProperties() {
+        return properties;
+    }
+
+    public Integer getPageRetries() {
+        return pageRetries;
+    }
+
+    public Integer getFailures() {
+        return failures;
+    }
+
+    public Long getLastPageLatencyMillis() {
+        return lastPageLatencyMillis;
+    }
+
+    public Integer getRemainingPages() {
+        return remainingPages;
+    }
+
+    public Double getPagesPerSecond() {
+        return pagesPerSecond;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    // Estimated milliseconds until search completes, 0 if it's not running, or null if search is paused,
+    // or remaining pages or page rate are unknown.
+    public Long getEtaMillis() {
+        if (state == SearchState.COMPLETED || state == SearchState.STOPPED) {
+            return 0L;
+        }
+        if (state == SearchState.PAUSED || remainingPages == null || pagesPerSecond <= 0) {
+            return null;
+        }
+        long etaMillis = Math.round(1000 * remainingPages / pagesPerSecond);
+        return Math.max(0, etaMillis - (System.currentTimeMillis() - timestamp));
+    }
+
+    // Describes the snapshot, e.g. "booking.com -> running, 12 pages, 300 properties, 0 retries, 0 failures, last page 180 ms, 8 pages remaining, ETA 4 s".
+    public String describe() {
+        StringBuilder progressSB = new StringBuilder();
+        progressSB.append(targetURL.getURL()).append(" -> ")
+                  .append(state.name().toLowerCase()).append(", ")
+                  .append(pagesParsed).append(" pages, ")
+                  .append(properties).append(" properties, ")
+                  .append(pageRetries).append(" retries, ")
+                  .append(failures).append(" failures, ")
+                  .append("last page ").append(lastPageLatencyMillis != null ? lastPageLatencyMillis + " ms" : "-").append(", ")
+                  .append(remainingPages != null ? remainingPages : "unknown").append(" pages remaining, ")
+                  .append("ETA ").append(formatEta(getEtaMillis()));
+        return progressSB.toString();
+    }
+
+    // Describes the snapshots of all targets of a search and the search ETA, which is the longest target ETA.
+    public static String describe(List<SearchProgress> progressList) {
+        StringBuilder statusSB = new StringBuilder();
+        statusSB.append("Search status:\n");
+        progressList.forEach(progress -> statusSB.append(progress.describe()).append("\n"));
+        statusSB.append("Search ETA -> ").append(formatEta(getEtaMillis(progressList))).append("\n");
+        return statusSB.toString();
+    }
+
+    // Estimated milliseconds until all targets of a search complete, or null if any target ETA is unknown.
+    public static Long getEtaMillis(List<SearchProgress> progressList) {
+        Long searchEtaMillis = 0L;
+        for (SearchProgress progress : progressList) {
+            Long etaMillis = progress.getEtaMillis();
+            if (etaMillis == null) {
+                return null;
+            }
+            searchEtaMillis = Math.max(searchEtaMillis, etaMillis);
+        }
+        return searchEtaMillis;
+    }
+
+    // Formats an ETA in seconds, or 'unknown' if it is null.
+    public static String formatEta(Long etaMillis) {
+        return etaMillis != null ? ((etaMillis + 999) / 1000) + " s" : "unknown";
+    }
+
+}
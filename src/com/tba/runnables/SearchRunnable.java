@@ -2,6 +2,9 @@
 //
 // This custom Runnable executes a search on a target URL.
 // Runnable can be paused, resumed and stopped.
+// Pages are fetched and parsed through the SearchPipeline stages,
+// while the Runnable merges their properties, records its crawl
+// state to an optional SearchCheckpoint and publishes its progress.
 //
 // Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
 //
@@ -9,32 +12,81 @@
 
 package com.tba.runnables;
 
+import com.tba.parsing.Page;
+import com.tba.parsing.PageCoalescer;
 import com.tba.parsing.Property;
+import com.tba.parsing.RepeatedPageException;
 import com.tba.parsing.SiteParser;
+import com.tba.enums.CircuitState;
+import com.tba.enums.SearchState;
 import com.tba.enums.TargetURL;
 
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Logger;
 
 public class SearchRunnable implements Runnable {
 
     private static final Logger logger = Logger.getLogger(SearchRunnable.class.getName());
+    private static final AtomicLong searchSequence = new AtomicLong();
+    private static final FetchScheduler fetchScheduler = FetchScheduler.getInstance();
+    private static final PipelineStage parseStage = SearchPipeline.getParseStage();
+    private static final PipelineStage aggregateStage = SearchPipeline.getAggregateStage();
+    private static final Integer MAX_FAN_OUT_PAGES = Integer.getInteger("tba.maxFanOutPages", 200); // Maximum pages retrieved in parallel.
+    private static final Integer MAX_PAGE_REPEATS = Integer.getInteger("tba.maxPageRepeats", 1); // Repeated pages after which search is terminated.
     private volatile boolean running = true;
+    private volatile boolean completed = false; // Search reached target's last page.
     private volatile boolean paused = false;
+    private volatile boolean targetDown = false; // A probe request found target still down, so search gave up target.
     private final Object pauseLock = new Object();
     private final TargetURL targetURL;
     private final SiteParser siteParser;
-    private final Map<String, Property> totalProperties = new HashMap<>(); // Total properties extracted from target URL.
+    private final long priority = searchSequence.getAndIncrement(); // Earlier searches pages are scheduled first.
+    private final Map<String, Property> totalProperties = new ConcurrentHashMap<>(); // Total properties extracted from target URL. Concurrent, so progress can be read while searching.
+    private final AtomicInteger pagesParsed = new AtomicInteger(); // Pages successfully retrieved and parsed.
+    private final AtomicInteger failures = new AtomicInteger(); // Page retrievals that threw an exception.
+    private final Set<PageRequest> inFlightPages = ConcurrentHashMap.newKeySet(); // Submitted pages not retrieved yet.
+    private final TargetHealth targetHealth;
+    private final SearchCheckpoint checkpoint;
+    private Future<?> lastAggregation = null; // Last printing or checkpoint task submitted to the aggregate stage.
+    private final AtomicReference<SearchProgress> progress; // Last published progress snapshot.
+    private volatile long lastPageLatencyNanos = -1; // Latency of the last retrieved page, or -1 if none was retrieved.
+    private long runStartNanos = System.nanoTime();
 
     public SearchRunnable(TargetURL targetURL, String destination, Date date) {
+        this(targetURL, destination, date, 1);
+    }
+
+    public SearchRunnable(TargetURL targetURL, String destination, Date date, Integer nights) {
+        this(targetURL, destination, date, nights, null);
+    }
+
+    public SearchRunnable(TargetURL targetURL, String destination, Date date, Integer nights, SearchCheckpoint checkpoint) {
         this.targetURL = targetURL;
-        this.siteParser = new SiteParser(destination, date);
+        this.siteParser = new SiteParser(destination, date, nights, checkpoint != null ? checkpoint.getArchiveKey() : null);
+        this.checkpoint = checkpoint;
+        this.targetHealth = TargetHealth.of(targetURL);
+        this.progress = new AtomicReference<>(new SearchProgress.Builder().withTargetURL(targetURL).withState(SearchState.RUNNING).build());
     }
 
     public Boolean getRunning() {
         return running;
     }
 
+    public Boolean getCompleted() {
+        return completed;
+    }
+
     public TargetURL getTargetURL() {
         return targetURL;
     }
@@ -43,18 +95,61 @@ public class SearchRunnable implements Runnable {
         return totalProperties;
     }
 
+    public Integer getPagesParsed() {
+        return pagesParsed.get();
+    }
+
+    public Integer getFailures() {
+        return failures.get();
+    }
+
+    // Last published progress snapshot. Snapshot is immutable, so it is read without locking.
+    public SearchProgress getProgress() {
+        return progress.get();
+    }
+
+    public long getBytesTransferred() {
+        return siteParser.getBytesTransferred();
+    }
+
+    public long getBytesDecoded() {
+        return siteParser.getBytesDecoded();
+    }
+
     // Code Thread executes.
     // On each loop a page is parsed.
     // A retry mechanism has been implemented, in case a page doesn't return any properties, due to error or no more results,
     // or the properties already exists, as most targets return the same properties after last page.
     // If retries exceed 5, search is terminated.
+    // Page requests rejected by target's open circuit breaker don't spend retries, search waits until a probe request is allowed.
+    // If a probe request finds target still down, search gives up target without completing it.
+    // Pages identical to an already retrieved page are not parsed. After 'tba.maxPageRepeats' (default 1)
+    // repeated pages, search is terminated.
+    // If first page reports the total results count, remaining pages are retrieved in parallel instead.
     @Override
-    @SuppressWarnings("unchecked")
     public void run() {
+        runStartNanos = System.nanoTime();
         Integer nextPageNumber = 0;
         List<Property> pageProperties = new ArrayList<>();
         Integer maxPageRetries = 0;
-        while (running) {
+        Integer pageRepeats = 0;
+        SearchCheckpoint.TargetState checkpointState = checkpoint != null ? checkpoint.getTargetState(targetURL) : null;
+        if (checkpointState != null) {
+            // Search resumes from recorded crawl state.
+            totalProperties.putAll(checkpointState.getProperties());
+            if (checkpointState.getCompleted()) {
+                logger.info(targetURL.getURL() + " search was already completed. Recorded properties: " + totalProperties.size() + ".");
+                complete();
+                publishProgress(0, 0);
+                return;
+            }
+            nextPageNumber = checkpointState.getNextPageNumber();
+            maxPageRetries = checkpointState.getPageRetries();
+            pageRepeats = checkpointState.getPageRepeats();
+            logger.info(targetURL.getURL() + " search resumes from page " + nextPageNumber + ". Recorded properties: " + totalProperties.size() + ".");
+        }
+        while (running && !targetDown) {
+            publishProgress(nextPageNumber, maxPageRetries);
             if (!pageProperties.isEmpty()) {
                 printPageProperties(pageProperties); // Previous page extracted properties are printed.
             }
@@ -62,45 +157,400 @@ public class SearchRunnable implements Runnable {
                 break;
             }
             try {                
-                // Reflection is used to call SiteParser method.
-                pageProperties = (List<Property>) siteParser.getClass().getDeclaredMethod(targetURL.getSiteParserMethod(), Integer.class).invoke(siteParser, nextPageNumber);
+                pageProperties = parsePage(nextPageNumber);
 
                 // Retry mechanism
                 if (pageProperties.size() > 0) {
                     Integer previousCount = totalProperties.size();
                     pageProperties.forEach(p -> totalProperties.put(p.getName(), p));
                     if (totalProperties.size() == previousCount) {
-                        stop();
+                        complete();
                     }
                     nextPageNumber++;
                     maxPageRetries = 0;
+                    recordCheckpoint(nextPageNumber, maxPageRetries, pageRepeats, pageProperties);
+                    // When first page reports total results count, remaining pages are retrieved in parallel.
+                    Integer pageCount = calculatePageCount();
+                    if (nextPageNumber == 1 && pageCount != null) {
+                        printPageProperties(pageProperties);
+                        pageProperties = new ArrayList<>();
+                        if (fanOutPages(nextPageNumber, pageCount)) {
+                            complete();
+                        }
+                    }
                 } else {
                     maxPageRetries++;
+                    recordCheckpoint(nextPageNumber, maxPageRetries, pageRepeats, pageProperties);
                     if (maxPageRetries > 4) {
-                        stop();
+                        complete();
                     }
                 }
             } catch (Exception e) {
+                pageProperties = new ArrayList<>();
+                if (!running) {
+                    // Search was stopped and in-flight page retrieval was aborted.
+                    break;
+                }
+                if (e instanceof RepeatedPageException) {
+                    // Repeated page was short-circuited without parsing.
+                    logger.info(targetURL.getURL() + " page " + nextPageNumber + " is identical to an already retrieved page.");
+                    pageRepeats++;
+                    nextPageNumber++;
+                    recordCheckpoint(nextPageNumber, maxPageRetries, pageRepeats, pageProperties);
+                    if (pageRepeats >= MAX_PAGE_REPEATS) {
+                        complete();
+                    }
+                    continue;
+                }
+                if (e instanceof CircuitOpenException) {
+                    // Request was rejected without reaching the target, so page is retried once circuit allows it,
+                    // unless target is still down.
+                    if (awaitCircuit((CircuitOpenException) e)) {
+                        break;
+                    }
+                    continue;
+                }
                 e.printStackTrace();
                 logger.info("There was an exception (" + e.getMessage() +") while parsing " + targetURL.getURL()  + " page " + nextPageNumber +".");
+                failures.incrementAndGet();
                 maxPageRetries++;
+                recordCheckpoint(nextPageNumber, maxPageRetries, pageRepeats, pageProperties);
                 if (maxPageRetries > 4) {
-                    stop();
+                    complete();
+                }
+            }
+        }
+        if (completed && checkpoint != null) {
+            aggregate(() -> checkpoint.recordCompleted(targetURL));
+        }
+        awaitAggregation();
+        running = false;
+        publishProgress(nextPageNumber, maxPageRetries);
+    }
+
+    // Publishes a new progress snapshot, with the provided next page number and its retries.
+    // Snapshot is replaced by compare and set, so its state is evaluated again if it changed meanwhile, e.g. by pause().
+    private void publishProgress(Integer nextPageNumber, Integer pageRetries) {
+        long latencyNanos = lastPageLatencyNanos;
+        double elapsedSeconds = (System.nanoTime() - runStartNanos) / 1e9;
+        Integer remainingPages = estimateRemainingPages(nextPageNumber);
+        progress.updateAndGet(previous -> new SearchProgress.Builder()
+                                              .withTargetURL(targetURL)
+                                              .withState(currentState())
+                                              .withPagesParsed(pagesParsed.get())
+                                              .withProperties(totalProperties.size())
+                                              .withPageRetries(pageRetries)
+                                              .withFailures(failures.get())
+                                              .withLastPageLatencyMillis(latencyNanos >= 0 ? TimeUnit.NANOSECONDS.toMillis(latencyNanos) : null)
+                                              .withRemainingPages(remainingPages)
+                                              .withPagesPerSecond(elapsedSeconds > 0 ? pagesParsed.get() / elapsedSeconds : 0.0)
+                                              .build());
+    }
+
+    // Publishes the current state, keeping the last snapshot progress.
+    private void publishState() {
+        progress.updateAndGet(previous -> new SearchProgress.Builder(previous).withState(currentState()).build());
+    }
+
+    private SearchState currentState() {
+        if (completed) {
+            return SearchState.COMPLETED;
+        }
+        if (!running) {
+            return SearchState.STOPPED;
+        }
+        return paused ? SearchState.PAUSED : SearchState.RUNNING;
+    }
+
+    // Estimates the pages remaining after the provided next page number, or returns null if they are unknown.
+    // Pages count is known when target reports its total results count. Targets that aren't offset based, are estimated
+    // from the properties per page so far.
+    private Integer estimateRemainingPages(Integer nextPageNumber) {
+        if (completed) {
+            return 0;
+        }
+        Integer pageCount = calculatePageCount();
+        if (pageCount != null) {
+            return Math.max(0, pageCount - nextPageNumber);
+        }
+        Integer totalResults = siteParser.getTotalResults();
+        Integer propertiesCount = totalProperties.size();
+        if (totalResults == null || nextPageNumber == 0 || propertiesCount == 0) {
+            return null;
+        }
+        double propertiesPerPage = propertiesCount / (double) nextPageNumber;
+        return (int) Math.ceil(Math.max(0, totalResults - propertiesCount) / propertiesPerPage);
+    }
+
+    // Records crawl state to the checkpoint, if provided.
+    private void recordCheckpoint(Integer nextPageNumber, Integer pageRetries, Integer pageRepeats, List<Property> pageProperties) {
+        if (checkpoint != null) {
+            aggregate(() -> checkpoint.recordPage(targetURL, nextPageNumber, pageRetries, pageRepeats, pageProperties));
+        }
+    }
+
+    // Submits a printing or checkpoint task to the aggregate stage, which executes them in submission order.
+    // Task is submitted even if Thread is interrupted while the stage queue is full, so no record is lost or reordered.
+    private void aggregate(Runnable task) {
+        Boolean interrupted = false;
+        while (true) {
+            try {
+                lastAggregation = aggregateStage.submit(Executors.callable(task));
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Waits until all submitted aggregate tasks are executed, so checkpoint is complete when search terminates.
+    private void awaitAggregation() {
+        if (lastAggregation == null) {
+            return;
+        }
+        Boolean interrupted = false;
+        while (true) {
+            try {
+                lastAggregation.get();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (ExecutionException e) {
+                logger.info("There was an exception (" + e.getCause().getMessage() + ") while aggregating " + targetURL.getURL() + " pages.");
+                break;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Page retrieval is submitted to the FetchScheduler, which executes it within target's budget.
+    // Submitted page is tracked as in-flight, so it can be aborted when search is stopped.
+    private PageRequest submitPage(Integer pageNumber) {
+        PageRequest pageRequest = new PageRequest(pageNumber);
+        inFlightPages.add(pageRequest);
+        if (!running) {
+            pageRequest.cancel();
+        }
+        return pageRequest;
+    }
+
+    // Page is retrieved and current Thread waits for its properties.
+    // Exceptions thrown by SiteParser are rethrown as is.
+    private List<Property> parsePage(Integer pageNumber) throws Exception {
+        return awaitPage(submitPage(pageNumber));
+    }
+
+    // Waits for a submitted page properties.
+    // If the page retrieval exceeds target's p95 latency since it started, a hedged duplicate request is submitted,
+    // when target's hedging share allows it. First successful response is used and the other request is cancelled.
+    // If all requests fail, the failure is rethrown, preferring one that isn't caused by the other request's repeated page.
+    private List<Property> awaitPage(PageRequest pageRequest) throws Exception {
+        try {
+            synchronized (pageRequest) {
+                while (true) {
+                    if (pageRequest.cancelled) {
+                        throw new CancellationException();
+                    }
+                    if (pageRequest.result != null) {
+                        pageRequest.cancel();
+                        if (pageRequest.hedgeWon) {
+                            targetHealth.recordHedgeWon();
+                        }
+                        pagesParsed.incrementAndGet();
+                        return pageRequest.result;
+                    }
+                    if (pageRequest.originalDone && (pageRequest.hedge == null || pageRequest.hedgeDone)) {
+                        throw pageRequest.failure;
+                    }
+                    long waitNanos = Long.MAX_VALUE;
+                    long hedgeDelayNanos = targetHealth.getHedgeDelayNanos();
+                    if (pageRequest.hedge == null && !pageRequest.hedgeDeclined && !pageRequest.originalFetched && hedgeDelayNanos > 0 && pageRequest.startNanos > 0) {
+                        waitNanos = pageRequest.startNanos + hedgeDelayNanos - System.nanoTime();
+                        if (waitNanos <= 0) {
+                            if (targetHealth.tryHedge()) {
+                                logger.info(targetURL.getURL() + " page " + pageRequest.pageNumber + " exceeded p95 latency of "
+                                            + TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos) + " ms. Hedged request is submitted.");
+                                pageRequest.submitHedge();
+                            } else {
+                                pageRequest.hedgeDeclined = true;
+                            }
+                            continue;
+                        }
+                    }
+                    if (waitNanos == Long.MAX_VALUE) {
+                        pageRequest.wait();
+                    } else {
+                        TimeUnit.NANOSECONDS.timedWait(pageRequest, waitNanos);
+                    }
                 }
             }
+        } finally {
+            inFlightPages.remove(pageRequest);
         }
     }
 
+    // Executes a page retrieval within target's TargetHealth, recording its latency or failure.
+    // Request is rejected if target's circuit breaker is open. A shared retrieval is recorded as aborted,
+    // so its outcome is recorded once, by the search executing it.
+    private Page executePageRequest(Integer pageNumber) throws Exception {
+        if (!targetHealth.tryAcquire()) {
+            throw new CircuitOpenException(targetURL);
+        }
+        long startTime = System.nanoTime();
+        try {
+            Page page = invokeSiteFetcher(pageNumber);
+            lastPageLatencyNanos = System.nanoTime() - startTime;
+            if (PageCoalescer.wasShared()) {
+                targetHealth.recordAbort();
+            } else {
+                targetHealth.recordSuccess(lastPageLatencyNanos);
+            }
+            return page;
+        } catch (RepeatedPageException e) {
+            lastPageLatencyNanos = System.nanoTime() - startTime;
+            if (PageCoalescer.wasShared()) {
+                targetHealth.recordAbort();
+            } else {
+                targetHealth.recordSuccess(lastPageLatencyNanos); // Page was retrieved successfully.
+            }
+            throw e;
+        } catch (Exception e) {
+            if (PageCoalescer.wasShared() || e instanceof InterruptedIOException || e instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+                targetHealth.recordAbort(); // Request was cancelled.
+            } else {
+                targetHealth.recordFailure();
+            }
+            throw e;
+        }
+    }
+
+    // Reflection is used to call SiteParser fetch method.
+    private Page invokeSiteFetcher(Integer pageNumber) throws Exception {
+        try {
+            return (Page) siteParser.getClass().getDeclaredMethod(targetURL.getSiteFetchMethod(), Integer.class).invoke(siteParser, pageNumber);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    // Reflection is used to call SiteParser method, once per Page, so a Page shared with other searches is parsed once.
+    @SuppressWarnings("unchecked")
+    private List<Property> invokeSiteParser(Page page, Integer pageNumber) throws Exception {
+        return siteParser.parseOnce(targetURL, page, pageNumber, () -> {
+            try {
+                return (List<Property>) siteParser.getClass().getDeclaredMethod(targetURL.getSiteParserMethod(), Page.class, Integer.class).invoke(siteParser, page, pageNumber);
+            } catch (InvocationTargetException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        });
+    }
+
+    // Calculates exact target pages count from the total results count reported by first page.
+    // Returns null if target doesn't report it or its pages are not offset based.
+    private Integer calculatePageCount() {
+        Integer totalResults = siteParser.getTotalResults();
+        if (totalResults == null || targetURL.getPageSize() <= 0) {
+            return null;
+        }
+        Integer pageCount = (totalResults + targetURL.getPageSize() - 1) / targetURL.getPageSize();
+        return Math.min(pageCount, MAX_FAN_OUT_PAGES);
+    }
+
+    // Retrieves pages [firstPageNumber, pageCount) in parallel, by submitting them all to the FetchScheduler,
+    // which limits them to target's connections budget.
+    // Pages properties are merged in page order, once each page is retrieved, and recorded to the checkpoint.
+    // Returns true if all pages were merged, or false if search was stopped or gave up target.
+    private Boolean fanOutPages(Integer firstPageNumber, Integer pageCount) {
+        if (firstPageNumber >= pageCount) {
+            return true;
+        }
+        logger.info(targetURL.getURL() + " reported " + siteParser.getTotalResults() + " results. Retrieving " + (pageCount - firstPageNumber) + " remaining pages in parallel.");
+        List<PageRequest> pageRequests = new ArrayList<>();
+        for (int pageNumber = firstPageNumber; pageNumber < pageCount; pageNumber++) {
+            pageRequests.add(submitPage(pageNumber));
+        }
+        for (int i = 0; i < pageRequests.size(); i++) {
+            if (pauseCheck()) {
+                pageRequests.forEach(PageRequest::cancel);
+                return false;
+            }
+            List<Property> pageProperties = awaitPageWithRetries(firstPageNumber + i, pageRequests.get(i));
+            if (!running || targetDown) {
+                pageRequests.forEach(PageRequest::cancel);
+                return false;
+            }
+            pageProperties.forEach(p -> totalProperties.put(p.getName(), p));
+            recordCheckpoint(firstPageNumber + i + 1, 0, 0, pageProperties);
+            printPageProperties(pageProperties);
+            publishProgress(firstPageNumber + i + 1, 0);
+        }
+        return true;
+    }
+
+    // Waits for a submitted page, resubmitting it up to 5 times if it doesn't return any properties or an exception is thrown.
+    // Repeated pages are not retried. Pages rejected by target's open circuit breaker are resubmitted once circuit allows it,
+    // without spending retries, unless target is still down.
+    private List<Property> awaitPageWithRetries(Integer pageNumber, PageRequest pageRequest) {
+        Integer pageRetries = 0;
+        while (true) {
+            try {
+                List<Property> pageProperties = awaitPage(pageRequest);
+                if (pageProperties.size() > 0) {
+                    return pageProperties;
+                }
+            } catch (RepeatedPageException e) {
+                logger.info(targetURL.getURL() + " page " + pageNumber + " is identical to an already retrieved page.");
+                break;
+            } catch (InterruptedException | CancellationException e) {
+                break;
+            } catch (CircuitOpenException e) {
+                if (awaitCircuit(e) || pauseCheck()) {
+                    break;
+                }
+                pageRequest = submitPage(pageNumber);
+                continue;
+            } catch (Exception e) {
+                if (!running) {
+                    break;
+                }
+                logger.info("There was an exception (" + e.getMessage() +") while parsing " + targetURL.getURL()  + " page " + pageNumber +".");
+                failures.incrementAndGet();
+            }
+            pageRetries++;
+            publishProgress(pageNumber, pageRetries);
+            if (pageRetries > 4 || pauseCheck()) {
+                break;
+            }
+            pageRequest = submitPage(pageNumber);
+        }
+        return new ArrayList<>();
+    }
+
     // Thread is terminated.
+    // In-flight page retrievals are cancelled, interrupting the workers retrieving them.
     public void stop() {
         running = false;
+        inFlightPages.forEach(PageRequest::cancel);
         resume();
+        publishState();
+    }
+
+    // Search reached target's last page and Thread is terminated.
+    private void complete() {
+        completed = true;
+        running = false;
     }
 
     // Thread pauses execution.
     // Thread will pause execution only after finishing current loop execution.
     public void pause() {
         paused = true;
+        publishState();
     }
 
     // Thread resumes execution.
@@ -109,6 +559,32 @@ public class SearchRunnable implements Runnable {
             paused = false;
             pauseLock.notifyAll();
         }
+        publishState();
+    }
+
+    // Waits until target's circuit breaker allows page requests, after a request was rejected.
+    // Waiting is interrupted when search is stopped. Once a probe request finds target still down, search gives up target
+    // instead of waiting for further probes, so a down target costs each search a single open circuit period.
+    // Returns true if search was stopped, gave up target or Thread was interrupted, as pauseCheck().
+    private Boolean awaitCircuit(CircuitOpenException e) {
+        if (targetHealth.getCircuitState() == CircuitState.OPEN && !targetHealth.isDown()) {
+            logger.info(e.getMessage() + " Search waits " + TimeUnit.NANOSECONDS.toMillis(targetHealth.getRetryDelayNanos()) + " ms for a probe request.");
+        }
+        synchronized (pauseLock) {
+            long waitNanos;
+            while (running && !targetHealth.isDown() && (waitNanos = targetHealth.getRetryDelayNanos()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(pauseLock, waitNanos);
+                } catch (InterruptedException ex) {
+                    return true;
+                }
+            }
+            if (running && !targetDown && targetHealth.isDown()) {
+                targetDown = true;
+                logger.info(e.getMessage() + " Probe request found target still down. Search gives up " + targetURL.getURL() + ".");
+            }
+            return !running || targetDown;
+        }
     }
 
     // Pause check.
@@ -136,16 +612,113 @@ public class SearchRunnable implements Runnable {
         return false;
     }
 
-    // Prints extracted properties.
+    // Prints extracted properties, by the aggregate stage.
     private void printPageProperties(List<Property> pageProperties) {
-        pageProperties.forEach(property -> {
+        aggregate(() -> pageProperties.forEach(property -> {
             StringBuilder propertySB = new StringBuilder();
             propertySB.append("New property found in ").append(targetURL.getURL()).append(":\n")
                       .append("Name -> ").append(property.getName()).append("\n")
                       .append("Score -> ").append(property.getScore()).append("\n")
                       .append("Price -> ").append(property.getPrice()).append("\n");
             logger.info(propertySB.toString());
-        });
+        }));
+    }
+
+    // Page retrieval request: the original request and, if it exceeds target's p95 latency, a hedged duplicate request.
+    // Each request is fetched by the FetchScheduler and handed to the parse stage, blocking while its queue is full.
+    // Requests record their start and outcome under the request monitor and notify the waiting Thread,
+    // so it reacts to whichever happens first.
+    private class PageRequest {
+
+        private final Integer pageNumber;
+        private final Future<?> original;
+        private Future<?> hedge = null;
+        private long startNanos = 0; // Execution start of the original request, excluding its queueing.
+        private Boolean hedgeDeclined = false; // Hedging was not allowed by target's hedging share.
+        private Boolean originalFetched = false; // Original page was retrieved, so it is not hedged while waiting to be parsed.
+        private Boolean originalDone = false;
+        private Boolean hedgeDone = false;
+        private Boolean hedgeWon = false;
+        private Boolean cancelled = false;
+        private List<Property> result = null; // First successful response.
+        private Exception failure = null;
+
+        private PageRequest(Integer pageNumber) {
+            this.pageNumber = pageNumber;
+            this.original = fetchScheduler.submit(targetURL, priority, () -> {
+                synchronized (this) {
+                    startNanos = System.nanoTime();
+                    notifyAll();
+                }
+                return execute(false);
+            });
+        }
+
+        // Hedged request is scheduled ahead of queued pages, as its page is already late.
+        // Request monitor must be held by the caller.
+        private void submitHedge() {
+            hedge = fetchScheduler.submit(targetURL, Long.MIN_VALUE, () -> execute(true));
+        }
+
+        // Fetch stage: retrieves the page and submits it to the parse stage.
+        // Hedged request is not coalesced, so it doesn't wait for the request it hedges.
+        private Void execute(Boolean hedged) throws Exception {
+            try {
+                Page page = hedged ? PageCoalescer.uncoalesced(() -> executePageRequest(pageNumber)) : executePageRequest(pageNumber);
+                synchronized (this) {
+                    originalFetched |= !hedged;
+                }
+                parseStage.submit(() -> parse(hedged, page));
+                return null;
+            } catch (Exception e) {
+                complete(hedged, null, e);
+                throw e;
+            }
+        }
+
+        // Parse stage: extracts the page properties, unless request was cancelled or already answered.
+        private Void parse(Boolean hedged, Page page) {
+            synchronized (this) {
+                if (cancelled || result != null) {
+                    complete(hedged, null, new CancellationException());
+                    return null;
+                }
+            }
+            try {
+                complete(hedged, invokeSiteParser(page, pageNumber), null);
+            } catch (Exception e) {
+                complete(hedged, null, e);
+            }
+            return null;
+        }
+
+        // Records a request outcome. First successful response is kept.
+        private synchronized void complete(Boolean hedged, List<Property> pageProperties, Exception e) {
+            if (hedged) {
+                hedgeDone = true;
+            } else {
+                originalDone = true;
+            }
+            if (pageProperties != null && result == null) {
+                result = pageProperties;
+                hedgeWon = hedged;
+            } else if (e != null && (failure == null || failure instanceof RepeatedPageException)) {
+                failure = e;
+            }
+            notifyAll();
+        }
+
+        // Cancels all requests, interrupting the workers executing them.
+        private synchronized void cancel() {
+            if (result == null) {
+                cancelled = true;
+            }
+            original.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+            notifyAll();
+        }
     }
 
 }
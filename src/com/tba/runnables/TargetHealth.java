@@ -0,0 +1,188 @@
+// -------------------------------------------------------------
+//
+// This class tracks the health of a TargetURL, shared by all
+// searches on it: latency of recent page requests, hedged requests
+// and its circuit breaker.
+// Latency percentiles are calculated over the last 256 requests.
+// Once enough samples exist, a page request exceeding target's p95
+// latency can be hedged with a duplicate request. Hedged requests
+// are limited to 'tba.hedgeRatio'(default 0.05) of all requests, so
+// targets are not overloaded.
+// Circuit breaker opens after 'tba.breakerFailures'(default 5)
+// consecutive failed requests, rejecting requests for
+// 'tba.breakerOpenMillis'(default 30000) ms. Then a single probe
+// request is executed: if it succeeds circuit closes, otherwise it
+// opens again and target is considered down until a probe succeeds.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+import com.tba.enums.CircuitState;
+import com.tba.enums.TargetURL;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public class TargetHealth {
+
+    private static final Logger logger = Logger.getLogger(TargetHealth.class.getName());
+    private static final Map<TargetURL, TargetHealth> instances = new EnumMap<>(TargetURL.class);
+    private static final Integer LATENCY_SAMPLES = 256;
+    private static final Integer MIN_HEDGE_SAMPLES = Integer.getInteger("tba.hedgeMinSamples", 20); // Samples required before hedging.
+    private static final Double HEDGE_RATIO = Double.parseDouble(System.getProperty("tba.hedgeRatio", "0.05"));
+    private static final Integer BREAKER_FAILURES = Integer.getInteger("tba.breakerFailures", 5);
+    private static final long BREAKER_OPEN_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("tba.breakerOpenMillis", 30000L));
+    private static final long PROBE_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100); // Retry delay of rejected requests, while probe request is in flight.
+    private final TargetURL targetURL;
+    private final long[] latencies = new long[LATENCY_SAMPLES]; // Ring buffer of recent request latencies(ns).
+    private Integer latencyCount = 0;
+    private Integer latencyIndex = 0;
+    private long requests = 0;
+    private long hedgedRequests = 0;
+    private long hedgesWon = 0; // Hedged requests that responded before the original.
+    private CircuitState circuitState = CircuitState.CLOSED;
+    private Integer consecutiveFailures = 0;
+    private long openUntilNanos = 0;
+    private Thread probeThread = null; // Thread executing the probe request, while circuit is half open.
+    private Boolean probeFailed = false; // Circuit was opened again by a failed probe request.
+
+    static {
+        for (TargetURL targetURL : TargetURL.values()) {
+            instances.put(targetURL, new TargetHealth(targetURL));
+        }
+    }
+
+    private TargetHealth(TargetURL targetURL) {
+        this.targetURL = targetURL;
+    }
+
+    public static TargetHealth of(TargetURL targetURL) {
+        return instances.get(targetURL);
+    }
+
+    public synchronized CircuitState getCircuitState() {
+        return circuitState;
+    }
+
+    // Returns true if circuit is open after a failed probe request, so target is still down.
+    public synchronized Boolean isDown() {
+        return circuitState == CircuitState.OPEN && probeFailed;
+    }
+
+    // Acquires permission for a page request, executed by the current Thread.
+    // Returns false if circuit is open, or half open with its probe request in flight.
+    public synchronized Boolean tryAcquire() {
+        if (circuitState == CircuitState.OPEN && System.nanoTime() >= openUntilNanos) {
+            circuitState = CircuitState.HALF_OPEN;
+            probeThread = Thread.currentThread();
+            logger.info(targetURL.getURL() + " circuit breaker is half open. Probe request is executed.");
+        } else if (circuitState != CircuitState.CLOSED) {
+            return false;
+        }
+        requests++;
+        return true;
+    }
+
+    // Returns the delay after which a rejected page request can be retried: until circuit allows a probe request,
+    // or a short poll interval while probe request is in flight. Returns 0 if a request can be executed now.
+    public synchronized long getRetryDelayNanos() {
+        if (circuitState == CircuitState.OPEN) {
+            return Math.max(0, openUntilNanos - System.nanoTime());
+        }
+        return circuitState == CircuitState.HALF_OPEN ? PROBE_POLL_NANOS : 0;
+    }
+
+    // Records a successful page request latency. A successful request closes the circuit.
+    public synchronized void recordSuccess(long latencyNanos) {
+        latencies[latencyIndex] = latencyNanos;
+        latencyIndex = (latencyIndex + 1) % LATENCY_SAMPLES;
+        latencyCount = Math.min(latencyCount + 1, LATENCY_SAMPLES);
+        consecutiveFailures = 0;
+        if (circuitState != CircuitState.CLOSED) {
+            circuitState = CircuitState.CLOSED;
+            probeThread = null;
+            probeFailed = false;
+            logger.info(targetURL.getURL() + " circuit breaker is closed, as target recovered.");
+        }
+    }
+
+    // Records a failed page request. Circuit opens on consecutive failures or a failed probe request.
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (circuitState == CircuitState.HALF_OPEN && probeThread == Thread.currentThread()) {
+            probeFailed = true;
+            open();
+        } else if (circuitState == CircuitState.CLOSED && consecutiveFailures >= BREAKER_FAILURES) {
+            probeFailed = false;
+            open();
+        }
+    }
+
+    // Records a page request aborted without response, e.g. cancelled.
+    // If it was the probe request, next request is executed as probe.
+    public synchronized void recordAbort() {
+        if (circuitState == CircuitState.HALF_OPEN && probeThread == Thread.currentThread()) {
+            circuitState = CircuitState.OPEN;
+            openUntilNanos = System.nanoTime();
+            probeThread = null;
+        }
+    }
+
+    // Returns target's p95 latency, after which a page request is hedged, or -1 if there are not enough samples.
+    public synchronized long getHedgeDelayNanos() {
+        return latencyCount >= MIN_HEDGE_SAMPLES ? percentile(0.95) : -1;
+    }
+
+    // Acquires permission for a hedged request.
+    // Returns false if circuit is not closed or hedged requests reached their share of all requests.
+    public synchronized Boolean tryHedge() {
+        if (circuitState != CircuitState.CLOSED || hedgedRequests + 1 > HEDGE_RATIO * requests) {
+            return false;
+        }
+        hedgedRequests++;
+        return true;
+    }
+
+    public synchronized void recordHedgeWon() {
+        hedgesWon++;
+    }
+
+    // Describes target's latency percentiles, hedged requests and circuit state.
+    public synchronized String describe() {
+        StringBuilder healthSB = new StringBuilder();
+        healthSB.append(targetURL.getURL()).append(" -> ");
+        if (latencyCount > 0) {
+            healthSB.append("p50 ").append(TimeUnit.NANOSECONDS.toMillis(percentile(0.5))).append(" ms, ")
+                    .append("p95 ").append(TimeUnit.NANOSECONDS.toMillis(percentile(0.95))).append(" ms, ")
+                    .append("p99 ").append(TimeUnit.NANOSECONDS.toMillis(percentile(0.99))).append(" ms, ");
+        }
+        healthSB.append(requests).append(" requests, ")
+                .append(hedgedRequests).append(" hedged (").append(hedgesWon).append(" won), ")
+                .append("circuit ").append(circuitState.name().toLowerCase().replace('_', ' '));
+        return healthSB.toString();
+    }
+
+    // Circuit opens, rejecting requests until a probe is allowed.
+    private void open() {
+        circuitState = CircuitState.OPEN;
+        openUntilNanos = System.nanoTime() + BREAKER_OPEN_NANOS;
+        probeThread = null;
+        logger.info(targetURL.getURL() + " circuit breaker is open after " + consecutiveFailures + " consecutive failures. Requests are rejected for "
+                    + TimeUnit.NANOSECONDS.toMillis(BREAKER_OPEN_NANOS) + " ms.");
+    }
+
+    // Calculates a latency percentile(nearest rank) of recent samples.
+    private long percentile(double percentile) {
+        long[] samples = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(samples);
+        int rank = (int) Math.ceil(percentile * samples.length);
+        return samples[Math.max(0, rank - 1)];
+    }
+
+}
@@ -0,0 +1,59 @@
+// -------------------------------------------------------------
+//
+// This auxiliary class formats values as JSON literals, so service
+// responses can be built with StringBuilders.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.service;
+
+public class Json {
+
+    private Json() {}
+
+    // Formats a String as a quoted and escaped JSON string, or null.
+    public static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder jsonSB = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    jsonSB.append("\\\"");
+                    break;
+                case '\\':
+                    jsonSB.append("\\\\");
+                    break;
+                case '\n':
+                    jsonSB.append("\\n");
+                    break;
+                case '\r':
+                    jsonSB.append("\\r");
+                    break;
+                case '\t':
+                    jsonSB.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        jsonSB.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        jsonSB.append(c);
+                    }
+            }
+        }
+        return jsonSB.append('"').toString();
+    }
+
+    // Formats a number as a JSON number, or null. Non finite numbers are formatted as null.
+    public static String number(Number value) {
+        if (value == null || (value instanceof Double && !Double.isFinite((Double) value))) {
+            return "null";
+        }
+        return value.toString();
+    }
+
+}
@@ -0,0 +1,314 @@
+// -------------------------------------------------------------
+//
+// This class executes the service mode of the application, an
+// HTTP service built on the JDK HTTP server. Each submitted search
+// is held by its own SearchSession, so many searches run
+// concurrently in one process, sharing the FetchScheduler target
+// budgets and the Database connection.
+// Endpoints (dates in 'dd/MM/yyyy' format, JSON responses):
+// POST   /searches?destination=&date=[&nights=]  submits a search, or joins the running search of the same terms.
+// GET    /searches                               lists sessions.
+// GET    /searches/{id}                          polls a search progress.
+// GET    /searches/{id}/results                  fetches a finished search statistics and properties.
+// DELETE /searches/{id}                          stops a search, keeping its checkpoint.
+// GET    /history?destination=&date=[&nights=]   queries stored searches of a search term.
+// GET    /history?destination=&from=&to=         queries stored searches of a date range.
+// Finished sessions beyond 'tba.service.maxSessions' (default 100)
+// are discarded, oldest first.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tba.batch.SearchTerm;
+import com.tba.database.DatabaseAdapter;
+import com.tba.database.Search;
+import com.tba.enums.SessionStatus;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+public class SearchService {
+
+    private static final Logger logger = Logger.getLogger(SearchService.class.getName());
+    private static final Integer MAX_SESSIONS = Integer.getInteger("tba.service.maxSessions", 100); // Retained sessions, including finished ones.
+    private static final Integer MAX_HISTORY_DAYS = 366; // Maximum date range of a history query.
+    private final DatabaseAdapter databaseAdapter;
+    private final Integer port;
+    private final Map<String, SearchSession> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService searchExecutor = Executors.newCachedThreadPool(); // Executes SearchRunnables of all sessions.
+    private final ExecutorService requestExecutor;
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+    private HttpServer server;
+
+    // Concurrency defines how many requests can be handled at the same time.
+    public SearchService(DatabaseAdapter databaseAdapter, Integer port, Integer concurrency) {
+        this.databaseAdapter = databaseAdapter;
+        this.port = port;
+        this.requestExecutor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+    }
+
+    // Starts the HTTP server and blocks until service is stopped.
+    public void run() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/searches", this::handleSearches);
+        server.createContext("/history", this::handleHistory);
+        server.setExecutor(requestExecutor);
+        server.start();
+        logger.info("Service started on port " + server.getAddress().getPort() + ".");
+        try {
+            stopLatch.await();
+        } catch (InterruptedException e) {
+            logger.info("Service was interrupted.");
+        }
+        stop();
+        logger.info("Service terminated.");
+    }
+
+    // Service is terminated. Running sessions are stopped, keeping their checkpoints.
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        sessions.values().forEach(SearchSession::stop);
+        searchExecutor.shutdown();
+        requestExecutor.shutdown();
+        stopLatch.countDown();
+    }
+
+    // Handles '/searches' endpoints.
+    private void handleSearches(HttpExchange exchange) throws IOException {
+        try {
+            String[] segments = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            String method = exchange.getRequestMethod();
+            if (segments.length == 1 && method.equals("POST")) {
+                submitSearch(exchange);
+            } else if (segments.length == 1 && method.equals("GET")) {
+                listSessions(exchange);
+            } else if (segments.length >= 2 && segments.length <= 3) {
+                SearchSession session = sessions.get(segments[1]);
+                if (session == null) {
+                    sendError(exchange, 404, "Session " + segments[1] + " doesn't exist.");
+                } else if (segments.length == 2 && method.equals("GET")) {
+                    sendJson(exchange, 200, session.describeProgress());
+                } else if (segments.length == 2 && method.equals("DELETE")) {
+                    session.stop();
+                    sendJson(exchange, 202, session.describeProgress());
+                } else if (segments.length == 3 && segments[2].equals("results") && method.equals("GET")) {
+                    if (session.getSearch() == null) {
+                        sendJson(exchange, 409, session.describeProgress());
+                    } else {
+                        sendJson(exchange, 200, session.describeResults());
+                    }
+                } else {
+                    sendError(exchange, 405, "Method " + method + " is not supported.");
+                }
+            } else {
+                sendError(exchange, 404, "Endpoint doesn't exist.");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "There was an exception (" + e.getMessage() + ").");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Creates and starts a new session from request parameters.
+    private void submitSearch(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = retrieveParameters(exchange);
+        String destination = parameters.get("destination");
+        if (destination == null || destination.isBlank()) {
+            sendError(exchange, 400, "You must provide a destination.");
+            return;
+        }
+        LocalDate date;
+        Integer nights;
+        try {
+            date = SearchTerm.parseDate(parameters.getOrDefault("date", ""));
+            nights = Integer.parseInt(parameters.getOrDefault("nights", "1").trim());
+        } catch (DateTimeParseException e) {
+            sendError(exchange, 400, "You must provide a date in 'dd/MM/yyyy' format.");
+            return;
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "Nights must be an Integer.");
+            return;
+        }
+        if (date.isBefore(LocalDate.now())) {
+            sendError(exchange, 400, "You can't provide a past date.");
+            return;
+        }
+        if (nights < 1) {
+            sendError(exchange, 400, "Nights must be a positive Integer.");
+            return;
+        }
+        SearchTerm searchTerm = new SearchTerm(destination.trim(), SearchTerm.toDate(date), nights);
+        SearchSession session;
+        String conflict = null;
+        // Sessions of the same terms share a checkpoint, so a running session of the submitted terms is joined.
+        // A stopping session is not joined, as it ends stopped, and its checkpoint is open until it finishes.
+        synchronized (sessions) {
+            session = sessions.values().stream()
+                              .filter(runningSession -> runningSession.getStatus() == SessionStatus.RUNNING)
+                              .filter(runningSession -> runningSession.getSearchTerm().toString().equals(searchTerm.toString()))
+                              .findFirst()
+                              .orElse(null);
+            if (session != null && session.isStopping()) {
+                conflict = "Session " + session.getId() + " of search term " + searchTerm + " is stopping. Submit the search again once it is stopped, to resume it";
+            } else if (session != null) {
+                logger.info("Search term " + searchTerm + " is already searched by session " + session.getId() + ", which is joined.");
+            } else {
+                session = new SearchSession(searchTerm);
+                try {
+                    session.start(searchExecutor, databaseAdapter);
+                    sessions.put(session.getId(), session);
+                    discardFinishedSessions();
+                } catch (IllegalStateException e) {
+                    conflict = e.getMessage();
+                }
+            }
+        }
+        if (conflict != null) {
+            sendError(exchange, 409, "There was an exception (" + conflict + ").");
+            return;
+        }
+        exchange.getResponseHeaders().add("Location", "/searches/" + session.getId());
+        sendJson(exchange, 202, session.describeProgress());
+    }
+
+    // Lists all retained sessions progress.
+    private void listSessions(HttpExchange exchange) throws IOException {
+        StringBuilder sessionsSB = new StringBuilder("[");
+        sessions.values().stream()
+                .sorted(Comparator.comparingLong(SearchSession::getCreatedAt))
+                .forEach(session -> sessionsSB.append(sessionsSB.length() > 1 ? "," : "").append(session.describeProgress()));
+        sendJson(exchange, 200, sessionsSB.append("]").toString());
+    }
+
+    // Discards the oldest finished sessions, while retained sessions exceed maximum.
+    private void discardFinishedSessions() {
+        Iterator<SearchSession> iterator = sessions.values().stream()
+                                                   .filter(session -> session.getStatus().isTerminal())
+                                                   .sorted(Comparator.comparingLong(SearchSession::getFinishedAt))
+                                                   .iterator();
+        while (sessions.size() > MAX_SESSIONS && iterator.hasNext()) {
+            sessions.remove(iterator.next().getId());
+        }
+    }
+
+    // Handles '/history' endpoint. Stored searches of a search term, or of a date range, are returned.
+    private void handleHistory(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                sendError(exchange, 405, "Method " + exchange.getRequestMethod() + " is not supported.");
+                return;
+            }
+            Map<String, String> parameters = retrieveParameters(exchange);
+            String destination = parameters.get("destination");
+            if (destination == null || destination.isBlank()) {
+                sendError(exchange, 400, "You must provide a destination.");
+                return;
+            }
+            List<Search> searchList;
+            try {
+                if (parameters.containsKey("date")) {
+                    LocalDate date = SearchTerm.parseDate(parameters.get("date"));
+                    Integer nights = Integer.parseInt(parameters.getOrDefault("nights", "1").trim());
+                    searchList = databaseAdapter.retrieveSearchTermList(destination.trim(), SearchTerm.toDate(date), nights);
+                } else if (parameters.containsKey("from") && parameters.containsKey("to")) {
+                    LocalDate firstDate = SearchTerm.parseDate(parameters.get("from"));
+                    LocalDate lastDate = SearchTerm.parseDate(parameters.get("to"));
+                    if (lastDate.isBefore(firstDate) || lastDate.toEpochDay() - firstDate.toEpochDay() >= MAX_HISTORY_DAYS) {
+                        sendError(exchange, 400, "Date range must be ordered and can't exceed " + MAX_HISTORY_DAYS + " days.");
+                        return;
+                    }
+                    searchList = databaseAdapter.retrieveSearchRangeList(destination.trim(), firstDate, lastDate);
+                } else {
+                    sendError(exchange, 400, "You must provide a date, or a from and to date range.");
+                    return;
+                }
+            } catch (DateTimeParseException e) {
+                sendError(exchange, 400, "You must provide dates in 'dd/MM/yyyy' format.");
+                return;
+            } catch (NumberFormatException e) {
+                sendError(exchange, 400, "Nights must be an Integer.");
+                return;
+            }
+            StringBuilder historySB = new StringBuilder("[");
+            searchList.forEach(search -> historySB.append(historySB.length() > 1 ? "," : "").append(describeSearch(search)));
+            sendJson(exchange, 200, historySB.append("]").toString());
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "There was an exception (" + e.getMessage() + ").");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Returns a Search record as a JSON object.
+    static String describeSearch(Search search) {
+        if (search == null) {
+            return "null";
+        }
+        StringBuilder searchSB = new StringBuilder();
+        searchSB.append("{\"destination\":").append(Json.quote(search.getDestination()))
+                .append(",\"date\":").append(Json.quote(search.getDate().toInstant().atZone(ZoneId.systemDefault()).toLocalDate().toString()))
+                .append(",\"nights\":").append(search.getNights())
+                .append(",\"propertiesFound\":").append(Json.number(search.getPropertiesFound()))
+                .append(",\"unavailableProperties\":").append(Json.number(search.getUnavailableProperties()))
+                .append(",\"scoreMedian\":").append(Json.number(search.getScoreMedian()))
+                .append(",\"priceMedian\":").append(Json.number(search.getPriceMedian()))
+                .append(",\"timestamp\":").append(search.getTimestamp().getTime())
+                .append("}");
+        return searchSB.toString();
+    }
+
+    // Retrieves query string and form encoded body parameters. Body parameters replace query string ones.
+    private static Map<String, String> retrieveParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        parseParameters(exchange.getRequestURI().getRawQuery(), parameters);
+        parseParameters(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8), parameters);
+        return parameters;
+    }
+
+    private static void parseParameters(String encodedParameters, Map<String, String> parameters) {
+        if (encodedParameters == null || encodedParameters.isBlank()) {
+            return;
+        }
+        for (String parameter : encodedParameters.split("&")) {
+            String[] pair = parameter.split("=", 2);
+            parameters.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                           pair.length > 1 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, Integer status, String message) throws IOException {
+        sendJson(exchange, status, "{\"error\":" + Json.quote(message) + "}");
+    }
+
+    private static void sendJson(HttpExchange exchange, Integer status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+}
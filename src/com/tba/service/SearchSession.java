@@ -0,0 +1,199 @@
+// -------------------------------------------------------------
+//
+// This class holds the state of a single search of the service
+// mode: its search term, the SearchRunnable of each TargetURL,
+// its status and, once finished, its Search record and extracted
+// properties. Each session is independent, so many sessions can
+// run concurrently in the same process, sharing the FetchScheduler
+// target budgets and the Database.
+// Each session crawl state is recorded in a checkpoint, so a
+// stopped session of the same terms is resumed by the next one.
+// A checkpoint is open by one running session at a time, so the
+// service joins submissions of a search term already running.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.service;
+
+import com.tba.batch.SearchTerm;
+import com.tba.database.DatabaseAdapter;
+import com.tba.database.Search;
+import com.tba.database.SearchStatistics;
+import com.tba.enums.SearchState;
+import com.tba.enums.SessionStatus;
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Property;
+import com.tba.runnables.SearchCheckpoint;
+import com.tba.runnables.SearchProgress;
+import com.tba.runnables.SearchRunnable;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+public class SearchSession {
+
+    private static final Logger logger = Logger.getLogger(SearchSession.class.getName());
+    private final String id = UUID.randomUUID().toString();
+    private final SearchTerm searchTerm;
+    private final long createdAt = System.currentTimeMillis();
+    private final List<SearchRunnable> searchRunnableList = new ArrayList<>();
+    private volatile SessionStatus status = SessionStatus.RUNNING;
+    private volatile boolean stopping = false; // Session was stopped and finishes once its searches terminate.
+    private volatile long finishedAt = 0;
+    private volatile Search search = null; // Finished search statistics.
+    private volatile Map<TargetURL, Map<String, Property>> propertiesPerTargetURL = Collections.emptyMap(); // Finished search extracted properties.
+
+    public SearchSession(SearchTerm searchTerm) {
+        this.searchTerm = searchTerm;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public SearchTerm getSearchTerm() {
+        return searchTerm;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public SessionStatus getStatus() {
+        return status;
+    }
+
+    public Boolean isStopping() {
+        return stopping;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public Map<TargetURL, Map<String, Property>> getPropertiesPerTargetURL() {
+        return propertiesPerTargetURL;
+    }
+
+    // Starts the SearchRunnable of each TargetURL on the provided executor.
+    // Once all of them finish, search statistics are calculated and stored.
+    // Throws IllegalStateException if the search term checkpoint is open by another running search.
+    public void start(ExecutorService executor, DatabaseAdapter databaseAdapter) {
+        SearchCheckpoint checkpoint = SearchCheckpoint.open(searchTerm.getDestination(), searchTerm.getDate(), searchTerm.getNights());
+        if (checkpoint.isResumed()) {
+            logger.info("Session " + id + " resumes search term " + searchTerm + " from its checkpoint.");
+        }
+        EnumSet.allOf(TargetURL.class).forEach(targetURL -> searchRunnableList.add(new SearchRunnable(targetURL, searchTerm.getDestination(), searchTerm.getDate(), searchTerm.getNights(), checkpoint)));
+        CompletableFuture<?>[] searchFutures = searchRunnableList.stream()
+                                                                 .map(searchRunnable -> CompletableFuture.runAsync(searchRunnable, executor))
+                                                                 .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(searchFutures)
+                         .thenRun(() -> finish(checkpoint, databaseAdapter))
+                         .exceptionally(e -> {
+                             checkpoint.close();
+                             finishedAt = System.currentTimeMillis();
+                             status = SessionStatus.FAILED;
+                             logger.info("There was an exception (" + e.getMessage() + ") in session " + id + ".");
+                             return null;
+                         });
+        logger.info("Session " + id + " started for search term " + searchTerm + ".");
+    }
+
+    // Stops all SearchRunnables. Session finishes once they terminate, keeping its checkpoint.
+    public void stop() {
+        stopping = true;
+        searchRunnableList.forEach(SearchRunnable::stop);
+    }
+
+    // Calculates and stores statistics of a finished or stopped search.
+    // Checkpoint is kept if search was stopped or could not be stored, so it can be resumed.
+    private void finish(SearchCheckpoint checkpoint, DatabaseAdapter databaseAdapter) {
+        Map<TargetURL, Map<String, Property>> finishedProperties = new EnumMap<>(TargetURL.class);
+        searchRunnableList.forEach(searchRunnable -> finishedProperties.put(searchRunnable.getTargetURL(), searchRunnable.getTotalProperties()));
+        Boolean completed = searchRunnableList.stream().allMatch(SearchRunnable::getCompleted);
+        Search finishedSearch = SearchStatistics.calculate(searchTerm.getDestination(), searchTerm.getDate(), searchTerm.getNights(), checkpoint.getArchiveKey(), finishedProperties);
+        Boolean stored = databaseAdapter.insertSearch(finishedSearch);
+        if (completed && stored) {
+            checkpoint.delete();
+        } else {
+            checkpoint.close();
+        }
+        if (!stored) {
+            logger.info("Session " + id + " search could not be stored. Its checkpoint is kept, so it will resume on next search of these terms.");
+        }
+        propertiesPerTargetURL = finishedProperties;
+        search = finishedSearch;
+        finishedAt = System.currentTimeMillis();
+        status = completed ? SessionStatus.FINISHED : SessionStatus.STOPPED;
+        logger.info("Session " + id + " " + status.name().toLowerCase() + ". " + SearchStatistics.describe(finishedSearch));
+    }
+
+    // Returns session progress as a JSON object: status, ETA and, per TargetURL, the last published progress snapshot:
+    // state, pages parsed, properties found, page retries, failures, last page latency, remaining pages and ETA.
+    // Snapshots are immutable, so progress is read without locking or copying the searches state.
+    public String describeProgress() {
+        StringBuilder progressSB = new StringBuilder();
+        progressSB.append("{\"id\":").append(Json.quote(id))
+                  .append(",\"destination\":").append(Json.quote(searchTerm.getDestination()))
+                  .append(",\"date\":").append(Json.quote(searchTerm.getFormattedDate()))
+                  .append(",\"nights\":").append(searchTerm.getNights())
+                  .append(",\"status\":").append(Json.quote(status.name()))
+                  .append(",\"description\":").append(Json.quote(status.getDescription()))
+                  .append(",\"elapsedMillis\":").append((status.isTerminal() ? finishedAt : System.currentTimeMillis()) - createdAt);
+        List<SearchProgress> progressList = new ArrayList<>();
+        searchRunnableList.forEach(searchRunnable -> progressList.add(searchRunnable.getProgress()));
+        progressSB.append(",\"etaMillis\":").append(Json.number(SearchProgress.getEtaMillis(progressList)))
+                  .append(",\"targets\":[");
+        for (int i = 0; i < progressList.size(); i++) {
+            SearchProgress progress = progressList.get(i);
+            progressSB.append(i > 0 ? "," : "")
+                      .append("{\"target\":").append(Json.quote(progress.getTargetURL().getURL()))
+                      .append(",\"state\":").append(Json.quote(progress.getState().name()))
+                      .append(",\"running\":").append(progress.getState() == SearchState.RUNNING || progress.getState() == SearchState.PAUSED)
+                      .append(",\"completed\":").append(progress.getState() == SearchState.COMPLETED)
+                      .append(",\"pagesParsed\":").append(progress.getPagesParsed())
+                      .append(",\"failures\":").append(progress.getFailures())
+                      .append(",\"propertiesFound\":").append(progress.getProperties())
+                      .append(",\"pageRetries\":").append(progress.getPageRetries())
+                      .append(",\"lastPageLatencyMillis\":").append(Json.number(progress.getLastPageLatencyMillis()))
+                      .append(",\"remainingPages\":").append(Json.number(progress.getRemainingPages()))
+                      .append(",\"etaMillis\":").append(Json.number(progress.getEtaMillis()))
+                      .append("}");
+        }
+        return progressSB.append("]}").toString();
+    }
+
+    // Returns finished session statistics and extracted properties per TargetURL as a JSON object.
+    public String describeResults() {
+        StringBuilder resultsSB = new StringBuilder();
+        resultsSB.append("{\"id\":").append(Json.quote(id))
+                 .append(",\"status\":").append(Json.quote(status.name()))
+                 .append(",\"statistics\":").append(SearchService.describeSearch(search))
+                 .append(",\"properties\":{");
+        Boolean firstTarget = true;
+        for (Map.Entry<TargetURL, Map<String, Property>> entry : propertiesPerTargetURL.entrySet()) {
+            resultsSB.append(firstTarget ? "" : ",").append(Json.quote(entry.getKey().getURL())).append(":[");
+            Boolean firstProperty = true;
+            for (Property property : entry.getValue().values()) {
+                resultsSB.append(firstProperty ? "" : ",")
+                         .append("{\"name\":").append(Json.quote(property.getName()))
+                         .append(",\"score\":").append(Json.number(property.getScore()))
+                         .append(",\"price\":").append(Json.number(property.getPrice()))
+                         .append("}");
+                firstProperty = false;
+            }
+            resultsSB.append("]");
+            firstTarget = false;
+        }
+        return resultsSB.append("}}").toString();
+    }
+
+}
@@ -0,0 +1,223 @@
+// -------------------------------------------------------------
+//
+// This class drives load tests against the SiteSimulator. All
+// TargetURLs are pointed to the simulator, and search terms are
+// executed at increasing concurrency levels, each level searching
+// as many distinct destinations at the same time on all targets.
+// For each level throughput, process CPU time, peak heap usage and
+// garbage collections are reported, and a Java Flight Recorder
+// profile is written in the profiles folder.
+// Unless an external simulator url is provided, the simulator runs
+// in the same process, so its CPU time and heap are included.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.simulation;
+
+import com.tba.enums.TargetURL;
+import com.tba.parsing.PageCoalescer;
+import com.tba.runnables.SearchPipeline;
+import com.tba.runnables.SearchRunnable;
+import com.tba.runnables.TargetHealth;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class LoadDriver {
+
+    private static final Logger logger = Logger.getLogger(LoadDriver.class.getName());
+    private static final String PROFILES_FOLDER = "profiles";
+    private static final Integer UNTHROTTLED_CONNECTIONS = 64;
+    // Per property and per page logging would dominate the measurements, so it is limited to warnings.
+    // References are kept, as loggers are only weakly referenced by the LogManager.
+    private static final List<Logger> quietLoggers = Arrays.asList(Logger.getLogger("com.tba.runnables"), Logger.getLogger("com.tba.parsing"));
+    private final List<Integer> levels;
+    private final String simulatorURL;
+    private final Boolean unthrottled;
+
+    // Levels define the concurrent search terms of each run. If simulator url is null, simulator runs in process.
+    // Unthrottled runs lift the targets connections and request interval budgets, unless defined by system properties.
+    public LoadDriver(List<Integer> levels, String simulatorURL, Boolean unthrottled) {
+        this.levels = levels;
+        this.simulatorURL = simulatorURL;
+        this.unthrottled = unthrottled;
+    }
+
+    // Executes all levels and returns the load test summary.
+    public String run() {
+        SiteSimulator siteSimulator = null;
+        String baseURL = simulatorURL;
+        if (baseURL == null) {
+            siteSimulator = new SiteSimulator(0);
+            try {
+                siteSimulator.start();
+            } catch (IOException e) {
+                logger.info("Site simulator could not be started. Exception thrown: " + e.getMessage());
+                return null;
+            }
+            baseURL = siteSimulator.getBaseURL();
+        }
+        // Budgets must be defined before the FetchScheduler is initialized by the first search.
+        for (TargetURL targetURL : TargetURL.values()) {
+            String prefix = "tba." + targetURL.name().toLowerCase();
+            System.setProperty(prefix + ".baseUrl", baseURL.replaceAll("/+$", ""));
+            if (unthrottled) {
+                System.setProperty(prefix + ".connections", System.getProperty(prefix + ".connections", UNTHROTTLED_CONNECTIONS.toString()));
+                System.setProperty(prefix + ".requestInterval", System.getProperty(prefix + ".requestInterval", "0"));
+            }
+        }
+        quietLoggers.forEach(quietLogger -> quietLogger.setLevel(Level.WARNING));
+
+        StringBuilder summarySB = new StringBuilder();
+        summarySB.append("Load test summary (").append(unthrottled ? "unthrottled" : "target budgets").append(", ").append(baseURL).append("):\n")
+                 .append(String.format("%-11s | %-9s | %-7s | %-8s | %-12s | %-8s | %-8s | %-6s | %-14s | %-12s%n",
+                         "Concurrency", "Searches", "Pages", "Pages/s", "Properties/s", "Failures", "CPU (s)", "CPU %", "Peak heap (MB)", "GC (n / ms)"));
+        try {
+            for (Integer level : levels) {
+                summarySB.append(runLevel(level));
+            }
+        } finally {
+            quietLoggers.forEach(quietLogger -> quietLogger.setLevel(null));
+        }
+        summarySB.append("Latency per target:\n");
+        EnumSet.allOf(TargetURL.class).forEach(targetURL -> summarySB.append(TargetHealth.of(targetURL).describe()).append("\n"));
+        summarySB.append("Page coalescing per target:\n");
+        EnumSet.allOf(TargetURL.class).forEach(targetURL -> summarySB.append(PageCoalescer.describe(targetURL)).append("\n"));
+        summarySB.append("Pipeline stages:\n").append(SearchPipeline.describe());
+        if (siteSimulator != null) {
+            summarySB.append(siteSimulator.describe());
+            siteSimulator.stop();
+        }
+        logger.info(summarySB.toString());
+        return summarySB.toString();
+    }
+
+    // Searches as many distinct destinations as the level on all targets at the same time and measures the run.
+    private String runLevel(Integer level) {
+        logger.info("Load level " + level + " is starting...");
+        System.gc(); // Previous level garbage must not be accounted to this one.
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        ManagementFactory.getMemoryPoolMXBeans().stream().filter(pool -> pool.getType() == MemoryType.HEAP).forEach(heapPools::add);
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long gcCountStart = gcCount();
+        long gcMillisStart = gcMillis();
+        long cpuStart = processCpuNanos();
+        Recording recording = startRecording(level);
+        long start = System.nanoTime();
+
+        List<SearchRunnable> searchRunnables = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(level * TargetURL.values().length);
+        Date date = Date.from(LocalDate.now().plusDays(30).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        for (int i = 0; i < level; i++) {
+            String destination = "Load" + toLetters(level) + "x" + toLetters(i);
+            EnumSet.allOf(TargetURL.class).forEach(targetURL -> searchRunnables.add(new SearchRunnable(targetURL, destination, date, 1)));
+        }
+        searchRunnables.forEach(executor::execute);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            logger.info("Load level " + level + " was interrupted.");
+            searchRunnables.forEach(SearchRunnable::stop);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double cpuSeconds = (processCpuNanos() - cpuStart) / 1e9;
+        stopRecording(recording);
+        long peakHeapBytes = heapPools.stream().mapToLong(pool -> pool.getPeakUsage().getUsed()).sum();
+        int pages = searchRunnables.stream().mapToInt(SearchRunnable::getPagesParsed).sum();
+        int properties = searchRunnables.stream().mapToInt(searchRunnable -> searchRunnable.getTotalProperties().size()).sum();
+        int failures = searchRunnables.stream().mapToInt(SearchRunnable::getFailures).sum();
+        return String.format("%-11d | %-9d | %-7d | %-8.1f | %-12.1f | %-8d | %-8.2f | %-6.1f | %-14.1f | %-12s%n",
+                level, searchRunnables.size(), pages, pages / seconds, properties / seconds, failures, cpuSeconds,
+                100 * cpuSeconds / (seconds * Runtime.getRuntime().availableProcessors()),
+                peakHeapBytes / 1_048_576.0, (gcCount() - gcCountStart) + " / " + (gcMillis() - gcMillisStart));
+    }
+
+    // Starts a Flight Recorder profile of a level, or returns null if recording is not available.
+    private static Recording startRecording(Integer level) {
+        try {
+            Files.createDirectories(Paths.get(PROFILES_FOLDER));
+            Path path = Paths.get(PROFILES_FOLDER, "load_" + level + "_" + new Date().getTime() + ".jfr");
+            Recording recording = new Recording(Configuration.getConfiguration("profile"));
+            recording.setDestination(path);
+            recording.start();
+            return recording;
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            logger.info("Profile of load level " + level + " could not be recorded. Exception thrown: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Stops a Flight Recorder profile, writing it to its destination.
+    private static void stopRecording(Recording recording) {
+        if (recording == null) {
+            return;
+        }
+        recording.stop();
+        logger.info("Profile " + recording.getDestination() + " has been successfully created in " + PROFILES_FOLDER + " folder!");
+        recording.close();
+    }
+
+    // CPU time of the whole process, or 0 if not supported by the JVM.
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+        }
+        return 0;
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(count -> count > 0).sum();
+    }
+
+    private static long gcMillis() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(time -> time > 0).sum();
+    }
+
+    // Encodes a number in letters, e.g. 27 as 'ab', as targets extract counts from texts containing the destination.
+    private static String toLetters(Integer number) {
+        StringBuilder lettersSB = new StringBuilder();
+        for (int n = number; n >= 0; n = n / 26 - 1) {
+            lettersSB.insert(0, (char) ('a' + n % 26));
+        }
+        return lettersSB.toString();
+    }
+
+    // Parses a comma separated concurrency levels list, e.g. '1,2,4,8'.
+    public static List<Integer> parseLevelsList(String levelsList) throws NumberFormatException {
+        List<Integer> levels = new ArrayList<>();
+        for (String level : levelsList.split(",")) {
+            if (level.isBlank()) {
+                continue;
+            }
+            Integer value = Integer.parseInt(level.trim());
+            if (value < 1) {
+                throw new NumberFormatException("Concurrency level must be a positive Integer.");
+            }
+            levels.add(value);
+        }
+        return levels;
+    }
+
+}
@@ -0,0 +1,381 @@
+// -------------------------------------------------------------
+//
+// This class is a local simulator of all TargetURL sites, built
+// on the JDK HTTP server, used for scale and load testing without
+// hitting the real targets. Result pages are generated in each
+// target's markup and url scheme, so SiteParser parses them
+// unchanged once 'tba.<target>.baseUrl' points to the simulator.
+// Properties of a destination are generated deterministically,
+// so every page of a search is stable across requests.
+// Simulated behavior is defined by system properties:
+// 'tba.simulator.properties'          properties per destination (default 500).
+// 'tba.simulator.pageSize'            properties per page of targets paged by index (default 20).
+//                                     Offset paged targets use their 'tba.<target>.pageSize'.
+// 'tba.simulator.pagePaddingBytes'    markup outside the results region, emulating page weight (default 50000).
+// 'tba.simulator.latencyMedianMillis' median response latency (default 100).
+// 'tba.simulator.latencySigma'        log-normal latency spread, 0 for a constant latency (default 0.5).
+// 'tba.simulator.errorRate'           share of requests answered with HttpStatus 500 (default 0).
+// 'tba.simulator.throttleRate'        share of requests answered with HttpStatus 429 (default 0).
+// 'tba.simulator.unavailableRatio'    share of properties without a price (default 0.1).
+// 'tba.simulator.endOfResults'        EndOfResults answer beyond the last property (default REPEAT).
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.simulation;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.tba.enums.EndOfResults;
+import com.tba.enums.TargetURL;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+public class SiteSimulator {
+
+    private static final Logger logger = Logger.getLogger(SiteSimulator.class.getName());
+    private static final Integer PROPERTIES = Integer.getInteger("tba.simulator.properties", 500);
+    private static final Integer PAGE_SIZE = Integer.getInteger("tba.simulator.pageSize", 20);
+    private static final Integer PAGE_PADDING_BYTES = Integer.getInteger("tba.simulator.pagePaddingBytes", 50_000);
+    private static final Integer LATENCY_MEDIAN_MILLIS = Integer.getInteger("tba.simulator.latencyMedianMillis", 100);
+    private static final Double LATENCY_SIGMA = Double.parseDouble(System.getProperty("tba.simulator.latencySigma", "0.5"));
+    private static final Double ERROR_RATE = Double.parseDouble(System.getProperty("tba.simulator.errorRate", "0"));
+    private static final Double THROTTLE_RATE = Double.parseDouble(System.getProperty("tba.simulator.throttleRate", "0"));
+    private static final Double UNAVAILABLE_RATIO = Double.parseDouble(System.getProperty("tba.simulator.unavailableRatio", "0.1"));
+    private static final EndOfResults END_OF_RESULTS = retrieveEndOfResults();
+    private static final String SESSION_COOKIE = "hcsession"; // hotels-scanner.com results require the cookie of a previous search request.
+    private static final String[] NAME_PREFIXES = {"Blue", "Olive", "Aegean", "Golden", "Old Town", "Harbour", "Sunset", "Marble"};
+    private static final String[] NAME_SUFFIXES = {"Suites", "Hotel", "Apartments", "Residence", "Studios", "Villas", "Inn", "Lofts"};
+    private final Integer port;
+    private final Map<TargetURL, SiteCounters> siteCounters = new EnumMap<>(TargetURL.class);
+    private final ExecutorService requestExecutor = Executors.newCachedThreadPool(); // Each request holds a Thread for its simulated latency.
+    private final CountDownLatch stopLatch = new CountDownLatch(1);
+    private final String padding = createPadding();
+    private HttpServer server;
+
+    // Requests served per TargetURL.
+    private static class SiteCounters {
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong pages = new AtomicLong();
+        private final AtomicLong throttled = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong notFound = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+    }
+
+    // Port 0 binds any free port.
+    public SiteSimulator(Integer port) {
+        this.port = port;
+        EnumSet.allOf(TargetURL.class).forEach(targetURL -> siteCounters.put(targetURL, new SiteCounters()));
+    }
+
+    // Starts the HTTP server and returns its bound port.
+    public Integer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/s/", exchange -> handle(exchange, TargetURL.AIRBNB));
+        server.createContext("/searchresults.en.html", exchange -> handle(exchange, TargetURL.BOOKING));
+        server.createContext("/search.do", exchange -> handle(exchange, TargetURL.HOTELS));
+        server.createContext("/Hotels/Search", exchange -> handle(exchange, TargetURL.HOTELS_SCANNER));
+        server.createContext("/Hotels/SearchResults", exchange -> handle(exchange, TargetURL.HOTELS_SCANNER));
+        server.setExecutor(requestExecutor);
+        server.start();
+        StringBuilder startSB = new StringBuilder();
+        startSB.append("Site simulator started on ").append(getBaseURL()).append(":\n")
+               .append("Properties per destination -> ").append(PROPERTIES).append("\n")
+               .append("Latency -> median ").append(LATENCY_MEDIAN_MILLIS).append(" ms, sigma ").append(LATENCY_SIGMA).append("\n")
+               .append("Error rate -> ").append(ERROR_RATE).append("\n")
+               .append("Throttle rate -> ").append(THROTTLE_RATE).append("\n")
+               .append("End of results -> ").append(END_OF_RESULTS.getDescription()).append("\n");
+        logger.info(startSB.toString());
+        return server.getAddress().getPort();
+    }
+
+    // Starts the HTTP server and blocks until simulator is stopped.
+    public void run() throws IOException {
+        start();
+        try {
+            stopLatch.await();
+        } catch (InterruptedException e) {
+            logger.info("Site simulator was interrupted.");
+        }
+        stop();
+        logger.info(describe());
+    }
+
+    // Simulator is terminated.
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        requestExecutor.shutdownNow();
+        stopLatch.countDown();
+    }
+
+    // Base url TargetURLs must be pointed to, e.g. 'http://localhost:8081'.
+    public String getBaseURL() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    // Describes the requests served per TargetURL.
+    public String describe() {
+        StringBuilder describeSB = new StringBuilder();
+        describeSB.append("Site simulator requests:\n");
+        siteCounters.forEach((targetURL, counters) -> describeSB.append(targetURL.getURL()).append(" -> ")
+                .append(counters.requests.get()).append(" requests, ")
+                .append(counters.pages.get()).append(" pages, ")
+                .append(counters.throttled.get()).append(" throttled, ")
+                .append(counters.errors.get()).append(" errors, ")
+                .append(counters.notFound.get()).append(" not found, ")
+                .append(counters.rejected.get()).append(" rejected, ")
+                .append(String.format("%.1f", counters.bytesSent.get() / 1_048_576.0)).append(" MB sent\n"));
+        return describeSB.toString();
+    }
+
+    // Handles a request of a TargetURL: waits the simulated latency, then answers with a
+    // simulated failure or the requested page.
+    private void handle(HttpExchange exchange, TargetURL targetURL) throws IOException {
+        SiteCounters counters = siteCounters.get(targetURL);
+        counters.requests.incrementAndGet();
+        try {
+            Thread.sleep(sampleLatencyMillis());
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < THROTTLE_RATE) {
+                counters.throttled.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, counters, 429, "<html><body>Too Many Requests</body></html>");
+                return;
+            }
+            if (roll < THROTTLE_RATE + ERROR_RATE) {
+                counters.errors.incrementAndGet();
+                send(exchange, counters, 500, "<html><body>Internal Server Error</body></html>");
+                return;
+            }
+            Map<String, String> parameters = retrieveParameters(exchange);
+            String destination;
+            Integer pageNumber;
+            switch (targetURL) {
+                case AIRBNB:
+                    // Destination is a path segment, e.g. '/s/Athens/homes'.
+                    String[] segments = exchange.getRequestURI().getPath().split("/");
+                    destination = segments.length > 2 ? URLDecoder.decode(segments[2], StandardCharsets.UTF_8) : "";
+                    pageNumber = Integer.parseInt(parameters.getOrDefault("items_offset", "0")) / pageSize(targetURL);
+                    break;
+                case BOOKING:
+                    destination = parameters.getOrDefault("ss", "");
+                    pageNumber = Integer.parseInt(parameters.getOrDefault("offset", "0")) / pageSize(targetURL);
+                    break;
+                case HOTELS:
+                    destination = parameters.getOrDefault("q-destination", "");
+                    pageNumber = Integer.parseInt(parameters.getOrDefault("pn", "1")) - 1;
+                    break;
+                default:
+                    if (exchange.getRequestURI().getPath().equals("/Hotels/Search")) {
+                        // Search request only sets the session cookie.
+                        exchange.getResponseHeaders().add("Set-Cookie", SESSION_COOKIE + "=" + UUID.randomUUID() + "; Path=/");
+                        send(exchange, counters, 200, "<html><body>Loading results...</body></html>");
+                        return;
+                    }
+                    String cookie = exchange.getRequestHeaders().getFirst("Cookie");
+                    if (cookie == null || !cookie.contains(SESSION_COOKIE + "=")) {
+                        counters.rejected.incrementAndGet();
+                        send(exchange, counters, 403, "<html><body>Forbidden</body></html>");
+                        return;
+                    }
+                    destination = parameters.getOrDefault("destination", "").replaceFirst("^place:", "");
+                    pageNumber = Integer.parseInt(parameters.getOrDefault("pageIndex", "0"));
+            }
+            if (pageNumber < 0) {
+                throw new NumberFormatException("Page number can't be negative.");
+            }
+            servePage(exchange, counters, targetURL, destination, pageNumber);
+        } catch (NumberFormatException e) {
+            send(exchange, counters, 400, "<html><body>Bad Request</body></html>");
+        } catch (InterruptedException e) {
+            /* Simulator is stopping. */
+        } catch (IOException e) {
+            /* Client closed the connection, e.g. a cancelled hedged request. */
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Generates and sends a results page. Pages beyond the last property are answered by the EndOfResults behavior.
+    private void servePage(HttpExchange exchange, SiteCounters counters, TargetURL targetURL, String destination, Integer pageNumber) throws IOException {
+        Integer pageSize = pageSize(targetURL);
+        long first = (long) pageNumber * pageSize;
+        if (first >= PROPERTIES) {
+            if (END_OF_RESULTS == EndOfResults.NOT_FOUND) {
+                counters.notFound.incrementAndGet();
+                send(exchange, counters, 404, "<html><body>Not Found</body></html>");
+                return;
+            }
+            first = END_OF_RESULTS == EndOfResults.REPEAT && PROPERTIES > 0 ? (PROPERTIES - 1) / pageSize * pageSize : PROPERTIES;
+        }
+        long last = Math.min(first + pageSize, PROPERTIES);
+        String escapedDestination = escape(destination);
+
+        StringBuilder pageSB = new StringBuilder(PAGE_PADDING_BYTES + pageSize * 512);
+        pageSB.append("<!DOCTYPE html><html><head><meta charset=\"utf-8\"><title>").append(escapedDestination).append("</title></head><body>\n");
+        // Offset paged targets report the total results count.
+        if (targetURL == TargetURL.AIRBNB) {
+            pageSB.append("<div class=\"_1snxcqc\">").append(formatAmount(PROPERTIES, '.')).append(" stays in ").append(escapedDestination).append("</div>\n");
+        } else if (targetURL == TargetURL.BOOKING) {
+            pageSB.append("<h1 class=\"sorth1\">").append(escapedDestination).append(": ").append(formatAmount(PROPERTIES, ',')).append(" properties found</h1>\n");
+        }
+        pageSB.append("<main>\n");
+        for (long index = first; index < last; index++) {
+            appendProperty(pageSB, targetURL, escapedDestination, index);
+        }
+        pageSB.append("</main>\n<footer>").append(padding).append("</footer>\n</body></html>");
+        counters.pages.incrementAndGet();
+        send(exchange, counters, 200, pageSB.toString());
+    }
+
+    // Appends a generated property in the TargetURL markup.
+    // Scores are generated on a 0-10 scale and prices as Integer amounts per night.
+    private static void appendProperty(StringBuilder pageSB, TargetURL targetURL, String escapedDestination, long index) {
+        SplittableRandom random = new SplittableRandom(escapedDestination.hashCode() * 1_000_003L + index);
+        String name = NAME_PREFIXES[random.nextInt(NAME_PREFIXES.length)] + " " + NAME_SUFFIXES[random.nextInt(NAME_SUFFIXES.length)]
+                      + " " + escapedDestination + " " + (index + 1);
+        int score = 60 + random.nextInt(40); // Tenths, 6.0 to 9.9.
+        long price = 30 + (long) (Math.exp(random.nextGaussian() * 0.8) * 90);
+        Boolean available = random.nextDouble() >= UNAVAILABLE_RATIO;
+        switch (targetURL) {
+            case AIRBNB:
+                pageSB.append("<div class=\"_8ssblpx\"><div class=\"_bzh5lkq\">").append(name).append("</div>")
+                      .append("<span class=\"_10fy1f8\">").append(String.format(Locale.ROOT, "%.2f", score / 20.0).replace('.', ',')).append(" (").append(10 + random.nextInt(300)).append(")</span>");
+                if (available) {
+                    // Discounted prices follow the original ones.
+                    pageSB.append("<span class=\"_1p7iugi\">Price: ");
+                    if (random.nextInt(4) == 0) {
+                        pageSB.append("<s>\u20AC").append(formatAmount(price + price / 5, '.')).append("</s> ");
+                    }
+                    pageSB.append("\u20AC").append(formatAmount(price, '.')).append(" / night</span>");
+                }
+                pageSB.append("</div>\n");
+                break;
+            case BOOKING:
+                pageSB.append("<div class=\"sr_property_block\"><span class=\"sr-hotel__name\">").append(name).append("</span>")
+                      .append("<div class=\"bui-review-score__badge\">").append(score / 10).append(".").append(score % 10).append("</div>");
+                if (available) {
+                    pageSB.append("<div class=\"bui-price-display__value\">\u20AC ").append(formatAmount(price, ',')).append("</div>");
+                }
+                pageSB.append("</div>\n");
+                break;
+            case HOTELS:
+                pageSB.append("<li class=\"hotel-wrap\"><h3 class=\"p-name\">").append(name).append("</h3>")
+                      .append("<span class=\"guest-reviews-badge\">Superb ").append(score / 10).append(",").append(score % 10).append("</span>");
+                if (available) {
+                    pageSB.append("<ins class=\"price\">").append(formatAmount(price, '.')).append(" \u20AC</ins>");
+                }
+                pageSB.append("</li>\n");
+                break;
+            default:
+                pageSB.append("<div class=\"hc-searchresultitem\"><h2 class=\"hc-searchresultitem__hotelname\">").append(name).append("</h2>")
+                      .append("<div class=\"hc-guestratingsummary\" content=\"").append(score / 10).append(".").append(score % 10).append("\"></div>");
+                if (available) {
+                    pageSB.append("<span class=\"hc-searchresultitemdeal__currentrate\">\u20AC").append(formatAmount(price, ',')).append("</span>");
+                }
+                pageSB.append("</div>\n");
+        }
+    }
+
+    // Sends a response body, gzip encoded if the client accepts it.
+    private static void send(HttpExchange exchange, SiteCounters counters, Integer status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(bytes);
+            }
+            bytes = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+        counters.bytesSent.addAndGet(bytes.length);
+    }
+
+    // Properties per page: offset paged targets use their page size, the others the simulator page size.
+    private static Integer pageSize(TargetURL targetURL) {
+        Integer pageSize = targetURL.getPageSize();
+        return Math.max(1, pageSize > 0 ? pageSize : PAGE_SIZE);
+    }
+
+    // Log-normal latency sample around the configured median.
+    private static long sampleLatencyMillis() {
+        return Math.max(0, Math.round(LATENCY_MEDIAN_MILLIS * Math.exp(LATENCY_SIGMA * ThreadLocalRandom.current().nextGaussian())));
+    }
+
+    // Formats an Integer amount with the provided thousands grouping separator, e.g. '1.234'.
+    private static String formatAmount(long amount, char groupingSeparator) {
+        String digits = Long.toString(amount);
+        StringBuilder amountSB = new StringBuilder();
+        for (int i = 0; i < digits.length(); i++) {
+            if (i > 0 && (digits.length() - i) % 3 == 0) {
+                amountSB.append(groupingSeparator);
+            }
+            amountSB.append(digits.charAt(i));
+        }
+        return amountSB.toString();
+    }
+
+    // Markup outside the results region: a footer of destination links.
+    private static String createPadding() {
+        StringBuilder paddingSB = new StringBuilder();
+        for (int i = 0; paddingSB.length() < PAGE_PADDING_BYTES; i++) {
+            paddingSB.append("<a class=\"footer-link\" href=\"/destinations/").append(i).append("\">Popular destination ").append(i).append("</a>\n");
+        }
+        return paddingSB.toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static Map<String, String> retrieveParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String encodedParameters = exchange.getRequestURI().getRawQuery();
+        if (encodedParameters == null || encodedParameters.isBlank()) {
+            return parameters;
+        }
+        for (String parameter : encodedParameters.split("&")) {
+            String[] pair = parameter.split("=", 2);
+            parameters.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+                           pair.length > 1 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+        }
+        return parameters;
+    }
+
+    // Retrieves the configured EndOfResults behavior. Unknown values fall back to REPEAT.
+    private static EndOfResults retrieveEndOfResults() {
+        String endOfResults = System.getProperty("tba.simulator.endOfResults", EndOfResults.REPEAT.name());
+        try {
+            return EndOfResults.valueOf(endOfResults.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.info("End of results behavior " + endOfResults + " is not valid. Using default value " + EndOfResults.REPEAT.name() + ".");
+            return EndOfResults.REPEAT;
+        }
+    }
+
+}
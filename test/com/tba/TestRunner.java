@@ -0,0 +1,102 @@
+// -------------------------------------------------------------
+//
+// This class runs the tests of the application, without external
+// test libraries. Each test class groups the tests of a class and
+// registers them with test(), which runs a test and records its
+// outcome. Failed tests are logged and the runner exits with
+// status 1 if any test failed.
+// Tests create their files, e.g. checkpoints and Databases, in a
+// temporary folder, deleted once tests finish. Circuit breaker open
+// time is shortened, so tests can wait for its probe requests.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba;
+
+import com.tba.batch.WatchedTermTest;
+import com.tba.database.CrawlJobLeaseTest;
+import com.tba.database.DatabaseMigrationTest;
+import com.tba.parsing.NumberExtractorTest;
+import com.tba.parsing.PageCoalescerTest;
+import com.tba.parsing.SiteParserTest;
+import com.tba.runnables.FetchSchedulerTest;
+import com.tba.runnables.PipelineStageTest;
+import com.tba.runnables.SearchCheckpointTest;
+import com.tba.runnables.TargetHealthTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.stream.Stream;
+import java.util.logging.Logger;
+
+public class TestRunner {
+
+    private static final Logger logger = Logger.getLogger(TestRunner.class.getName());
+    private static Integer passed = 0;
+    private static Integer failed = 0;
+    private static Path testFolder;
+
+    // Test body, failing by throwing.
+    public interface Test {
+        void execute() throws Exception;
+    }
+
+    public static void main(String[] args) throws IOException {
+        testFolder = Files.createTempDirectory("tba-tests");
+        System.setProperty("tba.checkpointFolder", testFolder.resolve("checkpoints").toString());
+        System.setProperty("tba.breakerOpenMillis", "100");
+        NumberExtractorTest.run();
+        PageCoalescerTest.run();
+        SiteParserTest.run();
+        SearchCheckpointTest.run();
+        TargetHealthTest.run();
+        FetchSchedulerTest.run();
+        PipelineStageTest.run();
+        DatabaseMigrationTest.run();
+        CrawlJobLeaseTest.run();
+        WatchedTermTest.run();
+        try (Stream<Path> paths = Files.walk(testFolder)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+        StringBuilder summarySB = new StringBuilder();
+        summarySB.append("Tests finished:\n")
+                 .append("Passed -> ").append(passed).append("\n")
+                 .append("Failed -> ").append(failed);
+        logger.info(summarySB.toString());
+        System.exit(failed > 0 ? 1 : 0);
+    }
+
+    // Temporary folder of the files created by tests.
+    public static Path getTestFolder() {
+        return testFolder;
+    }
+
+    // Runs a test and records its outcome.
+    public static void test(String name, Test test) {
+        try {
+            test.execute();
+            passed++;
+        } catch (Throwable e) {
+            failed++;
+            logger.info("Test " + name + " failed: " + e);
+        }
+    }
+
+    public static void assertTrue(Boolean condition, String message) {
+        if (!condition) {
+            throw new AssertionError(message);
+        }
+    }
+
+    public static void assertEquals(Object expected, Object actual, String message) {
+        if (!Objects.equals(expected, actual)) {
+            throw new AssertionError(message + " (expected " + expected + ", actual " + actual + ")");
+        }
+    }
+
+}
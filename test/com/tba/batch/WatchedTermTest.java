@@ -0,0 +1,57 @@
+// -------------------------------------------------------------
+//
+// Tests of WatchedTerm: watch file terms with past dates are
+// skipped, and a watched term expires once its date has passed.
+// Watch files are created in the test runner temporary folder.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.batch;
+
+import com.tba.TestRunner;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static com.tba.TestRunner.*;
+
+public class WatchedTermTest {
+
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    public static void run() {
+        test("WatchedTerm skips past dates", WatchedTermTest::skipsPastDates);
+        test("WatchedTerm expires", WatchedTermTest::expires);
+    }
+
+    private static void skipsPastDates() throws Exception {
+        LocalDate today = LocalDate.now();
+        Path watchFile = TestRunner.getTestFolder().resolve("watched.txt");
+        Files.write(watchFile, List.of("Athens;" + today.minusDays(1).format(formatter) + ";1;6h",
+                                       "Rome;" + today.format(formatter) + ";2;1d"), StandardCharsets.UTF_8);
+        List<WatchedTerm> watchedTerms = WatchedTerm.readWatchFile(watchFile.toString());
+        assertEquals(1, watchedTerms.size(), "Watched terms");
+        assertEquals("Rome", watchedTerms.get(0).getSearchTerm().getDestination(), "Watched term destination");
+        assertEquals(Duration.ofDays(1), watchedTerms.get(0).getInterval(), "Watched term interval");
+    }
+
+    // A term is tracked during its check-in date and expires the day after.
+    private static void expires() {
+        LocalDate today = LocalDate.now();
+        assertEquals(false, watchedTerm(today).isExpired(), "Expiry of a term of today");
+        assertEquals(false, watchedTerm(today.plusDays(1)).isExpired(), "Expiry of a term of tomorrow");
+        assertEquals(true, watchedTerm(today.minusDays(1)).isExpired(), "Expiry of a term of yesterday");
+    }
+
+    private static WatchedTerm watchedTerm(LocalDate date) {
+        return new WatchedTerm(new SearchTerm("Athens", SearchTerm.toDate(date), 1), Duration.ofHours(6));
+    }
+
+}
@@ -0,0 +1,49 @@
+// -------------------------------------------------------------
+//
+// Tests of DatabaseAdapter crawl job leases: a renewal reports a
+// renewed lease, a lease lost to another worker, or an unknown lease
+// when its statement could not be executed, so workers stop a job
+// only when its lease was actually lost.
+// Databases are created in the test runner temporary folder.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.database;
+
+import com.tba.TestRunner;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static com.tba.TestRunner.*;
+
+public class CrawlJobLeaseTest {
+
+    private static final Date DATE = Date.from(LocalDate.of(2030, 6, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    private static final long LEASE_MILLIS = 60000;
+
+    public static void run() {
+        test("DatabaseAdapter renews crawl job lease", CrawlJobLeaseTest::renewsLease);
+    }
+
+    private static void renewsLease() {
+        DatabaseAdapter databaseAdapter = new DatabaseAdapter(TestRunner.getTestFolder().resolve("leases.db").toString());
+        try {
+            assertEquals(true, databaseAdapter.insertCrawlJobs("lease", "Athens", DATE, 1), "Queued crawl jobs");
+            CrawlJob expiredJob = databaseAdapter.claimCrawlJob("first", -1, 3);
+            assertEquals(true, databaseAdapter.renewCrawlJobLease(expiredJob, -1), "Renewal of a held lease");
+            CrawlJob reclaimedJob = databaseAdapter.claimCrawlJob("second", LEASE_MILLIS, 3);
+            assertEquals(expiredJob.getId(), reclaimedJob.getId(), "Expired job is claimed by another worker");
+            assertEquals(false, databaseAdapter.renewCrawlJobLease(expiredJob, LEASE_MILLIS), "Renewal of a lost lease");
+            assertEquals(true, databaseAdapter.renewCrawlJobLease(reclaimedJob, LEASE_MILLIS), "Renewal of the new lease");
+        } finally {
+            databaseAdapter.closeDatabase();
+        }
+        CrawlJob crawlJob = new CrawlJob.Builder().withId(1L).withLease("closed").build();
+        assertEquals(null, databaseAdapter.renewCrawlJobLease(crawlJob, LEASE_MILLIS), "Renewal that could not be executed");
+    }
+
+}
@@ -0,0 +1,143 @@
+// -------------------------------------------------------------
+//
+// Tests of DatabaseAdapter schema migrations: a Database created by
+// the application before schema versions, with text dates and no
+// nights column, is upgraded through every Migration, keeping its
+// valid Search records, and migrations are applied once.
+// Databases are created in the test runner temporary folder.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.database;
+
+import com.tba.TestRunner;
+import com.tba.enums.Migration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+
+import static com.tba.TestRunner.*;
+
+public class DatabaseMigrationTest {
+
+    private static final LocalDate SEARCH_DATE = LocalDate.of(2030, 6, 1);
+
+    public static void run() {
+        test("DatabaseAdapter migrates baseline schema", DatabaseMigrationTest::migratesBaselineSchema);
+        test("DatabaseAdapter migrates new Database", DatabaseMigrationTest::migratesNewDatabase);
+        test("DatabaseAdapter applies migrations once", DatabaseMigrationTest::appliesMigrationsOnce);
+    }
+
+    // Records of the baseline schema are kept with their dates converted to epoch columns and 1 night,
+    // records with invalid dates are dropped and the rollups are built from the kept records.
+    private static void migratesBaselineSchema() throws Exception {
+        String fileName = TestRunner.getTestFolder().resolve("baseline.db").toString();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + fileName);
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS 'SEARCHES'('SEARCH_ID' INTEGER PRIMARY KEY AUTOINCREMENT,'SEARCH_DESTINATION' TEXT,'SEARCH_DATE' TEXT,"
+                              + "'SEARCH_PROPERTIES_FOUND' INTEGER,'SEARCH_UNAVAILABLE_PROPERTIES' INTEGER,'SEARCH_SCORE_MEDIAN' REAL,'SEARCH_PRICE_MEDIAN' REAL,'SEARCH_TIMESTAMP' TEXT)");
+            statement.execute("INSERT INTO 'SEARCHES' ('SEARCH_DESTINATION', 'SEARCH_DATE', 'SEARCH_PROPERTIES_FOUND', 'SEARCH_UNAVAILABLE_PROPERTIES', 'SEARCH_SCORE_MEDIAN', 'SEARCH_PRICE_MEDIAN', 'SEARCH_TIMESTAMP') "
+                              + "VALUES ('Athens', '2030-06-01 00:00:00.000', '120', '12', '8.4', '95.5', '2030-05-01 10:15:30.250')");
+            statement.execute("INSERT INTO 'SEARCHES' ('SEARCH_DESTINATION', 'SEARCH_DATE', 'SEARCH_PROPERTIES_FOUND', 'SEARCH_UNAVAILABLE_PROPERTIES', 'SEARCH_SCORE_MEDIAN', 'SEARCH_PRICE_MEDIAN', 'SEARCH_TIMESTAMP') "
+                              + "VALUES ('Athens', '2030-06-01 00:00:00.000', '80', '20', 'null', 'null', '2030-05-02 09:00:00.000')");
+            statement.execute("INSERT INTO 'SEARCHES' ('SEARCH_DESTINATION', 'SEARCH_DATE', 'SEARCH_PROPERTIES_FOUND', 'SEARCH_UNAVAILABLE_PROPERTIES', 'SEARCH_SCORE_MEDIAN', 'SEARCH_PRICE_MEDIAN', 'SEARCH_TIMESTAMP') "
+                              + "VALUES ('Athens', 'Jun 1, 2030', '50', '5', '7.0', '60.0', '2030-05-03 09:00:00.000')");
+        }
+
+        DatabaseAdapter databaseAdapter = new DatabaseAdapter(fileName);
+        try {
+            assertEquals(latestVersion(), schemaVersions(fileName).size(), "Applied migrations");
+            List<Search> searchList = databaseAdapter.retrieveSearchTermList("Athens", toDate(SEARCH_DATE), 1);
+            assertEquals(2, searchList.size(), "Kept searches");
+            Search first = searchList.get(0);
+            assertEquals(toDate(SEARCH_DATE), first.getDate(), "Search date");
+            assertEquals(1, first.getNights(), "Search nights");
+            assertEquals(120, first.getPropertiesFound(), "Properties found");
+            assertEquals(12, first.getUnavailableProperties(), "Unavailable properties");
+            assertEquals(8.4, first.getScoreMedian(), "Score median");
+            assertEquals(95.5, first.getPriceMedian(), "Price median");
+            assertEquals(Date.from(LocalDateTime.of(2030, 5, 1, 10, 15, 30, 250_000_000).atZone(ZoneId.systemDefault()).toInstant()),
+                         first.getTimestamp(), "Search timestamp");
+            assertEquals(null, first.getArchiveKey(), "Archive key");
+            assertEquals(1, countSearches(fileName, "SEARCH_PRICE_MEDIAN IS NULL AND SEARCH_SCORE_MEDIAN IS NULL"), "Text null medians are migrated as NULL");
+            List<Trend> trendList = databaseAdapter.retrieveDailyTrends("Athens");
+            assertEquals(2, trendList.stream().mapToInt(Trend::getSearches).sum(), "Searches of daily rollups");
+
+            Search search = new Search.Builder()
+                                .withDestination("Athens")
+                                .withDate(toDate(SEARCH_DATE))
+                                .withNights(3)
+                                .withPropertiesFound(90)
+                                .withUnavailableProperties(9)
+                                .withScoreMedian(8.0)
+                                .withPriceMedian(110.0)
+                                .withTimestamp(new Date())
+                                .withArchiveKey(42L)
+                                .build();
+            assertEquals(true, databaseAdapter.insertSearch(search), "Search is stored in the migrated schema");
+            assertEquals(42L, databaseAdapter.retrieveSearchTermList("Athens", toDate(SEARCH_DATE), 3).get(0).getArchiveKey(), "Stored archive key");
+            assertEquals(null, databaseAdapter.retrieveShardCount(), "Shard layout of unsharded Database");
+        } finally {
+            databaseAdapter.closeDatabase();
+        }
+    }
+
+    private static void migratesNewDatabase() throws Exception {
+        String fileName = TestRunner.getTestFolder().resolve("new.db").toString();
+        DatabaseAdapter databaseAdapter = new DatabaseAdapter(fileName);
+        try {
+            assertEquals(latestVersion(), schemaVersions(fileName).size(), "Applied migrations");
+            assertEquals(Collections.emptyList(), databaseAdapter.retrieveSearchTermList("Athens", toDate(SEARCH_DATE), 1), "Searches of new Database");
+        } finally {
+            databaseAdapter.closeDatabase();
+        }
+    }
+
+    // Reopened Database keeps its recorded versions, e.g. their application time, so migrations were not applied again.
+    private static void appliesMigrationsOnce() throws Exception {
+        String fileName = TestRunner.getTestFolder().resolve("reopened.db").toString();
+        new DatabaseAdapter(fileName).closeDatabase();
+        Map<Integer, Long> versions = schemaVersions(fileName);
+        new DatabaseAdapter(fileName).closeDatabase();
+        assertEquals(versions, schemaVersions(fileName), "Recorded schema versions");
+    }
+
+    private static Integer latestVersion() {
+        return Migration.values()[Migration.values().length - 1].getVersion();
+    }
+
+    // Recorded schema versions and their application time, by version.
+    private static Map<Integer, Long> schemaVersions(String fileName) throws SQLException {
+        Map<Integer, Long> versions = new TreeMap<>();
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + fileName);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT VERSION, APPLIED_AT FROM SCHEMA_VERSION")) {
+            while (resultSet.next()) {
+                versions.put(resultSet.getInt("VERSION"), resultSet.getLong("APPLIED_AT"));
+            }
+        }
+        return versions;
+    }
+
+    private static Integer countSearches(String fileName, String condition) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + fileName);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM SEARCHES WHERE " + condition)) {
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static Date toDate(LocalDate date) {
+        return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+}
@@ -0,0 +1,141 @@
+// -------------------------------------------------------------
+//
+// Tests of NumberExtractor: locale separators, currency symbols,
+// malformed and empty input, and round-tripping of values formatted
+// by the number and currency formats of every available locale.
+// Random values and texts are generated from fixed seeds, so runs
+// are repeatable.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.parsing;
+
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static com.tba.TestRunner.*;
+
+public class NumberExtractorTest {
+
+    public static void run() {
+        test("NumberExtractor separators", NumberExtractorTest::separators);
+        test("NumberExtractor currency symbols", NumberExtractorTest::currencySymbols);
+        test("NumberExtractor malformed input", NumberExtractorTest::malformedInput);
+        test("NumberExtractor scores", NumberExtractorTest::scores);
+        test("NumberExtractor locale round trip", NumberExtractorTest::localeRoundTrip);
+        test("NumberExtractor surrounding text", NumberExtractorTest::surroundingText);
+        test("NumberExtractor random text", NumberExtractorTest::randomText);
+    }
+
+    private static void separators() {
+        assertEquals(1234.5, NumberExtractor.POINT_DECIMAL.first("1,234.50"), "Point decimal with comma grouping");
+        assertEquals(1234.5, NumberExtractor.COMMA_DECIMAL.first("1.234,50"), "Comma decimal with point grouping");
+        assertEquals(1234.5, NumberExtractor.POINT_DECIMAL.first("1.234,50"), "Last separator is decimal, whatever the locale");
+        assertEquals(1234567.0, NumberExtractor.POINT_DECIMAL.first("1,234,567"), "Repeated grouping separator");
+        assertEquals(1234.0, NumberExtractor.POINT_DECIMAL.first("1,234"), "Single foreign separator before 3 digits is grouping");
+        assertEquals(1.234, NumberExtractor.POINT_DECIMAL.first("1.234"), "Single locale separator is decimal");
+        assertEquals(12.5, NumberExtractor.POINT_DECIMAL.first("12,5"), "Single foreign separator before other than 3 digits is decimal");
+        assertEquals(1234.5, NumberExtractor.COMMA_DECIMAL.first("1\u00A0234,5"), "Non-breaking space grouping");
+        assertEquals(1234.5, NumberExtractor.COMMA_DECIMAL.first("1\u202F234,5"), "Narrow non-breaking space grouping");
+        assertEquals(1234.5, NumberExtractor.POINT_DECIMAL.first("1'234.5"), "Apostrophe grouping");
+        assertEquals(1234.5, NumberExtractor.POINT_DECIMAL.first("1\u2019234.5"), "Right single quotation mark grouping");
+        assertEquals(7.0, NumberExtractor.POINT_DECIMAL.first("007"), "Leading zeros");
+        assertEquals(0.05, NumberExtractor.POINT_DECIMAL.first("0.05"), "Leading zeros before decimal digits");
+    }
+
+    private static void currencySymbols() {
+        assertEquals(1234.5, NumberExtractor.POINT_DECIMAL.first("€ 1,234.50"), "Prefixed symbol");
+        assertEquals(1234.0, NumberExtractor.COMMA_DECIMAL.first("1.234 €"), "Suffixed symbol");
+        assertEquals(45.0, NumberExtractor.POINT_DECIMAL.first("Price:€45"), "Symbol without space");
+        assertEquals(99.99, NumberExtractor.POINT_DECIMAL.first("US$99.99"), "Letters and symbol");
+        assertEquals(120.0, NumberExtractor.POINT_DECIMAL.first("CHF 120.–"), "Dash after separator");
+        assertEquals(80.0, NumberExtractor.POINT_DECIMAL.last("€ 100 € 80"), "Last of original and discounted price");
+        assertEquals(100.0, NumberExtractor.POINT_DECIMAL.first("€ 100 € 80"), "First of original and discounted price");
+    }
+
+    private static void malformedInput() {
+        assertTrue(Double.isNaN(NumberExtractor.POINT_DECIMAL.first(null)), "Null text");
+        assertTrue(Double.isNaN(NumberExtractor.POINT_DECIMAL.first("")), "Empty text");
+        assertTrue(Double.isNaN(NumberExtractor.POINT_DECIMAL.last("")), "Empty text, last");
+        assertTrue(Double.isNaN(NumberExtractor.POINT_DECIMAL.first("Price on request")), "Text without digits");
+        assertTrue(Double.isNaN(NumberExtractor.POINT_DECIMAL.first(".,'\u00A0")), "Separators only");
+        assertTrue(Double.isNaN(NumberExtractor.POINT_DECIMAL.first("1,234.5.6")), "Repeated decimal separator");
+        assertTrue(Double.isNaN(NumberExtractor.POINT_DECIMAL.first("1234567890123456789")), "Digits exceeding a long mantissa");
+        assertEquals(5.0, NumberExtractor.POINT_DECIMAL.first("1,234.5.6 or 5"), "Invalid token is skipped");
+        assertEquals(12.0, NumberExtractor.POINT_DECIMAL.first("12."), "Trailing separator");
+        assertEquals(5.0, NumberExtractor.POINT_DECIMAL.first(".5"), "Leading separator");
+    }
+
+    private static void scores() {
+        assertEquals(8.6, NumberExtractor.COMMA_DECIMAL.score("8,6/10", 10), "Score out of 10");
+        assertEquals(9.0, NumberExtractor.POINT_DECIMAL.score("4.5 out of 5", 5), "Score out of 5");
+        assertTrue(Double.isNaN(NumberExtractor.POINT_DECIMAL.score("11/10", 10)), "Score exceeding its scale");
+        assertTrue(Double.isNaN(NumberExtractor.POINT_DECIMAL.score("No reviews", 10)), "Missing score");
+    }
+
+    // Values with up to 2 decimals, formatted with grouping by each locale number and currency format, are extracted unchanged.
+    private static void localeRoundTrip() {
+        Random random = new Random(7);
+        Integer checkedLocales = 0;
+        for (Locale locale : NumberFormat.getAvailableLocales()) {
+            DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+            char decimalSeparator = symbols.getDecimalSeparator();
+            if ((decimalSeparator != '.' && decimalSeparator != ',') || symbols.getZeroDigit() != '0') {
+                continue; // Sites are not parsed with other separators or digits.
+            }
+            NumberExtractor numberExtractor = decimalSeparator == '.' ? NumberExtractor.POINT_DECIMAL : NumberExtractor.COMMA_DECIMAL;
+            for (NumberFormat format : List.of(NumberFormat.getNumberInstance(locale), NumberFormat.getCurrencyInstance(locale))) {
+                format.setGroupingUsed(true);
+                format.setMinimumFractionDigits(0);
+                format.setMaximumFractionDigits(2);
+                for (int i = 0; i < 20; i++) {
+                    double value = Math.round(random.nextDouble() * Math.pow(10, random.nextInt(10))) / 100.0;
+                    String text = format.format(value);
+                    assertEquals(value, numberExtractor.first(text), "Locale " + locale + " text '" + text + "'");
+                    assertEquals(value, numberExtractor.last(text), "Locale " + locale + " text '" + text + "', last");
+                }
+            }
+            checkedLocales++;
+        }
+        assertTrue(checkedLocales > 100, "Too few locales checked: " + checkedLocales);
+    }
+
+    // Text without digits around a number doesn't change it.
+    private static void surroundingText() {
+        Random random = new Random(11);
+        String[] words = {"Price", "from", "€", "$", "£", "CHF", "per night", ":", "(", ")", "-", "\u00A0", " ", "total"};
+        for (int i = 0; i < 1000; i++) {
+            double value = random.nextInt(1_000_000) / 100.0;
+            String number = String.format(Locale.US, "%,.2f", value);
+            String text = words[random.nextInt(words.length)] + words[random.nextInt(words.length)] + number
+                          + words[random.nextInt(words.length)] + words[random.nextInt(words.length)];
+            assertEquals(value, NumberExtractor.POINT_DECIMAL.first(text), "Text '" + text + "'");
+        }
+    }
+
+    // Random texts of digits, separators, symbols and letters never throw, and extract NaN or a non-negative number.
+    private static void randomText() {
+        Random random = new Random(13);
+        String alphabet = "0123456789.,'\u00A0\u202F\u2019 €$-/aZ";
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder textSB = new StringBuilder();
+            int length = random.nextInt(24);
+            for (int j = 0; j < length; j++) {
+                textSB.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            for (NumberExtractor numberExtractor : List.of(NumberExtractor.POINT_DECIMAL, NumberExtractor.COMMA_DECIMAL)) {
+                double first = numberExtractor.first(textSB);
+                double last = numberExtractor.last(textSB);
+                assertTrue(Double.isNaN(first) || (first >= 0 && !Double.isInfinite(first)), "Text '" + textSB + "' first " + first);
+                assertTrue(Double.isNaN(last) || (last >= 0 && !Double.isInfinite(last)), "Text '" + textSB + "' last " + last);
+                assertEquals(Double.isNaN(first), Double.isNaN(last), "Text '" + textSB + "' has a number");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,285 @@
+// -------------------------------------------------------------
+//
+// Tests of PageCoalescer and SiteParser.parseOnce: identical
+// retrievals started while one is in flight share its Page or its
+// failure, aborted retrievals are executed again, and shared or
+// missing Pages are parsed once or by each search respectively.
+// Waiting retrievals are detected by their Thread state, so tests
+// don't depend on timing.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.parsing;
+
+import com.tba.enums.TargetURL;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.tba.TestRunner.*;
+
+public class PageCoalescerTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final Map<Future<Page>, Thread> threads = new ConcurrentHashMap<>(); // Thread of each asynchronous retrieval.
+
+    public static void run() {
+        test("PageCoalescer shares page", PageCoalescerTest::sharesPage);
+        test("PageCoalescer shares failure", PageCoalescerTest::sharesFailure);
+        test("PageCoalescer shares timeout", PageCoalescerTest::sharesTimeout);
+        test("PageCoalescer retries aborted retrieval", PageCoalescerTest::retriesAbortedRetrieval);
+        test("PageCoalescer sequential retrievals", PageCoalescerTest::sequentialRetrievals);
+        test("PageCoalescer uncoalesced retrievals", PageCoalescerTest::uncoalescedRetrievals);
+        test("PageCoalescer url normalization", PageCoalescerTest::urlNormalization);
+        test("SiteParser parses shared page once", PageCoalescerTest::parsesSharedPageOnce);
+        test("SiteParser parses missing page", PageCoalescerTest::parsesMissingPage);
+    }
+
+    private static void sharesPage() throws Exception {
+        String url = "http://localhost/shares-page?page=1";
+        Page page = page(url);
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Page> leader = retrieveAsync(url, () -> {
+            executions.incrementAndGet();
+            awaitRelease(release);
+            return page;
+        });
+        awaitExecution(executions);
+        AtomicInteger followerExecutions = new AtomicInteger();
+        List<Boolean> shared = Collections.synchronizedList(new ArrayList<>());
+        Future<Page> follower = retrieveAsync(url, () -> {
+            followerExecutions.incrementAndGet();
+            return page(url);
+        }, shared);
+        awaitWaiting(follower);
+        release.countDown();
+        assertTrue(leader.get(TIMEOUT_SECONDS, TimeUnit.SECONDS) == page, "Leader page");
+        assertTrue(follower.get(TIMEOUT_SECONDS, TimeUnit.SECONDS) == page, "Follower shares leader page");
+        assertEquals(0, followerExecutions.get(), "Follower retrieval executions");
+        assertEquals(List.of(true), shared, "Follower retrieval was shared");
+    }
+
+    // A failure of the executed retrieval is thrown to the retrievals waiting for it, without executing them.
+    private static void sharesFailure() throws Exception {
+        String url = "http://localhost/shares-failure?page=1";
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Page> leader = retrieveAsync(url, () -> {
+            executions.incrementAndGet();
+            awaitRelease(release);
+            throw new IOException("HTTP error fetching URL. Status=403");
+        });
+        awaitExecution(executions);
+        List<Future<Page>> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            followers.add(retrieveAsync(url, () -> {
+                executions.incrementAndGet();
+                return page(url);
+            }));
+        }
+        for (Future<Page> follower : followers) {
+            awaitWaiting(follower);
+        }
+        release.countDown();
+        assertFailure(leader, IOException.class, "Status=403");
+        for (Future<Page> follower : followers) {
+            assertFailure(follower, IOException.class, "Status=403");
+        }
+        assertEquals(1, executions.get(), "Retrieval executions");
+    }
+
+    // Timeouts are failures of the target, so they are shared as well.
+    private static void sharesTimeout() throws Exception {
+        String url = "http://localhost/shares-timeout?page=1";
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Page> leader = retrieveAsync(url, () -> {
+            executions.incrementAndGet();
+            awaitRelease(release);
+            throw new SocketTimeoutException("Read timed out");
+        });
+        awaitExecution(executions);
+        Future<Page> follower = retrieveAsync(url, () -> {
+            executions.incrementAndGet();
+            return page(url);
+        });
+        awaitWaiting(follower);
+        release.countDown();
+        assertFailure(leader, SocketTimeoutException.class, "Read timed out");
+        assertFailure(follower, SocketTimeoutException.class, "Read timed out");
+        assertEquals(1, executions.get(), "Retrieval executions");
+    }
+
+    // A retrieval aborted by its own search isn't a failure of the target, so a waiting retrieval is executed instead.
+    private static void retriesAbortedRetrieval() throws Exception {
+        String url = "http://localhost/retries-aborted?page=1";
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Page> leader = retrieveAsync(url, () -> {
+            executions.incrementAndGet();
+            awaitRelease(release);
+            throw new InterruptedIOException("Retrieval was aborted");
+        });
+        awaitExecution(executions);
+        Page page = page(url);
+        List<Boolean> shared = Collections.synchronizedList(new ArrayList<>());
+        Future<Page> follower = retrieveAsync(url, () -> {
+            executions.incrementAndGet();
+            return page;
+        }, shared);
+        awaitWaiting(follower);
+        release.countDown();
+        assertFailure(leader, InterruptedIOException.class, "aborted");
+        assertTrue(follower.get(TIMEOUT_SECONDS, TimeUnit.SECONDS) == page, "Follower executes its own retrieval");
+        assertEquals(2, executions.get(), "Retrieval executions");
+        assertEquals(List.of(false), shared, "Follower retrieval was not shared");
+    }
+
+    // Retrievals are shared only while in flight, so a finished failure isn't returned to later retrievals.
+    private static void sequentialRetrievals() throws Exception {
+        String url = "http://localhost/sequential?page=1";
+        AtomicInteger executions = new AtomicInteger();
+        try {
+            PageCoalescer.retrieve(TargetURL.BOOKING, url, () -> {
+                executions.incrementAndGet();
+                throw new IOException("Connection refused");
+            });
+            throw new AssertionError("Failure was not thrown");
+        } catch (IOException e) {
+            assertEquals("Connection refused", e.getMessage(), "First retrieval failure");
+        }
+        Page page = page(url);
+        assertTrue(PageCoalescer.retrieve(TargetURL.BOOKING, url, () -> {
+            executions.incrementAndGet();
+            return page;
+        }) == page, "Second retrieval page");
+        assertEquals(2, executions.get(), "Retrieval executions");
+        assertTrue(!PageCoalescer.wasShared(), "Second retrieval was not shared");
+    }
+
+    // Uncoalesced retrievals, e.g. hedged requests, are executed even while an identical retrieval is in flight.
+    private static void uncoalescedRetrievals() throws Exception {
+        String url = "http://localhost/uncoalesced?page=1";
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Page> leader = retrieveAsync(url, () -> {
+            executions.incrementAndGet();
+            awaitRelease(release);
+            return page(url);
+        });
+        awaitExecution(executions);
+        Page page = page(url);
+        Page hedged = PageCoalescer.uncoalesced(() -> PageCoalescer.retrieve(TargetURL.BOOKING, url, () -> {
+            executions.incrementAndGet();
+            return page;
+        }));
+        release.countDown();
+        leader.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertTrue(hedged == page, "Uncoalesced retrieval page");
+        assertEquals(2, executions.get(), "Retrieval executions");
+    }
+
+    private static void urlNormalization() {
+        assertEquals("https://www.booking.com/searchresults.html?dest=Athens&offset=25",
+                     PageCoalescer.normalize("HTTPS://WWW.Booking.com:443/searchresults.html?offset=25&&dest=Athens#results"), "Normalized url");
+        assertEquals("http://localhost:8081/", PageCoalescer.normalize("http://localhost:8081"), "Empty path");
+        assertEquals("not a url", PageCoalescer.normalize("not a url"), "Invalid url is kept");
+        assertTrue(!PageCoalescer.normalize("http://localhost/?page=1").equals(PageCoalescer.normalize("http://localhost/?page=2")), "Different pages");
+    }
+
+    // Searches sharing a Page parse it once and reuse its properties.
+    private static void parsesSharedPageOnce() throws Exception {
+        SiteParser firstParser = new SiteParser("Athens", new Date());
+        SiteParser secondParser = new SiteParser("Athens", new Date());
+        Page page = page("http://localhost/parse-once?page=1");
+        AtomicInteger parses = new AtomicInteger();
+        Callable<List<Property>> parser = () -> {
+            parses.incrementAndGet();
+            return List.of(new Property.Builder().withName("Hotel").withScore(8.5).withPrice(100.0).build());
+        };
+        List<Property> first = firstParser.parseOnce(TargetURL.BOOKING, page, 1, parser);
+        List<Property> second = secondParser.parseOnce(TargetURL.BOOKING, page, 1, parser);
+        assertEquals(1, parses.get(), "Page parses");
+        assertTrue(first == second, "Shared properties");
+    }
+
+    // A missing Page, e.g. a not accepted hotels-scanner.com page whose failure was shared, is parsed by each search.
+    private static void parsesMissingPage() throws Exception {
+        SiteParser siteParser = new SiteParser("Athens", new Date());
+        assertEquals(Collections.emptyList(), siteParser.parseOnce(TargetURL.HOTELS_SCANNER, null, 0, () -> siteParser.parseHotelsScannerPage(null, 0)), "Missing page properties");
+        assertEquals(Collections.emptyList(), siteParser.parseOnce(TargetURL.HOTELS_SCANNER, null, 0, () -> siteParser.parseHotelsScannerPage(null, 0)), "Missing page properties, again");
+    }
+
+    private static Page page(String url) {
+        return new Page(url, new byte[0], 0, StandardCharsets.UTF_8, Collections.emptyMap(), null, 0);
+    }
+
+    private static Future<Page> retrieveAsync(String url, PageCoalescer.Retrieval retrieval) {
+        return retrieveAsync(url, retrieval, null);
+    }
+
+    // Retrieves a page in a new Thread, recording if it was shared.
+    private static Future<Page> retrieveAsync(String url, PageCoalescer.Retrieval retrieval, List<Boolean> shared) {
+        FutureTask<Page> task = new FutureTask<>(() -> {
+            try {
+                return PageCoalescer.retrieve(TargetURL.BOOKING, url, retrieval);
+            } finally {
+                if (shared != null) {
+                    shared.add(PageCoalescer.wasShared());
+                }
+            }
+        });
+        Thread thread = new Thread(task, "coalescer-test");
+        thread.setDaemon(true);
+        threads.put(task, thread);
+        thread.start();
+        return task;
+    }
+
+    // Executed retrievals wait until released, so identical retrievals start while they are in flight.
+    private static void awaitRelease(CountDownLatch release) throws InterruptedIOException {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Retrieval was interrupted");
+        }
+    }
+
+    // Waits until the executed retrieval has started.
+    private static void awaitExecution(AtomicInteger executions) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (executions.get() == 0) {
+            assertTrue(System.nanoTime() < deadline, "Retrieval was not executed");
+            Thread.sleep(1);
+        }
+    }
+
+    // Waits until a retrieval Thread waits for the in-flight retrieval.
+    private static void awaitWaiting(Future<Page> future) throws InterruptedException {
+        Thread thread = threads.get(future);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline, "Retrieval is not waiting");
+            Thread.sleep(1);
+        }
+    }
+
+    private static void assertFailure(Future<Page> future, Class<? extends Exception> type, String message) throws Exception {
+        try {
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            throw new AssertionError("Failure " + type.getSimpleName() + " was not thrown");
+        } catch (ExecutionException e) {
+            assertEquals(type, e.getCause().getClass(), "Failure type");
+            assertTrue(e.getCause().getMessage().contains(message), "Failure message " + e.getCause().getMessage());
+        }
+    }
+
+}
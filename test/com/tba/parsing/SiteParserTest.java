@@ -0,0 +1,100 @@
+// -------------------------------------------------------------
+//
+// Tests of SiteParser against the SiteSimulator: a page whose parse
+// failed or returned no properties is retried instead of being
+// considered repeated, while a page identical to an already parsed
+// page is not parsed again. Bytes of hotels-scanner.com session
+// cookies requests are accounted.
+// Each test starts a simulator on a free port and points all targets
+// to it.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.parsing;
+
+import com.tba.TestRunner.Test;
+import com.tba.enums.TargetURL;
+import com.tba.simulation.SiteSimulator;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+import static com.tba.TestRunner.*;
+
+public class SiteParserTest {
+
+    private static final Date DATE = Date.from(LocalDate.of(2030, 6, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+    public static void run() {
+        test("SiteParser retries failed parse", () -> withSimulator(SiteParserTest::retriesFailedParse));
+        test("SiteParser retries empty parse", () -> withSimulator(SiteParserTest::retriesEmptyParse));
+        test("SiteParser accounts session cookies request", () -> withSimulator(SiteParserTest::accountsCookiesRequest));
+    }
+
+    // Executes a test with all targets pointed to a started SiteSimulator.
+    private static void withSimulator(Test test) throws Exception {
+        SiteSimulator siteSimulator = new SiteSimulator(0);
+        try {
+            siteSimulator.start();
+            for (TargetURL targetURL : TargetURL.values()) {
+                System.setProperty("tba." + targetURL.name().toLowerCase() + ".baseUrl", siteSimulator.getBaseURL());
+            }
+            test.execute();
+        } finally {
+            for (TargetURL targetURL : TargetURL.values()) {
+                System.clearProperty("tba." + targetURL.name().toLowerCase() + ".baseUrl");
+            }
+            siteSimulator.stop();
+        }
+    }
+
+    private static void retriesFailedParse() throws Exception {
+        SiteParser siteParser = new SiteParser("Failed parse", DATE);
+        Page page = siteParser.fetchBookingPage(0);
+        try {
+            siteParser.parseOnce(TargetURL.BOOKING, page, 0, () -> {
+                throw new IOException("Page is unreadable");
+            });
+            throw new AssertionError("Parse exception was not thrown");
+        } catch (IOException e) {
+            assertEquals("Page is unreadable", e.getMessage(), "Parse exception");
+        }
+        assertParsedOnceRetried(siteParser);
+    }
+
+    private static void retriesEmptyParse() throws Exception {
+        SiteParser siteParser = new SiteParser("Empty parse", DATE);
+        Page page = siteParser.fetchBookingPage(0);
+        assertEquals(Collections.emptyList(), siteParser.parseOnce(TargetURL.BOOKING, page, 0, Collections::emptyList), "Empty parse");
+        assertParsedOnceRetried(siteParser);
+    }
+
+    // hotels-scanner.com results page is requested with the cookies of a previous request, whose bytes are accounted too.
+    private static void accountsCookiesRequest() throws Exception {
+        SiteParser siteParser = new SiteParser("Cookies", DATE);
+        Page page = siteParser.fetchHotelsScannerPage(0);
+        assertTrue(!siteParser.parseHotelsScannerPage(page, 0).isEmpty(), "Results page of the session properties");
+        assertTrue(siteParser.getBytesTransferred() > page.getBytesTransferred(), "Bytes transferred " + siteParser.getBytesTransferred()
+                   + " include the cookies request, besides results page " + page.getBytesTransferred());
+        assertTrue(siteParser.getBytesDecoded() > page.getBytesDecoded(), "Bytes decoded " + siteParser.getBytesDecoded()
+                   + " include the cookies request, besides results page " + page.getBytesDecoded());
+    }
+
+    // Retried first page is parsed with its properties, after which an identical retrieval of it is repeated.
+    private static void assertParsedOnceRetried(SiteParser siteParser) throws Exception {
+        Page retriedPage = siteParser.fetchBookingPage(0);
+        List<Property> pageProperties = siteParser.parseOnce(TargetURL.BOOKING, retriedPage, 0, () -> siteParser.parseBookingPage(retriedPage, 0));
+        assertTrue(!pageProperties.isEmpty(), "Retried page properties");
+        try {
+            siteParser.fetchBookingPage(0);
+            throw new AssertionError("Page identical to a parsed page was not repeated");
+        } catch (RepeatedPageException e) {
+            assertTrue(e.getMessage().contains("identical"), "Repeated page message " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+// -------------------------------------------------------------
+//
+// Tests of FetchScheduler: tasks of a TargetURL don't exceed its
+// connections nor its request rate, tasks of a stalled target don't
+// hold back the others, and queued tasks are executed by priority
+// and submission order, skipping cancelled ones.
+// Tests use the shared scheduler with each target's default budget.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+import com.tba.enums.TargetURL;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.tba.TestRunner.*;
+
+public class FetchSchedulerTest {
+
+    private static final FetchScheduler fetchScheduler = FetchScheduler.getInstance();
+
+    public static void run() {
+        test("FetchScheduler connection permits", FetchSchedulerTest::connectionPermits);
+        test("FetchScheduler request interval", FetchSchedulerTest::requestInterval);
+        test("FetchScheduler priority order", FetchSchedulerTest::priorityOrder);
+    }
+
+    // Tasks of a target beyond its connections wait for a permit, while other targets are still served.
+    private static void connectionPermits() throws Exception {
+        TargetURL targetURL = TargetURL.HOTELS;
+        Integer connections = targetURL.getConnections();
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        List<Future<Integer>> futureList = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections + 2; i++) {
+                futureList.add(fetchScheduler.submit(targetURL, 0, () -> {
+                    started.incrementAndGet();
+                    release.await();
+                    return 1;
+                }));
+            }
+            awaitCount(started, connections);
+            assertEquals(true, fetchScheduler.submit(TargetURL.BOOKING, 0, () -> true).get(5, TimeUnit.SECONDS), "Task of other target is executed");
+            Thread.sleep(2L * targetURL.getRequestInterval());
+            assertEquals(connections, started.get(), "Started tasks while permits are in use");
+        } finally {
+            release.countDown();
+        }
+        Integer completed = 0;
+        for (Future<Integer> future : futureList) {
+            completed += future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(connections + 2, completed, "Completed tasks");
+    }
+
+    // Consecutive tasks of a target start at least its request interval apart.
+    private static void requestInterval() throws Exception {
+        TargetURL targetURL = TargetURL.BOOKING;
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(targetURL.getRequestInterval());
+        List<Future<Long>> futureList = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futureList.add(fetchScheduler.submit(targetURL, 0, System::nanoTime));
+        }
+        long previousStart = futureList.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<Long> future : futureList.subList(1, futureList.size())) {
+            long start = future.get(5, TimeUnit.SECONDS);
+            long toleranceNanos = TimeUnit.MILLISECONDS.toNanos(10); // Scheduling jitter between reserving a slot and starting the task.
+            assertTrue(start - previousStart >= intervalNanos - toleranceNanos,
+                       "Tasks started " + TimeUnit.NANOSECONDS.toMillis(start - previousStart) + " ms apart");
+            previousStart = start;
+        }
+    }
+
+    // Tasks queued behind busy permits are executed by priority, then submission order, and cancelled ones are skipped.
+    // A single permit is freed, so queued tasks are executed one at a time.
+    private static void priorityOrder() throws Exception {
+        TargetURL targetURL = TargetURL.AIRBNB;
+        Integer connections = targetURL.getConnections();
+        CountDownLatch releaseOne = new CountDownLatch(1);
+        CountDownLatch releaseOthers = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        List<String> executionList = Collections.synchronizedList(new ArrayList<>());
+        List<Future<String>> futureList = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                CountDownLatch release = i == 0 ? releaseOne : releaseOthers;
+                fetchScheduler.submit(targetURL, 0, () -> {
+                    started.incrementAndGet();
+                    release.await();
+                    return null;
+                });
+            }
+            awaitCount(started, connections);
+            Map<String, Long> priorities = new LinkedHashMap<>();
+            priorities.put("Second low", 2L);
+            priorities.put("Cancelled", 0L);
+            priorities.put("High", 0L);
+            priorities.put("Middle", 1L);
+            priorities.put("Third low", 2L);
+            priorities.forEach((name, priority) -> futureList.add(fetchScheduler.submit(targetURL, priority, () -> {
+                executionList.add(name);
+                return name;
+            })));
+            futureList.get(1).cancel(true);
+            releaseOne.countDown();
+            for (Future<String> future : futureList) {
+                if (!future.isCancelled()) {
+                    future.get(5, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            releaseOne.countDown();
+            releaseOthers.countDown();
+        }
+        assertEquals(List.of("High", "Middle", "Second low", "Third low"), executionList, "Execution order");
+    }
+
+    // Waits until count reaches the expected value.
+    private static void awaitCount(AtomicInteger count, Integer expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (count.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, count.get(), "Started tasks");
+    }
+
+}
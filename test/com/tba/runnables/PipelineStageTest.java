@@ -0,0 +1,119 @@
+// -------------------------------------------------------------
+//
+// Tests of PipelineStage: submitters block while the stage queue
+// is full and are counted as backpressure stalls, an interrupted
+// submitter doesn't submit its task, task outcomes are returned by
+// their Futures and a cancelled task's interrupt doesn't reach the
+// next task of its worker.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.tba.TestRunner.*;
+
+public class PipelineStageTest {
+
+    public static void run() {
+        test("PipelineStage backpressure", PipelineStageTest::backpressure);
+        test("PipelineStage interrupted submit", PipelineStageTest::interruptedSubmit);
+        test("PipelineStage task outcomes", PipelineStageTest::taskOutcomes);
+    }
+
+    // With its worker busy and its queue full, a submit blocks until the worker takes a task.
+    private static void backpressure() throws Exception {
+        PipelineStage pipelineStage = new PipelineStage("backpressure", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        pipelineStage.submit(() -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+        started.await();
+        pipelineStage.submit(() -> "Queued");
+        FutureTask<Future<String>> blockedSubmit = new FutureTask<>(() -> pipelineStage.submit(() -> "Blocked"));
+        Thread submitter = new Thread(blockedSubmit);
+        submitter.start();
+        try {
+            Thread.sleep(100);
+            assertTrue(!blockedSubmit.isDone(), "Submit to a full stage is blocked");
+            assertTrue(pipelineStage.describe().contains("1/1 queued, 1/1 busy"), "Stage description " + pipelineStage.describe());
+        } finally {
+            release.countDown();
+        }
+        assertEquals("Blocked", blockedSubmit.get(5, TimeUnit.SECONDS).get(5, TimeUnit.SECONDS), "Blocked task outcome");
+        assertTrue(pipelineStage.describe().contains(" 1 backpressure stalls"), "Stage description " + pipelineStage.describe());
+    }
+
+    // Submitter interrupted while blocked gets an InterruptedException, and its task is never executed.
+    private static void interruptedSubmit() throws Exception {
+        PipelineStage pipelineStage = new PipelineStage("interrupted", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean executed = new AtomicBoolean();
+        pipelineStage.submit(() -> {
+            started.countDown();
+            release.await();
+            return null;
+        });
+        started.await();
+        Future<?> queued = pipelineStage.submit(() -> null);
+        FutureTask<Boolean> interruptedSubmit = new FutureTask<>(() -> {
+            try {
+                pipelineStage.submit(() -> executed.getAndSet(true));
+                return false;
+            } catch (InterruptedException e) {
+                return true;
+            }
+        });
+        Thread submitter = new Thread(interruptedSubmit);
+        submitter.start();
+        Thread.sleep(100);
+        submitter.interrupt();
+        assertEquals(true, interruptedSubmit.get(5, TimeUnit.SECONDS), "Blocked submit is interrupted");
+        release.countDown();
+        queued.get(5, TimeUnit.SECONDS);
+        pipelineStage.submit(() -> null).get(5, TimeUnit.SECONDS);
+        assertTrue(!executed.get(), "Task of interrupted submit is not executed");
+    }
+
+    // Results and exceptions are returned by task Futures, and cancelling a running task interrupts it without interrupting
+    // the next task its worker executes.
+    private static void taskOutcomes() throws Exception {
+        PipelineStage pipelineStage = new PipelineStage("outcomes", 1, 4);
+        assertEquals(42, pipelineStage.submit(() -> 42).get(5, TimeUnit.SECONDS), "Task result");
+        try {
+            pipelineStage.submit(() -> {
+                throw new IOException("Page is unreadable");
+            }).get(5, TimeUnit.SECONDS);
+            throw new AssertionError("Task exception was not returned");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException, "Task exception " + e.getCause());
+        }
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        Future<?> running = pipelineStage.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        started.await();
+        running.cancel(true);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "Cancelled task is interrupted");
+        assertEquals(false, pipelineStage.submit(() -> Thread.currentThread().isInterrupted()).get(5, TimeUnit.SECONDS),
+                     "Next task of the worker is not interrupted");
+    }
+
+}
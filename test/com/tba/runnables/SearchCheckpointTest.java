@@ -0,0 +1,175 @@
+// -------------------------------------------------------------
+//
+// Tests of SearchCheckpoint: recorded crawl states and properties
+// are replayed when a checkpoint is opened again, incomplete records
+// of a crashed search are ignored, a checkpoint is open by one search
+// at a time, and a SearchRunnable resumes from its recorded state.
+// Checkpoints are created in the test runner checkpoints folder.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+import com.tba.enums.TargetURL;
+import com.tba.parsing.Property;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+
+import static com.tba.TestRunner.*;
+
+public class SearchCheckpointTest {
+
+    private static final Date DATE = Date.from(LocalDate.of(2030, 6, 1).atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+    public static void run() {
+        test("SearchCheckpoint round trip", SearchCheckpointTest::roundTrip);
+        test("SearchCheckpoint later states replace earlier", SearchCheckpointTest::laterStatesReplaceEarlier);
+        test("SearchCheckpoint incomplete record", SearchCheckpointTest::incompleteRecord);
+        test("SearchCheckpoint single open", SearchCheckpointTest::singleOpen);
+        test("SearchCheckpoint delete", SearchCheckpointTest::delete);
+        test("SearchRunnable resumes completed target", SearchCheckpointTest::resumesCompletedTarget);
+    }
+
+    // Properties, including names with record separators and missing scores or prices, and target states are replayed.
+    private static void roundTrip() {
+        String destination = "Round trip";
+        List<Property> pageProperties = List.of(property("Hotel\tGrande", 8.6, 120.5),
+                                                property("Villa \\ Sea\nView", null, 95.0),
+                                                property("Studio", 9.1, null));
+        SearchCheckpoint checkpoint = SearchCheckpoint.open(destination, DATE, 2);
+        assertTrue(!checkpoint.isResumed(), "New checkpoint is not resumed");
+        Long archiveKey = checkpoint.getArchiveKey();
+        checkpoint.recordPage(TargetURL.BOOKING, 3, 1, 0, pageProperties);
+        checkpoint.recordCompleted(TargetURL.AIRBNB);
+        checkpoint.close();
+
+        SearchCheckpoint resumed = SearchCheckpoint.open(destination, DATE, 2);
+        try {
+            assertTrue(resumed.isResumed(), "Checkpoint is resumed");
+            assertEquals(archiveKey, resumed.getArchiveKey(), "Archive key");
+            SearchCheckpoint.TargetState bookingState = resumed.getTargetState(TargetURL.BOOKING);
+            assertEquals(3, bookingState.getNextPageNumber(), "Next page number");
+            assertEquals(1, bookingState.getPageRetries(), "Page retries");
+            assertEquals(0, bookingState.getPageRepeats(), "Page repeats");
+            assertEquals(false, bookingState.getCompleted(), "Booking completion");
+            assertEquals(pageProperties.size(), bookingState.getProperties().size(), "Properties count");
+            for (Property property : pageProperties) {
+                Property replayed = bookingState.getProperties().get(property.getName());
+                assertTrue(replayed != null, "Property " + property.getName() + " is replayed");
+                assertEquals(property.getScore(), replayed.getScore(), "Property " + property.getName() + " score");
+                assertEquals(property.getPrice(), replayed.getPrice(), "Property " + property.getName() + " price");
+            }
+            assertEquals(true, resumed.getTargetState(TargetURL.AIRBNB).getCompleted(), "Airbnb completion");
+            assertTrue(resumed.getTargetState(TargetURL.HOTELS) == null, "Target without records has no state");
+        } finally {
+            resumed.delete();
+        }
+    }
+
+    private static void laterStatesReplaceEarlier() {
+        String destination = "Later states";
+        SearchCheckpoint checkpoint = SearchCheckpoint.open(destination, DATE, 1);
+        checkpoint.recordPage(TargetURL.HOTELS, 1, 0, 0, List.of(property("First", 7.0, 50.0)));
+        checkpoint.recordPage(TargetURL.HOTELS, 2, 0, 1, List.of(property("Second", 8.0, 60.0)));
+        checkpoint.recordPage(TargetURL.HOTELS, 2, 2, 1, Collections.emptyList());
+        checkpoint.close();
+
+        SearchCheckpoint resumed = SearchCheckpoint.open(destination, DATE, 1);
+        try {
+            SearchCheckpoint.TargetState state = resumed.getTargetState(TargetURL.HOTELS);
+            assertEquals(2, state.getNextPageNumber(), "Next page number");
+            assertEquals(2, state.getPageRetries(), "Page retries");
+            assertEquals(1, state.getPageRepeats(), "Page repeats");
+            assertEquals(Set.of("First", "Second"), state.getProperties().keySet(), "Properties of all pages");
+        } finally {
+            resumed.delete();
+        }
+    }
+
+    // A record cut short by a crash is ignored, keeping the state of the last complete record.
+    private static void incompleteRecord() throws Exception {
+        String destination = "Incomplete record";
+        SearchCheckpoint checkpoint = SearchCheckpoint.open(destination, DATE, 1);
+        checkpoint.recordPage(TargetURL.BOOKING, 1, 0, 0, List.of(property("Complete", 8.0, 70.0)));
+        checkpoint.close();
+        Files.write(checkpointPath(destination, 1), "PROPERTY\tBOOKING\tCut\t8.0".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        Files.write(checkpointPath(destination, 1), "\nSTATE\tBOOKING\t5\t0".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        SearchCheckpoint resumed = SearchCheckpoint.open(destination, DATE, 1);
+        try {
+            SearchCheckpoint.TargetState state = resumed.getTargetState(TargetURL.BOOKING);
+            assertEquals(1, state.getNextPageNumber(), "Next page number of the last complete record");
+            assertEquals(Set.of("Complete"), state.getProperties().keySet(), "Properties of complete records");
+        } finally {
+            resumed.delete();
+        }
+    }
+
+    // Concurrent searches of the same terms would share the checkpoint records, so a second open is rejected until it's closed.
+    private static void singleOpen() {
+        String destination = "Single open";
+        SearchCheckpoint checkpoint = SearchCheckpoint.open(destination, DATE, 1);
+        assertTrue(SearchCheckpoint.isOpen(destination, DATE, 1), "Checkpoint is open");
+        try {
+            SearchCheckpoint.open(destination, DATE, 1);
+            throw new AssertionError("Second open was not rejected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("already open"), "Rejection message " + e.getMessage());
+        }
+        SearchCheckpoint otherNights = SearchCheckpoint.open(destination, DATE, 2);
+        otherNights.delete();
+        checkpoint.close();
+        assertTrue(!SearchCheckpoint.isOpen(destination, DATE, 1), "Closed checkpoint is not open");
+        SearchCheckpoint.open(destination, DATE, 1).delete();
+    }
+
+    private static void delete() {
+        String destination = "Delete";
+        SearchCheckpoint checkpoint = SearchCheckpoint.open(destination, DATE, 1);
+        checkpoint.recordCompleted(TargetURL.BOOKING);
+        assertTrue(Files.exists(checkpointPath(destination, 1)), "Checkpoint file is written");
+        checkpoint.delete();
+        assertTrue(!Files.exists(checkpointPath(destination, 1)), "Checkpoint file is deleted");
+        SearchCheckpoint reopened = SearchCheckpoint.open(destination, DATE, 1);
+        assertTrue(!reopened.isResumed(), "Deleted checkpoint is not resumed");
+        reopened.delete();
+    }
+
+    // A target recorded as completed is not searched again, its recorded properties are returned.
+    private static void resumesCompletedTarget() {
+        String destination = "Resumed search";
+        SearchCheckpoint checkpoint = SearchCheckpoint.open(destination, DATE, 1);
+        checkpoint.recordPage(TargetURL.BOOKING, 1, 0, 0, List.of(property("Recorded", 9.0, 80.0)));
+        checkpoint.recordCompleted(TargetURL.BOOKING);
+        checkpoint.close();
+
+        SearchCheckpoint resumed = SearchCheckpoint.open(destination, DATE, 1);
+        try {
+            SearchRunnable searchRunnable = new SearchRunnable(TargetURL.BOOKING, destination, DATE, 1, resumed);
+            searchRunnable.run();
+            assertEquals(true, searchRunnable.getCompleted(), "Search is completed");
+            assertEquals(0, searchRunnable.getPagesParsed(), "Pages parsed");
+            assertEquals(Set.of("Recorded"), searchRunnable.getTotalProperties().keySet(), "Recorded properties");
+        } finally {
+            resumed.delete();
+        }
+    }
+
+    private static Property property(String name, Double score, Double price) {
+        return new Property.Builder().withName(name).withScore(score).withPrice(price).build();
+    }
+
+    private static Path checkpointPath(String destination, Integer nights) {
+        return Paths.get(System.getProperty("tba.checkpointFolder"), destination.replace(' ', '_') + "_20300601_" + nights + ".chk");
+    }
+
+}
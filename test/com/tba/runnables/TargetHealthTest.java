@@ -0,0 +1,158 @@
+// -------------------------------------------------------------
+//
+// Tests of TargetHealth: circuit breaker opens on consecutive
+// failures, a single probe request is allowed among concurrent
+// searches once it's open time passes, and its outcome closes or
+// opens the circuit again, marking target down. Hedged requests
+// are limited to their share of all requests.
+// Test runner shortens 'tba.breakerOpenMillis', as each test uses
+// the shared TargetHealth of a different TargetURL.
+//
+// Authors: Giorgos Mourtzounis, Aggelos Stamatiou, August 2020
+//
+// --------------------------------------------------------------
+
+package com.tba.runnables;
+
+import com.tba.enums.CircuitState;
+import com.tba.enums.TargetURL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.tba.TestRunner.*;
+
+public class TargetHealthTest {
+
+    private static final Integer BREAKER_FAILURES = Integer.getInteger("tba.breakerFailures", 5);
+    private static final long BREAKER_OPEN_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("tba.breakerOpenMillis", 30000L));
+
+    public static void run() {
+        test("TargetHealth circuit breaker", TargetHealthTest::circuitBreaker);
+        test("TargetHealth single concurrent probe", TargetHealthTest::singleConcurrentProbe);
+        test("TargetHealth hedged requests", TargetHealthTest::hedgedRequests);
+    }
+
+    // Circuit opens after consecutive failures only, rejects requests while open, and a failed probe opens it again.
+    private static void circuitBreaker() throws Exception {
+        TargetHealth targetHealth = TargetHealth.of(TargetURL.AIRBNB);
+        for (int i = 1; i < BREAKER_FAILURES; i++) {
+            assertTrue(targetHealth.tryAcquire(), "Request " + i + " is acquired");
+            targetHealth.recordFailure();
+        }
+        assertTrue(targetHealth.tryAcquire(), "Successful request is acquired");
+        targetHealth.recordSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+        for (int i = 0; i < BREAKER_FAILURES; i++) {
+            assertEquals(CircuitState.CLOSED, targetHealth.getCircuitState(), "Circuit state after " + i + " consecutive failures");
+            assertTrue(targetHealth.tryAcquire(), "Request of closed circuit is acquired");
+            targetHealth.recordFailure();
+        }
+        assertEquals(CircuitState.OPEN, targetHealth.getCircuitState(), "Circuit state after " + BREAKER_FAILURES + " consecutive failures");
+        assertTrue(!targetHealth.tryAcquire(), "Request of open circuit is rejected");
+        assertTrue(!targetHealth.isDown(), "Target is not down before a probe request");
+        long retryDelayNanos = targetHealth.getRetryDelayNanos();
+        assertTrue(retryDelayNanos > 0 && retryDelayNanos <= BREAKER_OPEN_NANOS, "Retry delay of open circuit " + retryDelayNanos);
+
+        awaitProbe(targetHealth);
+        assertTrue(targetHealth.tryAcquire(), "Probe request is acquired");
+        assertEquals(CircuitState.HALF_OPEN, targetHealth.getCircuitState(), "Circuit state while probing");
+        targetHealth.recordFailure();
+        assertEquals(CircuitState.OPEN, targetHealth.getCircuitState(), "Circuit state after failed probe");
+        assertTrue(!targetHealth.tryAcquire(), "Request after failed probe is rejected");
+        assertTrue(targetHealth.isDown(), "Target is down after failed probe");
+
+        awaitProbe(targetHealth);
+        assertTrue(targetHealth.tryAcquire(), "Second probe request is acquired");
+        targetHealth.recordSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(CircuitState.CLOSED, targetHealth.getCircuitState(), "Circuit state after successful probe");
+        assertEquals(0L, targetHealth.getRetryDelayNanos(), "Retry delay of closed circuit");
+        assertTrue(!targetHealth.isDown(), "Target is not down after successful probe");
+    }
+
+    // Searches racing for the half open circuit acquire a single probe. Failures of rejected searches don't decide the circuit,
+    // while an aborted probe lets the next request probe at once.
+    private static void singleConcurrentProbe() throws Exception {
+        TargetHealth targetHealth = TargetHealth.of(TargetURL.HOTELS);
+        for (int i = 0; i < BREAKER_FAILURES; i++) {
+            targetHealth.tryAcquire();
+            targetHealth.recordFailure();
+        }
+        awaitProbe(targetHealth);
+
+        Integer searches = 16;
+        ExecutorService executorService = Executors.newFixedThreadPool(searches);
+        try {
+            CyclicBarrier barrier = new CyclicBarrier(searches);
+            CountDownLatch probeDecided = new CountDownLatch(1);
+            AtomicInteger probes = new AtomicInteger();
+            AtomicInteger rejected = new AtomicInteger();
+            List<Future<?>> futureList = new ArrayList<>();
+            for (int i = 0; i < searches; i++) {
+                futureList.add(executorService.submit(() -> {
+                    barrier.await();
+                    if (targetHealth.tryAcquire()) {
+                        probes.incrementAndGet();
+                        probeDecided.await();
+                        targetHealth.recordAbort();
+                    } else {
+                        targetHealth.recordFailure();
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (probes.get() + rejected.get() < searches && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(1, probes.get(), "Acquired probes");
+            assertEquals(searches - 1, rejected.get(), "Rejected requests");
+            assertEquals(CircuitState.HALF_OPEN, targetHealth.getCircuitState(), "Circuit state after failures of rejected requests");
+            assertTrue(targetHealth.getRetryDelayNanos() > 0, "Retry delay while probe is in flight");
+            probeDecided.countDown();
+            for (Future<?> future : futureList) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(CircuitState.OPEN, targetHealth.getCircuitState(), "Circuit state after aborted probe");
+        assertEquals(0L, targetHealth.getRetryDelayNanos(), "Retry delay after aborted probe");
+        assertTrue(targetHealth.tryAcquire(), "Next request probes at once");
+        targetHealth.recordSuccess(TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(CircuitState.CLOSED, targetHealth.getCircuitState(), "Circuit state after successful probe");
+    }
+
+    // Requests are not hedged before enough latency samples exist, and hedged requests don't exceed their share of requests.
+    private static void hedgedRequests() {
+        TargetHealth targetHealth = TargetHealth.of(TargetURL.BOOKING);
+        Integer minSamples = Integer.getInteger("tba.hedgeMinSamples", 20);
+        Double hedgeRatio = Double.parseDouble(System.getProperty("tba.hedgeRatio", "0.05"));
+        Integer requests = 200;
+        for (int i = 0; i < requests; i++) {
+            if (i == minSamples - 1) {
+                assertEquals(-1L, targetHealth.getHedgeDelayNanos(), "Hedge delay before enough samples");
+            }
+            targetHealth.tryAcquire();
+            targetHealth.recordSuccess(TimeUnit.MILLISECONDS.toNanos(i % 100 + 1));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(95), targetHealth.getHedgeDelayNanos(), "Hedge delay is p95 latency");
+        Integer hedges = 0;
+        while (targetHealth.tryHedge()) {
+            hedges++;
+        }
+        assertEquals((int) Math.floor(hedgeRatio * requests), hedges, "Hedged requests");
+    }
+
+    // Waits until circuit open time passes and a probe request is allowed.
+    private static void awaitProbe(TargetHealth targetHealth) throws InterruptedException {
+        long retryDelayNanos = targetHealth.getRetryDelayNanos();
+        while (retryDelayNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(retryDelayNanos);
+            retryDelayNanos = targetHealth.getRetryDelayNanos();
+        }
+    }
+
+}